@@ -0,0 +1,43 @@
+package de.mpc.pia.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Base state of the benchmarks on a {@link SyntheticDataset}, the size of the
+ * dataset is set by the JMH parameters (e.g. "-p nrPSMs=1000000").
+ *
+ * @author julianu
+ *
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractSyntheticBenchmark {
+
+    /** number of PSMs */
+    @Param({"200000"})
+    protected int nrPSMs;
+
+    /** number of proteins, at most half the number of PSMs */
+    @Param({"20000"})
+    protected int nrProteins;
+
+    /** ratio of the peptides, which are shared by two proteins */
+    @Param({"0.2"})
+    protected double sharedPeptideRatio;
+
+    /** ratio of the decoy proteins */
+    @Param({"0.5"})
+    protected double decoyRatio;
+
+
+    /**
+     * Creates the dataset given by the parameters.
+     *
+     * @return
+     */
+    protected SyntheticDataset createDataset() {
+        return new SyntheticDataset(nrPSMs, nrProteins, sharedPeptideRatio, decoyRatio, 42L);
+    }
+}
@@ -0,0 +1,56 @@
+package de.mpc.pia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+
+
+/**
+ * Benchmarks {@link PIACompiler#buildClusterList()} on a freshly filled
+ * compiler.
+ *
+ * @author julianu
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class CompilerBenchmark extends AbstractSyntheticBenchmark {
+
+    /** the dataset, generated once */
+    private SyntheticDataset dataset;
+
+    /** the filled compiler, as the cluster building clears the connections */
+    private PIACompiler compiler;
+
+
+    @Setup(Level.Trial)
+    public void generateDataset() {
+        dataset = createDataset();
+    }
+
+
+    @Setup(Level.Iteration)
+    public void fillCompiler() {
+        compiler = dataset.createCompiler();
+    }
+
+
+    @Benchmark
+    public PIACompiler buildClusterList() {
+        compiler.buildClusterList();
+        return compiler;
+    }
+}
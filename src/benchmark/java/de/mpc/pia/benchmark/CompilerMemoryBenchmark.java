@@ -0,0 +1,90 @@
+package de.mpc.pia.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.PIASQLiteCompiler;
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+
+
+/**
+ * Compares the whole compilation (parsing, building and writing the PIA XML
+ * file) with the {@link PIASimpleCompiler} and the {@link PIASQLiteCompiler}.
+ * The test input files are parsed several times (under different names), to
+ * simulate larger compilations. The allocations are given by the GC profiler
+ * ("-prof gc").
+ *
+ * @author julianu
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class CompilerMemoryBenchmark {
+
+    /** the compiler, "simple" or "sqlite" */
+    @Param({"simple", "sqlite"})
+    public String compiler;
+
+    /** how often the input files are parsed */
+    @Param({"20"})
+    public int repetitions;
+
+    /** the input files */
+    private String[] inputFiles;
+
+    /** the written PIA XML file */
+    private File outFile;
+
+
+    @Setup
+    public void prepareFiles() throws IOException {
+        inputFiles = new String[] {
+                CompilerMemoryBenchmark.class.getResource("/merge1-tandem-fdr_filtered-015.idXML").getPath(),
+                CompilerMemoryBenchmark.class.getResource("/merge1-msgf-fdr_filtered-015.idXML").getPath()};
+
+        outFile = File.createTempFile("CompilerMemoryBenchmark", ".pia.xml");
+        outFile.deleteOnExit();
+    }
+
+
+    @Benchmark
+    public File compile() throws IOException {
+        PIACompiler piaCompiler;
+        if ("sqlite".equalsIgnoreCase(compiler)) {
+            piaCompiler = new PIASQLiteCompiler();
+        } else {
+            piaCompiler = new PIASimpleCompiler();
+        }
+
+        for (int rep = 0; rep < repetitions; rep++) {
+            for (int fileIdx = 0; fileIdx < inputFiles.length; fileIdx++) {
+                piaCompiler.getDataFromFile("file_" + rep + "_" + fileIdx, inputFiles[fileIdx], null, null);
+            }
+        }
+
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+        piaCompiler.writeOutXML(outFile);
+        piaCompiler.finish();
+
+        return outFile;
+    }
+}
@@ -0,0 +1,93 @@
+package de.mpc.pia.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.PSMModeller;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.score.FDRData;
+import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
+import de.mpc.pia.modeller.score.FDRScore;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+/**
+ * Benchmarks {@link FDRData#calculateFDR(List)} and
+ * {@link FDRScore#calculateFDRScore(List, FDRData, boolean)} on the PSMs of
+ * the synthetic dataset.
+ *
+ * @author julianu
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class FDRBenchmark extends AbstractSyntheticBenchmark {
+
+    /** the FDR settings */
+    private FDRData fdrData;
+
+    /** the PSMs for the FDR calculation, shuffled before each invocation */
+    private List<ReportPSM> fdrPSMs;
+
+    /** the PSMs with calculated FDR for the FDR score calculation */
+    private List<ReportPSM> scorePSMs;
+
+    /** random generator for the shuffling */
+    private Random random;
+
+
+    @Setup(Level.Trial)
+    public void createPSMs() throws Exception {
+        PIAModeller piaModeller = new PIAModeller(createDataset().writeIntermediateFile().getAbsolutePath());
+        PSMModeller psmModeller = piaModeller.getPSMModeller();
+        psmModeller.setAllDecoyPattern(SyntheticDataset.DECOY_PATTERN);
+        psmModeller.setAllTopIdentifications(0);
+        psmModeller.updateDecoyStates(1L);
+
+        fdrData = new FDRData(DecoyStrategy.ACCESSIONPATTERN, SyntheticDataset.DECOY_PATTERN, 0.01);
+        fdrData.setScoreShortName(ScoreModelEnum.MASCOT_SCORE.getShortName());
+
+        fdrPSMs = new ArrayList<>(psmModeller.getFilteredReportPSMs(1L, null));
+        scorePSMs = new ArrayList<>(fdrPSMs);
+        fdrData.calculateFDR(scorePSMs);
+
+        random = new Random(42);
+    }
+
+
+    @Setup(Level.Invocation)
+    public void shufflePSMs() {
+        Collections.shuffle(fdrPSMs, random);
+    }
+
+
+    @Benchmark
+    public FDRData calculateFDR() {
+        fdrData.calculateFDR(fdrPSMs);
+        return fdrData;
+    }
+
+
+    @Benchmark
+    public List<ReportPSM> calculateFDRScore() {
+        FDRScore.calculateFDRScore(scorePSMs, fdrData, true);
+        return scorePSMs;
+    }
+}
@@ -0,0 +1,80 @@
+package de.mpc.pia.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.report.filter.AbstractFilter;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.FilterFactory;
+import de.mpc.pia.modeller.report.filter.RegisteredFilters;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.report.filter.impl.SimpleTypeFilter;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+/**
+ * Benchmarks {@link FilterFactory#applyFilters(List, List, Long)} with a score,
+ * a charge and an accession filter on the PSMs of the synthetic dataset. The
+ * compiled filtering is compared to checking each PSM against the filter list,
+ * e.g. on 10M PSMs with "-p nrPSMs=10000000 -p nrProteins=1000000 -jvmArgs -Xmx32g".
+ *
+ * @author julianu
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class FilterBenchmark extends AbstractSyntheticBenchmark {
+
+    /** the filtered PSMs */
+    private List<ReportPSM> psms;
+
+    /** the applied filters */
+    private List<AbstractFilter> filters;
+
+
+    @Setup
+    public void createPSMs() throws Exception {
+        PIAModeller piaModeller = new PIAModeller(createDataset().writeIntermediateFile().getAbsolutePath());
+        psms = new ArrayList<>(piaModeller.getPSMModeller().getFilteredReportPSMs(1L, null));
+
+        filters = new ArrayList<>();
+        filters.add(new PSMScoreFilter(FilterComparator.greater_equal, false, 20.0,
+                ScoreModelEnum.MASCOT_SCORE.getShortName()));
+        filters.add(new SimpleTypeFilter<>(FilterComparator.less_equal, RegisteredFilters.CHARGE_FILTER, false, 2));
+        filters.add(new SimpleTypeFilter<>(FilterComparator.regex, RegisteredFilters.PSM_ACCESSIONS_FILTER, true,
+                SyntheticDataset.DECOY_PATTERN));
+    }
+
+
+    @Benchmark
+    public List<ReportPSM> applyFilters() {
+        return FilterFactory.applyFilters(psms, filters, 1L);
+    }
+
+
+    @Benchmark
+    public List<ReportPSM> satisfiesFilterListPerPSM() {
+        List<ReportPSM> filteredPSMs = new ArrayList<>();
+        for (ReportPSM psm : psms) {
+            if (FilterFactory.satisfiesFilterList(psm, 1L, filters)) {
+                filteredPSMs.add(psm);
+            }
+        }
+        return filteredPSMs;
+    }
+}
@@ -0,0 +1,89 @@
+package de.mpc.pia.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryHandler;
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler;
+import de.mpc.pia.modeller.PIAModeller;
+
+
+/**
+ * Compares the load times of the synthetic dataset in the PIA XML and in the
+ * binary intermediate format, both for the plain handlers and the whole
+ * loading of the {@link PIAModeller}.
+ *
+ * @author julianu
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class IntermediateLoadBenchmark extends AbstractSyntheticBenchmark {
+
+    /** the dataset in the PIA XML format */
+    private File xmlFile;
+
+    /** the dataset in the binary format */
+    private File binaryFile;
+
+
+    @Setup
+    public void writeFiles() throws IOException {
+        PIACompiler compiler = createDataset().createCompiler();
+        compiler.buildClusterList();
+        compiler.buildIntermediateStructure();
+
+        xmlFile = File.createTempFile("IntermediateLoadBenchmark", ".pia.xml");
+        xmlFile.deleteOnExit();
+        compiler.writeOutXML(xmlFile);
+
+        binaryFile = File.createTempFile("IntermediateLoadBenchmark", PIABinaryFormat.FILE_SUFFIX);
+        binaryFile.deleteOnExit();
+        compiler.writeOutBinary(binaryFile);
+
+        compiler.finish();
+    }
+
+
+    @Benchmark
+    public PIAIntermediateJAXBHandler loadXML() throws IOException {
+        PIAIntermediateJAXBHandler handler = new PIAIntermediateJAXBHandler();
+        handler.parse(xmlFile.getAbsolutePath(), null);
+        return handler;
+    }
+
+
+    @Benchmark
+    public PIABinaryHandler loadBinary() throws IOException {
+        PIABinaryHandler handler = new PIABinaryHandler(binaryFile.getAbsolutePath());
+        handler.parse(null);
+        return handler;
+    }
+
+
+    @Benchmark
+    public PIAModeller loadModellerXML() {
+        return new PIAModeller(xmlFile.getAbsolutePath());
+    }
+
+
+    @Benchmark
+    public PIAModeller loadModellerBinary() {
+        return new PIAModeller(binaryFile.getAbsolutePath());
+    }
+}
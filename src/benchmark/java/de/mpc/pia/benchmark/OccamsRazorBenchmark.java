@@ -0,0 +1,156 @@
+package de.mpc.pia.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.IdentificationKeySettings;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.inference.OccamsRazorInference;
+import de.mpc.pia.modeller.protein.scoring.AdditiveScoring;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+/**
+ * Benchmarks the {@link OccamsRazorInference} on one large synthetic tree of
+ * groups with many shared peptides, same-set groups and sub-groups. Unlike the
+ * {@link SyntheticDataset}, all groups are in one tree, so this measures the
+ * inference within a tree and not the distribution of the trees.
+ *
+ * @author julianu
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class OccamsRazorBenchmark {
+
+    /** number of groups in the tree */
+    @Param({"20000"})
+    public int nrGroups;
+
+    /** the settings of the PSM sets */
+    private Map<String, Boolean> psmSetSettings;
+
+    /** the PSM sets of the peptides */
+    private Map<String, ReportPSMSet> reportPSMSetMap;
+
+    /** the groups of the tree */
+    private Map<Long, Group> groupMap;
+
+
+    /**
+     * Creates the groups of the tree. The first half of the groups are the
+     * peptide groups (with one peptide each), the second half are the groups
+     * with accessions pointing to the peptide groups or to other groups.
+     */
+    @Setup
+    public void createTree() {
+        Random random = new Random(23);
+        PIAInputFile file = new PIAInputFile(1L, "file", "file.mzid", "mzid");
+        int nrPeptideGroups = nrGroups / 2;
+
+        psmSetSettings = new HashMap<>();
+        psmSetSettings.put(IdentificationKeySettings.SOURCE_ID.name(), true);
+        psmSetSettings.put(IdentificationKeySettings.SEQUENCE.name(), true);
+        reportPSMSetMap = new HashMap<>();
+
+        List<Group> groups = new ArrayList<>(nrGroups);
+        for (int groupIdx = 0; groupIdx < nrGroups; groupIdx++) {
+            Group group = new Group(groupIdx + 1L);
+            group.setTreeID(1L);
+            groups.add(group);
+        }
+
+        for (int pepIdx = 0; pepIdx < nrPeptideGroups; pepIdx++) {
+            String sequence = "PEPTIDE" + pepIdx + "K";
+            Peptide peptide = new Peptide(pepIdx, sequence);
+            PeptideSpectrumMatch psm = new PeptideSpectrumMatch(pepIdx, 2, 400.0 + pepIdx * 0.01,
+                    0.0, 10.0 + pepIdx * 0.1, sequence, 0, "index=" + pepIdx,
+                    "spectrum " + pepIdx, file, null);
+            psm.addScore(new ScoreModel(10.0 + random.nextInt(100), ScoreModelEnum.MASCOT_SCORE));
+            peptide.addSpectrum(psm);
+            groups.get(pepIdx).addPeptide(peptide);
+
+            ReportPSMSet psmSet = new ReportPSMSet(psmSetSettings);
+            psmSet.addReportPSM(new ReportPSM((long) pepIdx, psm));
+            reportPSMSetMap.put(psm.getIdentificationKey(psmSetSettings), psmSet);
+        }
+
+        for (int groupIdx = nrPeptideGroups; groupIdx < nrGroups; groupIdx++) {
+            Group group = groups.get(groupIdx);
+            Accession accession = new Accession(groupIdx + 1L, "ACC_" + groupIdx, null);
+            accession.setGroup(group);
+            group.addAccession(accession);
+
+            // the peptides of a group are taken from a window, so the groups overlap
+            int center = random.nextInt(nrPeptideGroups);
+            int choice = random.nextInt(100);
+            Set<Group> children = new HashSet<>();
+            if ((choice < 15) && (groupIdx > nrPeptideGroups)) {
+                // a group with the same peptides as an earlier group
+                Group same = groups.get(nrPeptideGroups + random.nextInt(groupIdx - nrPeptideGroups));
+                children.addAll(same.getChildren().values());
+            } else if ((choice < 30) && (groupIdx > nrPeptideGroups)) {
+                // a group containing an earlier group and another peptide
+                children.add(groups.get(nrPeptideGroups + random.nextInt(groupIdx - nrPeptideGroups)));
+                children.add(groups.get(Math.floorMod(center + random.nextInt(50), nrPeptideGroups)));
+            } else {
+                for (int i = 1 + random.nextInt(6); i > 0; i--) {
+                    children.add(groups.get(Math.floorMod(center + random.nextInt(50), nrPeptideGroups)));
+                }
+            }
+
+            for (Group child : children) {
+                group.addChild(child);
+                child.addParent(group);
+            }
+        }
+
+        groupMap = new HashMap<>(nrGroups);
+        for (Group group : groups) {
+            groupMap.put(group.getID(), group);
+        }
+    }
+
+
+    @Benchmark
+    public List<ReportProtein> occamsRazor() {
+        OccamsRazorInference inference = new OccamsRazorInference();
+        inference.setScoring(new AdditiveScoring(Collections.singletonMap(
+                ScoreModelEnum.MASCOT_SCORE.getShortName(), ScoreModelEnum.MASCOT_SCORE.getName())));
+        inference.setAllowedThreads(1);
+
+        return inference.calculateInference(groupMap, reportPSMSetMap, false, psmSetSettings,
+                Collections.emptyList());
+    }
+}
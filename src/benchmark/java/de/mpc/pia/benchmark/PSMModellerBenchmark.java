@@ -0,0 +1,59 @@
+package de.mpc.pia.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryHandler;
+import de.mpc.pia.modeller.PSMModeller;
+
+
+/**
+ * Benchmarks the creation of the report PSMs from the intermediate groups
+ * (PSMModeller.createReportPSMsFromGroups, called by the constructor of the
+ * {@link PSMModeller}).
+ *
+ * @author julianu
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class PSMModellerBenchmark extends AbstractSyntheticBenchmark {
+
+    /** number of threads creating the report PSMs, 0 for all available processors */
+    @Param({"1", "0"})
+    public int nrThreads;
+
+    /** the intermediate data */
+    private PIABinaryHandler intermediate;
+
+
+    @Setup
+    public void loadIntermediate() throws IOException {
+        intermediate = new PIABinaryHandler(createDataset().writeIntermediateFile().getAbsolutePath());
+        intermediate.parse(null);
+    }
+
+
+    @Benchmark
+    public PSMModeller createReportPSMsFromGroups() {
+        return new PSMModeller(intermediate.getGroups(),
+                intermediate.getFiles(),
+                intermediate.getFileName(),
+                intermediate.getPSMSetSettingsWarnings(),
+                intermediate.getPSMs().size(),
+                nrThreads);
+    }
+}
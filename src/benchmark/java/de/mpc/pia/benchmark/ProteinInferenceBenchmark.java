@@ -0,0 +1,81 @@
+package de.mpc.pia.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.PSMModeller;
+import de.mpc.pia.modeller.PeptideModeller;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.inference.OccamsRazorInference;
+import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
+import de.mpc.pia.modeller.protein.scoring.MultiplicativeScoring;
+import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+/**
+ * Benchmarks {@link OccamsRazorInference#calculateInference} with FDR
+ * filtered PSMs of the synthetic dataset.
+ *
+ * @author julianu
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class ProteinInferenceBenchmark extends AbstractSyntheticBenchmark {
+
+    /** the modeller with the calculated PSM FDR */
+    private PIAModeller piaModeller;
+
+
+    @Setup
+    public void createModeller() throws Exception {
+        piaModeller = new PIAModeller(createDataset().writeIntermediateFile().getAbsolutePath());
+
+        PSMModeller psmModeller = piaModeller.getPSMModeller();
+        psmModeller.setAllDecoyPattern(SyntheticDataset.DECOY_PATTERN);
+        psmModeller.setAllTopIdentifications(0);
+        psmModeller.addPreferredFDRScore(ScoreModelEnum.MASCOT_SCORE.getShortName());
+        psmModeller.calculateAllFDR();
+        psmModeller.calculateCombinedFDRScore();
+    }
+
+
+    @Benchmark
+    public List<ReportProtein> occamsRazor() {
+        OccamsRazorInference inference = new OccamsRazorInference();
+        inference.addFilter(new PSMScoreFilter(FilterComparator.less_equal, false, 0.01,
+                ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName()));
+
+        inference.setScoring(new MultiplicativeScoring(new HashMap<>()));
+        inference.getScoring().setSetting(AbstractScoring.SCORING_SETTING_ID,
+                ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName());
+        inference.getScoring().setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID,
+                PSMForScoring.ONLY_BEST.getShortName());
+
+        PSMModeller psmModeller = piaModeller.getPSMModeller();
+        PeptideModeller peptideModeller = piaModeller.getPeptideModeller();
+
+        return inference.calculateInference(piaModeller.getGroups(),
+                psmModeller.getReportPSMSets(),
+                peptideModeller.getConsiderModifications(),
+                psmModeller.getPSMSetSettings(),
+                peptideModeller.getFilteredReportPeptides(0L, peptideModeller.getFilters(0L)));
+    }
+}
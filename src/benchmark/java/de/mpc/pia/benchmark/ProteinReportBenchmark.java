@@ -0,0 +1,138 @@
+package de.mpc.pia.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.ReportProteinComparatorFactory;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.report.SortOrder;
+
+
+/**
+ * Benchmarks sorting and exporting a large synthetic protein report, which
+ * relies on the cached numbers of PSMs and spectra of the
+ * {@link ReportProtein}s.
+ *
+ * @author julianu
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class ProteinReportBenchmark {
+
+    /** number of proteins */
+    @Param({"100000"})
+    public int nrProteins;
+
+    /** the proteins */
+    private List<ReportProtein> proteins;
+
+    /** the comparator of the sorting */
+    private Comparator<ReportProtein> comparator;
+
+    /** shuffles the proteins before each sorting */
+    private Random shuffleRandom;
+
+
+    @Setup(Level.Trial)
+    public void createProteins() {
+        Random random = new Random(21);
+        PIAInputFile file = new PIAInputFile(1L, "file", "file.mzid", "mzid");
+
+        int nrPeptides = 2 * nrProteins;
+        List<ReportPeptide> peptides = new ArrayList<>(nrPeptides);
+        long psmID = 0;
+        for (int pepIdx = 0; pepIdx < nrPeptides; pepIdx++) {
+            String sequence = "PEPTIDE" + pepIdx;
+            ReportPeptide peptide = new ReportPeptide(sequence, sequence, new Peptide(pepIdx, sequence));
+
+            int nrPSMs = 1 + random.nextInt(5);
+            for (int i = 0; i < nrPSMs; i++) {
+                psmID++;
+                // some PSMs share their spectrum with other PSMs
+                long spectrumNr = (random.nextInt(10) == 0) ? random.nextInt((int) psmID) : psmID;
+                PeptideSpectrumMatch psm = new PeptideSpectrumMatch(psmID, 2, 400.0 + spectrumNr * 0.001,
+                        0.0, 10.0 + spectrumNr * 0.01, sequence, 0, "index=" + spectrumNr,
+                        "spectrum " + spectrumNr, file, null);
+                peptide.addPSM(new ReportPSM(psmID, psm));
+            }
+            peptides.add(peptide);
+        }
+
+        // the peptides (and their spectra) occur in several proteins
+        proteins = new ArrayList<>(nrProteins);
+        for (long protID = 1; protID <= nrProteins; protID++) {
+            ReportProtein protein = new ReportProtein(protID);
+            int nrProtPeptides = 1 + random.nextInt(8);
+            for (int i = 0; i < nrProtPeptides; i++) {
+                protein.addPeptide(peptides.get(random.nextInt(nrPeptides)));
+            }
+            proteins.add(protein);
+        }
+
+        comparator = ReportProteinComparatorFactory.getComparator(Arrays.asList(
+                ReportProteinComparatorFactory.getComparatorByName("nr_spectra", SortOrder.descending),
+                ReportProteinComparatorFactory.getComparatorByName("nr_psms", SortOrder.descending)));
+        shuffleRandom = new Random(0);
+    }
+
+
+    @Setup(Level.Invocation)
+    public void shuffleProteins() {
+        Collections.shuffle(proteins, shuffleRandom);
+    }
+
+
+    @Benchmark
+    public List<ReportProtein> sortProteins() {
+        proteins.sort(comparator);
+        return proteins;
+    }
+
+
+    /**
+     * Writes the numbers of each protein like a CSV export and returns the
+     * length of the export.
+     */
+    @Benchmark
+    public long exportProteins() {
+        StringBuilder row = new StringBuilder();
+        long length = 0;
+        for (ReportProtein protein : proteins) {
+            row.setLength(0);
+            row.append(protein.getID()).append(',')
+                    .append(protein.getNrPeptides()).append(',')
+                    .append(protein.getNrPSMs()).append(',')
+                    .append(protein.getNrSpectra()).append('\n');
+            length += row.length();
+        }
+        return length;
+    }
+}
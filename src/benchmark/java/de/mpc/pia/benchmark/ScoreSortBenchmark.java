@@ -0,0 +1,124 @@
+package de.mpc.pia.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.modeller.score.comparator.ScoreComparator;
+
+
+/**
+ * Sorts synthetic {@link ReportPSM}s by a score, once with the former lookup
+ * of the scores by a linear scan over the descriptors of all scores of a PSM
+ * and once with the lookup by score IDs of the {@link ScoreComparator}.
+ * <p>
+ * The default of 5M PSMs needs a heap of about 4 GB.
+ *
+ * @author julianu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx6g"})
+public class ScoreSortBenchmark {
+
+    /** the number of sorted PSMs */
+    @Param({"5000000"})
+    private int nrPSMs;
+
+    /** the shuffled PSMs */
+    private List<ReportPSM> psms;
+
+
+    @Setup
+    public void createPSMs() {
+        Random random = new Random(42);
+        PIAInputFile file = new PIAInputFile(1L, "benchmark", "benchmark.mzid", "mzid");
+
+        psms = new ArrayList<>(nrPSMs);
+        for (int i = 0; i < nrPSMs; i++) {
+            PeptideSpectrumMatch psm = new PeptideSpectrumMatch(i, 2, 500.0 + random.nextDouble() * 1000, 0.0,
+                    null, "PEPTIDE", 0, "index=" + i, null, file, null);
+
+            // a few scores, the sorted one is not the first
+            psm.addScore(new ScoreModel(random.nextDouble() * 100, ScoreModelEnum.MASCOT_SCORE));
+            psm.addScore(new ScoreModel(random.nextDouble(), ScoreModelEnum.MASCOT_EXPECT));
+            psm.addScore(new ScoreModel(random.nextDouble(), ScoreModelEnum.XTANDEM_EXPECT));
+
+            psms.add(new ReportPSM((long) i, psm));
+        }
+
+        Collections.shuffle(psms, random);
+    }
+
+
+    /**
+     * Returns the score like PeptideSpectrumMatch.getScore(String) did before
+     * the score IDs.
+     */
+    private static ScoreModel getScoreByScan(PeptideSpectrumMatch psm, String scoreName) {
+        for (ScoreModel score : psm.getScores()) {
+            if (!score.getType().equals(ScoreModelEnum.UNKNOWN_SCORE)) {
+                if (score.getType().isValidDescriptor(scoreName)) {
+                    return score;
+                }
+            } else if (score.getShortName().equals(scoreName)) {
+                return score;
+            }
+        }
+        return null;
+    }
+
+
+    @Benchmark
+    public List<ReportPSM> sortByScan() {
+        String scoreName = ScoreModelEnum.XTANDEM_EXPECT.getShortName();
+        Comparator<ReportPSM> comparator = (o1, o2) -> {
+            ScoreModel score1 = getScoreByScan(o1.getSpectrum(), scoreName);
+            ScoreModel score2 = getScoreByScan(o2.getSpectrum(), scoreName);
+            if ((score1 == null) && (score2 == null)) {
+                return 0;
+            } else if (score1 == null) {
+                return 1;
+            } else if (score2 == null) {
+                return -1;
+            }
+            return score1.compareTo(score2);
+        };
+
+        List<ReportPSM> sorted = new ArrayList<>(psms);
+        sorted.sort(comparator);
+        return sorted;
+    }
+
+
+    @Benchmark
+    public List<ReportPSM> sortByScoreID() {
+        List<ReportPSM> sorted = new ArrayList<>(psms);
+        sorted.sort(new ScoreComparator<>(ScoreModelEnum.XTANDEM_EXPECT.getShortName()));
+        return sorted;
+    }
+}
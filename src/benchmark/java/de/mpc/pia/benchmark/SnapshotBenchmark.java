@@ -0,0 +1,116 @@
+package de.mpc.pia.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.PSMModeller;
+import de.mpc.pia.modeller.protein.inference.OccamsRazorInference;
+import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
+import de.mpc.pia.modeller.protein.scoring.MultiplicativeScoring;
+import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.modeller.snapshot.PIAModellerSnapshot;
+
+
+/**
+ * Compares writing and reading the {@link PIAModellerSnapshot} of a modeller
+ * with FDR and protein inference of the synthetic dataset against the gzipped
+ * Java serialization, which was used before.
+ *
+ * @author julianu
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SnapshotBenchmark extends AbstractSyntheticBenchmark {
+
+    /** the modeller to write and read */
+    private PIAModeller piaModeller;
+
+    /** the file of the snapshot */
+    private File snapshotFile;
+
+    /** the file of the gzipped serialization */
+    private File gzipFile;
+
+
+    @Setup
+    public void createModeller() throws IOException {
+        piaModeller = new PIAModeller(createDataset().writeIntermediateFile().getAbsolutePath());
+
+        PSMModeller psmModeller = piaModeller.getPSMModeller();
+        psmModeller.setAllDecoyPattern(SyntheticDataset.DECOY_PATTERN);
+        psmModeller.setAllTopIdentifications(0);
+        psmModeller.addPreferredFDRScore(ScoreModelEnum.MASCOT_SCORE.getShortName());
+        psmModeller.calculateAllFDR();
+        psmModeller.calculateCombinedFDRScore();
+
+        OccamsRazorInference inference = new OccamsRazorInference();
+        inference.setScoring(new MultiplicativeScoring(new HashMap<>()));
+        inference.getScoring().setSetting(AbstractScoring.SCORING_SETTING_ID,
+                ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName());
+        inference.getScoring().setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID,
+                PSMForScoring.ONLY_BEST.getShortName());
+        piaModeller.getProteinModeller().infereProteins(inference);
+
+        // the read benchmarks need the files, the write benchmarks overwrite them
+        snapshotFile = File.createTempFile("SnapshotBenchmark", ".pia");
+        snapshotFile.deleteOnExit();
+        writeSnapshot();
+
+        gzipFile = File.createTempFile("SnapshotBenchmark", ".pia.gz");
+        gzipFile.deleteOnExit();
+        writeGzip();
+    }
+
+
+    @Benchmark
+    public File writeSnapshot() throws IOException {
+        PIAModeller.serializeToFile(piaModeller, snapshotFile);
+        return snapshotFile;
+    }
+
+
+    @Benchmark
+    public PIAModeller readSnapshot() throws IOException {
+        return PIAModeller.deSerializeFromFile(snapshotFile);
+    }
+
+
+    @Benchmark
+    public File writeGzip() throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(gzipFile)))) {
+            oos.writeObject(piaModeller);
+        }
+        return gzipFile;
+    }
+
+
+    @Benchmark
+    public Object readGzip() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new FileInputStream(gzipFile)))) {
+            return ois.readObject();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package de.mpc.pia.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentification;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationProtocol;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat;
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+/**
+ * Generates a synthetic dataset of a single search, filled into a
+ * {@link PIACompiler}.
+ * <p>
+ * Each peptide has {@link #PSMS_PER_PEPTIDE} PSMs and belongs to one protein,
+ * all proteins get at least one peptide. The given ratio of the peptides is
+ * shared with a second, random protein. The accessions of the decoy proteins
+ * start with {@link #DECOY_PREFIX}, the PSMs have a Mascot score which is
+ * higher for target than for decoy peptides. The same parameters and seed
+ * always create the same dataset.
+ *
+ * @author julianu
+ *
+ */
+public class SyntheticDataset {
+
+    /** the prefix of the decoy accessions */
+    public static final String DECOY_PREFIX = "DECOY_";
+
+    /** the decoy pattern for the FDR calculation */
+    public static final String DECOY_PATTERN = DECOY_PREFIX + ".*";
+
+    /** the number of PSMs per peptide */
+    public static final int PSMS_PER_PEPTIDE = 2;
+
+    /** the amino acids used for the generated sequences (no cleavage sites) */
+    private static final char[] AMINO_ACIDS = "ACDEFGHILMNPQSTVWY".toCharArray();
+
+
+    /** number of PSMs */
+    private final int nrPSMs;
+
+    /** number of proteins */
+    private final int nrProteins;
+
+    /** ratio of the peptides, which are shared by two proteins */
+    private final double sharedPeptideRatio;
+
+    /** ratio of the decoy proteins */
+    private final double decoyRatio;
+
+    /** seed for the random generator */
+    private final long seed;
+
+
+    /**
+     * Creates the dataset description, the data is only generated by
+     * {@link #fillCompiler(PIACompiler)}.
+     *
+     * @param nrPSMs
+     * @param nrProteins must not exceed the number of peptides, i.e. nrPSMs / {@link #PSMS_PER_PEPTIDE}
+     * @param sharedPeptideRatio
+     * @param decoyRatio
+     * @param seed
+     */
+    public SyntheticDataset(int nrPSMs, int nrProteins, double sharedPeptideRatio, double decoyRatio, long seed) {
+        if (nrProteins > nrPSMs / PSMS_PER_PEPTIDE) {
+            throw new IllegalArgumentException("Each protein needs at least one peptide, use at most "
+                    + (nrPSMs / PSMS_PER_PEPTIDE) + " proteins for " + nrPSMs + " PSMs");
+        }
+
+        this.nrPSMs = nrPSMs;
+        this.nrProteins = nrProteins;
+        this.sharedPeptideRatio = sharedPeptideRatio;
+        this.decoyRatio = decoyRatio;
+        this.seed = seed;
+    }
+
+
+    /**
+     * Fills the data into the compiler, which is ready for
+     * {@link PIACompiler#buildClusterList()} afterwards.
+     *
+     * @param compiler
+     */
+    public void fillCompiler(PIACompiler compiler) {
+        Random random = new Random(seed);
+
+        PIAInputFile file = compiler.insertNewFile("synthetic", "synthetic.mzid", "mzid");
+
+        SpectrumIdentificationProtocol spectrumIDProtocol = new SpectrumIdentificationProtocol();
+        spectrumIDProtocol.setId("syntheticProtocol");
+        file.addSpectrumIdentificationProtocol(spectrumIDProtocol);
+
+        SpectrumIdentification spectrumID = new SpectrumIdentification();
+        spectrumID.setId("syntheticIdentification");
+        spectrumID.setSpectrumIdentificationList(null);
+        spectrumID.setSpectrumIdentificationProtocol(spectrumIDProtocol);
+        file.addSpectrumIdentification(spectrumID);
+
+        Accession[] accessions = new Accession[nrProteins];
+        boolean[] isDecoy = new boolean[nrProteins];
+        for (int protIdx = 0; protIdx < nrProteins; protIdx++) {
+            isDecoy[protIdx] = random.nextDouble() < decoyRatio;
+            String acc = (isDecoy[protIdx] ? DECOY_PREFIX : "") + "SYN" + protIdx;
+
+            accessions[protIdx] = compiler.insertNewAccession(acc, null);
+            accessions[protIdx].addFile(file.getID());
+        }
+
+        int nrPeptides = nrPSMs / PSMS_PER_PEPTIDE;
+        int psmCount = 0;
+        for (int pepIdx = 0; pepIdx < nrPeptides; pepIdx++) {
+            String sequence = createSequence(pepIdx);
+            Peptide peptide = compiler.insertNewPeptide(sequence);
+
+            int protIdx = pepIdx % nrProteins;
+            addOccurrence(compiler, peptide, accessions[protIdx]);
+            if (random.nextDouble() < sharedPeptideRatio) {
+                int sharedIdx = random.nextInt(nrProteins);
+                if (sharedIdx != protIdx) {
+                    addOccurrence(compiler, peptide, accessions[sharedIdx]);
+                }
+            }
+
+            for (int i = 0; i < PSMS_PER_PEPTIDE; i++) {
+                PeptideSpectrumMatch psm = compiler.createNewPeptideSpectrumMatch(
+                        2 + random.nextInt(2),
+                        400.0 + random.nextDouble() * 1200.0,
+                        random.nextGaussian() * 0.005,
+                        random.nextDouble() * 7200.0,
+                        sequence,
+                        0,
+                        "index=" + psmCount,
+                        "spectrum " + psmCount,
+                        file,
+                        spectrumID);
+                psmCount++;
+
+                double score = random.nextDouble() * 40.0;
+                if (!isDecoy[protIdx]) {
+                    score += random.nextDouble() * 40.0;
+                }
+                psm.addScore(new ScoreModel(score, ScoreModelEnum.MASCOT_SCORE));
+
+                peptide.addSpectrum(psm);
+                compiler.insertCompletePeptideSpectrumMatch(psm);
+            }
+        }
+    }
+
+
+    /**
+     * Adds the occurrence of the peptide in the accession.
+     */
+    private static void addOccurrence(PIACompiler compiler, Peptide peptide, Accession accession) {
+        peptide.addAccessionOccurrence(accession, 1, peptide.getSequence().length());
+        compiler.addAccessionPeptideConnection(accession, peptide);
+    }
+
+
+    /**
+     * Creates a unique tryptic sequence for the given index.
+     */
+    private static String createSequence(int index) {
+        StringBuilder sequence = new StringBuilder();
+        int remaining = index;
+        do {
+            sequence.append(AMINO_ACIDS[remaining % AMINO_ACIDS.length]);
+            remaining /= AMINO_ACIDS.length;
+        } while (remaining > 0);
+
+        // at least 6 amino acids and a cleavage site at the end
+        while (sequence.length() < 6) {
+            sequence.append('A');
+        }
+        return sequence.append('K').toString();
+    }
+
+
+    /**
+     * Creates a compiler with the dataset, ready for building the clusters.
+     *
+     * @return
+     */
+    public PIACompiler createCompiler() {
+        PIACompiler compiler = new PIASimpleCompiler();
+        compiler.setName("synthetic dataset");
+        fillCompiler(compiler);
+        return compiler;
+    }
+
+
+    /**
+     * Compiles the dataset and writes it into a temporary binary intermediate
+     * file, which is deleted on exit.
+     *
+     * @return
+     * @throws IOException
+     */
+    public File writeIntermediateFile() throws IOException {
+        PIACompiler compiler = createCompiler();
+        compiler.buildClusterList();
+        compiler.buildIntermediateStructure();
+
+        File intermediateFile = File.createTempFile("synthetic", PIABinaryFormat.FILE_SUFFIX);
+        intermediateFile.deleteOnExit();
+        compiler.writeOutBinary(intermediateFile);
+        compiler.finish();
+
+        return intermediateFile;
+    }
+}
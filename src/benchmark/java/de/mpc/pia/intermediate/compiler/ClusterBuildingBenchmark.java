@@ -0,0 +1,63 @@
+package de.mpc.pia.intermediate.compiler;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the union-find clustering of the
+ * {@link AccessionPeptideClusterer} against the former fixed-point clustering
+ * on a {@link SyntheticClusterGraph}. The connections are added to the
+ * clusterer while the graph is created, like the compiler does while parsing.
+ * The benchmark is in the package of the clusterer, which is not public.
+ *
+ * @author julianu
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class ClusterBuildingBenchmark {
+
+    /** number of connections in the graph */
+    @Param({"5000000"})
+    public int nrConnections;
+
+    /** the graph */
+    private SyntheticClusterGraph graph;
+
+
+    @Setup
+    public void createGraph() {
+        graph = new SyntheticClusterGraph(nrConnections, 42L);
+    }
+
+
+    @Benchmark
+    public List<Map<Long, Collection<Long>>> unionFind() {
+        return graph.getClusterer().buildClusters(graph.getAccPepMap().keySet(), graph.getPepAccMap()::get);
+    }
+
+
+    @Benchmark
+    public List<Map<Long, Collection<Long>>> fixedPoint() {
+        return SyntheticClusterGraph.buildFixedPointClusters(graph.getAccPepMap(), graph.getPepAccMap());
+    }
+}
@@ -2,11 +2,16 @@ package de.mpc.pia;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat;
+import de.mpc.pia.intermediate.compiler.CompilerInputFile;
 import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.PIASQLiteCompiler;
 import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
 import de.mpc.pia.modeller.PIAModeller;
 import de.mpc.pia.tools.PIAConstants;
@@ -40,13 +45,27 @@ public class PIACli implements Runnable{
 	boolean processExample = false;
 	
 	@Option(names = { "-o", "--outfile" },
-			description = "output file name (e.g. intermediate PIA file)") 
+			description = "output file name (e.g. intermediate PIA file, written in the binary format if it ends with "
+					+ PIABinaryFormat.FILE_SUFFIX + ")") 
 	private String outfile;
 
 	@Option(names = { "-t", "--threads" },
 			description = "maximum number of used threads for compilation (0 for use all)",
 			defaultValue = "0") 
 	private String threads;
+
+	@Option(names = { "--parse-threads" },
+			description = "maximum number of concurrently parsed input files, which share the threads of the compilation",
+			defaultValue = "1") 
+	private int parsingThreads;
+	
+	@Option(names = { "--disk-backed" },
+			description = "store the PSMs in a temporary database during the compilation instead of the memory")
+	boolean diskBacked = false;
+	
+	@Option(names = { "--stream-mascot" },
+			description = "parse Mascot DAT files by streaming their queries instead of loading the whole files into the memory")
+	boolean streamMascot = false;
 	
 	@Option(names = { "-n", "--name" },
 			description = "name of the compilation",
@@ -92,17 +111,27 @@ public class PIACli implements Runnable{
 	 * Processes the compilation called by the CLI
 	 */
 	private void processCompile() {
-		PIACompiler piaCompiler = new PIASimpleCompiler();
+		PIACompiler piaCompiler;
+		if (diskBacked) {
+			try {
+				piaCompiler = new PIASQLiteCompiler();
+			} catch (IOException e) {
+				LOGGER.error("Could not create the compilation database.", e);
+				return;
+			}
+		} else {
+			piaCompiler = new PIASimpleCompiler();
+		}
 		
 		int iThreads = parseThreads();
 		LOGGER.debug("Compiler uses {} CPUs", iThreads);
 		piaCompiler.setNrThreads(iThreads);
+		piaCompiler.setNrParsingThreads(parsingThreads);
+		piaCompiler.setStreamMascotDatFiles(streamMascot);
 
 		// parse the command line arguments
 		try {
-			if (!parseCommandLineInfiles(piaCompiler)) {
-				return;
-			}
+			parseCommandLineInfiles(piaCompiler);
 
 			piaCompiler.buildClusterList();
 			piaCompiler.buildIntermediateStructure();
@@ -110,10 +139,15 @@ public class PIACli implements Runnable{
 			piaCompiler.setName(name);
 			
 			// now write out the file
-			piaCompiler.writeOutXML(outfile);
-			piaCompiler.finish();
+			if (outfile.endsWith(PIABinaryFormat.FILE_SUFFIX)) {
+				piaCompiler.writeOutBinary(new File(outfile));
+			} else {
+				piaCompiler.writeOutXML(outfile);
+			}
 		} catch (IOException e) {
 			LOGGER.error("Error while writing PIA XML file.", e);
+		} finally {
+			piaCompiler.finish();
 		}
 	}
 
@@ -138,32 +172,36 @@ public class PIACli implements Runnable{
 	/**
 	 * Parses the files given from the command line in the String array into the
 	 * given {@link PIACompiler}. The files may also contain the name and
-	 * additionalFile separated by a semicolon.
+	 * additionalFile separated by a semicolon. Files which could not be
+	 * parsed are logged and skipped, the compilation continues with the
+	 * other files.
 	 *
 	 * @param inputFiles
 	 * @param piaCompiler
-	 * @return true, if all files were parsed correctly, otherwise false
 	 */
-	private boolean parseCommandLineInfiles(PIACompiler piaCompiler) {
-		boolean parsedOk = true;
+	private void parseCommandLineInfiles(PIACompiler piaCompiler) {
+		List<CompilerInputFile> inputFiles = new ArrayList<>(infiles.length);
 
 		for (String inputFile : infiles) {
-			parsedOk |= parseCommandLineInfile(inputFile, piaCompiler);
+			inputFiles.add(parseCommandLineInfile(inputFile));
 		}
 
-		return parsedOk;
+		int nrParsed = piaCompiler.getDataFromFiles(inputFiles);
+		if (nrParsed < inputFiles.size()) {
+			LOGGER.warn("{} of {} input files could not be parsed and are skipped", inputFiles.size() - nrParsed,
+					inputFiles.size());
+		}
 	}
 
 	/**
-	 * Parses one file from the command line into the given {@link PIACompiler}. The
-	 * file string may also contain the name and additionalFile separated by a
-	 * semicolon.
+	 * Parses one file from the command line into a {@link CompilerInputFile}.
+	 * The file string may also contain the name and additionalFile separated
+	 * by a semicolon.
 	 *
 	 * @param inputFile
-	 * @param piaCompiler
-	 * @return true, if the file was parsed correctly, otherwise false
+	 * @return the description of the input file
 	 */
-	private boolean parseCommandLineInfile(String inputFile, PIACompiler piaCompiler) {
+	private CompilerInputFile parseCommandLineInfile(String inputFile) {
 		String[] values = inputFile.split(";");
 		String file = values[0];
 		String compilationFileName = values[0];
@@ -182,7 +220,7 @@ public class PIACli implements Runnable{
 			additionalInfoFile = ((values.length > 3) && !values[3].trim().isEmpty()) ? values[3].trim() : null;
 		}
 
-		return piaCompiler.getDataFromFile(compilationFileName, file, additionalInfoFile, type);
+		return new CompilerInputFile(compilationFileName, file, additionalInfoFile, type);
 	}
 
 	/**
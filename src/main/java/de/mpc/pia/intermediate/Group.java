@@ -1,6 +1,7 @@
 package de.mpc.pia.intermediate;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
@@ -25,6 +26,10 @@ public class Group implements Serializable {
     private Map<String, Accession> accessions;
     /** List of all parents' and own accession. */
     private Map<String, Accession> allAccessions;
+    /** the closure index of the group's tree, built on demand */
+    private transient volatile GroupTreeIndex treeIndex;
+    /** the position of this group in the treeIndex */
+    private transient int treeIndexPosition;
 
 
     /**
@@ -122,6 +127,7 @@ public class Group implements Serializable {
      */
     public void setPeptides(Map<String, Peptide> peptides) {
         this.peptides = peptides;
+        invalidateTreeIndex();
     }
 
 
@@ -135,6 +141,7 @@ public class Group implements Serializable {
         }
 
         peptides.put(peptide.getSequence(), peptide);
+        invalidateTreeIndex();
     }
 
 
@@ -152,26 +159,35 @@ public class Group implements Serializable {
     }
 
 
+    /**
+     * Whether the group has at least one direct peptide.
+     *
+     * @return
+     */
+    boolean hasPeptides() {
+        return (peptides != null) && !peptides.isEmpty();
+    }
+
+
     /**
      * getter for all peptides, including children's peptides.
      * @return
      */
     public Map<String, Peptide> getAllPeptides() {
-        Map<String, Peptide> ret = new HashMap<>();
+        GroupTreeIndex index = getTreeIndex();
+        BitSet pepChildren = index.getPeptideDescendants(treeIndexPosition);
 
-        if (peptides != null) {
-            for (Map.Entry<String, Peptide> pep : peptides.entrySet()) {
-                ret.put(pep.getKey(), pep.getValue());
-            }
+        int nrPeptides = (peptides != null) ? peptides.size() : 0;
+        for (int pos = pepChildren.nextSetBit(0); pos >= 0; pos = pepChildren.nextSetBit(pos + 1)) {
+            nrPeptides += index.getGroup(pos).peptides.size();
         }
 
-        for (Map.Entry<Long, Group> child : getAllPeptideChildren().entrySet()) {
-            Map<String, Peptide> childPepMap = child.getValue().getPeptides();
-            if (childPepMap != null) {
-                for (Map.Entry<String, Peptide> childPeps : childPepMap.entrySet()) {
-                    ret.put(childPeps.getKey(), childPeps.getValue());
-                }
-            }
+        Map<String, Peptide> ret = new HashMap<>(nrPeptides * 4 / 3 + 1);
+        if (peptides != null) {
+            ret.putAll(peptides);
+        }
+        for (int pos = pepChildren.nextSetBit(0); pos >= 0; pos = pepChildren.nextSetBit(pos + 1)) {
+            ret.putAll(index.getGroup(pos).peptides);
         }
 
         return ret;
@@ -184,6 +200,8 @@ public class Group implements Serializable {
      */
     public void addChild(Group child) {
         children.put(child.getID(), child);
+        invalidateTreeIndex();
+        child.invalidateTreeIndex();
         if (allAccessions != null) {
             allAccessions.values().stream().forEach(child::addToAllAccessions);
         }
@@ -202,46 +220,116 @@ public class Group implements Serializable {
 
     /**
      * Getter for all children groups of this group, including children's
-     * children and so on.
+     * children and so on. The returned map is an unmodifiable view on the
+     * {@link GroupTreeIndex}.
      */
     public Map<Long, Group> getAllChildren(){
-        Map<Long, Group> allChildren = new HashMap<>();
+        GroupTreeIndex index = getTreeIndex();
+        return index.asGroupMap(index.getDescendants(treeIndexPosition));
+    }
 
-        for (Map.Entry<Long, Group> cIt : children.entrySet()) {
-            allChildren.put(cIt.getKey(), cIt.getValue());
 
-            Map<Long, Group> childChildren = cIt.getValue().getAllChildren();
-            for (Map.Entry<Long, Group> ccIt : childChildren.entrySet()) {
-                allChildren.put(ccIt.getKey(), ccIt.getValue());
-            }
-        }
+    /**
+     * Getter for all children groups of this group that have at least one
+     * peptide, recursive, i.e. get the reporting peptide groups. The returned
+     * map is an unmodifiable view on the {@link GroupTreeIndex}.
+     */
+    public Map<Long, Group> getAllPeptideChildren(){
+        GroupTreeIndex index = getTreeIndex();
+        return index.asGroupMap(index.getPeptideDescendants(treeIndexPosition));
+    }
 
-        return allChildren;
+
+    /**
+     * Getter for the closure index of the group's tree. The index is built,
+     * if it does not exist yet or the tree was changed.
+     *
+     * @return
+     */
+    public GroupTreeIndex getTreeIndex() {
+        return GroupTreeIndex.getIndex(this);
     }
 
 
     /**
-     * Getter for all children groups of this group that have at least one
-     * peptide, recursive, i.e. get the reporting peptide groups.
+     * Getter for the position of this group in its {@link GroupTreeIndex}.
+     *
+     * @return
      */
-    public Map<Long, Group> getAllPeptideChildren(){
-        Map<Long, Group> allChildren = new HashMap<>();
-        Map<Long, Group> childChildren;
+    public int getTreeIndexPosition() {
+        getTreeIndex();
+        return treeIndexPosition;
+    }
 
-        for (Map.Entry<Long, Group> cIt : children.entrySet()) {
-            childChildren = cIt.getValue().getAllPeptideChildren();
 
-            for (Map.Entry<Long, Group> ccIt : childChildren.entrySet()) {
-                allChildren.put(ccIt.getKey(), ccIt.getValue());
-            }
+    /**
+     * Getter for the positions of all children groups (recursive) in the
+     * {@link GroupTreeIndex}. The returned set is shared and must not be
+     * changed.
+     *
+     * @return
+     */
+    public BitSet getAllChildrenBits() {
+        GroupTreeIndex index = getTreeIndex();
+        return index.getDescendants(treeIndexPosition);
+    }
+
+
+    /**
+     * Getter for the positions of all children groups (recursive) with at
+     * least one peptide in the {@link GroupTreeIndex}. The returned set is
+     * shared and must not be changed.
+     *
+     * @return
+     */
+    public BitSet getAllPeptideChildrenBits() {
+        GroupTreeIndex index = getTreeIndex();
+        return index.getPeptideDescendants(treeIndexPosition);
+    }
+
+
+    /**
+     * Returns the tree index as it is currently set, without building it.
+     */
+    GroupTreeIndex getCurrentTreeIndex() {
+        return treeIndex;
+    }
+
+
+    /**
+     * Whether the group has a valid tree index.
+     */
+    boolean hasValidTreeIndex() {
+        GroupTreeIndex index = treeIndex;
+        return (index != null) && index.isValid();
+    }
+
+
+    /**
+     * Returns the position in the tree index as it is currently set.
+     */
+    int getPositionInTreeIndex() {
+        return treeIndexPosition;
+    }
 
-            if ((cIt.getValue().getPeptides() != null) &&
-                    (cIt.getValue().getPeptides().size() > 0)) {
-                allChildren.put(cIt.getKey(), cIt.getValue());
-            }
-        }
 
-        return allChildren;
+    /**
+     * Sets the tree index and the position of this group in it.
+     */
+    void setTreeIndex(GroupTreeIndex index, int position) {
+        this.treeIndexPosition = position;
+        this.treeIndex = index;
+    }
+
+
+    /**
+     * Marks the tree index of this group as outdated.
+     */
+    private void invalidateTreeIndex() {
+        GroupTreeIndex index = treeIndex;
+        if (index != null) {
+            index.invalidate();
+        }
     }
 
 
@@ -253,6 +341,8 @@ public class Group implements Serializable {
      */
     public void addParent(Group parent) {
         parents.put(parent.getID(), parent);
+        invalidateTreeIndex();
+        parent.invalidateTreeIndex();
         if (parent.getAllAccessions() != null) {
             parent.getAllAccessions().values().stream().forEach(this::addToAllAccessions);
         }
@@ -0,0 +1,390 @@
+package de.mpc.pia.intermediate;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * The precomputed closure of one tree of {@link Group}s, i.e. one connected
+ * component of the parent/child graph.
+ * <p>
+ * The groups of the tree are numbered densely by their IDs and for each group
+ * the positions of all its (recursive) children and of all its children with
+ * peptides are held as {@link BitSet}s. The index is built once per tree,
+ * either explicitly after loading via {@link #buildIndices(Collection)} or
+ * lazily by the first call of {@link Group#getTreeIndex()}. Changing the
+ * children, parents or peptides of a group marks the index as outdated, it is
+ * rebuilt on the next access.
+ *
+ * @author julianu
+ *
+ */
+public final class GroupTreeIndex {
+
+    /** the descendants of groups without children, shared */
+    private static final BitSet EMPTY_BITS = new BitSet(0);
+
+
+    /** the groups of the tree, ordered by their IDs */
+    private final Group[] groups;
+
+    /** the IDs of the groups, ascending, for looking up the position of an ID */
+    private final long[] groupIDs;
+
+    /** the positions of all children of each group */
+    private final BitSet[] descendants;
+
+    /** the positions of all children with peptides of each group */
+    private final BitSet[] peptideDescendants;
+
+    /** whether the index still reflects the groups' connections */
+    private volatile boolean valid;
+
+
+    private GroupTreeIndex(Group[] groups) {
+        this.groups = groups;
+        this.groupIDs = new long[groups.length];
+        for (int pos = 0; pos < groups.length; pos++) {
+            this.groupIDs[pos] = groups[pos].getID();
+        }
+        this.descendants = new BitSet[groups.length];
+        this.peptideDescendants = new BitSet[groups.length];
+        this.valid = true;
+    }
+
+
+    /**
+     * Builds the indices of all trees of the given groups and sets them in
+     * the groups.
+     *
+     * @param groups
+     */
+    public static void buildIndices(Collection<Group> groups) {
+        synchronized (GroupTreeIndex.class) {
+            for (Group group : groups) {
+                if (!group.hasValidTreeIndex()) {
+                    buildIndex(group);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Returns the valid index of the given group's tree, builds it if
+     * necessary.
+     *
+     * @param group
+     * @return
+     */
+    static GroupTreeIndex getIndex(Group group) {
+        GroupTreeIndex index = group.getCurrentTreeIndex();
+        if ((index != null) && index.valid) {
+            return index;
+        }
+
+        synchronized (GroupTreeIndex.class) {
+            index = group.getCurrentTreeIndex();
+            if ((index == null) || !index.valid) {
+                index = buildIndex(group);
+            }
+            return index;
+        }
+    }
+
+
+    /**
+     * Builds the index for the tree containing the given group.
+     */
+    private static GroupTreeIndex buildIndex(Group start) {
+        List<Group> treeGroups = collectTree(start);
+        treeGroups.sort(Comparator.comparingLong(Group::getID));
+
+        GroupTreeIndex index = new GroupTreeIndex(treeGroups.toArray(new Group[0]));
+        for (int pos = 0; pos < index.groups.length; pos++) {
+            index.groups[pos].setTreeIndex(index, pos);
+        }
+        index.computeDescendants();
+
+        return index;
+    }
+
+
+    /**
+     * Collects all groups connected to the given group.
+     */
+    private static List<Group> collectTree(Group start) {
+        Set<Group> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Group> treeGroups = new ArrayList<>();
+        Deque<Group> toVisit = new ArrayDeque<>();
+
+        visited.add(start);
+        toVisit.push(start);
+        while (!toVisit.isEmpty()) {
+            Group group = toVisit.pop();
+            treeGroups.add(group);
+
+            for (Group next : group.getChildren().values()) {
+                if (visited.add(next)) {
+                    toVisit.push(next);
+                }
+            }
+            for (Group next : group.getParents().values()) {
+                if (visited.add(next)) {
+                    toVisit.push(next);
+                }
+            }
+        }
+
+        return treeGroups;
+    }
+
+
+    /**
+     * Computes the descendants of all groups, children before their parents,
+     * so each group is visited only once.
+     */
+    private void computeDescendants() {
+        BitSet withPeptides = new BitSet(groups.length);
+        for (int pos = 0; pos < groups.length; pos++) {
+            if (groups[pos].hasPeptides()) {
+                withPeptides.set(pos);
+            }
+        }
+
+        // iterative post-order traversal, as the trees may be deep
+        boolean[] entered = new boolean[groups.length];
+        Deque<Integer> positions = new ArrayDeque<>();
+        Deque<Iterator<Group>> childIterators = new ArrayDeque<>();
+        for (int root = 0; root < groups.length; root++) {
+            if (entered[root]) {
+                continue;
+            }
+
+            entered[root] = true;
+            positions.push(root);
+            childIterators.push(groups[root].getChildren().values().iterator());
+            while (!positions.isEmpty()) {
+                Iterator<Group> childIt = childIterators.peek();
+                if (childIt.hasNext()) {
+                    int childPos = childIt.next().getPositionInTreeIndex();
+                    if (!entered[childPos]) {
+                        entered[childPos] = true;
+                        positions.push(childPos);
+                        childIterators.push(groups[childPos].getChildren().values().iterator());
+                    }
+                } else {
+                    childIterators.pop();
+                    computeDescendants(positions.pop(), withPeptides);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Computes the descendants of the group at the given position, all of its
+     * children must be computed already.
+     */
+    private void computeDescendants(int pos, BitSet withPeptides) {
+        Collection<Group> children = groups[pos].getChildren().values();
+        if (children.isEmpty()) {
+            descendants[pos] = EMPTY_BITS;
+            peptideDescendants[pos] = EMPTY_BITS;
+            return;
+        }
+
+        BitSet bits = new BitSet();
+        for (Group child : children) {
+            int childPos = child.getPositionInTreeIndex();
+            bits.set(childPos);
+            if (descendants[childPos] != null) {
+                bits.or(descendants[childPos]);
+            }
+        }
+        descendants[pos] = bits;
+
+        BitSet pepBits = (BitSet) bits.clone();
+        pepBits.and(withPeptides);
+        peptideDescendants[pos] = pepBits.equals(bits) ? bits : pepBits;
+    }
+
+
+    /**
+     * Marks this index as outdated.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+
+    /**
+     * Whether the index still reflects the groups' connections.
+     *
+     * @return
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+
+    /**
+     * The number of groups in the tree.
+     *
+     * @return
+     */
+    public int size() {
+        return groups.length;
+    }
+
+
+    /**
+     * Returns the group at the given position.
+     *
+     * @param pos
+     * @return
+     */
+    public Group getGroup(int pos) {
+        return groups[pos];
+    }
+
+
+    /**
+     * Returns the positions of all (recursive) children of the group at the
+     * given position. The returned set is shared and must not be changed.
+     *
+     * @param pos
+     * @return
+     */
+    public BitSet getDescendants(int pos) {
+        return descendants[pos];
+    }
+
+
+    /**
+     * Returns the positions of all (recursive) children with at least one
+     * peptide of the group at the given position. The returned set is shared
+     * and must not be changed.
+     *
+     * @param pos
+     * @return
+     */
+    public BitSet getPeptideDescendants(int pos) {
+        return peptideDescendants[pos];
+    }
+
+
+    /**
+     * Returns an unmodifiable map view of the groups at the given positions,
+     * mapped by their IDs.
+     *
+     * @param positions
+     * @return
+     */
+    public Map<Long, Group> asGroupMap(BitSet positions) {
+        return new GroupMapView(positions);
+    }
+
+
+    /**
+     * Returns the position of the group with the given ID or -1, if the group
+     * is not in this tree.
+     *
+     * @param groupID
+     * @return
+     */
+    public int getPosition(long groupID) {
+        int pos = Arrays.binarySearch(groupIDs, groupID);
+        return (pos < 0) ? -1 : pos;
+    }
+
+
+    /**
+     * An unmodifiable map from the IDs to the groups at the positions in a
+     * {@link BitSet}.
+     */
+    private final class GroupMapView extends AbstractMap<Long, Group> {
+
+        private final BitSet positions;
+
+        private Set<Map.Entry<Long, Group>> entrySet;
+
+
+        private GroupMapView(BitSet positions) {
+            this.positions = positions;
+        }
+
+
+        @Override
+        public int size() {
+            return positions.cardinality();
+        }
+
+
+        @Override
+        public boolean isEmpty() {
+            return positions.isEmpty();
+        }
+
+
+        @Override
+        public boolean containsKey(Object key) {
+            return getPositionInView(key) >= 0;
+        }
+
+
+        @Override
+        public Group get(Object key) {
+            int pos = getPositionInView(key);
+            return (pos < 0) ? null : groups[pos];
+        }
+
+
+        /**
+         * Returns the position of the group with the given ID, if it is in
+         * this view, otherwise -1.
+         */
+        private int getPositionInView(Object key) {
+            if (!(key instanceof Long)) {
+                return -1;
+            }
+            int pos = getPosition((Long) key);
+            return ((pos >= 0) && positions.get(pos)) ? pos : -1;
+        }
+
+
+        @Override
+        public Set<Map.Entry<Long, Group>> entrySet() {
+            if (entrySet == null) {
+                entrySet = new AbstractSet<Map.Entry<Long, Group>>() {
+                    @Override
+                    public Iterator<Map.Entry<Long, Group>> iterator() {
+                        return positions.stream()
+                                .mapToObj(pos -> (Map.Entry<Long, Group>)
+                                        new AbstractMap.SimpleImmutableEntry<>(groups[pos].getID(), groups[pos]))
+                                .iterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return GroupMapView.this.size();
+                    }
+                };
+            }
+            return entrySet;
+        }
+    }
+}
@@ -36,8 +36,8 @@ public class Modification implements Serializable {
     /** the mass shift as formatted string */
     private String massString;
 
-    /** formatter for the mass as string */
-    private static final DecimalFormat df;
+    /** formatter for the mass as string, one per thread as DecimalFormat is not thread safe */
+    private static final ThreadLocal<DecimalFormat> df;
 
     private String cvLabel;
 
@@ -48,9 +48,12 @@ public class Modification implements Serializable {
     static {
         // we have a four digit formatter
         // TODO: this may be set up somewhere
-        df = new DecimalFormat("0.####");
-        df.setDecimalFormatSymbols(DecimalFormatSymbols.getInstance(Locale.US));
-        df.setRoundingMode(RoundingMode.HALF_UP);
+        df = ThreadLocal.withInitial(() -> {
+            DecimalFormat format = new DecimalFormat("0.####");
+            format.setDecimalFormatSymbols(DecimalFormatSymbols.getInstance(Locale.US));
+            format.setRoundingMode(RoundingMode.HALF_UP);
+            return format;
+        });
     }
 
 
@@ -67,7 +70,7 @@ public class Modification implements Serializable {
         this.mass = mass;
         this.description = description;
         this.accession = acc;
-        this.massString = df.format(mass);
+        this.massString = df.get().format(mass);
         this.cvLabel = null;
         this.probability = null;
     }
@@ -85,7 +88,7 @@ public class Modification implements Serializable {
         this.mass = mass;
         this.description = description;
         this.accession = acc;
-        this.massString = df.format(mass);
+        this.massString = df.get().format(mass);
         this.cvLabel = null;
         this.probability = probability;
     }
@@ -105,7 +108,7 @@ public class Modification implements Serializable {
         this.mass = mass;
         this.description = description;
         this.accession = accession;
-        this.massString = df.format(mass);
+        this.massString = df.get().format(mass);
         this.cvLabel = cvLabel;
         this.probability = probability;
     }
@@ -1,6 +1,8 @@
 package de.mpc.pia.intermediate;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -169,7 +171,19 @@ public class PIAInputFile implements Serializable {
         // go through the analysisCollection an re-reference the SpectrumIdentificationProtocol
         analysisCollection.getSpectrumIdentification().stream().filter(spectrumId -> spectrumId.getSpectrumIdentificationProtocolRef().equals(ref)).forEach(spectrumId -> spectrumId.setSpectrumIdentificationProtocol(sip));
 
-        // uniquify the enzymes' IDs in the SpectrumIdentificationProtocol
+        uniquifyEnzymeIDs(sip);
+
+        return strID;
+    }
+
+
+    /**
+     * Sets unique IDs for the enzymes in the given
+     * {@link SpectrumIdentificationProtocol}, based on the file's ID.
+     *
+     * @param sip
+     */
+    private void uniquifyEnzymeIDs(SpectrumIdentificationProtocol sip) {
         int idx = 1;
         if (sip.getEnzymes() != null) {
             for (Enzyme enzyme : sip.getEnzymes().getEnzyme()) {
@@ -177,8 +191,45 @@ public class PIAInputFile implements Serializable {
                 idx++;
             }
         }
+    }
 
-        return strID;
+
+    /**
+     * Changes the ID of this file. This is only used by the compiler, when a
+     * file parsed into a separate compilation is merged. The IDs of the
+     * {@link SpectrumIdentification}s, {@link SpectrumIdentificationProtocol}s
+     * and enzymes are derived from the file's ID and therefore changed as
+     * well.
+     *
+     * @param newID
+     */
+    public void changeID(long newID) {
+        if (newID == id) {
+            return;
+        }
+        this.id = newID;
+
+        Map<String, SpectrumIdentificationProtocol> protocolsByOldID = new HashMap<>();
+        List<SpectrumIdentificationProtocol> protocols =
+                analysisProtocolCollection.getSpectrumIdentificationProtocol();
+        for (int idx = 0; idx < protocols.size(); idx++) {
+            SpectrumIdentificationProtocol sip = protocols.get(idx);
+            protocolsByOldID.put(sip.getId(), sip);
+            sip.setId(PIAConstants.IDENTIFICATION_PROTOCOL_PREFIX + this.id + '_' + (idx + 1L));
+            uniquifyEnzymeIDs(sip);
+        }
+
+        List<SpectrumIdentification> spectrumIDs = analysisCollection.getSpectrumIdentification();
+        for (int idx = 0; idx < spectrumIDs.size(); idx++) {
+            SpectrumIdentification si = spectrumIDs.get(idx);
+            si.setId(PIAConstants.SPECTRUM_IDENTIFICATION_PREFIX + this.id + '_' + (idx + 1L));
+
+            // the reference to the protocol is kept as string as well
+            SpectrumIdentificationProtocol sip = protocolsByOldID.get(si.getSpectrumIdentificationProtocolRef());
+            if (sip != null) {
+                si.setSpectrumIdentificationProtocol(sip);
+            }
+        }
     }
 
 
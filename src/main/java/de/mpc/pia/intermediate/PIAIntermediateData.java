@@ -0,0 +1,173 @@
+package de.mpc.pia.intermediate;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import uk.ac.ebi.jmzidml.model.mzidml.AnalysisSoftware;
+import uk.ac.ebi.jmzidml.model.mzidml.SearchDatabase;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+
+import de.mpc.pia.modeller.IdentificationKeySettings;
+
+
+/**
+ * The content of a PIA intermediate file, i.e. the compiled files, inputs,
+ * spectra, accessions, peptides and groups. This is independent of the
+ * format, in which the intermediate file is stored.
+ *
+ * @author julianu
+ *
+ */
+public interface PIAIntermediateData extends Serializable {
+
+    /**
+     * Getter for the name of the project (compilation).
+     * @return
+     */
+    String getProjectName();
+
+
+    /**
+     * Getter for the date of the project (compilation), as written into the
+     * intermediate file.
+     * @return
+     */
+    String getProjectDate();
+
+
+    /**
+     * Getter for the input files, mapped by their IDs.
+     * @return
+     */
+    Map<Long, PIAInputFile> getFiles();
+
+
+    /**
+     * Getter for the SpectraData, mapped by their IDs.
+     * @return
+     */
+    Map<String, SpectraData> getSpectraData();
+
+
+    /**
+     * Getter for the SearchDatabases, mapped by their IDs.
+     * @return
+     */
+    Map<String, SearchDatabase> getSearchDatabase();
+
+
+    /**
+     * Getter for the AnalysisSoftware, mapped by their IDs.
+     * @return
+     */
+    Map<String, AnalysisSoftware> getAnalysisSoftware();
+
+
+    /**
+     * Getter for the PSMs, mapped by their IDs.
+     * @return
+     */
+    Map<Long, PeptideSpectrumMatch> getPSMs();
+
+
+    /**
+     * Getter for the peptides, mapped by their IDs.
+     * @return
+     */
+    Map<Long, Peptide> getPeptides();
+
+
+    /**
+     * Getter for the accessions, mapped by their IDs.
+     * @return
+     */
+    Map<Long, Accession> getAccessions();
+
+
+    /**
+     * Getter for the groups, mapped by their IDs.
+     * @return
+     */
+    Map<Long, Group> getGroups();
+
+
+    /**
+     * Returns a map from the name of an {@link IdentificationKeySettings} to
+     * a set, containing the file IDs, which have warnings for this setting.
+     * @return
+     */
+    Map<String, Set<Long>> getPSMSetSettingsWarnings();
+
+
+    /**
+     * Returns the number of trees, i.e. the maximal tree ID of the groups.
+     * @return
+     */
+    default long getNrTrees() {
+        long maxTreeID = 0;
+
+        for (Group group : getGroups().values()) {
+            if (group.getTreeID() > maxTreeID) {
+                maxTreeID = group.getTreeID();
+            }
+        }
+
+        return maxTreeID;
+    }
+
+
+    /**
+     * Creates the PSM set settings warnings for the given PSMs.
+     *
+     * @param psms
+     * @return map from the name of an {@link IdentificationKeySettings} to the
+     * IDs of the files with warnings for this setting
+     */
+    static Map<String, Set<Long>> createPSMSetSettingsWarnings(Collection<PeptideSpectrumMatch> psms) {
+        Map<String, Set<Long>> warnings = new HashMap<>(IdentificationKeySettings.values().length);
+        for (IdentificationKeySettings setting : IdentificationKeySettings.values()) {
+            warnings.put(setting.toString(), new HashSet<>());
+        }
+
+        for (PeptideSpectrumMatch psm : psms) {
+            updatePSMSetSettingsWarnings(warnings, psm);
+        }
+
+        // the source ID and spectrum title needs to be updated -> deactivate for now
+        // TODO: review the source ID and use it constantly as in the mzIdentML document, converting everything to index=XXX does not work!
+        warnings.get(IdentificationKeySettings.SOURCE_ID.toString()).add(0L);
+        warnings.get(IdentificationKeySettings.SPECTRUM_TITLE.toString()).add(0L);
+
+        return warnings;
+    }
+
+
+    /**
+     * Update the PSM set settings warnings with information of the given PSM.
+     *
+     * @param warnings
+     * @param psm
+     */
+    static void updatePSMSetSettingsWarnings(Map<String, Set<Long>> warnings, PeptideSpectrumMatch psm) {
+        if (psm.getRetentionTime() == null) {
+            warnings.get(IdentificationKeySettings.RETENTION_TIME.toString())
+                    .add(psm.getFile().getID());
+        }
+        if ((psm.getSourceID() == null) || psm.getSourceID().trim().isEmpty()) {
+            warnings.get(IdentificationKeySettings.SOURCE_ID.toString())
+                    .add(psm.getFile().getID());
+        }
+        if ((psm.getSpectrumTitle() == null) || psm.getSpectrumTitle().trim().isEmpty()) {
+            warnings.get(IdentificationKeySettings.SPECTRUM_TITLE.toString())
+                    .add(psm.getFile().getID());
+        }
+        if ((psm.getSequence() == null) || psm.getSequence().trim().isEmpty()) {
+            warnings.get(IdentificationKeySettings.SEQUENCE.toString())
+                    .add(psm.getFile().getID());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package de.mpc.pia.intermediate;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -104,13 +105,9 @@ public class Peptide implements Serializable {
     public void addSpectrum(PeptideSpectrumMatch spectrum) {
         if (spectra == null) {
             spectra = new ArrayList<>();
-        } else {
-            for (PeptideSpectrumMatch s : spectra) {
-                if (s.equals(spectrum)) {
-                    // spectrum already in peptide
-                    return;
-                }
-            }
+        } else if (spectra.contains(spectrum)) {
+            // spectrum already in peptide
+            return;
         }
 
         spectra.add(spectrum);
@@ -127,6 +124,27 @@ public class Peptide implements Serializable {
     }
 
 
+    /**
+     * Getter for the IDs of the spectra. The spectra of a
+     * {@link SpectrumReferenceList} are not loaded for this.
+     *
+     * @return
+     */
+    public List<Long> getSpectrumIDs() {
+        if (spectra == null) {
+            return Collections.emptyList();
+        } else if (spectra instanceof SpectrumReferenceList) {
+            return ((SpectrumReferenceList) spectra).getIDs();
+        }
+
+        List<Long> ids = new ArrayList<>(spectra.size());
+        for (PeptideSpectrumMatch psm : spectra) {
+            ids.add(psm.getID());
+        }
+        return ids;
+    }
+
+
     /**
      * Setter for the group.
      *
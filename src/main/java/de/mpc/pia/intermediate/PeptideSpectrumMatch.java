@@ -1,10 +1,19 @@
 package de.mpc.pia.intermediate;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
 
@@ -13,21 +22,54 @@ import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentification;
 
 import de.mpc.pia.modeller.IdentificationKeySettings;
 import de.mpc.pia.modeller.psm.PSMItem;
+import de.mpc.pia.modeller.score.ScoreIDs;
 import de.mpc.pia.modeller.score.ScoreModel;
-import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.tools.PIAConstants;
 import de.mpc.pia.tools.PIATools;
 
 
 /**
  * This class represents a peptide spectrum match (PSM).
+ * <p>
+ * As there may be millions of PSMs in memory, they are stored compactly: the
+ * scores in an array (sharing their descriptors, see {@link ScoreModel}), the
+ * modifications in arrays sorted by their positions, the flags in one byte and
+ * the sequences and identification strings interned. The params and the
+ * cached identification keys are only created, when needed.
  *
  * @author julian
  *
  */
 public class PeptideSpectrumMatch implements PSMItem, Serializable {
 
-    private static final long serialVersionUID = -7839921462687609103L;
+    private static final long serialVersionUID = 4100338893627880367L;
+
+    /** the scores of PSMs without scores */
+    private static final ScoreModel[] NO_SCORES = new ScoreModel[0];
+
+    /** the modification positions of PSMs without modifications */
+    private static final int[] NO_MODIFICATION_POSITIONS = new int[0];
+
+    /** the modifications of PSMs without modifications */
+    private static final Modification[] NO_MODIFICATIONS = new Modification[0];
+
+    /** flag for set isUnique */
+    private static final byte FLAG_HAS_UNIQUE = 0x01;
+
+    /** flag for isUnique being true */
+    private static final byte FLAG_IS_UNIQUE = 0x02;
+
+    /** flag for set isDecoy */
+    private static final byte FLAG_HAS_DECOY = 0x04;
+
+    /** flag for isDecoy being true */
+    private static final byte FLAG_IS_DECOY = 0x08;
+
+    /** flag for a set retention time */
+    private static final byte FLAG_HAS_RETENTION_TIME = 0x10;
+
+    /** flag for changed modifications since last building the modification string and peptideIDString */
+    private static final byte FLAG_MODIFICATION_CHANGED = 0x20;
 
 
     /** internal ID of the PSM */
@@ -42,10 +84,10 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
     /** delta of mass (NOT m/z) between measured and theoretical value (measured - theoretical) */
     private double deltaMass;
 
-    /** retention time (in seconds), null, if not set */
-    private Double retentionTime;
+    /** retention time (in seconds), only valid if {@link #FLAG_HAS_RETENTION_TIME} is set */
+    private double retentionTime;
 
-    /** sequence of the peptide spectrum match */
+    /** sequence of the peptide spectrum match (interned) */
     private String sequence;
 
     /** missed cleavages of the spectrum match */
@@ -63,32 +105,38 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
     /** the SpectrumIdentification (as in mzIdentML), actually a reference */
     private SpectrumIdentification spectrumID;
 
-    /** whether this PSM is unique (in this dataset) for its protein (i.e. found only in one protein / accession) */
-    private Boolean isUnique;
-
-    /** whether this PSM is a decoy, only set by some search engines */
-    private Boolean isDecoy;
+    /**
+     * the flags of the PSM: whether it is unique (in this dataset) for its
+     * protein (i.e. found only in one protein / accession), whether it is a
+     * decoy (only set by some search engines), whether the retention time is
+     * set and whether the modifications changed
+     */
+    private byte flags;
 
     /** the scores of this PSM */
-    private List<ScoreModel> scores;
+    private ScoreModel[] scores;
 
-    /** the modifications in this PSM (consistent iteration is needed, therefore use of {@link TreeMap})*/
-    private TreeMap<Integer, Modification> modifications;
+    /** the positions of the modifications in this PSM, sorted ascending */
+    private int[] modificationPositions;
 
-    /** the cvParams and userParams of the spectrum (except the ones identified as scores) */
+    /** the modifications in this PSM, in the order of their positions */
+    private Modification[] modifications;
+
+    /** the cvParams and userParams of the spectrum (except the ones identified as scores), null if there are none */
     private List<AbstractParam> paramList;
 
-    /** explanation of the modifications as a String */
+    /** explanation of the modifications as a String (interned) */
     private String modificationString;
 
-    /** the peptide ID string (with modifications, without would be just the sequence) */
+    /** the peptide ID string (with modifications, without would be just the sequence, interned) */
     private String peptideStringID;
 
-    /** are the modifications changed since last building the modification string and peptideIDString */
-    private boolean modificationChanged;
-
-    /** caches the identification keys */
-    private Map<String, String> identificationKeys;
+    /**
+     * caches the identification keys, null if none is cached. The map is
+     * replaced on changes and never changed itself, so the keys may be
+     * requested concurrently (e.g. while scoring proteins in parallel).
+     */
+    private volatile Map<String, String> identificationKeys;
 
     /** the finished peptide, only used after reading in a PIA file */
     private Peptide peptide;
@@ -105,26 +153,60 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
         this.charge = charge;
         this.massToCharge = massToCharge;
         this.deltaMass = deltaMass;
-        this.retentionTime = rt;
-        this.sequence = sequence;
+        this.flags = FLAG_MODIFICATION_CHANGED;
+        if (rt != null) {
+            this.retentionTime = rt;
+            this.flags |= FLAG_HAS_RETENTION_TIME;
+        }
+        this.sequence = (sequence != null) ? sequence.intern() : null;
         this.missed = missed;
         this.sourceID = sourceID;
         this.spectrumTitle = title;
         this.pFile = file;
         this.spectrumID = spectrumID;
-        this.isUnique = null;
-        this.isDecoy = null;
 
-        this.scores = new ArrayList<>();
-        this.modifications = new TreeMap<>();
-        this.paramList = new ArrayList<>();
-        this.modificationChanged = true;
-        this.identificationKeys = new HashMap<>(2);
+        this.scores = NO_SCORES;
+        this.modificationPositions = NO_MODIFICATION_POSITIONS;
+        this.modifications = NO_MODIFICATIONS;
+        this.paramList = null;
+        this.identificationKeys = null;
 
         this.peptide = null;
     }
 
 
+    /**
+     * Interns the sequence and identification strings after deserialization.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        sequence = (sequence != null) ? sequence.intern() : null;
+        modificationString = (modificationString != null) ? modificationString.intern() : null;
+        peptideStringID = (peptideStringID != null) ? peptideStringID.intern() : null;
+    }
+
+
+    /**
+     * Returns whether the given flag is set.
+     */
+    private boolean hasFlag(byte flag) {
+        return (flags & flag) != 0;
+    }
+
+
+    /**
+     * Sets or clears the given flag.
+     */
+    private void setFlag(byte flag, boolean set) {
+        if (set) {
+            flags |= flag;
+        } else {
+            flags &= ~flag;
+        }
+    }
+
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null || getClass() != obj.getClass()) return false;
@@ -154,8 +236,9 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
         if (sourceID != null ? !sourceID.equals(objSpectrum.sourceID) : objSpectrum.sourceID != null) return false;
         if (spectrumTitle != null ? !spectrumTitle.equals(objSpectrum.spectrumTitle) : objSpectrum.spectrumTitle != null) return false;
 
-        if (!scores.equals(objSpectrum.scores)) return false;
-        if (!modifications.equals(objSpectrum.modifications)) return false;
+        if (!Arrays.equals(scores, objSpectrum.scores)) return false;
+        if (!Arrays.equals(modificationPositions, objSpectrum.modificationPositions)) return false;
+        if (!Arrays.equals(modifications, objSpectrum.modifications)) return false;
 
         if (!spectrumID.equals(objSpectrum.spectrumID)) return false;
         return (pFile.equals(objSpectrum.pFile));
@@ -174,10 +257,10 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
         if (deltaMass != objSpectrum.deltaMass) return false;
         if (missed != objSpectrum.missed) return false;
 
-        if (isUnique != null ? !isUnique.equals(objSpectrum.isUnique) : objSpectrum.isUnique != null) return false;
-        if (isDecoy != null ? !isDecoy.equals(objSpectrum.isDecoy) : objSpectrum.isDecoy != null) return false;
+        if ((flags & ~FLAG_MODIFICATION_CHANGED) != (objSpectrum.flags & ~FLAG_MODIFICATION_CHANGED)) return false;
 
-        if (retentionTime != null ? !retentionTime.equals(objSpectrum.retentionTime) : objSpectrum.retentionTime != null) return false;
+        if (hasFlag(FLAG_HAS_RETENTION_TIME)
+                && (Double.doubleToLongBits(retentionTime) != Double.doubleToLongBits(objSpectrum.retentionTime))) return false;
 
         return (sequence.equals(objSpectrum.sequence));
     }
@@ -199,22 +282,24 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      */
     public int hashCodeWithoutID() {
         int result = charge;
-        result = 31 * result + (scores != null ? scores.hashCode() : 0);
+        result = 31 * result + Arrays.hashCode(scores);
         long bits = Double.doubleToLongBits(massToCharge);
         result = 31 * result + (int)(bits ^ (bits >>> 32));
         bits = Double.doubleToLongBits(deltaMass);
         result = 31 * result + (int)(bits ^ (bits >>> 32));
-        if (retentionTime != null) {
+        if (hasFlag(FLAG_HAS_RETENTION_TIME)) {
             bits = Double.doubleToLongBits(retentionTime);
             result = 31 * result + (int)(bits ^ (bits >>> 32));
         }
         result = 31 * result + missed;
         result = 31 * result + sequence.hashCode();
-        result = 31 * result + modifications.hashCode();
+        result = 31 * result + getModifications().hashCode();
         result = 31 * result + (sourceID != null ? sourceID.hashCode() : 0);
         result = 31 * result + (spectrumTitle != null ? spectrumTitle.hashCode() : 0);
         result = 31 * result + pFile.hashCode();
+        Boolean isUnique = getIsUnique();
         result = 31 * result + (isUnique != null ? isUnique.hashCode() : 0);
+        Boolean isDecoy = getIsDecoy();
         result = 31 * result + (isDecoy != null ? isDecoy.hashCode() : 0);
         result = 31 * result + (spectrumID != null ? spectrumID.hashCode() : 0);
 
@@ -242,23 +327,38 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
     }
 
 
+    /**
+     * Setter for the ID. Only to be used by the compiler, when PSMs parsed
+     * into a separate compilation are merged.
+     *
+     * @param id
+     */
+    public void setID(long id) {
+        this.id = id;
+        // the cached keys may depend on the file's ID, which changes as well
+        identificationKeys = null;
+    }
+
+
     /**
      * Adds a score to the list of scores.
      *
      * @param score
      */
     public void addScore(ScoreModel score) {
-        scores.add(score);
+        scores = Arrays.copyOf(scores, scores.length + 1);
+        scores[scores.length - 1] = score;
     }
 
 
     /**
-     * Getter for the scores.
+     * Getter for the scores. The returned list cannot be modified, use
+     * {@link #addScore(ScoreModel)} instead.
      *
      * @return
      */
     public List<ScoreModel> getScores() {
-        return scores;
+        return Collections.unmodifiableList(Arrays.asList(scores));
     }
 
 
@@ -268,21 +368,48 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * @return
      */
     public ScoreModel getScore(String scoreName) {
+        return getScore(ScoreIDs.getScoreID(scoreName));
+    }
+
+
+    /**
+     * Returns the score given by its ID (see {@link ScoreIDs}) or null, if none
+     * is found.
+     *
+     * @param scoreID
+     * @return
+     */
+    public ScoreModel getScore(int scoreID) {
+        if (scoreID < 0) {
+            return null;
+        }
+
+        // there are only few scores and their IDs are cached by the shared descriptors
         for (ScoreModel score : scores) {
-            if (!score.getType().equals(ScoreModelEnum.UNKNOWN_SCORE)) {
-                if (score.getType().isValidDescriptor(scoreName)) {
-                    return score;
-                }
-            } else {
-                if (score.getShortName().equals(scoreName)) {
-                    return score;
-                }
+            if (ScoreIDs.getScoreID(score) == scoreID) {
+                return score;
             }
         }
         return null;
     }
 
 
+    /**
+     * Returns the value of the score given by its ID (see {@link ScoreIDs}) or
+     * NaN, if the PSM has no such score.
+     *
+     * @param scoreID
+     * @return
+     */
+    public double getScoreValue(int scoreID) {
+        ScoreModel score = getScore(scoreID);
+        if ((score == null) || (score.getValue() == null)) {
+            return Double.NaN;
+        }
+        return score.getValue();
+    }
+
+
     @Override
     public double getMassToCharge() {
         return massToCharge;
@@ -297,7 +424,7 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
 
     @Override
     public Double getRetentionTime() {
-        return retentionTime;
+        return hasFlag(FLAG_HAS_RETENTION_TIME) ? retentionTime : null;
     }
 
 
@@ -324,21 +451,28 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * modifications were changed.
      */
     private void rebuildAfterModificationChange() {
-        // rebuild the modification string
-        modificationString = getModificationString(modifications);
-
-        // rebuild the peptideStringID
-        StringBuilder modificationSB = new StringBuilder(sequence);
-        for (Map.Entry<Integer, Modification> modIt : modifications.entrySet()) {
-            modificationSB.append('(');
-            modificationSB.append(modIt.getKey()).append(';').append(modIt.getValue().getMassString());
-            modificationSB.append(')');
+        if (modifications.length == 0) {
+            // without modifications, no new strings are needed
+            modificationString = "";
+            peptideStringID = sequence;
+        } else {
+            // rebuild the modification string
+            modificationString = getModificationString(getModifications()).intern();
+
+            // rebuild the peptideStringID
+            StringBuilder modificationSB = new StringBuilder(sequence);
+            for (int idx = 0; idx < modifications.length; idx++) {
+                modificationSB.append('(');
+                modificationSB.append(modificationPositions[idx]).append(';')
+                        .append(modifications[idx].getMassString());
+                modificationSB.append(')');
+            }
+            peptideStringID = modificationSB.toString().intern();
         }
-        peptideStringID = modificationSB.toString();
 
-        identificationKeys = new HashMap<>(2);
+        identificationKeys = null;
 
-        modificationChanged = false;
+        setFlag(FLAG_MODIFICATION_CHANGED, false);
     }
 
 
@@ -352,7 +486,7 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * @return
      */
     public String getModificationString() {
-        if (modificationChanged) {
+        if (hasFlag(FLAG_MODIFICATION_CHANGED)) {
             rebuildAfterModificationChange();
         }
         return modificationString;
@@ -396,7 +530,7 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      */
     public String getPeptideStringID(boolean considerModifications) {
         if (considerModifications) {
-            if (modificationChanged) {
+            if (hasFlag(FLAG_MODIFICATION_CHANGED)) {
                 rebuildAfterModificationChange();
             }
             return peptideStringID;
@@ -412,14 +546,41 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * @param pos
      */
     public void addModification(int pos, Modification mod) {
-        modifications.put(pos, mod);
-        modificationChanged = true;
+        int idx = Arrays.binarySearch(modificationPositions, pos);
+        if (idx >= 0) {
+            modifications[idx] = mod;
+        } else {
+            idx = -idx - 1;
+            int nrMods = modifications.length;
+
+            int[] newPositions = new int[nrMods + 1];
+            System.arraycopy(modificationPositions, 0, newPositions, 0, idx);
+            System.arraycopy(modificationPositions, idx, newPositions, idx + 1, nrMods - idx);
+            newPositions[idx] = pos;
+
+            Modification[] newModifications = new Modification[nrMods + 1];
+            System.arraycopy(modifications, 0, newModifications, 0, idx);
+            System.arraycopy(modifications, idx, newModifications, idx + 1, nrMods - idx);
+            newModifications[idx] = mod;
+
+            modificationPositions = newPositions;
+            modifications = newModifications;
+        }
+        setFlag(FLAG_MODIFICATION_CHANGED, true);
     }
 
 
+    /**
+     * Returns the modifications by their positions, iterated in ascending
+     * order of the positions. The returned map cannot be modified, use
+     * {@link #addModification(int, Modification)} instead.
+     */
     @Override
     public Map<Integer, Modification> getModifications() {
-        return modifications;
+        if (modifications.length == 0) {
+            return Collections.emptyMap();
+        }
+        return new ModificationsMap(modificationPositions, modifications);
     }
 
 
@@ -461,7 +622,7 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * @return
      */
     public Boolean getIsUnique() {
-        return isUnique;
+        return hasFlag(FLAG_HAS_UNIQUE) ? Boolean.valueOf(hasFlag(FLAG_IS_UNIQUE)) : null;
     }
 
 
@@ -470,7 +631,8 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * @return
      */
     public void setIsUnique(Boolean unique) {
-        this.isUnique = unique;
+        setFlag(FLAG_HAS_UNIQUE, unique != null);
+        setFlag(FLAG_IS_UNIQUE, (unique != null) && unique);
     }
 
 
@@ -479,7 +641,7 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * @return
      */
     public Boolean getIsDecoy() {
-        return isDecoy;
+        return hasFlag(FLAG_HAS_DECOY) ? Boolean.valueOf(hasFlag(FLAG_IS_DECOY)) : null;
     }
 
 
@@ -488,7 +650,8 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * @return
      */
     public void setIsDecoy(Boolean isDecoy) {
-        this.isDecoy = isDecoy;
+        setFlag(FLAG_HAS_DECOY, isDecoy != null);
+        setFlag(FLAG_IS_DECOY, (isDecoy != null) && isDecoy);
     }
 
 
@@ -506,6 +669,9 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * @param param
      */
     public void addParam(AbstractParam param) {
+        if (paramList == null) {
+            paramList = new ArrayList<>(2);
+        }
         paramList.add(param);
     }
 
@@ -515,7 +681,7 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * @return
      */
     public List<AbstractParam> getParams() {
-        return paramList;
+        return (paramList != null) ? paramList : Collections.emptyList();
     }
 
 
@@ -641,7 +807,8 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
 
         usedSettings.forEach(keyKey::append);
 
-        String key = identificationKeys.get(keyKey.toString());
+        Map<String, String> cachedKeys = identificationKeys;
+        String key = (cachedKeys != null) ? cachedKeys.get(keyKey.toString()) : null;
         if (key == null) {
             key = getIdentificationKey(
                     psmSetSettings,
@@ -655,7 +822,10 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
                     this.getFile().getID());
 
             if (key != null) {
-                identificationKeys.put(keyKey.toString(), key);
+                // a concurrently cached key may get lost, it is just calculated again
+                Map<String, String> newKeys = (cachedKeys != null) ? new HashMap<>(cachedKeys) : new HashMap<>(2);
+                newKeys.put(keyKey.toString(), key);
+                identificationKeys = newKeys;
             }
         }
 
@@ -684,7 +854,7 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
         }
         spectrumName.append(charge);
 
-        if (retentionTime != null) {
+        if (hasFlag(FLAG_HAS_RETENTION_TIME)) {
             spectrumName.append(", ");
             spectrumName.append(PIATools.round(retentionTime, PIAConstants.RETENTION_TIME_PRECISION));
         }
@@ -719,9 +889,78 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      */
     public void addAllScores(List<ScoreModel> scores) {
         if(scores != null){
-            if(this.scores == null)
-                this.scores = new ArrayList<>();
-            this.scores.addAll(scores);
+            int nrScores = this.scores.length;
+            this.scores = Arrays.copyOf(this.scores, nrScores + scores.size());
+            for (ScoreModel score : scores) {
+                this.scores[nrScores++] = score;
+            }
+        }
+    }
+
+
+    /**
+     * An unmodifiable view of the modifications of a PSM as map from the
+     * positions to the modifications, iterated in the order of the positions.
+     */
+    private static final class ModificationsMap extends AbstractMap<Integer, Modification> {
+        private final int[] positions;
+        private final Modification[] modifications;
+
+        private ModificationsMap(int[] positions, Modification[] modifications) {
+            this.positions = positions;
+            this.modifications = modifications;
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return (key instanceof Integer) && (Arrays.binarySearch(positions, (Integer) key) >= 0);
+        }
+
+        @Override
+        public Modification get(Object key) {
+            if (!(key instanceof Integer)) {
+                return null;
+            }
+            int idx = Arrays.binarySearch(positions, (Integer) key);
+            return (idx >= 0) ? modifications[idx] : null;
+        }
+
+        @Override
+        public Set<Map.Entry<Integer, Modification>> entrySet() {
+            return new AbstractSet<Map.Entry<Integer, Modification>>() {
+                @Override
+                public int size() {
+                    return positions.length;
+                }
+
+                @Override
+                public Iterator<Map.Entry<Integer, Modification>> iterator() {
+                    return new Iterator<Map.Entry<Integer, Modification>>() {
+                        private int idx = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return idx < positions.length;
+                        }
+
+                        @Override
+                        public Map.Entry<Integer, Modification> next() {
+                            if (idx >= positions.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<Integer, Modification> entry =
+                                    new AbstractMap.SimpleImmutableEntry<>(positions[idx], modifications[idx]);
+                            idx++;
+                            return entry;
+                        }
+                    };
+                }
+            };
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+package de.mpc.pia.intermediate;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongFunction;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+
+/**
+ * A list of {@link PeptideSpectrumMatch}es, which only stores the IDs of the
+ * PSMs and gets the PSMs on access by the given function. This is used for
+ * the spectra of a {@link Peptide}, if the PSMs are not held in memory.
+ *
+ * @author julianu
+ *
+ */
+public class SpectrumReferenceList extends AbstractList<PeptideSpectrumMatch> {
+
+    /** the IDs of the PSMs */
+    private final LongArrayList ids;
+
+    /** gets the PSM for an ID */
+    private final LongFunction<PeptideSpectrumMatch> psmGetter;
+
+
+    /**
+     * Creates an empty list, which gets the PSMs by the given function.
+     *
+     * @param psmGetter
+     */
+    public SpectrumReferenceList(LongFunction<PeptideSpectrumMatch> psmGetter) {
+        this.ids = new LongArrayList(1);
+        this.psmGetter = psmGetter;
+    }
+
+
+    @Override
+    public PeptideSpectrumMatch get(int index) {
+        return psmGetter.apply(ids.getLong(index));
+    }
+
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+
+    @Override
+    public boolean add(PeptideSpectrumMatch psm) {
+        return ids.add(psm.getID());
+    }
+
+
+    @Override
+    public PeptideSpectrumMatch remove(int index) {
+        return psmGetter.apply(ids.removeLong(index));
+    }
+
+
+    /**
+     * Only the PSMs with the same ID are loaded for the comparison, as equal
+     * PSMs have the same ID.
+     */
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof PeptideSpectrumMatch)) {
+            return false;
+        }
+
+        long id = ((PeptideSpectrumMatch) o).getID();
+        for (int idx = 0; idx < ids.size(); idx++) {
+            if ((ids.getLong(idx) == id) && o.equals(get(idx))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Returns the IDs of the PSMs, without loading the PSMs.
+     *
+     * @return
+     */
+    public List<Long> getIDs() {
+        return Collections.unmodifiableList(ids);
+    }
+}
@@ -0,0 +1,133 @@
+package de.mpc.pia.intermediate.binaryhandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Reads a block of a columnar section, as written by the
+ * {@link ColumnBlockWriter}. Each column has its own read position, so the
+ * values of an object are read column by column.
+ *
+ * @author julianu
+ *
+ */
+class ColumnBlockReader<C extends Enum<C>> {
+
+    /** the number of objects in the block */
+    private final int nrObjects;
+
+    /** the dictionary of the block */
+    private final String[] dictionary;
+
+    /** the columns of the block */
+    private final ByteBuffer[] columns;
+
+
+    /**
+     * Reads the block from the given buffer.
+     *
+     * @param buffer
+     * @param columnClass the enum class defining the columns
+     * @throws IOException if the block has not the expected number of columns
+     */
+    ColumnBlockReader(ByteBuffer buffer, Class<C> columnClass) throws IOException {
+        nrObjects = buffer.getInt();
+
+        dictionary = new String[buffer.getInt()];
+        for (int strIdx = 0; strIdx < dictionary.length; strIdx++) {
+            dictionary[strIdx] = readUTF8String(buffer);
+        }
+
+        int nrColumns = buffer.getInt();
+        if (nrColumns != columnClass.getEnumConstants().length) {
+            throw new IOException("Wrong number of columns for " + columnClass.getSimpleName()
+                    + ": " + nrColumns);
+        }
+
+        columns = new ByteBuffer[nrColumns];
+        for (int colIdx = 0; colIdx < nrColumns; colIdx++) {
+            int length = buffer.getInt();
+            ByteBuffer column = buffer.slice();
+            column.limit(length);
+            columns[colIdx] = column;
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+
+    /**
+     * Returns the number of objects in this block.
+     */
+    int getNrObjects() {
+        return nrObjects;
+    }
+
+
+    long readLong(C column) {
+        return columns[column.ordinal()].getLong();
+    }
+
+
+    /**
+     * Reads an ID, {@link PIABinaryFormat#NULL_ID} is returned as null.
+     */
+    Long readID(C column) {
+        long value = readLong(column);
+        return (value != PIABinaryFormat.NULL_ID) ? value : null;
+    }
+
+
+    int readInt(C column) {
+        return columns[column.ordinal()].getInt();
+    }
+
+
+    byte readByte(C column) {
+        return columns[column.ordinal()].get();
+    }
+
+
+    char readChar(C column) {
+        return columns[column.ordinal()].getChar();
+    }
+
+
+    /**
+     * Reads a double, {@link PIABinaryFormat#NULL_DOUBLE_BITS} is returned as
+     * null.
+     */
+    Double readDouble(C column) {
+        long bits = columns[column.ordinal()].getLong();
+        return (bits != PIABinaryFormat.NULL_DOUBLE_BITS) ? Double.longBitsToDouble(bits) : null;
+    }
+
+
+    /**
+     * Reads a string via its index in the dictionary.
+     */
+    String readString(C column) {
+        int index = columns[column.ordinal()].getInt();
+        return (index != PIABinaryFormat.NULL_STRING) ? dictionary[index] : null;
+    }
+
+
+    /**
+     * Reads a string as written by
+     * {@link ColumnBlockWriter#writeUTF8String(java.io.DataOutputStream, String)}.
+     *
+     * @param buffer
+     * @return
+     */
+    static String readUTF8String(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == PIABinaryFormat.NULL_STRING) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,177 @@
+package de.mpc.pia.intermediate.binaryhandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Collects the values of one block of a columnar section: each column is
+ * buffered on its own and the strings are collected in the block's
+ * dictionary.
+ *
+ * @author julianu
+ *
+ */
+class ColumnBlockWriter<C extends Enum<C>> {
+
+    /** the buffers of the columns */
+    private final ByteArrayOutputStream[] columnBuffers;
+
+    /** the writers into the column buffers */
+    private final DataOutputStream[] columns;
+
+    /** maps from the strings to their index in the dictionary */
+    private final Map<String, Integer> dictionaryIndex;
+
+    /** the strings of the dictionary */
+    private final List<String> dictionary;
+
+    /** the number of objects in this block */
+    private int nrObjects;
+
+
+    /**
+     * Creates a block writer for the columns given by the enum class.
+     *
+     * @param columnClass
+     */
+    ColumnBlockWriter(Class<C> columnClass) {
+        int nrColumns = columnClass.getEnumConstants().length;
+        columnBuffers = new ByteArrayOutputStream[nrColumns];
+        columns = new DataOutputStream[nrColumns];
+        for (int colIdx = 0; colIdx < nrColumns; colIdx++) {
+            columnBuffers[colIdx] = new ByteArrayOutputStream();
+            columns[colIdx] = new DataOutputStream(columnBuffers[colIdx]);
+        }
+
+        dictionaryIndex = new HashMap<>();
+        dictionary = new ArrayList<>();
+        nrObjects = 0;
+    }
+
+
+    /**
+     * Counts a new object in this block, should be called after all values of
+     * the object are written.
+     */
+    void objectFinished() {
+        nrObjects++;
+    }
+
+
+    /**
+     * Returns the number of objects in this block.
+     */
+    int getNrObjects() {
+        return nrObjects;
+    }
+
+
+    void writeLong(C column, long value) throws IOException {
+        columns[column.ordinal()].writeLong(value);
+    }
+
+
+    /**
+     * Writes the ID or {@link PIABinaryFormat#NULL_ID} for null.
+     */
+    void writeID(C column, Long value) throws IOException {
+        writeLong(column, (value != null) ? value : PIABinaryFormat.NULL_ID);
+    }
+
+
+    void writeInt(C column, int value) throws IOException {
+        columns[column.ordinal()].writeInt(value);
+    }
+
+
+    void writeByte(C column, byte value) throws IOException {
+        columns[column.ordinal()].writeByte(value);
+    }
+
+
+    void writeChar(C column, char value) throws IOException {
+        columns[column.ordinal()].writeChar(value);
+    }
+
+
+    /**
+     * Writes the double value, null is written as
+     * {@link PIABinaryFormat#NULL_DOUBLE_BITS}.
+     */
+    void writeDouble(C column, Double value) throws IOException {
+        columns[column.ordinal()].writeLong((value != null)
+                ? Double.doubleToRawLongBits(value)
+                : PIABinaryFormat.NULL_DOUBLE_BITS);
+    }
+
+
+    /**
+     * Writes the index of the string in the dictionary, adding it if it is
+     * not yet in there.
+     */
+    void writeString(C column, String value) throws IOException {
+        int index = PIABinaryFormat.NULL_STRING;
+        if (value != null) {
+            index = dictionaryIndex.computeIfAbsent(value, str -> {
+                dictionary.add(str);
+                return dictionary.size() - 1;
+            });
+        }
+        columns[column.ordinal()].writeInt(index);
+    }
+
+
+    /**
+     * Writes the block (number of objects, dictionary and columns) into the
+     * given stream and clears the block.
+     *
+     * @param out
+     * @throws IOException
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(nrObjects);
+
+        out.writeInt(dictionary.size());
+        for (String str : dictionary) {
+            writeUTF8String(out, str);
+        }
+
+        out.writeInt(columns.length);
+        for (int colIdx = 0; colIdx < columns.length; colIdx++) {
+            columns[colIdx].flush();
+            out.writeInt(columnBuffers[colIdx].size());
+            columnBuffers[colIdx].writeTo(out);
+            columnBuffers[colIdx].reset();
+        }
+
+        dictionaryIndex.clear();
+        dictionary.clear();
+        nrObjects = 0;
+    }
+
+
+    /**
+     * Writes a string as length and UTF-8 bytes (not limited in length like
+     * {@link DataOutputStream#writeUTF(String)}).
+     *
+     * @param out
+     * @param str
+     * @throws IOException
+     */
+    static void writeUTF8String(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(PIABinaryFormat.NULL_STRING);
+        } else {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package de.mpc.pia.intermediate.binaryhandler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+
+/**
+ * Constants of the binary PIA intermediate format.
+ * <p>
+ * A binary intermediate file starts with the {@link #MAGIC_BYTES} and the
+ * format version, followed by the sections (see {@link Section}). After the
+ * sections follows the section index, i.e. the number of sections and for
+ * each section its ordinal, offset and length. The file ends with the offset
+ * of the section index, so any section can be read without reading the
+ * others. The columnar sections may consist of several blocks of up to
+ * {@link #BLOCK_SIZE} objects, each block has its own entry in the index.
+ * <p>
+ * The files, inputs and analysis software are small and contain mzIdentML
+ * objects, they are stored as XML fragments. The spectra, accessions,
+ * peptides and groups are stored column-wise, each block starts with the
+ * number of its objects and a dictionary of its strings, which are referenced
+ * by their index (-1 for null), followed by the columns.
+ *
+ * @author julianu
+ *
+ */
+public final class PIABinaryFormat {
+
+    /** the magic bytes at the start of each binary PIA intermediate file */
+    static final byte[] MAGIC_BYTES = {'P', 'I', 'A', 'B'};
+
+    /** the version of the format */
+    static final int FORMAT_VERSION = 1;
+
+    /** the usual suffix of binary PIA intermediate files */
+    public static final String FILE_SUFFIX = ".piab";
+
+    /** the index of null strings in the dictionaries */
+    static final int NULL_STRING = -1;
+
+    /** the bits of a null Double, a NaN which is not used by Java's arithmetic */
+    static final long NULL_DOUBLE_BITS = 0x7ff80000000000adL;
+
+    /** the value of null references to IDs */
+    static final long NULL_ID = -1L;
+
+    /** the maximal number of objects in one block of a columnar section */
+    static final int BLOCK_SIZE = 65536;
+
+    /** flag for a PSM with decoy information */
+    static final byte FLAG_HAS_DECOY = 0x01;
+
+    /** flag for a decoy PSM */
+    static final byte FLAG_IS_DECOY = 0x02;
+
+    /** flag for a PSM with uniqueness information */
+    static final byte FLAG_HAS_UNIQUE = 0x04;
+
+    /** flag for a unique PSM */
+    static final byte FLAG_IS_UNIQUE = 0x08;
+
+    /** param type of a cvParam */
+    static final byte PARAM_CV = 0;
+
+    /** param type of a userParam */
+    static final byte PARAM_USER = 1;
+
+
+    /**
+     * The sections of a binary intermediate file, in the order of writing.
+     * The progress is the same as for the respective parts of the XML file.
+     */
+    enum Section {
+        PROJECT(0),
+        FILES(1),
+        INPUTS(1),
+        ANALYSIS_SOFTWARE(1),
+        SPECTRA(30),
+        ACCESSIONS(1),
+        PEPTIDES(5),
+        GROUPS(1),
+        ;
+
+        /** the progress after loading the section */
+        private final long progress;
+
+        Section(long progress) {
+            this.progress = progress;
+        }
+
+        long getProgress() {
+            return progress;
+        }
+    }
+
+
+    /**
+     * The columns of the spectra. The scores, modifications, their
+     * probabilities and the params are flattened into their columns, the
+     * number per PSM (or modification) is given by the respective count
+     * column.
+     */
+    enum SpectraColumn {
+        ID,
+        FILE_REF,
+        SPECTRUM_IDENTIFICATION_REF,
+        CHARGE,
+        MASS_TO_CHARGE,
+        DELTA_MASS,
+        RETENTION_TIME,
+        FLAGS,
+        SEQUENCE,
+        MISSED,
+        SOURCE_ID,
+        TITLE,
+        NR_SCORES,
+        SCORE_ACCESSION,
+        SCORE_NAME,
+        SCORE_VALUE,
+        NR_MODIFICATIONS,
+        MODIFICATION_LOCATION,
+        MODIFICATION_RESIDUE,
+        MODIFICATION_MASS,
+        MODIFICATION_DESCRIPTION,
+        MODIFICATION_ACCESSION,
+        MODIFICATION_CV_LABEL,
+        MODIFICATION_NR_PROBABILITIES,
+        PROBABILITY_ACCESSION,
+        PROBABILITY_NAME,
+        PROBABILITY_CV_LABEL,
+        PROBABILITY_VALUE,
+        NR_PARAMS,
+        PARAM_TYPE,
+        PARAM_NAME,
+        PARAM_VALUE,
+        PARAM_ACCESSION_OR_TYPE,
+        PARAM_CV_REF,
+        PARAM_UNIT_ACCESSION,
+        PARAM_UNIT_NAME,
+        PARAM_UNIT_CV_REF,
+    }
+
+
+    /**
+     * The columns of the accessions.
+     */
+    enum AccessionColumn {
+        ID,
+        ACCESSION,
+        SEQUENCE,
+        NR_FILE_REFS,
+        FILE_REF,
+        NR_DESCRIPTIONS,
+        DESCRIPTION_FILE_REF,
+        DESCRIPTION_VALUE,
+        NR_SEARCH_DATABASE_REFS,
+        SEARCH_DATABASE_REF,
+    }
+
+
+    /**
+     * The columns of the peptides.
+     */
+    enum PeptideColumn {
+        ID,
+        SEQUENCE,
+        NR_SPECTRUM_REFS,
+        SPECTRUM_REF,
+        NR_OCCURRENCES,
+        OCCURRENCE_ACCESSION_REF,
+        OCCURRENCE_START,
+        OCCURRENCE_END,
+    }
+
+
+    /**
+     * The columns of the groups.
+     */
+    enum GroupColumn {
+        ID,
+        TREE_ID,
+        NR_ACCESSION_REFS,
+        ACCESSION_REF,
+        NR_PEPTIDE_REFS,
+        PEPTIDE_REF,
+        NR_CHILD_REFS,
+        CHILD_REF,
+    }
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private PIABinaryFormat() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Checks whether the given file is a binary PIA intermediate file, i.e.
+     * starts with the magic bytes.
+     *
+     * @param fileName
+     * @return
+     */
+    public static boolean isBinaryIntermediateFile(String fileName) {
+        File file = new File(fileName);
+        if (!file.isFile()) {
+            return false;
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] header = new byte[MAGIC_BYTES.length];
+            return (in.readNBytes(header, 0, header.length) == header.length)
+                    && Arrays.equals(header, MAGIC_BYTES);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
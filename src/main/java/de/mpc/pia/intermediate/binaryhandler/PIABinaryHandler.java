@@ -0,0 +1,861 @@
+package de.mpc.pia.intermediate.binaryhandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.ac.ebi.jmzidml.model.mzidml.AbstractParam;
+import uk.ac.ebi.jmzidml.model.mzidml.AnalysisSoftware;
+import uk.ac.ebi.jmzidml.model.mzidml.AnalysisSoftwareList;
+import uk.ac.ebi.jmzidml.model.mzidml.Cv;
+import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
+import uk.ac.ebi.jmzidml.model.mzidml.Inputs;
+import uk.ac.ebi.jmzidml.model.mzidml.SearchDatabase;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentification;
+import uk.ac.ebi.jmzidml.model.mzidml.UserParam;
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.GroupTreeIndex;
+import de.mpc.pia.intermediate.Modification;
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.PIAIntermediateData;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat.AccessionColumn;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat.GroupColumn;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat.PeptideColumn;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat.Section;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat.SpectraColumn;
+import de.mpc.pia.intermediate.piaxml.FilesListXML;
+import de.mpc.pia.intermediate.piaxml.PIAInputFileXML;
+import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler;
+import de.mpc.pia.modeller.score.ScoreModel;
+
+
+/**
+ * Reads a binary PIA intermediate file (see {@link PIABinaryFormat}).
+ * <p>
+ * The sections are read lazily via the section index, i.e. when the
+ * respective getter is called for the first time (together with the sections
+ * they depend on), or all at once by {@link #parse(Long[])}. The sections are
+ * memory mapped while reading.
+ *
+ * @author julianu
+ *
+ */
+public class PIABinaryHandler implements PIAIntermediateData {
+
+    private static final long serialVersionUID = 4381975521049368733L;
+
+
+    /** logger for this class */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+
+    /** the name of the read file, null if read from a buffer */
+    private final String fileName;
+
+    /** the content of the file, if it is not read from a file */
+    private transient ByteBuffer fileBuffer;
+
+    /** the name of the project */
+    private String projectName;
+
+    /** the date of the project, as written into the file */
+    private String projectDate;
+
+    /** the files */
+    private Map<Long, PIAInputFile> files;
+
+    /** the SpectraData (from the Inputs) */
+    private Map<String, SpectraData> spectraData;
+
+    /** the SearchDatabases (from the Inputs) */
+    private Map<String, SearchDatabase> searchDatabases;
+
+    /** the AnalysisSoftware */
+    private Map<String, AnalysisSoftware> software;
+
+    /** the PSMs */
+    private Map<Long, PeptideSpectrumMatch> psms;
+
+    /** the peptides */
+    private Map<Long, Peptide> peptides;
+
+    /** the accessions */
+    private Map<Long, Accession> accessions;
+
+    /** the groups */
+    private Map<Long, Group> groups;
+
+    /** the PSM set settings warnings, created after the spectra are read */
+    private Map<String, Set<Long>> psmSetSettingsWarnings;
+
+    /** the already loaded sections */
+    private final Set<Section> loadedSections;
+
+    /** the index entries (offset and length) of each section */
+    private transient Map<Section, List<long[]>> sectionIndex;
+
+    /** the Cvs of the params, by their IDs */
+    private transient Map<String, Cv> paramCvs;
+
+
+    /**
+     * Opens the binary intermediate file and reads its section index and the
+     * project information. The other sections are read when needed.
+     *
+     * @param fileName
+     * @throws IOException if the file is no binary PIA intermediate file or
+     * could not be read
+     */
+    public PIABinaryHandler(String fileName) throws IOException {
+        this(fileName, null);
+    }
+
+
+    /**
+     * Reads the binary intermediate file from the given buffer (e.g. embedded
+     * in another file), which contains the complete file from its current
+     * position on.
+     *
+     * @param buffer
+     * @throws IOException if the buffer contains no binary PIA intermediate
+     * file
+     */
+    public PIABinaryHandler(ByteBuffer buffer) throws IOException {
+        this(null, buffer);
+    }
+
+
+    /**
+     * Initializes the handler either for the file or the buffer.
+     */
+    private PIABinaryHandler(String fileName, ByteBuffer fileBuffer) throws IOException {
+        this.fileName = fileName;
+        this.fileBuffer = (fileBuffer != null) ? fileBuffer.slice() : null;
+        projectName = null;
+        projectDate = null;
+        files = new LinkedHashMap<>();
+        spectraData = new LinkedHashMap<>();
+        searchDatabases = new LinkedHashMap<>();
+        software = new LinkedHashMap<>();
+        psms = new LinkedHashMap<>();
+        peptides = new LinkedHashMap<>();
+        accessions = new LinkedHashMap<>();
+        groups = new LinkedHashMap<>();
+        psmSetSettingsWarnings = null;
+        loadedSections = EnumSet.noneOf(Section.class);
+
+        readSectionIndex();
+        loadSection(Section.PROJECT);
+    }
+
+
+    /**
+     * Loads all sections of the file.
+     *
+     * @param progressArr stores the current progress of the parsing, gets
+     * increased by 40 by this method (remaining 60 are in the PIAModeller), as
+     * for the PIA XML files
+     *
+     * @throws IOException
+     */
+    public void parse(Long[] progressArr) throws IOException {
+        Long[] progress = progressArr;
+        if ((progress == null) || (progressArr.length < 1) || (progressArr[0] == null)) {
+            LOGGER.warn("No progress array given, creating one. But no external supervision will be possible.");
+            progress = new Long[1];
+            progress[0] = 0L;
+        }
+
+        for (Section section : Section.values()) {
+            loadSection(section);
+            progress[0] += section.getProgress();
+        }
+    }
+
+
+    /**
+     * Reads the header and the section index of the file.
+     *
+     * @throws IOException
+     */
+    private void readSectionIndex() throws IOException {
+        sectionIndex = new EnumMap<>(Section.class);
+
+        try (FileChannel channel = openChannel()) {
+            long size = (channel != null) ? channel.size() : fileBuffer.limit();
+            long headerLength = PIABinaryFormat.MAGIC_BYTES.length + Integer.BYTES;
+            if (size < headerLength + Long.BYTES) {
+                throw new IOException(getSourceName() + " is no binary PIA intermediate file");
+            }
+
+            ByteBuffer header = readRange(channel, 0, headerLength);
+            byte[] magicBytes = new byte[PIABinaryFormat.MAGIC_BYTES.length];
+            header.get(magicBytes);
+            if (!Arrays.equals(magicBytes, PIABinaryFormat.MAGIC_BYTES)) {
+                throw new IOException(getSourceName() + " is no binary PIA intermediate file");
+            }
+
+            int version = header.getInt();
+            if (version != PIABinaryFormat.FORMAT_VERSION) {
+                throw new IOException("Unsupported version " + version + " of binary PIA intermediate file "
+                        + getSourceName());
+            }
+
+            long indexOffset = readRange(channel, size - Long.BYTES, Long.BYTES).getLong();
+            ByteBuffer index = readRange(channel, indexOffset, size - Long.BYTES - indexOffset);
+
+            int nrEntries = index.getInt();
+            for (int entryIdx = 0; entryIdx < nrEntries; entryIdx++) {
+                Section section = Section.values()[index.getInt()];
+                long offset = index.getLong();
+                long length = index.getLong();
+
+                sectionIndex.computeIfAbsent(section, s -> new ArrayList<>())
+                        .add(new long[] {offset, length});
+            }
+        }
+    }
+
+
+    /**
+     * Loads the given section, if it is not loaded yet. The sections, which
+     * are referenced by the given one, are loaded before.
+     *
+     * @param section
+     * @throws IOException
+     */
+    private synchronized void loadSection(Section section) throws IOException {
+        if (loadedSections.contains(section)) {
+            return;
+        }
+
+        switch (section) {
+        case SPECTRA:
+            loadSection(Section.FILES);
+            break;
+        case PEPTIDES:
+            loadSection(Section.SPECTRA);
+            loadSection(Section.ACCESSIONS);
+            break;
+        case GROUPS:
+            loadSection(Section.ACCESSIONS);
+            loadSection(Section.PEPTIDES);
+            break;
+        default:
+            break;
+        }
+
+        LOGGER.debug("loading {} from {}", section, getSourceName());
+        Map<Long, long[]> groupsChildren = new HashMap<>();
+
+        try (FileChannel channel = openChannel()) {
+            for (long[] entry : sectionIndex.getOrDefault(section, Collections.emptyList())) {
+                ByteBuffer buffer = readRange(channel, entry[0], entry[1]);
+
+                switch (section) {
+                case PROJECT:
+                    projectName = ColumnBlockReader.readUTF8String(buffer);
+                    projectDate = ColumnBlockReader.readUTF8String(buffer);
+                    break;
+                case FILES:
+                    readFiles(buffer);
+                    break;
+                case INPUTS:
+                    readInputs(buffer);
+                    break;
+                case ANALYSIS_SOFTWARE:
+                    readAnalysisSoftware(buffer);
+                    break;
+                case SPECTRA:
+                    readColumnarBlock(buffer, SpectraColumn.class, block -> {
+                        PeptideSpectrumMatch psm = readPSM(block);
+                        psms.put(psm.getID(), psm);
+                    });
+                    break;
+                case ACCESSIONS:
+                    readColumnarBlock(buffer, AccessionColumn.class, block -> {
+                        Accession accession = readAccession(block);
+                        accessions.put(accession.getID(), accession);
+                    });
+                    break;
+                case PEPTIDES:
+                    readColumnarBlock(buffer, PeptideColumn.class, block -> {
+                        Peptide peptide = readPeptide(block);
+                        peptides.put(peptide.getID(), peptide);
+                    });
+                    break;
+                case GROUPS:
+                    readColumnarBlock(buffer, GroupColumn.class, block -> {
+                        Group group = readGroup(block, groupsChildren);
+                        groups.put(group.getID(), group);
+                    });
+                    break;
+                default:
+                    break;
+                }
+            }
+        } catch (JAXBException e) {
+            LOGGER.error("Error while reading {} from binary PIA intermediate file", section, e);
+            throw new IOException(e);
+        }
+
+        if (section == Section.SPECTRA) {
+            psmSetSettingsWarnings = PIAIntermediateData.createPSMSetSettingsWarnings(psms.values());
+        } else if (section == Section.GROUPS) {
+            // to get the "allAccessions" right, children are set after all groups are read
+            connectGroupsChildren(groupsChildren);
+        }
+
+        loadedSections.add(section);
+    }
+
+
+    /**
+     * Opens the channel of the file, or returns null, if the data is read from
+     * a buffer.
+     *
+     * @throws IOException
+     */
+    private FileChannel openChannel() throws IOException {
+        return (fileBuffer == null) ? FileChannel.open(Paths.get(fileName), StandardOpenOption.READ) : null;
+    }
+
+
+    /**
+     * Returns the given range of the file, either memory mapped from the
+     * channel or as slice of the buffer.
+     *
+     * @throws IOException
+     */
+    private ByteBuffer readRange(FileChannel channel, long offset, long length) throws IOException {
+        if (channel != null) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } else {
+            return fileBuffer.slice((int) offset, (int) length);
+        }
+    }
+
+
+    /**
+     * Returns the name of the file or a description of the buffer for
+     * logging.
+     */
+    private String getSourceName() {
+        return (fileName != null) ? fileName : "buffer";
+    }
+
+
+    /**
+     * Loads the given section, throwing an {@link UncheckedIOException} on
+     * errors. This is used by the getters.
+     *
+     * @param section
+     */
+    private void ensureLoaded(Section section) {
+        try {
+            loadSection(section);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Unmarshals an XML fragment of the given class from the buffer.
+     *
+     * @throws JAXBException
+     */
+    private static <T> T unmarshalFragment(ByteBuffer buffer, Class<T> fragmentClass)
+            throws JAXBException {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+
+        Unmarshaller um = JAXBContext.newInstance(fragmentClass).createUnmarshaller();
+        return um.unmarshal(new StreamSource(new ByteArrayInputStream(bytes)), fragmentClass).getValue();
+    }
+
+
+    /**
+     * Reads the files from the XML fragment.
+     *
+     * @throws JAXBException
+     */
+    private void readFiles(ByteBuffer buffer) throws JAXBException {
+        FilesListXML filesListXML = unmarshalFragment(buffer, FilesListXML.class);
+
+        if (filesListXML != null) {
+            for (PIAInputFileXML fileXML : filesListXML.getFiles()) {
+                PIAInputFile file = PIAIntermediateJAXBHandler.createFileFromXML(fileXML);
+                files.put(file.getID(), file);
+            }
+        }
+    }
+
+
+    /**
+     * Reads the SpectraData and SearchDatabases from the XML fragment.
+     *
+     * @throws JAXBException
+     */
+    private void readInputs(ByteBuffer buffer) throws JAXBException {
+        Inputs inputs = unmarshalFragment(buffer, Inputs.class);
+
+        if (inputs != null) {
+            for (SpectraData sd : inputs.getSpectraData()) {
+                spectraData.put(sd.getId(), sd);
+            }
+
+            for (SearchDatabase db : inputs.getSearchDatabase()) {
+                searchDatabases.put(db.getId(), db);
+            }
+        }
+    }
+
+
+    /**
+     * Reads the AnalysisSoftware from the XML fragment.
+     *
+     * @throws JAXBException
+     */
+    private void readAnalysisSoftware(ByteBuffer buffer) throws JAXBException {
+        AnalysisSoftwareList analysisSoftwareList = unmarshalFragment(buffer, AnalysisSoftwareList.class);
+
+        if (analysisSoftwareList != null) {
+            for (AnalysisSoftware sw : analysisSoftwareList.getAnalysisSoftware()) {
+                software.put(sw.getId(), sw);
+            }
+        }
+    }
+
+
+    /**
+     * Reads a block of a columnar section and calls the objectReader for each
+     * object in the block.
+     *
+     * @throws IOException
+     */
+    private static <C extends Enum<C>> void readColumnarBlock(ByteBuffer buffer, Class<C> columnClass,
+            Consumer<ColumnBlockReader<C>> objectReader) throws IOException {
+        ColumnBlockReader<C> block = new ColumnBlockReader<>(buffer, columnClass);
+
+        for (int objIdx = 0; objIdx < block.getNrObjects(); objIdx++) {
+            objectReader.accept(block);
+        }
+    }
+
+
+    /**
+     * Reads the next PSM from the block.
+     */
+    private PeptideSpectrumMatch readPSM(ColumnBlockReader<SpectraColumn> block) {
+        long id = block.readLong(SpectraColumn.ID);
+        Long fileRef = block.readID(SpectraColumn.FILE_REF);
+        String spectrumIdentificationRef = block.readString(SpectraColumn.SPECTRUM_IDENTIFICATION_REF);
+
+        PIAInputFile file = (fileRef != null) ? files.get(fileRef) : null;
+        SpectrumIdentification spectrumID = null;
+
+        if (file != null) {
+            if (spectrumIdentificationRef != null) {
+                spectrumID = file.getSpectrumIdentification(spectrumIdentificationRef);
+
+                if (spectrumID == null) {
+                    LOGGER.warn("No SpectrumIdentification found for '{}'", spectrumIdentificationRef);
+                }
+            }
+        } else {
+            LOGGER.warn("PSM '{}' has no valid fileRef '{}'.", id, fileRef);
+        }
+
+        PeptideSpectrumMatch psm = new PeptideSpectrumMatch(id,
+                block.readInt(SpectraColumn.CHARGE),
+                block.readDouble(SpectraColumn.MASS_TO_CHARGE),
+                block.readDouble(SpectraColumn.DELTA_MASS),
+                block.readDouble(SpectraColumn.RETENTION_TIME),
+                block.readString(SpectraColumn.SEQUENCE),
+                block.readInt(SpectraColumn.MISSED),
+                block.readString(SpectraColumn.SOURCE_ID),
+                block.readString(SpectraColumn.TITLE),
+                file,
+                spectrumID);
+
+        int nrScores = block.readInt(SpectraColumn.NR_SCORES);
+        for (int scoreIdx = 0; scoreIdx < nrScores; scoreIdx++) {
+            String accession = block.readString(SpectraColumn.SCORE_ACCESSION);
+            String name = block.readString(SpectraColumn.SCORE_NAME);
+            psm.addScore(new ScoreModel(block.readDouble(SpectraColumn.SCORE_VALUE), accession, name));
+        }
+
+        int nrModifications = block.readInt(SpectraColumn.NR_MODIFICATIONS);
+        for (int modIdx = 0; modIdx < nrModifications; modIdx++) {
+            int location = block.readInt(SpectraColumn.MODIFICATION_LOCATION);
+            psm.addModification(location, readModification(block));
+        }
+
+        byte flags = block.readByte(SpectraColumn.FLAGS);
+        if ((flags & PIABinaryFormat.FLAG_HAS_DECOY) != 0) {
+            psm.setIsDecoy((flags & PIABinaryFormat.FLAG_IS_DECOY) != 0);
+        }
+        if ((flags & PIABinaryFormat.FLAG_HAS_UNIQUE) != 0) {
+            psm.setIsUnique((flags & PIABinaryFormat.FLAG_IS_UNIQUE) != 0);
+        }
+
+        int nrParams = block.readInt(SpectraColumn.NR_PARAMS);
+        for (int paramIdx = 0; paramIdx < nrParams; paramIdx++) {
+            psm.addParam(readPSMParam(block));
+        }
+
+        return psm;
+    }
+
+
+    /**
+     * Reads the next modification (without its location) from the block.
+     */
+    private static Modification readModification(ColumnBlockReader<SpectraColumn> block) {
+        char residue = block.readChar(SpectraColumn.MODIFICATION_RESIDUE);
+        Double mass = block.readDouble(SpectraColumn.MODIFICATION_MASS);
+        String description = block.readString(SpectraColumn.MODIFICATION_DESCRIPTION);
+        String accession = block.readString(SpectraColumn.MODIFICATION_ACCESSION);
+        String cvLabel = block.readString(SpectraColumn.MODIFICATION_CV_LABEL);
+
+        int nrProbabilities = block.readInt(SpectraColumn.MODIFICATION_NR_PROBABILITIES);
+        List<ScoreModel> probabilities = new ArrayList<>(nrProbabilities);
+        for (int probIdx = 0; probIdx < nrProbabilities; probIdx++) {
+            String probAccession = block.readString(SpectraColumn.PROBABILITY_ACCESSION);
+            String probName = block.readString(SpectraColumn.PROBABILITY_NAME);
+            String probCvLabel = block.readString(SpectraColumn.PROBABILITY_CV_LABEL);
+            probabilities.add(new ScoreModel(block.readDouble(SpectraColumn.PROBABILITY_VALUE),
+                    probAccession, probName, probCvLabel));
+        }
+
+        return new Modification(residue, mass, description, accession, cvLabel, probabilities);
+    }
+
+
+    /**
+     * Reads the next cvParam or userParam from the block.
+     */
+    private AbstractParam readPSMParam(ColumnBlockReader<SpectraColumn> block) {
+        byte type = block.readByte(SpectraColumn.PARAM_TYPE);
+        String accessionOrType = block.readString(SpectraColumn.PARAM_ACCESSION_OR_TYPE);
+        String cvRef = block.readString(SpectraColumn.PARAM_CV_REF);
+
+        AbstractParam param;
+        if (type == PIABinaryFormat.PARAM_CV) {
+            CvParam cvParam = new CvParam();
+            cvParam.setAccession(accessionOrType);
+            if (cvRef != null) {
+                cvParam.setCv(getParamCv(cvRef));
+            }
+            param = cvParam;
+        } else {
+            UserParam userParam = new UserParam();
+            userParam.setType(accessionOrType);
+            param = userParam;
+        }
+
+        param.setName(block.readString(SpectraColumn.PARAM_NAME));
+        param.setValue(block.readString(SpectraColumn.PARAM_VALUE));
+        param.setUnitAccession(block.readString(SpectraColumn.PARAM_UNIT_ACCESSION));
+        param.setUnitName(block.readString(SpectraColumn.PARAM_UNIT_NAME));
+
+        String unitCvRef = block.readString(SpectraColumn.PARAM_UNIT_CV_REF);
+        if (unitCvRef != null) {
+            param.setUnitCv(getParamCv(unitCvRef));
+        }
+
+        return param;
+    }
+
+
+    /**
+     * Gets the Cv with the given ID, which is used for the references of the
+     * params. The Cv is created on the first call.
+     */
+    private Cv getParamCv(String cvRef) {
+        if (paramCvs == null) {
+            paramCvs = new HashMap<>();
+        }
+
+        return paramCvs.computeIfAbsent(cvRef, ref -> {
+            Cv cv = new Cv();
+            cv.setId(ref);
+            return cv;
+        });
+    }
+
+
+    /**
+     * Reads the next accession from the block. The group is set later with
+     * the groups.
+     */
+    private static Accession readAccession(ColumnBlockReader<AccessionColumn> block) {
+        long id = block.readLong(AccessionColumn.ID);
+        String accession = block.readString(AccessionColumn.ACCESSION);
+        String sequence = block.readString(AccessionColumn.SEQUENCE);
+
+        int nrFileRefs = block.readInt(AccessionColumn.NR_FILE_REFS);
+        Set<Long> filesSet = new HashSet<>(nrFileRefs);
+        for (int refIdx = 0; refIdx < nrFileRefs; refIdx++) {
+            filesSet.add(block.readID(AccessionColumn.FILE_REF));
+        }
+
+        int nrDescriptions = block.readInt(AccessionColumn.NR_DESCRIPTIONS);
+        Map<Long, String> descriptions = new HashMap<>(nrDescriptions);
+        for (int descIdx = 0; descIdx < nrDescriptions; descIdx++) {
+            descriptions.put(block.readID(AccessionColumn.DESCRIPTION_FILE_REF),
+                    block.readString(AccessionColumn.DESCRIPTION_VALUE));
+        }
+
+        int nrDbRefs = block.readInt(AccessionColumn.NR_SEARCH_DATABASE_REFS);
+        Set<String> searchDatabaseRefs = new HashSet<>(nrDbRefs);
+        for (int refIdx = 0; refIdx < nrDbRefs; refIdx++) {
+            searchDatabaseRefs.add(block.readString(AccessionColumn.SEARCH_DATABASE_REF));
+        }
+
+        return new Accession(id, accession, filesSet, descriptions, sequence, searchDatabaseRefs, null);
+    }
+
+
+    /**
+     * Reads the next peptide from the block and links it with its PSMs and
+     * accessions.
+     */
+    private Peptide readPeptide(ColumnBlockReader<PeptideColumn> block) {
+        Peptide peptide = new Peptide(block.readLong(PeptideColumn.ID),
+                block.readString(PeptideColumn.SEQUENCE));
+
+        int nrSpectra = block.readInt(PeptideColumn.NR_SPECTRUM_REFS);
+        List<PeptideSpectrumMatch> psmList = new ArrayList<>(nrSpectra);
+        for (int refIdx = 0; refIdx < nrSpectra; refIdx++) {
+            long psmID = block.readLong(PeptideColumn.SPECTRUM_REF);
+            PeptideSpectrumMatch psm = psms.get(psmID);
+
+            if (psm != null) {
+                psmList.add(psm);
+                // backlink the peptide in the PSM
+                psm.setPeptide(peptide);
+            } else {
+                LOGGER.warn("No spectrumMatch found for '{}'", psmID);
+            }
+        }
+        peptide.setSpectra(psmList);
+
+        int nrOccurrences = block.readInt(PeptideColumn.NR_OCCURRENCES);
+        for (int occIdx = 0; occIdx < nrOccurrences; occIdx++) {
+            long accessionID = block.readLong(PeptideColumn.OCCURRENCE_ACCESSION_REF);
+            int start = block.readInt(PeptideColumn.OCCURRENCE_START);
+            int end = block.readInt(PeptideColumn.OCCURRENCE_END);
+            Accession acc = accessions.get(accessionID);
+
+            if (acc != null) {
+                peptide.addAccessionOccurrence(acc, start, end);
+            } else {
+                LOGGER.warn("No accession found for occurrence '{}'", accessionID);
+            }
+        }
+
+        return peptide;
+    }
+
+
+    /**
+     * Reads the next group from the block and links it with its accessions
+     * and peptides. The IDs of its children are put into the groupsChildren.
+     */
+    private Group readGroup(ColumnBlockReader<GroupColumn> block, Map<Long, long[]> groupsChildren) {
+        Group group = new Group(block.readLong(GroupColumn.ID));
+        group.setTreeID(block.readLong(GroupColumn.TREE_ID));
+
+        int nrAccessions = block.readInt(GroupColumn.NR_ACCESSION_REFS);
+        for (int refIdx = 0; refIdx < nrAccessions; refIdx++) {
+            long accessionID = block.readLong(GroupColumn.ACCESSION_REF);
+            Accession accession = accessions.get(accessionID);
+
+            if (accession != null) {
+                group.addAccession(accession);
+                // now the accession's group can be set
+                accession.setGroup(group);
+            } else {
+                LOGGER.warn("No accession found for groups reference '{}'", accessionID);
+            }
+        }
+
+        int nrPeptides = block.readInt(GroupColumn.NR_PEPTIDE_REFS);
+        for (int refIdx = 0; refIdx < nrPeptides; refIdx++) {
+            long peptideID = block.readLong(GroupColumn.PEPTIDE_REF);
+            Peptide peptide = peptides.get(peptideID);
+
+            if (peptide != null) {
+                group.addPeptide(peptide);
+                // now the peptide's group can be set
+                peptide.setGroup(group);
+            } else {
+                LOGGER.warn("No peptide found for groups reference '{}'", peptideID);
+            }
+        }
+
+        int nrChildren = block.readInt(GroupColumn.NR_CHILD_REFS);
+        if (nrChildren > 0) {
+            long[] children = new long[nrChildren];
+            for (int refIdx = 0; refIdx < nrChildren; refIdx++) {
+                children[refIdx] = block.readLong(GroupColumn.CHILD_REF);
+            }
+            groupsChildren.put(group.getID(), children);
+        }
+
+        return group;
+    }
+
+
+    /**
+     * Sets the children and parents of the groups and builds the trees'
+     * closure indices.
+     */
+    private void connectGroupsChildren(Map<Long, long[]> groupsChildren) {
+        for (Map.Entry<Long, long[]> groupChildIt : groupsChildren.entrySet()) {
+            Group group = groups.get(groupChildIt.getKey());
+
+            for (long childID : groupChildIt.getValue()) {
+                Group child = groups.get(childID);
+
+                if (child != null) {
+                    group.addChild(child);
+                    child.addParent(group);
+                } else {
+                    LOGGER.warn("No group found for child reference '{}'", childID);
+                }
+            }
+        }
+
+        GroupTreeIndex.buildIndices(groups.values());
+    }
+
+
+    /**
+     * Loads all sections before serializing.
+     *
+     * @param out
+     * @throws IOException
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        for (Section section : Section.values()) {
+            loadSection(section);
+        }
+        out.defaultWriteObject();
+    }
+
+
+    /**
+     * Getter for the name of the read file, null if it was read from a buffer.
+     * @return
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+
+    @Override
+    public String getProjectName() {
+        return projectName;
+    }
+
+
+    @Override
+    public String getProjectDate() {
+        return projectDate;
+    }
+
+
+    @Override
+    public Map<Long, PIAInputFile> getFiles() {
+        ensureLoaded(Section.FILES);
+        return files;
+    }
+
+
+    @Override
+    public Map<String, SpectraData> getSpectraData() {
+        ensureLoaded(Section.INPUTS);
+        return spectraData;
+    }
+
+
+    @Override
+    public Map<String, SearchDatabase> getSearchDatabase() {
+        ensureLoaded(Section.INPUTS);
+        return searchDatabases;
+    }
+
+
+    @Override
+    public Map<String, AnalysisSoftware> getAnalysisSoftware() {
+        ensureLoaded(Section.ANALYSIS_SOFTWARE);
+        return software;
+    }
+
+
+    @Override
+    public Map<Long, PeptideSpectrumMatch> getPSMs() {
+        ensureLoaded(Section.SPECTRA);
+        return psms;
+    }
+
+
+    @Override
+    public Map<Long, Peptide> getPeptides() {
+        ensureLoaded(Section.PEPTIDES);
+        return peptides;
+    }
+
+
+    @Override
+    public Map<Long, Accession> getAccessions() {
+        ensureLoaded(Section.ACCESSIONS);
+        return accessions;
+    }
+
+
+    @Override
+    public Map<Long, Group> getGroups() {
+        ensureLoaded(Section.GROUPS);
+        return groups;
+    }
+
+
+    @Override
+    public Map<String, Set<Long>> getPSMSetSettingsWarnings() {
+        ensureLoaded(Section.SPECTRA);
+        return psmSetSettingsWarnings;
+    }
+}
@@ -0,0 +1,483 @@
+package de.mpc.pia.intermediate.binaryhandler;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.ac.ebi.jmzidml.model.mzidml.AbstractParam;
+import uk.ac.ebi.jmzidml.model.mzidml.AnalysisSoftwareList;
+import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
+import uk.ac.ebi.jmzidml.model.mzidml.Inputs;
+import uk.ac.ebi.jmzidml.model.mzidml.UserParam;
+import uk.ac.ebi.jmzidml.model.utils.ModelConstants;
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.AccessionOccurrence;
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.Modification;
+import de.mpc.pia.intermediate.PIAIntermediateData;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat.AccessionColumn;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat.GroupColumn;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat.PeptideColumn;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat.Section;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat.SpectraColumn;
+import de.mpc.pia.intermediate.piaxml.FilesListXML;
+import de.mpc.pia.intermediate.piaxml.PIAInputFileXML;
+import de.mpc.pia.modeller.score.ScoreModel;
+
+
+/**
+ * Writes the content of a PIA intermediate file into the binary format,
+ * described in {@link PIABinaryFormat}.
+ *
+ * @author julianu
+ *
+ */
+public class PIABinaryWriter {
+
+    /** logger for this class */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+
+    /** the written data */
+    private final PIAIntermediateData data;
+
+    /** the entries of the section index, each with section ordinal, offset and length */
+    private final List<long[]> sectionIndex;
+
+
+    /**
+     * Writes the values of one object into the columns of a block.
+     */
+    @FunctionalInterface
+    private interface ObjectColumnWriter<T, C extends Enum<C>> {
+        void write(T object, ColumnBlockWriter<C> block) throws IOException;
+    }
+
+
+    /**
+     * Creates a writer for the given data.
+     *
+     * @param data
+     */
+    public PIABinaryWriter(PIAIntermediateData data) {
+        this.data = data;
+        this.sectionIndex = new ArrayList<>();
+    }
+
+
+    /**
+     * Writes the data into the given file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        LOGGER.info("Writing binary PIA intermediate file {}", file);
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(out);
+        }
+
+        LOGGER.info("Writing of binary PIA intermediate file finished.");
+    }
+
+
+    /**
+     * Writes the data into the given stream, the offsets in the index are
+     * relative to the current position of the stream. The stream is flushed
+     * but not closed afterwards.
+     *
+     * @param outputStream
+     * @throws IOException
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        sectionIndex.clear();
+
+        CountingOutputStream counter = new CountingOutputStream(
+                new BufferedOutputStream(outputStream, PIABinaryFormat.BLOCK_SIZE));
+        DataOutputStream out = new DataOutputStream(counter);
+
+        try {
+            out.write(PIABinaryFormat.MAGIC_BYTES);
+            out.writeInt(PIABinaryFormat.FORMAT_VERSION);
+
+            // the project
+            long start = counter.getCount();
+            ColumnBlockWriter.writeUTF8String(out, data.getProjectName());
+            ColumnBlockWriter.writeUTF8String(out, data.getProjectDate());
+            addIndexEntry(Section.PROJECT, start, counter.getCount());
+
+            // the mzIdentML objects as XML fragments
+            writeXMLFragmentSection(out, counter, Section.FILES, createFilesListElement());
+            writeXMLFragmentSection(out, counter, Section.INPUTS, createInputsElement());
+            writeXMLFragmentSection(out, counter, Section.ANALYSIS_SOFTWARE, createAnalysisSoftwareElement());
+
+            // the columnar sections
+            writeColumnarSection(out, counter, Section.SPECTRA, data.getPSMs().values(),
+                    SpectraColumn.class, PIABinaryWriter::writePSM);
+            writeColumnarSection(out, counter, Section.ACCESSIONS, data.getAccessions().values(),
+                    AccessionColumn.class, PIABinaryWriter::writeAccession);
+            writeColumnarSection(out, counter, Section.PEPTIDES, data.getPeptides().values(),
+                    PeptideColumn.class, PIABinaryWriter::writePeptide);
+            writeColumnarSection(out, counter, Section.GROUPS, data.getGroups().values(),
+                    GroupColumn.class, PIABinaryWriter::writeGroup);
+
+            // the index and its offset
+            long indexOffset = counter.getCount();
+            out.writeInt(sectionIndex.size());
+            for (long[] entry : sectionIndex) {
+                out.writeInt((int) entry[0]);
+                out.writeLong(entry[1]);
+                out.writeLong(entry[2]);
+            }
+            out.writeLong(indexOffset);
+            out.flush();
+        } catch (JAXBException e) {
+            LOGGER.error("Error while writing binary PIA intermediate file", e);
+            throw new IOException(e);
+        }
+    }
+
+
+    /**
+     * Adds an entry into the section index.
+     */
+    private void addIndexEntry(Section section, long start, long end) {
+        sectionIndex.add(new long[] {section.ordinal(), start, end - start});
+    }
+
+
+    /**
+     * Creates the JAXB element of the files list.
+     */
+    private JAXBElement<FilesListXML> createFilesListElement() {
+        FilesListXML filesListXML = new FilesListXML();
+        data.getFiles().values().stream()
+                .map(PIAInputFileXML::new)
+                .forEach(filesListXML.getFiles()::add);
+
+        return new JAXBElement<>(new QName("filesList"), FilesListXML.class, filesListXML);
+    }
+
+
+    /**
+     * Creates the JAXB element of the Inputs.
+     */
+    private JAXBElement<Inputs> createInputsElement() {
+        Inputs inputs = new Inputs();
+        inputs.getSearchDatabase().addAll(data.getSearchDatabase().values());
+        inputs.getSpectraData().addAll(data.getSpectraData().values());
+
+        return new JAXBElement<>(ModelConstants.getQNameForClass(Inputs.class), Inputs.class, inputs);
+    }
+
+
+    /**
+     * Creates the JAXB element of the AnalysisSoftwareList.
+     */
+    private JAXBElement<AnalysisSoftwareList> createAnalysisSoftwareElement() {
+        AnalysisSoftwareList softwareList = new AnalysisSoftwareList();
+        softwareList.getAnalysisSoftware().addAll(data.getAnalysisSoftware().values());
+
+        return new JAXBElement<>(ModelConstants.getQNameForClass(AnalysisSoftwareList.class),
+                AnalysisSoftwareList.class, softwareList);
+    }
+
+
+    /**
+     * Writes the given element as (unformatted) XML into a section.
+     *
+     * @throws JAXBException
+     * @throws IOException
+     */
+    private <T> void writeXMLFragmentSection(DataOutputStream out, CountingOutputStream counter,
+            Section section, JAXBElement<T> element) throws JAXBException, IOException {
+        Marshaller m = JAXBContext.newInstance(element.getDeclaredType()).createMarshaller();
+        m.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+        m.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+
+        ByteArrayOutputStream fragment = new ByteArrayOutputStream();
+        m.marshal(element, fragment);
+
+        long start = counter.getCount();
+        fragment.writeTo(out);
+        addIndexEntry(section, start, counter.getCount());
+    }
+
+
+    /**
+     * Writes the objects column-wise into blocks of at most
+     * {@link PIABinaryFormat#BLOCK_SIZE} objects, each block gets its own
+     * index entry.
+     *
+     * @throws IOException
+     */
+    private <T, C extends Enum<C>> void writeColumnarSection(DataOutputStream out, CountingOutputStream counter,
+            Section section, Collection<T> objects, Class<C> columnClass,
+            ObjectColumnWriter<T, C> objectWriter) throws IOException {
+        ColumnBlockWriter<C> block = new ColumnBlockWriter<>(columnClass);
+
+        for (T object : objects) {
+            objectWriter.write(object, block);
+            block.objectFinished();
+
+            if (block.getNrObjects() >= PIABinaryFormat.BLOCK_SIZE) {
+                writeBlock(out, counter, section, block);
+            }
+        }
+
+        if (block.getNrObjects() > 0) {
+            writeBlock(out, counter, section, block);
+        }
+
+        LOGGER.debug("{} written, {} objects", section, objects.size());
+    }
+
+
+    /**
+     * Writes the block and adds its entry into the index.
+     *
+     * @throws IOException
+     */
+    private <C extends Enum<C>> void writeBlock(DataOutputStream out, CountingOutputStream counter,
+            Section section, ColumnBlockWriter<C> block) throws IOException {
+        long start = counter.getCount();
+        block.writeTo(out);
+        addIndexEntry(section, start, counter.getCount());
+    }
+
+
+    /**
+     * Writes the PSM into the columns of the block.
+     */
+    private static void writePSM(PeptideSpectrumMatch psm, ColumnBlockWriter<SpectraColumn> block)
+            throws IOException {
+        block.writeLong(SpectraColumn.ID, psm.getID());
+        block.writeID(SpectraColumn.FILE_REF, (psm.getFile() != null) ? psm.getFile().getID() : null);
+        block.writeString(SpectraColumn.SPECTRUM_IDENTIFICATION_REF,
+                (psm.getSpectrumIdentification() != null) ? psm.getSpectrumIdentification().getId() : null);
+        block.writeInt(SpectraColumn.CHARGE, psm.getCharge());
+        block.writeDouble(SpectraColumn.MASS_TO_CHARGE, psm.getMassToCharge());
+        block.writeDouble(SpectraColumn.DELTA_MASS, psm.getDeltaMass());
+        block.writeDouble(SpectraColumn.RETENTION_TIME, psm.getRetentionTime());
+        block.writeByte(SpectraColumn.FLAGS, createPSMFlags(psm));
+        block.writeString(SpectraColumn.SEQUENCE, psm.getSequence());
+        block.writeInt(SpectraColumn.MISSED, psm.getMissedCleavages());
+        block.writeString(SpectraColumn.SOURCE_ID, psm.getSourceID());
+        block.writeString(SpectraColumn.TITLE, psm.getSpectrumTitle());
+
+        block.writeInt(SpectraColumn.NR_SCORES, psm.getScores().size());
+        for (ScoreModel score : psm.getScores()) {
+            block.writeString(SpectraColumn.SCORE_ACCESSION, score.getAccession());
+            block.writeString(SpectraColumn.SCORE_NAME, score.getName());
+            block.writeDouble(SpectraColumn.SCORE_VALUE, score.getValue());
+        }
+
+        block.writeInt(SpectraColumn.NR_MODIFICATIONS, psm.getModifications().size());
+        for (Map.Entry<Integer, Modification> modIt : psm.getModifications().entrySet()) {
+            Modification mod = modIt.getValue();
+            block.writeInt(SpectraColumn.MODIFICATION_LOCATION, modIt.getKey());
+            block.writeChar(SpectraColumn.MODIFICATION_RESIDUE, mod.getResidue());
+            block.writeDouble(SpectraColumn.MODIFICATION_MASS, mod.getMass());
+            block.writeString(SpectraColumn.MODIFICATION_DESCRIPTION, mod.getDescription());
+            block.writeString(SpectraColumn.MODIFICATION_ACCESSION, mod.getAccession());
+            block.writeString(SpectraColumn.MODIFICATION_CV_LABEL, mod.getCvLabel());
+
+            List<ScoreModel> probabilities = mod.getProbability();
+            block.writeInt(SpectraColumn.MODIFICATION_NR_PROBABILITIES,
+                    (probabilities != null) ? probabilities.size() : 0);
+            if (probabilities != null) {
+                for (ScoreModel probability : probabilities) {
+                    block.writeString(SpectraColumn.PROBABILITY_ACCESSION, probability.getAccession());
+                    block.writeString(SpectraColumn.PROBABILITY_NAME, probability.getName());
+                    block.writeString(SpectraColumn.PROBABILITY_CV_LABEL, probability.getCvLabel());
+                    block.writeDouble(SpectraColumn.PROBABILITY_VALUE, probability.getValue());
+                }
+            }
+        }
+
+        block.writeInt(SpectraColumn.NR_PARAMS, psm.getParams().size());
+        for (AbstractParam param : psm.getParams()) {
+            writePSMParam(param, block);
+        }
+    }
+
+
+    /**
+     * Creates the flags for the decoy and uniqueness information of the PSM.
+     */
+    private static byte createPSMFlags(PeptideSpectrumMatch psm) {
+        byte flags = 0;
+        if (psm.getIsDecoy() != null) {
+            flags |= PIABinaryFormat.FLAG_HAS_DECOY;
+            if (psm.getIsDecoy()) {
+                flags |= PIABinaryFormat.FLAG_IS_DECOY;
+            }
+        }
+        if (psm.getIsUnique() != null) {
+            flags |= PIABinaryFormat.FLAG_HAS_UNIQUE;
+            if (psm.getIsUnique()) {
+                flags |= PIABinaryFormat.FLAG_IS_UNIQUE;
+            }
+        }
+        return flags;
+    }
+
+
+    /**
+     * Writes a cvParam or userParam of a PSM into the columns of the block.
+     */
+    private static void writePSMParam(AbstractParam param, ColumnBlockWriter<SpectraColumn> block)
+            throws IOException {
+        if (param instanceof CvParam) {
+            block.writeByte(SpectraColumn.PARAM_TYPE, PIABinaryFormat.PARAM_CV);
+            block.writeString(SpectraColumn.PARAM_ACCESSION_OR_TYPE, ((CvParam) param).getAccession());
+            block.writeString(SpectraColumn.PARAM_CV_REF, ((CvParam) param).getCvRef());
+        } else {
+            block.writeByte(SpectraColumn.PARAM_TYPE, PIABinaryFormat.PARAM_USER);
+            block.writeString(SpectraColumn.PARAM_ACCESSION_OR_TYPE,
+                    (param instanceof UserParam) ? ((UserParam) param).getType() : null);
+            block.writeString(SpectraColumn.PARAM_CV_REF, null);
+        }
+
+        block.writeString(SpectraColumn.PARAM_NAME, param.getName());
+        block.writeString(SpectraColumn.PARAM_VALUE, param.getValue());
+        block.writeString(SpectraColumn.PARAM_UNIT_ACCESSION, param.getUnitAccession());
+        block.writeString(SpectraColumn.PARAM_UNIT_NAME, param.getUnitName());
+        block.writeString(SpectraColumn.PARAM_UNIT_CV_REF, param.getUnitCvRef());
+    }
+
+
+    /**
+     * Writes the accession into the columns of the block.
+     */
+    private static void writeAccession(Accession accession, ColumnBlockWriter<AccessionColumn> block)
+            throws IOException {
+        block.writeLong(AccessionColumn.ID, accession.getID());
+        block.writeString(AccessionColumn.ACCESSION, accession.getAccession());
+        block.writeString(AccessionColumn.SEQUENCE, accession.getDbSequence());
+
+        block.writeInt(AccessionColumn.NR_FILE_REFS, accession.getFiles().size());
+        for (Long fileID : accession.getFiles()) {
+            block.writeID(AccessionColumn.FILE_REF, fileID);
+        }
+
+        block.writeInt(AccessionColumn.NR_DESCRIPTIONS, accession.getDescriptions().size());
+        for (Map.Entry<Long, String> descIt : accession.getDescriptions().entrySet()) {
+            block.writeID(AccessionColumn.DESCRIPTION_FILE_REF, descIt.getKey());
+            block.writeString(AccessionColumn.DESCRIPTION_VALUE, descIt.getValue());
+        }
+
+        block.writeInt(AccessionColumn.NR_SEARCH_DATABASE_REFS, accession.getSearchDatabaseRefs().size());
+        for (String dbRef : accession.getSearchDatabaseRefs()) {
+            block.writeString(AccessionColumn.SEARCH_DATABASE_REF, dbRef);
+        }
+    }
+
+
+    /**
+     * Writes the peptide into the columns of the block.
+     */
+    private static void writePeptide(Peptide peptide, ColumnBlockWriter<PeptideColumn> block)
+            throws IOException {
+        block.writeLong(PeptideColumn.ID, peptide.getID());
+        block.writeString(PeptideColumn.SEQUENCE, peptide.getSequence());
+
+        List<Long> spectrumIDs = peptide.getSpectrumIDs();
+        block.writeInt(PeptideColumn.NR_SPECTRUM_REFS, spectrumIDs.size());
+        for (Long psmID : spectrumIDs) {
+            block.writeLong(PeptideColumn.SPECTRUM_REF, psmID);
+        }
+
+        block.writeInt(PeptideColumn.NR_OCCURRENCES, peptide.getAccessionOccurrences().size());
+        for (AccessionOccurrence occ : peptide.getAccessionOccurrences()) {
+            block.writeLong(PeptideColumn.OCCURRENCE_ACCESSION_REF, occ.getAccession().getID());
+            block.writeInt(PeptideColumn.OCCURRENCE_START, occ.getStart());
+            block.writeInt(PeptideColumn.OCCURRENCE_END, occ.getEnd());
+        }
+    }
+
+
+    /**
+     * Writes the group into the columns of the block.
+     */
+    private static void writeGroup(Group group, ColumnBlockWriter<GroupColumn> block)
+            throws IOException {
+        block.writeLong(GroupColumn.ID, group.getID());
+        block.writeLong(GroupColumn.TREE_ID, group.getTreeID());
+
+        block.writeInt(GroupColumn.NR_ACCESSION_REFS, group.getAccessions().size());
+        for (Accession accession : group.getAccessions().values()) {
+            block.writeLong(GroupColumn.ACCESSION_REF, accession.getID());
+        }
+
+        Map<String, Peptide> peptides = group.getPeptides();
+        block.writeInt(GroupColumn.NR_PEPTIDE_REFS, (peptides != null) ? peptides.size() : 0);
+        if (peptides != null) {
+            for (Peptide peptide : peptides.values()) {
+                block.writeLong(GroupColumn.PEPTIDE_REF, peptide.getID());
+            }
+        }
+
+        block.writeInt(GroupColumn.NR_CHILD_REFS, group.getChildren().size());
+        for (Long childID : group.getChildren().keySet()) {
+            block.writeLong(GroupColumn.CHILD_REF, childID);
+        }
+    }
+
+
+    /**
+     * An output stream counting the written bytes, which gives the offsets of
+     * the sections.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        /** the number of written bytes */
+        private long count;
+
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+            count = 0;
+        }
+
+
+        long getCount() {
+            return count;
+        }
+
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
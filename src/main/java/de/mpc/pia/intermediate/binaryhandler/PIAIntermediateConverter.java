@@ -0,0 +1,117 @@
+package de.mpc.pia.intermediate.binaryhandler;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.mpc.pia.intermediate.PIAIntermediateData;
+import de.mpc.pia.intermediate.xmlhandler.PIAFileCompression;
+import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler;
+import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateXMLWriter;
+
+
+/**
+ * Converts PIA intermediate files between the PIA XML and the binary format.
+ * The format of the input file is detected by its content, the format of the
+ * output file by its name: files ending with
+ * {@link PIABinaryFormat#FILE_SUFFIX} are written in the binary format, all
+ * others as (possibly compressed) PIA XML.
+ *
+ * @author julianu
+ *
+ */
+public class PIAIntermediateConverter {
+
+    /** logger for this class */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private PIAIntermediateConverter() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Reads the given PIA intermediate file, either in PIA XML or in the
+     * binary format.
+     *
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    public static PIAIntermediateData readIntermediateFile(String fileName) throws IOException {
+        if (PIABinaryFormat.isBinaryIntermediateFile(fileName)) {
+            PIABinaryHandler binaryHandler = new PIABinaryHandler(fileName);
+            binaryHandler.parse(null);
+            return binaryHandler;
+        } else {
+            PIAIntermediateJAXBHandler xmlHandler = new PIAIntermediateJAXBHandler();
+            xmlHandler.parse(fileName, null);
+            return xmlHandler;
+        }
+    }
+
+
+    /**
+     * Writes the data into the given file, the format is chosen by the file
+     * name.
+     *
+     * @param data
+     * @param outFile
+     * @throws IOException
+     */
+    public static void writeIntermediateFile(PIAIntermediateData data, File outFile) throws IOException {
+        if (outFile.getName().endsWith(PIABinaryFormat.FILE_SUFFIX)) {
+            new PIABinaryWriter(data).write(outFile);
+        } else {
+            PIAFileCompression compression = PIAFileCompression.getByFileName(outFile.getName());
+            try (OutputStream out = compression.compressingStream(
+                    new BufferedOutputStream(new FileOutputStream(outFile)))) {
+                new PIAIntermediateXMLWriter(data).write(out);
+            }
+        }
+    }
+
+
+    /**
+     * Converts the input file into the output file.
+     *
+     * @param inFileName
+     * @param outFileName
+     * @throws IOException
+     */
+    public static void convert(String inFileName, String outFileName) throws IOException {
+        LOGGER.info("Converting {} to {}", inFileName, outFileName);
+        writeIntermediateFile(readIntermediateFile(inFileName), new File(outFileName));
+        LOGGER.info("Conversion finished");
+    }
+
+
+    /**
+     * Converts the file given by the first argument into the second.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            LOGGER.error("Usage: PIAIntermediateConverter <input file> <output file>"
+                    + "\n\toutput files ending with {} are written in the binary format, otherwise as PIA XML",
+                    PIABinaryFormat.FILE_SUFFIX);
+            return;
+        }
+
+        try {
+            convert(args[0], args[1]);
+        } catch (IOException e) {
+            LOGGER.error("Error while converting {}", args[0], e);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package de.mpc.pia.intermediate.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import de.mpc.pia.tools.UnionFind;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+
+/**
+ * Collects the connections between accessions and peptides and clusters them
+ * into connected components using a union-find over primitive node indices.
+ * <p>
+ * Each accession ID and peptide ID gets a dense node index on its first
+ * connection, every connection merges the sets of its accession and peptide.
+ * Building the clusters afterwards is linear in the number of nodes.
+ *
+ * @author julianu
+ *
+ */
+class AccessionPeptideClusterer {
+
+    /** maps from the accession IDs to the node indices */
+    private Long2IntOpenHashMap accessionNodes;
+
+    /** maps from the peptide IDs to the node indices */
+    private Long2IntOpenHashMap peptideNodes;
+
+    /** the accession or peptide ID of each node */
+    private long[] nodeIDs;
+
+    /** set for each node, which is a peptide */
+    private BitSet peptideNodeFlags;
+
+    /** the disjoint sets of the nodes */
+    private UnionFind unionFind;
+
+    /** the number of added connections */
+    private long nrConnections;
+
+
+    /**
+     * Creates an empty clusterer.
+     */
+    public AccessionPeptideClusterer() {
+        clear();
+    }
+
+
+    /**
+     * Adds the connection between the given accession and peptide.
+     *
+     * @param accessionID
+     * @param peptideID
+     */
+    public void addConnection(long accessionID, long peptideID) {
+        int accNode = getOrCreateNode(accessionNodes, accessionID, false);
+        int pepNode = getOrCreateNode(peptideNodes, peptideID, true);
+
+        unionFind.union(accNode, pepNode);
+        nrConnections++;
+    }
+
+
+    /**
+     * Returns the node index of the given ID in the given map, creating a new
+     * node if it is not yet mapped.
+     */
+    private int getOrCreateNode(Long2IntOpenHashMap nodes, long id, boolean isPeptide) {
+        int node = nodes.get(id);
+        if (node < 0) {
+            node = unionFind.makeSet();
+            nodes.put(id, node);
+
+            if (node == nodeIDs.length) {
+                long[] newIDs = new long[nodeIDs.length + (nodeIDs.length >> 1)];
+                System.arraycopy(nodeIDs, 0, newIDs, 0, nodeIDs.length);
+                nodeIDs = newIDs;
+            }
+            nodeIDs[node] = id;
+
+            if (isPeptide) {
+                peptideNodeFlags.set(node);
+            }
+        }
+        return node;
+    }
+
+
+    /**
+     * Returns the number of added connections.
+     *
+     * @return
+     */
+    public long getNrConnections() {
+        return nrConnections;
+    }
+
+
+    /**
+     * Returns the number of clusters given by the connections until now.
+     *
+     * @return
+     */
+    public int getNrClusters() {
+        return unionFind.getNrSets();
+    }
+
+
+    /**
+     * Builds the clusters, i.e. for each connected component a map from the
+     * peptide IDs to their accession IDs. The clusters are ordered by the
+     * first occurrence of one of their accessions in the given accession IDs,
+     * accessions without any connection are skipped. The peptides of a
+     * cluster are inserted ordered by their IDs, so the clusters do not
+     * depend on the order in which the connections were added.
+     *
+     * @param accessionIDs all accession IDs, in the order the clusters should
+     * be created
+     * @param peptidesAccessions gives for a peptide ID its accession IDs
+     * @return
+     */
+    public List<Map<Long, Collection<Long>>> buildClusters(Collection<Long> accessionIDs,
+            Function<Long, Collection<Long>> peptidesAccessions) {
+        int nrNodes = unionFind.size();
+        int[] roots = new int[nrNodes];
+        int[] clusterStarts = new int[nrNodes + 1];
+
+        // count the peptides of each cluster
+        for (int node = 0; node < nrNodes; node++) {
+            roots[node] = unionFind.find(node);
+            if (peptideNodeFlags.get(node)) {
+                clusterStarts[roots[node] + 1]++;
+            }
+        }
+        for (int node = 0; node < nrNodes; node++) {
+            clusterStarts[node + 1] += clusterStarts[node];
+        }
+
+        // bucket the peptide IDs by their cluster's root
+        long[] clusterPeptides = new long[clusterStarts[nrNodes]];
+        int[] fillPositions = new int[nrNodes];
+        System.arraycopy(clusterStarts, 0, fillPositions, 0, nrNodes);
+        for (int node = peptideNodeFlags.nextSetBit(0); node >= 0; node = peptideNodeFlags.nextSetBit(node + 1)) {
+            clusterPeptides[fillPositions[roots[node]]++] = nodeIDs[node];
+        }
+
+        List<Map<Long, Collection<Long>>> clusters = new ArrayList<>(unionFind.getNrSets());
+        BitSet rootsDone = new BitSet(nrNodes);
+        for (Long accID : accessionIDs) {
+            int accNode = accessionNodes.get(accID.longValue());
+            if (accNode < 0) {
+                continue;
+            }
+
+            int root = roots[accNode];
+            if (!rootsDone.get(root)) {
+                rootsDone.set(root);
+
+                int start = clusterStarts[root];
+                int end = clusterStarts[root + 1];
+                Arrays.sort(clusterPeptides, start, end);
+                Map<Long, Collection<Long>> pepAccMapCluster = new HashMap<>((int)((end - start) / 0.75f) + 1);
+                for (int i = start; i < end; i++) {
+                    Long pepId = clusterPeptides[i];
+                    pepAccMapCluster.put(pepId, peptidesAccessions.apply(pepId));
+                }
+                clusters.add(pepAccMapCluster);
+            }
+        }
+
+        return clusters;
+    }
+
+
+    /**
+     * Removes all the connections.
+     */
+    public final void clear() {
+        accessionNodes = new Long2IntOpenHashMap();
+        accessionNodes.defaultReturnValue(-1);
+        peptideNodes = new Long2IntOpenHashMap();
+        peptideNodes.defaultReturnValue(-1);
+        nodeIDs = new long[1024];
+        peptideNodeFlags = new BitSet();
+        unionFind = new UnionFind();
+        nrConnections = 0;
+    }
+}
@@ -0,0 +1,263 @@
+package de.mpc.pia.intermediate.compiler;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.mpc.pia.intermediate.Group;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+
+/**
+ * Schedules the building of the groups for the clusters of the peptide
+ * accession map on a {@link ForkJoinPool}.
+ * <p>
+ * The clusters are sorted by their estimated cost (number of peptides times
+ * number of accessions), largest first. The sorted clusters are recursively
+ * split into ranges of about equal cost, idle workers steal these ranges from
+ * the busy ones. The groups of each cluster are stored at the cluster's
+ * position, so the result does not depend on the number of threads or the
+ * processing order.
+ *
+ * @author julianu
+ *
+ */
+class ClusterBuildScheduler {
+
+    /** the clusters (maps from the peptide IDs to the accession IDs) */
+    private final List<Map<Long, Collection<Long>>> clusters;
+
+    /** builds the groups of a single cluster */
+    private final ClusterGroupBuilder groupBuilder;
+
+    /** the number of used threads */
+    private final int nrThreads;
+
+    /** the cluster indices, sorted by decreasing cost */
+    private int[] sortedClusters;
+
+    /** the accumulated costs of the sorted clusters, with a leading 0 */
+    private long[] costPrefixSums;
+
+    /** the maximal cost of a range, which is not split any further */
+    private long splitThreshold;
+
+    /** the groups of each cluster, at the cluster's index */
+    private Map<Long, Group>[] clusterGroups;
+
+    /** the statistics of each worker thread, by its pool index */
+    private final Map<Integer, WorkerStatistics> workerStatistics;
+
+
+    /** logger for this class */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** the number of ranges per thread aimed for, when splitting the clusters */
+    private static final int RANGES_PER_THREAD = 16;
+
+
+    /**
+     * Creates a scheduler for the given clusters.
+     *
+     * @param compiler the compiler holding the peptides and accessions
+     * @param clusters maps from the peptide IDs to the accession IDs
+     * @param nrThreads the number of used threads
+     */
+    public ClusterBuildScheduler(PIACompiler compiler,
+            List<Map<Long, Collection<Long>>> clusters, int nrThreads) {
+        this.clusters = clusters;
+        this.groupBuilder = new ClusterGroupBuilder(compiler);
+        this.nrThreads = Math.max(nrThreads, 1);
+        this.workerStatistics = new ConcurrentHashMap<>();
+    }
+
+
+    /**
+     * Estimates the costs for building the groups of the given cluster, i.e.
+     * the number of peptides times the number of accessions.
+     *
+     * @param cluster
+     * @return
+     */
+    static long estimateCost(Map<Long, Collection<Long>> cluster) {
+        LongOpenHashSet accessions = new LongOpenHashSet();
+        for (Collection<Long> accIDs : cluster.values()) {
+            for (Long accID : accIDs) {
+                accessions.add(accID.longValue());
+            }
+        }
+        return Math.max((long)cluster.size() * accessions.size(), 1L);
+    }
+
+
+    /**
+     * Builds the groups of all clusters.
+     *
+     * @return for each cluster (in the order of the given clusters) the groups
+     * mapped by their IDs, which start with 1 in each cluster
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Long, Group>[] buildClusterGroups() {
+        ForkJoinPool pool = new ForkJoinPool(nrThreads, fjPool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(fjPool);
+                    thread.setName("PIA-Worker-" + (thread.getPoolIndex() + 1));
+                    return thread;
+                }, null, false);
+
+        try {
+            long[] costs = new long[clusters.size()];
+            pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, clusters.size()).parallel()
+                    .forEach(idx -> costs[idx] = estimateCost(clusters.get(idx)))));
+
+            sortedClusters = IntStream.range(0, clusters.size()).boxed()
+                    .sorted(Comparator.<Integer>comparingLong(idx -> costs[idx]).reversed()
+                            .thenComparingInt(idx -> idx))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+
+            costPrefixSums = new long[sortedClusters.length + 1];
+            for (int i = 0; i < sortedClusters.length; i++) {
+                costPrefixSums[i + 1] = costPrefixSums[i] + costs[sortedClusters[i]];
+            }
+            splitThreshold = Math.max(costPrefixSums[sortedClusters.length] / ((long)nrThreads * RANGES_PER_THREAD), 1L);
+
+            if (sortedClusters.length > 0) {
+                LOGGER.info("estimated costs: total {}, largest cluster {}",
+                        costPrefixSums[sortedClusters.length], costs[sortedClusters[0]]);
+            }
+
+            clusterGroups = new Map[clusters.size()];
+
+            long start = System.nanoTime();
+            pool.invoke(new ClusterRangeTask(0, sortedClusters.length));
+            logWorkerStatistics(System.nanoTime() - start);
+        } finally {
+            pool.shutdown();
+        }
+
+        return clusterGroups;
+    }
+
+
+    /**
+     * Builds the groups of the cluster at the given position of the sorted
+     * clusters and records it in the worker's statistics.
+     *
+     * @param sortedIdx
+     */
+    private void processCluster(int sortedIdx) {
+        long start = System.nanoTime();
+        int clusterIdx = sortedClusters[sortedIdx];
+
+        clusterGroups[clusterIdx] = groupBuilder.buildGroups(clusters.get(clusterIdx));
+
+        WorkerStatistics statistics = getWorkerStatistics();
+        statistics.busyNanos += System.nanoTime() - start;
+        statistics.nrClusters++;
+        statistics.cost += costPrefixSums[sortedIdx + 1] - costPrefixSums[sortedIdx];
+    }
+
+
+    /**
+     * Returns the statistics of the current worker thread, each worker only
+     * changes its own statistics.
+     *
+     * @return
+     */
+    private WorkerStatistics getWorkerStatistics() {
+        int poolIndex = (Thread.currentThread() instanceof ForkJoinWorkerThread)
+                ? ((ForkJoinWorkerThread) Thread.currentThread()).getPoolIndex()
+                : -1;
+
+        WorkerStatistics statistics = workerStatistics.get(poolIndex);
+        if (statistics == null) {
+            statistics = workerStatistics.computeIfAbsent(poolIndex, idx -> new WorkerStatistics());
+        }
+        return statistics;
+    }
+
+
+    /**
+     * Logs the number of processed clusters and the utilization of each
+     * worker.
+     *
+     * @param wallNanos the overall building time
+     */
+    private void logWorkerStatistics(long wallNanos) {
+        for (Map.Entry<Integer, WorkerStatistics> statsIt : new TreeMap<>(workerStatistics).entrySet()) {
+            WorkerStatistics statistics = statsIt.getValue();
+            LOGGER.info("worker {}: {} clusters (cost {}), busy {} ms, utilization {}%",
+                    statsIt.getKey() + 1, statistics.nrClusters, statistics.cost,
+                    statistics.busyNanos / 1000000,
+                    (wallNanos > 0) ? Math.round(100.0 * statistics.busyNanos / wallNanos) : 100);
+        }
+    }
+
+
+    /**
+     * Statistics of one worker thread.
+     */
+    private static class WorkerStatistics {
+        /** the time spent building groups */
+        private long busyNanos;
+        /** the number of processed clusters */
+        private int nrClusters;
+        /** the estimated costs of the processed clusters */
+        private long cost;
+    }
+
+
+    /**
+     * Processes a range of the sorted clusters. Ranges above the threshold are
+     * split at the position of half their cost.
+     */
+    private class ClusterRangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** the first position in the sorted clusters */
+        private final int from;
+
+        /** the position after the last in the sorted clusters */
+        private final int to;
+
+
+        ClusterRangeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+
+        @Override
+        protected void compute() {
+            if ((to - from > 1) && (costPrefixSums[to] - costPrefixSums[from] > splitThreshold)) {
+                long halfCost = costPrefixSums[from] + (costPrefixSums[to] - costPrefixSums[from]) / 2;
+
+                // first position, where the accumulated cost reaches the half
+                int split = Arrays.binarySearch(costPrefixSums, from + 1, to, halfCost);
+                if (split < 0) {
+                    split = -split - 1;
+                }
+                split = Math.min(Math.max(split, from + 1), to - 1);
+
+                invokeAll(new ClusterRangeTask(from, split), new ClusterRangeTask(split, to));
+            } else {
+                for (int sortedIdx = from; sortedIdx < to; sortedIdx++) {
+                    processCluster(sortedIdx);
+                }
+            }
+        }
+    }
+}
@@ -16,67 +16,41 @@ import de.mpc.pia.intermediate.Peptide;
 
 
 /**
- * This thread builds up the intermediate structure given the peptide accession
- * map, more precisely the peptide accession map cluster.
+ * Builds up the intermediate structure, i.e. the groups, for single clusters
+ * of the peptide accession map.
+ * <p>
+ * The clusters are disjoint, so several clusters may be processed in parallel
+ * by the same builder.
  *
  * @author julian
  *
  */
-class CompilerWorkerThread extends Thread {
+class ClusterGroupBuilder {
 
-    /** the ID of this worker thread */
-    private int id;
-
-    /** the caller of this thread */
+    /** the compiler holding the peptides and accessions */
     private final PIACompiler parent;
 
-    /** the groups, which are processed by this thread */
-    private Map<Long, Group> threadGroups;
-
 
     /** logger for this class */
-    private static final Logger LOGGER = Logger.getLogger(CompilerWorkerThread.class);
+    private static final Logger LOGGER = Logger.getLogger(ClusterGroupBuilder.class);
 
 
-    public CompilerWorkerThread(int id, PIACompiler parent) {
-        this.id = id;
+    public ClusterGroupBuilder(PIACompiler parent) {
         this.parent = parent;
-        this.threadGroups = new HashMap<>();
-
-        this.setName("PIA-Worker-" + id);
     }
 
 
-    @Override
-    public void run() {
-        int workedClusters = 0;
-        long nrThreadGroups = 0;
-        long threadGroupOffset = 0;
-        Map<Long, Collection<Long>> cluster;
-
-        // get the next available cluster from the parent
-        cluster = parent.getNextCluster();
-        while (cluster != null) {
-            Map<Long, Group> subGroups = new HashMap<>();
-            cluster.entrySet().stream().forEach( pepIt -> insertIntoMap(parent.getPeptide(pepIt.getKey()), pepIt.getValue(), subGroups));
-
-            // merge the groups into the thread groups
-            workedClusters++;
-            for (Group group : subGroups.values()) {
-                nrThreadGroups++;
-                group.setOffset(threadGroupOffset);
-                group.setTreeID(workedClusters);
-                threadGroups.put(nrThreadGroups, group);
-            }
-            threadGroupOffset = nrThreadGroups;
-            parent.increaseBuildProgress();
-            cluster = parent.getNextCluster();
-        }
-
-        LOGGER.info(" <thread " + id + " has no more work after " +
-                workedClusters + " clusters> ");
-
-        parent.mergeClustersIntoMap(threadGroups, workedClusters);
+    /**
+     * Builds the groups of the given cluster. The IDs of the returned groups
+     * start with 1 and the tree ID is not yet set.
+     *
+     * @param cluster maps from the peptide IDs to the accession IDs
+     * @return the groups, mapped by their IDs
+     */
+    public Map<Long, Group> buildGroups(Map<Long, Collection<Long>> cluster) {
+        Map<Long, Group> subGroups = new HashMap<>();
+        cluster.entrySet().stream().forEach( pepIt -> insertIntoMap(parent.getPeptide(pepIt.getKey()), pepIt.getValue(), subGroups));
+        return subGroups;
     }
 
 
@@ -0,0 +1,79 @@
+package de.mpc.pia.intermediate.compiler;
+
+
+/**
+ * Describes an input file for the compilation, as used by
+ * {@link PIACompiler#getDataFromFiles(java.util.List)}.
+ *
+ * @author julianu
+ *
+ */
+public class CompilerInputFile {
+
+    /** just a name for easier identification */
+    private final String name;
+
+    /** the path to the file */
+    private final String fileName;
+
+    /** an additional information file for the search engine results (like RT for Tandem) */
+    private final String additionalInfoFileName;
+
+    /** the type of the file, if null it is guessed */
+    private final String inputFileType;
+
+
+    /**
+     * Basic constructor
+     *
+     * @param name just a name for easier identification
+     * @param fileName the path to the file
+     * @param additionalInfoFileName an additional information file for the
+     * search engine results (like RT for Tandem), may be null
+     * @param inputFileType the type of the search engine result file, if null
+     * it is guessed
+     */
+    public CompilerInputFile(String name, String fileName,
+            String additionalInfoFileName, String inputFileType) {
+        this.name = name;
+        this.fileName = fileName;
+        this.additionalInfoFileName = additionalInfoFileName;
+        this.inputFileType = inputFileType;
+    }
+
+
+    /**
+     * Getter for the name.
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Getter for the path to the file.
+     * @return
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+
+    /**
+     * Getter for the additional information file.
+     * @return
+     */
+    public String getAdditionalInfoFileName() {
+        return additionalInfoFileName;
+    }
+
+
+    /**
+     * Getter for the type of the file.
+     * @return
+     */
+    public String getInputFileType() {
+        return inputFileType;
+    }
+}
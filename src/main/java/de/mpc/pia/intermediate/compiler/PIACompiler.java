@@ -1,61 +1,56 @@
 package de.mpc.pia.intermediate.compiler;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
-import java.io.Writer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
-
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.namespace.NamespaceContext;
-import javax.xml.namespace.QName;
-import javax.xml.stream.FactoryConfigurationError;
-import javax.xml.stream.XMLOutputFactory;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamWriter;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.compomics.util.experiment.identification.matches.SpectrumMatch;
-import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
 
 import uk.ac.ebi.jmzidml.model.mzidml.AnalysisSoftware;
-import uk.ac.ebi.jmzidml.model.mzidml.AnalysisSoftwareList;
 import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
-import uk.ac.ebi.jmzidml.model.mzidml.Inputs;
+import uk.ac.ebi.jmzidml.model.mzidml.InputSpectra;
 import uk.ac.ebi.jmzidml.model.mzidml.SearchDatabase;
+import uk.ac.ebi.jmzidml.model.mzidml.SearchDatabaseRef;
 import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
 import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentification;
-import uk.ac.ebi.jmzidml.model.utils.ModelConstants;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationProtocol;
 import uk.ac.ebi.pride.utilities.pridemod.ModReader;
 import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.AccessionOccurrence;
 import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.GroupTreeIndex;
 import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.PIAIntermediateData;
 import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryWriter;
 import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
-import de.mpc.pia.intermediate.piaxml.AccessionXML;
-import de.mpc.pia.intermediate.piaxml.PIAInputFileXML;
-import de.mpc.pia.intermediate.piaxml.FilesListXML;
-import de.mpc.pia.intermediate.piaxml.GroupXML;
-import de.mpc.pia.intermediate.piaxml.PeptideXML;
-import de.mpc.pia.intermediate.piaxml.SpectrumMatchXML;
+import de.mpc.pia.intermediate.xmlhandler.PIAFileCompression;
+import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateXMLWriter;
 import de.mpc.pia.tools.MzIdentMLTools;
 import de.mpc.pia.tools.PIAConstants;
 import de.mpc.pia.tools.PIATools;
@@ -92,14 +87,8 @@ public abstract class PIACompiler {
      */
     private List<Map<Long, Collection<Long>>> clusteredPepAccMap;
 
-    /** the iterator over the clusters (maps from peptide IDs to the accession IDs */
-    private ListIterator<Map<Long, Collection<Long>>> clusterIterator;
-
-    /** how many clusters are processed until now */
-    private Long buildProgress;
-
-    /** offset for the merged clusters */
-    private Long clusterOffset;
+    /** collects the accession peptide connections and clusters them */
+    private AccessionPeptideClusterer clusterer;
 
     /** the SpectraData (like in mzIdentML) */
     private Map<String, SpectraData> spectraDataMap;
@@ -122,9 +111,21 @@ public abstract class PIACompiler {
     /** the OBO mapper, to get additional data */
     private OBOMapper oboMapper;
 
+    /** the compiler, whose mappers and parsers are used, if this compiler only stages the data of one file */
+    private PIACompiler mapperSource;
+
     /** the number of used threads */
     private int numThreads;
 
+    /** the maximal number of concurrently parsed files */
+    private int numParsingThreads;
+
+    /** whether isoleucine and leucine are treated as equal, when the peptides are mapped to the accession sequences */
+    private boolean ilEquivalentMapping;
+
+    /** whether Mascot DAT files are streamed instead of loaded into the memory */
+    private boolean streamMascotDatFiles;
+
 
     /** map of the groups */
     private Map<Long, Group> groups;
@@ -133,20 +134,8 @@ public abstract class PIACompiler {
     /** the default name for a compilation */
     public static final String DEFAULT_PIA_COMPILATION_NAME = "PIA compilation";
 
-    /** namespace declaration for jPiaXML */
-    private static String nsjPiaXML = "http://www.medizinisches-proteom-center.de/PIA/piaintermediate";
-
-    /** prefixdeclaration for jPiaXML */
-    private static String prefixjPiaXML = "pia";
-
-    /** namespace declaration for mzIdentML */
-    private static String nsMzIdentML = "http://psidev.info/psi/pi/mzIdentML/1.1";
-
-    /** prefix declaration for mzIdentML */
-    private static String prefixMzIdentML = "mzid";
-
-    /** encoding specification */
-    private static String encoding = "UTF-8";
+    /** buffer size for writing the XML files */
+    private static final int XML_BUFFER_SIZE = 65536;
 
 
     /**
@@ -157,18 +146,21 @@ public abstract class PIACompiler {
         startDate = new Date();
 
         files = new HashMap<>();
+        clusterer = new AccessionPeptideClusterer();
 
         spectraDataMap = new HashMap<>();
         searchDatabasesMap = new HashMap<>();
         softwareMap = new HashMap<>();
 
         oboMapper = null;
+        mapperSource = null;
 
         unimodParser = null;
         psiModParser = null;
         modReader = null;
 
         numThreads = 0;
+        ilEquivalentMapping = false;
     }
 
 
@@ -176,7 +168,10 @@ public abstract class PIACompiler {
      * Getter for the oboMapper. Initializes the OBOMapper on the first call.
      * @return
      */
-    public final OBOMapper getOBOMapper() {
+    public final synchronized OBOMapper getOBOMapper() {
+        if (mapperSource != null) {
+            return mapperSource.getOBOMapper();
+        }
         if (oboMapper == null) {
             oboMapper = new OBOMapper();
         }
@@ -190,7 +185,10 @@ public abstract class PIACompiler {
      *
      * @return
      */
-    public final UnimodParser getUnimodParser() {
+    public final synchronized UnimodParser getUnimodParser() {
+        if (mapperSource != null) {
+            return mapperSource.getUnimodParser();
+        }
         if (unimodParser == null) {
             LOGGER.info("Initializing unimod parser...");
             unimodParser = new UnimodParser();
@@ -204,7 +202,10 @@ public abstract class PIACompiler {
      * Getter for the PsiModParser. Initializes the parser on the first call.
      * @return
      */
-    public final PsiModParser getPsiModParser() {
+    public final synchronized PsiModParser getPsiModParser() {
+        if (mapperSource != null) {
+            return mapperSource.getPsiModParser();
+        }
         if (psiModParser == null) {
             psiModParser = new PsiModParser();
         }
@@ -220,7 +221,10 @@ public abstract class PIACompiler {
      *
      * @return
      */
-    public final ModReader getModReader() {
+    public final synchronized ModReader getModReader() {
+        if (mapperSource != null) {
+            return mapperSource.getModReader();
+        }
         if (modReader == null) {
             LOGGER.info("Initializing PRIDE ModReader parser...");
             modReader = ModReader.getInstance();
@@ -245,6 +249,7 @@ public abstract class PIACompiler {
 
         fileParsed = InputFileParserFactory.getDataFromFile(name, fileName,
                 this, additionalInfoFileName, inputFileType);
+        fileParsingFinished();
 
         if (!fileParsed) {
             LOGGER.error("Error parsing the file {}", fileName);
@@ -260,6 +265,322 @@ public abstract class PIACompiler {
     }
 
 
+    /**
+     * Parses the data from the given files. If more than one parsing thread
+     * is set (see {@link #setNrParsingThreads(int)}) and the compiler supports
+     * it (see {@link #isConcurrentParsingSupported()}), up to this number of
+     * files is parsed concurrently, each into a separate in-memory compilation
+     * using its share of the threads set by {@link #setNrThreads(int)}. These
+     * are merged into this compilation in the order of the given files, the
+     * accessions and peptides are deduplicated by their strings. Therefore the
+     * IDs do not depend on the number of threads.
+     *
+     * @param inputFiles the files to parse
+     * @return the number of successfully parsed files
+     */
+    public final int getDataFromFiles(List<CompilerInputFile> inputFiles) {
+        int nrThreads = Math.min(Math.max(numParsingThreads, 1), inputFiles.size());
+        int nrParsed = 0;
+
+        if ((nrThreads < 2) || !isConcurrentParsingSupported()) {
+            for (CompilerInputFile inputFile : inputFiles) {
+                if (getDataFromFile(inputFile.getName(), inputFile.getFileName(),
+                        inputFile.getAdditionalInfoFileName(), inputFile.getInputFileType())) {
+                    nrParsed++;
+                }
+            }
+            return nrParsed;
+        }
+
+        LOGGER.info("parsing {} files with {} threads", inputFiles.size(), nrThreads);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(nrThreads, runnable -> {
+                    Thread thread = new Thread(runnable, "PIA-Parser-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        List<PIACompiler> stagedCompilers = new ArrayList<>(inputFiles.size());
+        List<Future<Boolean>> parsings = new ArrayList<>(inputFiles.size());
+
+        try {
+            // parse at most nrThreads files ahead of the merging, to limit the used memory
+            for (int idx = 0; idx < nrThreads; idx++) {
+                submitStagedParsing(executor, inputFiles.get(idx), nrThreads, stagedCompilers, parsings);
+            }
+
+            for (int idx = 0; idx < inputFiles.size(); idx++) {
+                CompilerInputFile inputFile = inputFiles.get(idx);
+                boolean fileParsed;
+                try {
+                    fileParsed = parsings.get(idx).get();
+                } catch (ExecutionException e) {
+                    LOGGER.error("Error parsing the file {}", inputFile.getFileName(), e);
+                    fileParsed = false;
+                    stagedCompilers.set(idx, null);
+                }
+
+                if (idx + nrThreads < inputFiles.size()) {
+                    submitStagedParsing(executor, inputFiles.get(idx + nrThreads), nrThreads, stagedCompilers, parsings);
+                }
+
+                if (stagedCompilers.get(idx) != null) {
+                    mergeStagedCompilation(stagedCompilers.get(idx));
+                    stagedCompilers.set(idx, null);
+                }
+
+                if (!fileParsed) {
+                    LOGGER.error("Error parsing the file {}", inputFile.getFileName());
+                } else {
+                    nrParsed++;
+                    LOGGER.info("have now:"
+                            + "\n\t{} peptides"
+                            + "\n\t{} peptide spectrum matches"
+                            + "\n\t{} accessions",
+                            getNrPeptides(), getNrPeptideSpectrumMatches(), getNrAccessions());
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.error("Interrupted while parsing the files", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return nrParsed;
+    }
+
+
+    /**
+     * Whether files may be parsed concurrently by
+     * {@link #getDataFromFiles(List)}. The concurrently parsed files are held
+     * in memory until they are merged, so compilers which do not hold all
+     * data in memory should parse the files one after another. True by
+     * default.
+     *
+     * @return
+     */
+    protected boolean isConcurrentParsingSupported() {
+        return true;
+    }
+
+
+    /**
+     * Submits the parsing of the given file into a new staging compiler.
+     *
+     * @param executor
+     * @param inputFile
+     * @param nrParsingThreads the number of concurrently parsed files, which
+     * share the threads of this compiler
+     * @param stagedCompilers the staging compiler is added to this list
+     * @param parsings the future of the parsing is added to this list
+     */
+    private void submitStagedParsing(ExecutorService executor, CompilerInputFile inputFile,
+            int nrParsingThreads, List<PIACompiler> stagedCompilers, List<Future<Boolean>> parsings) {
+        PIACompiler stagedCompiler = new PIASimpleCompiler();
+        stagedCompiler.mapperSource = this;
+        stagedCompiler.numThreads = Math.max(getUsedNrThreads() / nrParsingThreads, 1);
+        stagedCompiler.streamMascotDatFiles = streamMascotDatFiles;
+
+        stagedCompilers.add(stagedCompiler);
+        parsings.add(executor.submit(() -> InputFileParserFactory.getDataFromFile(
+                inputFile.getName(), inputFile.getFileName(), stagedCompiler,
+                inputFile.getAdditionalInfoFileName(), inputFile.getInputFileType())));
+    }
+
+
+    /**
+     * Merges the data of the given compiler, which staged the data of one
+     * input file, into this compilation. The files, accessions, peptides and
+     * PSMs get the next free IDs in the order of their staged IDs, which gives
+     * the same IDs as parsing the file directly into this compilation.
+     *
+     * @param staged the staging compiler, it is finished afterwards
+     */
+    private void mergeStagedCompilation(PIACompiler staged) {
+        Map<Long, Long> fileIDs = new HashMap<>();
+        for (Long stagedFileID : new TreeSet<>(staged.files.keySet())) {
+            PIAInputFile file = staged.files.get(stagedFileID);
+            long fileID = files.size() + 1L;
+            file.changeID(fileID);
+            files.put(fileID, file);
+            fileIDs.put(stagedFileID, fileID);
+        }
+
+        // the staged IDs are the references in the files, map them to the objects in this compilation
+        Map<String, SpectraData> spectraDataRefs = new HashMap<>();
+        for (Map.Entry<String, SpectraData> sdIt : sortedByStagedID(staged.spectraDataMap)) {
+            spectraDataRefs.put(sdIt.getKey(), putIntoSpectraDataMap(sdIt.getValue()));
+        }
+        Map<String, SearchDatabase> searchDBRefs = new HashMap<>();
+        for (Map.Entry<String, SearchDatabase> dbIt : sortedByStagedID(staged.searchDatabasesMap)) {
+            searchDBRefs.put(dbIt.getKey(), putIntoSearchDatabasesMap(dbIt.getValue()));
+        }
+        Map<String, AnalysisSoftware> softwareRefs = new HashMap<>();
+        for (Map.Entry<String, AnalysisSoftware> swIt : sortedByStagedID(staged.softwareMap)) {
+            softwareRefs.put(swIt.getKey(), putIntoSoftwareMap(swIt.getValue()));
+        }
+
+        for (Long fileID : fileIDs.values()) {
+            updateStagedReferences(files.get(fileID), spectraDataRefs, searchDBRefs, softwareRefs);
+        }
+
+        Map<Long, Accession> accessionMap = new HashMap<>();
+        List<Long> stagedAccessionIDs = new ArrayList<>(staged.getAllAccessionIDs());
+        Collections.sort(stagedAccessionIDs);
+        for (Long stagedAccID : stagedAccessionIDs) {
+            accessionMap.put(stagedAccID,
+                    mergeStagedAccession(staged.getAccession(stagedAccID), fileIDs, searchDBRefs));
+        }
+
+        List<Long> stagedPSMIDs = new ArrayList<>(staged.getAllPeptideSpectrumMatcheIDs());
+        Collections.sort(stagedPSMIDs);
+        for (Long stagedPSMID : stagedPSMIDs) {
+            PeptideSpectrumMatch psm = staged.getPeptideSpectrumMatch(stagedPSMID);
+            psm.setID(getNrPeptideSpectrumMatches() + 1L);
+            insertCompletePeptideSpectrumMatch(psm);
+        }
+
+        Map<Long, Peptide> peptideMap = new HashMap<>();
+        List<Long> stagedPeptideIDs = new ArrayList<>(staged.getAllPeptideIDs());
+        Collections.sort(stagedPeptideIDs);
+        for (Long stagedPepID : stagedPeptideIDs) {
+            Peptide stagedPeptide = staged.getPeptide(stagedPepID);
+            Peptide peptide = getPeptide(stagedPeptide.getSequence());
+            if (peptide == null) {
+                peptide = insertNewPeptide(stagedPeptide.getSequence());
+            }
+
+            for (AccessionOccurrence occurrence : stagedPeptide.getAccessionOccurrences()) {
+                peptide.addAccessionOccurrence(accessionMap.get(occurrence.getAccession().getID()),
+                        occurrence.getStart(), occurrence.getEnd());
+            }
+            if (stagedPeptide.getSpectra() != null) {
+                for (PeptideSpectrumMatch psm : stagedPeptide.getSpectra()) {
+                    peptide.addSpectrum(psm);
+                }
+            }
+
+            peptideMap.put(stagedPepID, peptide);
+        }
+
+        for (Long stagedAccID : stagedAccessionIDs) {
+            Collection<Long> stagedPepIDs = staged.getPepIDsFromConnectionMap(stagedAccID);
+            if (stagedPepIDs != null) {
+                List<Long> sortedPepIDs = new ArrayList<>(stagedPepIDs);
+                Collections.sort(sortedPepIDs);
+                for (Long stagedPepID : sortedPepIDs) {
+                    addAccessionPeptideConnection(accessionMap.get(stagedAccID), peptideMap.get(stagedPepID));
+                }
+            }
+        }
+
+        staged.finish();
+        fileParsingFinished();
+    }
+
+
+    /**
+     * Returns the entries of the given map in the order of their IDs, which
+     * are a prefix and an increasing number.
+     *
+     * @param stagedMap
+     * @return
+     */
+    private static <T> List<Map.Entry<String, T>> sortedByStagedID(Map<String, T> stagedMap) {
+        List<Map.Entry<String, T>> entries = new ArrayList<>(stagedMap.entrySet());
+        entries.sort(Comparator.comparing((Map.Entry<String, T> entry) -> entry.getKey().length())
+                .thenComparing(Map.Entry::getKey));
+        return entries;
+    }
+
+
+    /**
+     * Sets the references of the given (merged) file to the SpectraData,
+     * SearchDatabases and AnalysisSoftware of this compilation.
+     *
+     * @param file
+     * @param spectraDataRefs the SpectraData mapped by the staged IDs
+     * @param searchDBRefs the SearchDatabases mapped by the staged IDs
+     * @param softwareRefs the AnalysisSoftware mapped by the staged IDs
+     */
+    private static void updateStagedReferences(PIAInputFile file,
+            Map<String, SpectraData> spectraDataRefs, Map<String, SearchDatabase> searchDBRefs,
+            Map<String, AnalysisSoftware> softwareRefs) {
+        for (SpectrumIdentification si : file.getAnalysisCollection().getSpectrumIdentification()) {
+            for (InputSpectra inputSpectra : si.getInputSpectra()) {
+                SpectraData spectraData = spectraDataRefs.get(inputSpectra.getSpectraDataRef());
+                if (spectraData != null) {
+                    inputSpectra.setSpectraData(spectraData);
+                }
+            }
+
+            for (SearchDatabaseRef searchDBRef : si.getSearchDatabaseRef()) {
+                SearchDatabase searchDB = searchDBRefs.get(searchDBRef.getSearchDatabaseRef());
+                if (searchDB != null) {
+                    searchDBRef.setSearchDatabase(searchDB);
+                }
+            }
+        }
+
+        for (SpectrumIdentificationProtocol protocol
+                : file.getAnalysisProtocolCollection().getSpectrumIdentificationProtocol()) {
+            AnalysisSoftware software = softwareRefs.get(protocol.getAnalysisSoftwareRef());
+            if (software != null) {
+                protocol.setAnalysisSoftware(software);
+            }
+        }
+    }
+
+
+    /**
+     * Merges the given staged accession into the accessions of this
+     * compilation.
+     *
+     * @param stagedAccession
+     * @param fileIDs maps from the staged file IDs to the IDs in this compilation
+     * @param searchDBRefs maps from the staged SearchDatabase IDs to the
+     * SearchDatabases in this compilation
+     * @return the accession in this compilation
+     */
+    private Accession mergeStagedAccession(Accession stagedAccession, Map<Long, Long> fileIDs,
+            Map<String, SearchDatabase> searchDBRefs) {
+        Accession accession = getAccession(stagedAccession.getAccession());
+        if (accession == null) {
+            accession = insertNewAccession(stagedAccession.getAccession(), stagedAccession.getDbSequence());
+        } else if ((accession.getDbSequence() == null) && (stagedAccession.getDbSequence() != null)) {
+            accession.setDbSequence(stagedAccession.getDbSequence());
+        }
+
+        for (Long stagedFileID : stagedAccession.getFiles()) {
+            accession.addFile(fileIDs.getOrDefault(stagedFileID, stagedFileID));
+        }
+
+        for (Map.Entry<Long, String> descIt : stagedAccession.getDescriptions().entrySet()) {
+            accession.addDescription(fileIDs.getOrDefault(descIt.getKey(), descIt.getKey()),
+                    descIt.getValue());
+        }
+
+        for (String stagedDBRef : stagedAccession.getSearchDatabaseRefs()) {
+            SearchDatabase searchDB = searchDBRefs.get(stagedDBRef);
+            accession.addSearchDatabaseRef((searchDB != null) ? searchDB.getId() : stagedDBRef);
+        }
+
+        return accession;
+    }
+
+
+    /**
+     * Called after a file was parsed by {@link #getDataFromFile(String, String, String, String)}.
+     * Compilers which do not hold all data in memory may use this to store
+     * the data of the parsed file. Does nothing by default.
+     */
+    protected void fileParsingFinished() {
+        // nothing to do for in-memory compilers
+    }
+
+
     /**
      * Inserts a new file into the map of file and return a reference to it.
      *
@@ -284,7 +605,7 @@ public abstract class PIACompiler {
      *
      * @return
      */
-    private PIAInputFile getFile(Long fileId) {
+    protected final PIAInputFile getFile(Long fileId) {
         return files.get(fileId);
     }
 
@@ -413,6 +734,18 @@ public abstract class PIACompiler {
     public abstract void insertCompletePeptideSpectrumMatch(PeptideSpectrumMatch psm);
 
 
+    /**
+     * Stores the changes of a PSM, which was changed after it was inserted by
+     * {@link #insertCompletePeptideSpectrumMatch(PeptideSpectrumMatch)}. This
+     * is only needed by compilers, which do not hold all PSMs in memory.
+     *
+     * @param psm
+     */
+    public void updatePeptideSpectrumMatch(PeptideSpectrumMatch psm) {
+        // the PSMs are held in memory, so the changes are already stored
+    }
+
+
     /**
      * Returns the number of PSMs
      *
@@ -476,6 +809,21 @@ public abstract class PIACompiler {
     public abstract void addAccessionPeptideConnection(Accession accession, Peptide peptide);
 
 
+    /**
+     * Passes the connection from an accession to a peptide to the clustering.
+     * Any implementation of
+     * {@link #addAccessionPeptideConnection(Accession, Peptide)} must call
+     * this for every connection, the clusters of
+     * {@link #buildClusterList()} are build from these.
+     *
+     * @param accessionID
+     * @param peptideID
+     */
+    protected final void addConnectionToClusters(long accessionID, long peptideID) {
+        clusterer.addConnection(accessionID, peptideID);
+    }
+
+
     /**
      * Erases the accessions to peptide map, can safely be called after
      * {@link #buildClusterList()} was called.
@@ -661,121 +1009,45 @@ public abstract class PIACompiler {
      * Builds up the list of peptide accession maps. The list is clustered, i.e.
      * each entry in the list may be processed in parallel.
      * <p>
+     * Before the clustering, the occurrences of the peptides in the sequences
+     * of their connected accessions are mapped, if the input files gave no
+     * positions (see
+     * {@link PeptideProteinMapper#mapAccessionOccurrences(PIACompiler, boolean, int)}).
+     * <p>
      * Before calling this method, some data should be read in by
      * {@link PIACompiler#getDataFromFile(String, String, String, String)}.
      */
     public final void buildClusterList() {
-        LOGGER.info("start sorting clusters");
-
-        Set<Long> peptidesDone = new HashSet<>(getNrPeptides());
-        Set<Long> accessionsDone = new HashSet<>(getNrAccessions());
-        clusteredPepAccMap = new ArrayList<>();
-
-
-        // This accession is not yet clustered, so start a new cluster and
-        // insert all the "connected" peptides and accessions
-        getAllAccessionIDs().stream().filter(accID -> !accessionsDone.contains(accID)).forEach(accID -> {
-            Map<Long, Collection<Long>> pepAccMapCluster = createCluster(accID, peptidesDone, accessionsDone);
+        LOGGER.info("start mapping the peptides to the accession sequences");
+        PeptideProteinMapper.mapAccessionOccurrences(this, ilEquivalentMapping, getUsedNrThreads());
 
-            if (pepAccMapCluster != null) {
-                clusteredPepAccMap.add(pepAccMapCluster);
-            } else {
-                LOGGER.error("cluster could not be created!");
-            }
+        LOGGER.info("start sorting clusters");
 
-        });
+        clusteredPepAccMap = clusterer.buildClusters(getAllAccessionIDs(),
+                this::getAccIDsFromConnectionMap);
 
         // the maps are no longer needed
+        clusterer.clear();
         clearConnectionMap();
 
         LOGGER.info("clusters sorted: {}", clusteredPepAccMap.size());
     }
 
 
-    /**
-     * Inserts the cluster of the given accession into the peptide accession
-     * map cluster.<br/>
-     * This method should only be called by {@link PIACompiler#buildClusterList()}.
-     *
-     * @param accessionID
-     * @param peptidesDone
-     * @param accessionsDone
-     * @return
-     */
-    private final Map<Long, Collection<Long>> createCluster(Long accessionID,
-            Set<Long> peptidesDone, Set<Long> accessionsDone) {
-        Set<Long> clusterAccessions = new HashSet<>();
-        Set<Long> clusterPeptides = new HashSet<>();
-
-        // initialize the cluster's peptides with the peptides of the given accession
-        int newPeptides = 0;
-        int newAccessions = 1;  // for the given accession
-
-        for (Long pepId : getPepIDsFromConnectionMap(accessionID)) {
-            clusterPeptides.add(pepId);
-            newPeptides++;
-        }
-
-        // repeat as long, as we get more accessions or peptides
-        while ((newAccessions > 0) || (newPeptides > 0)) {
-            newAccessions = 0;
-            newPeptides = 0;
-
-            // get accessions for peptides, which are new since the last loop
-            for (Long pepId : clusterPeptides) {
-                if (!peptidesDone.contains(pepId)) {
-                    for (Long accId : getAccIDsFromConnectionMap(pepId)) {
-                        if (clusterAccessions.add(accId)) {
-                            newAccessions++;
-                        }
-                    }
-
-                    peptidesDone.add(pepId);
-                }
-            }
-
-            // get peptides for accessions, which are new since the last loop
-            for (Long accId : clusterAccessions) {
-                if (!accessionsDone.contains(accId)) {
-                    for (Long pepId : getPepIDsFromConnectionMap(accId)) {
-                        if (clusterPeptides.add(pepId)) {
-                            newPeptides++;
-                        }
-                    }
-                    accessionsDone.add(accId);
-                }
-            }
-        }
-
-        // now we have the whole cluster, so put it into the pepAccMapCluster
-        Map<Long, Collection<Long>> pepAccMapCluster = new HashMap<>();
-        for (Long pepId : clusterPeptides) {
-            pepAccMapCluster.put(pepId, getAccIDsFromConnectionMap(pepId));
-        }
-
-        return pepAccMapCluster;
-    }
-
-
     /**
      * Build up the intermediate structure.<br/>
      * Before this method is called, {@link PIACompiler#buildClusterList()}
      * must be called.
+     * <p>
+     * The clusters are processed in parallel, largest first. The group and
+     * tree IDs are assigned in the order of the cluster list afterwards, so
+     * they do not depend on the number of used threads.
      */
     public final void buildIntermediateStructure() {
-        int nrThreads;
-
-        if (numThreads > 0) {
-            nrThreads = numThreads;
-        } else {
-            nrThreads = Runtime.getRuntime().availableProcessors();
-        }
+        int nrThreads = getUsedNrThreads();
 
         LOGGER.info("Using {} threads.", nrThreads);
 
-        List<CompilerWorkerThread> threads;
-
-
         if (clusteredPepAccMap == null) {
             LOGGER.error("the cluster map is not yet build!");
             return;
@@ -784,79 +1056,34 @@ public abstract class PIACompiler {
         // initialize the groups map
         groups = new HashMap<>();
 
-        // initialize the clusterIterator
-        clusterIterator = clusteredPepAccMap.listIterator();
-        buildProgress = 0L;
-        clusterOffset = 0L;
-
-        // start the threads
-        threads = new ArrayList<>(nrThreads);
-        for (int i = 0; i < nrThreads; i++) {
-            CompilerWorkerThread thread = new CompilerWorkerThread(i+1, this);
-            threads.add(thread);
-
-            thread.start();
-        }
+        ClusterBuildScheduler scheduler = new ClusterBuildScheduler(this, clusteredPepAccMap, nrThreads);
+        Map<Long, Group>[] clusterGroups = scheduler.buildClusterGroups();
 
-        // wait for the threads to finish
-        for (CompilerWorkerThread thread : threads) {
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                LOGGER.error("thread got interrupted!", e);
-                Thread.currentThread().interrupt();
-            }
-        }
-    }
-
-
-    /**
-     * Returns the next cluster in the cluster map (mapping from the peptide IDs
-     * to the accession IDs)
-     *
-     * @return
-     */
-    public final synchronized Map<Long, Collection<Long>> getNextCluster() {
-        synchronized (clusterIterator) {
-            if (clusterIterator != null) {
-                if (clusterIterator.hasNext()) {
-                    return clusterIterator.next();
-                } else {
-                    return null;
-                }
-            } else {
-                LOGGER.error("The cluster iterator is not yet initialized!");
-                return null;
-            }
+        long treeID = 0;
+        for (Map<Long, Group> subGroups : clusterGroups) {
+            treeID++;
+            mergeClusterIntoMap(subGroups, treeID);
         }
-    }
-
+        GroupTreeIndex.buildIndices(groups.values());
 
-    /**
-     * Increase the number of build clusters.
-     */
-    public final synchronized void increaseBuildProgress() {
-        buildProgress++;
+        LOGGER.info("{} groups in {} trees build", groups.size(), treeID);
     }
 
 
     /**
-     * Merge the given groups into the groups map.
+     * Merge the groups of one cluster into the groups map, the group IDs are
+     * offset by the number of groups already in the map.
      *
-     * @param subGroups
+     * @param subGroups the groups of the cluster
+     * @param treeID the ID of the cluster's tree
      */
-    public final synchronized void mergeClustersIntoMap(Map<Long, Group> subGroups,
-            long nrClusters) {
-        synchronized (groups) {
-            long groupOffset = groups.size();
+    private void mergeClusterIntoMap(Map<Long, Group> subGroups, long treeID) {
+        long groupOffset = groups.size();
 
-            for (Group group : subGroups.values()) {
-                group.setOffset(groupOffset);
-                group.setTreeID(group.getTreeID()+clusterOffset);
-                groups.put(group.getID(), group);
-            }
-
-            clusterOffset += nrClusters;
+        for (Group group : subGroups.values()) {
+            group.setOffset(groupOffset);
+            group.setTreeID(treeID);
+            groups.put(group.getID(), group);
         }
     }
 
@@ -899,302 +1126,268 @@ public abstract class PIACompiler {
 
 
     /**
-     * Write out the intermediate structure into an XML file.
+     * Sets the maximal number of files, which are parsed concurrently by
+     * {@link #getDataFromFiles(List)}. The threads set by
+     * {@link #setNrThreads(int)} are shared by the concurrently parsed files.
+     * If this is smaller than 2 (the default), the files are parsed one after
+     * another.
      *
-     * @param piaFile
-     * @throws IOException
+     * @param threads
      */
-    public final void writeOutXML(File piaFile) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(piaFile)) {
-            LOGGER.info("Writing PIA XML file to {}", piaFile.getAbsolutePath());
-            writeOutXML(fos);
-        }
+    public final void setNrParsingThreads(int threads) {
+        numParsingThreads = threads;
     }
 
 
     /**
-     * Write out the intermediate structure into an XML file.
-     *
-     * @param fileName
-     * @throws IOException
+     * Gets the maximal number of concurrently parsed files
      */
-    public final void writeOutXML(String fileName) throws IOException {
-        File piaFile = new File(fileName);
-        writeOutXML(piaFile);
+    public final int getNrParsingThreads() {
+        return numParsingThreads;
     }
 
 
     /**
-     * Write out the intermediate structure into an XML file.
+     * Sets whether isoleucine and leucine are treated as equal, when the
+     * occurrences of the peptides in the accession sequences are mapped by
+     * {@link #buildClusterList()}.
      *
+     * @param ilEquivalent
      */
-    public final void writeOutXML(OutputStream outputStream) {
-        try (Writer out = new OutputStreamWriter(outputStream, encoding)) {
-            LOGGER.info("Stream open, writing PIA XML");
-
-            XMLOutputFactory xmlof = XMLOutputFactory.newInstance();
-            XMLStreamWriter xmlOut = new IndentingXMLStreamWriter(xmlof.createXMLStreamWriter(out));
-
-            // take care of the namespace in the PIA XML files -> basically set them fixed to PIA and mzid 1.1
-            xmlOut.setNamespaceContext(new NamespaceContext() {
-                public Iterator<String> getPrefixes(String namespaceURI) {
-                    return null;
-                }
-    
-                public String getPrefix(String namespaceURI) {
-                    if (namespaceURI.equals(nsjPiaXML)) {
-                        return prefixjPiaXML;
-                    } else if (namespaceURI.contains("mzIdentML")) {
-                        return prefixMzIdentML;
-                    }
-                    return "";
-                }
-    
-                public String getNamespaceURI(String prefix) {
-                    return "";
-                }
-            });
-
-            // xml header
-            xmlOut.writeStartDocument(encoding, "1.0");
-
-            // the piaXML root element
-            xmlOut.writeStartElement(prefixjPiaXML, "jPiaXML", nsjPiaXML);
-            xmlOut.setPrefix(prefixjPiaXML, nsjPiaXML);
-
-            xmlOut.writeAttribute("name", compilationName);
-            xmlOut.writeAttribute("date", startDate.toString());
-
-            xmlOut.writeNamespace(prefixMzIdentML, nsMzIdentML);
-            xmlOut.writeNamespace(prefixjPiaXML, nsjPiaXML);
-
-            // filesList
-            writeOutJaxbFilesList(xmlOut);
+    public final void setILEquivalentMapping(boolean ilEquivalent) {
+        ilEquivalentMapping = ilEquivalent;
+    }
 
-            // inputs
-            writeOutJaxbInputs(xmlOut);
 
-            // analysisSoftwareList
-            writeOutJaxbAnalysisSoftwareList(xmlOut);
+    /**
+     * Whether isoleucine and leucine are treated as equal, when the
+     * occurrences of the peptides are mapped.
+     */
+    public final boolean getILEquivalentMapping() {
+        return ilEquivalentMapping;
+    }
 
-            // spectraList
-            writeOutJaxbSpectra(xmlOut);
 
-            // accessionsList
-            writeOutJaxbAccessions(xmlOut);
+    /**
+     * Sets whether Mascot DAT files are parsed in the streaming mode of
+     * {@link de.mpc.pia.intermediate.compiler.parser.searchengines.MascotDatFileParser},
+     * instead of loading them into the memory. False by default.
+     *
+     * @param streaming
+     */
+    public final void setStreamMascotDatFiles(boolean streaming) {
+        streamMascotDatFiles = streaming;
+    }
 
-            // peptidesList
-            writeOutJaxbPeptides(xmlOut);
 
-            // groupsList
-            writeOutJaxbGroups(xmlOut);
+    /**
+     * Whether Mascot DAT files are parsed in the streaming mode.
+     */
+    public final boolean getStreamMascotDatFiles() {
+        return streamMascotDatFiles;
+    }
 
-            xmlOut.writeEndElement(); // jPiaXML
 
-            xmlOut.close();
-        } catch (XMLStreamException e) {
-            LOGGER.error("XMLStreamException while writing XML file", e);
-        } catch (FactoryConfigurationError e) {
-            LOGGER.error("FactoryConfigurationError while writing XML file", e);
-        } catch (JAXBException e) {
-            LOGGER.error("JAXBException while writing XML file", e);
-        } catch (UnsupportedEncodingException e) {
-            LOGGER.error("UnsupportedEncodingException while writing XML file", e);
-        } catch (IOException e) {
-            LOGGER.error("error writing the PIA XML file", e);
+    /**
+     * Gets the number of actually used threads, i.e. all available processors,
+     * if the number of threads is not set.
+     */
+    private int getUsedNrThreads() {
+        if (numThreads > 0) {
+            return numThreads;
+        } else {
+            return Runtime.getRuntime().availableProcessors();
         }
-
-        LOGGER.info("Writing of PIA XML file finished.");
     }
 
 
     /**
-     * Creates a marshaller for PIA XML for the given class.
+     * Write out the intermediate structure into an XML file. If the file name
+     * ends with the suffix of a {@link PIAFileCompression}, the file is
+     * compressed accordingly.
      *
-     * @return
-     * @throws JAXBException
+     * @param piaFile
+     * @throws IOException
      */
-    private static Marshaller createMarshallerForPiaXML(Class<?> marshalClass) throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(marshalClass);
-
-        Marshaller m = context.createMarshaller();
-        m.setProperty(Marshaller.JAXB_ENCODING, encoding);
-        m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-        m.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
-
-        return m;
+    public final void writeOutXML(File piaFile) throws IOException {
+        writeOutXML(piaFile, PIAFileCompression.getByFileName(piaFile.getName()));
     }
 
 
     /**
-     * Creates an formatted (indenting) jaxb fragment marshaller for the given
-     * context, using the given jaxbElement and the given class for marshalling.
+     * Write out the intermediate structure into an XML file, using the given
+     * compression.
      *
-     * @param xmlOut the writer
-     * @param jaxbElement an jaxbElement
-     * @param marshalClass the class for marshalling
-     *
-     * @throws JAXBException
+     * @param piaFile
+     * @param compression
+     * @throws IOException
      */
-    private static void marshalToFormattedFragmentMarshaller(XMLStreamWriter xmlOut,
-            Object jaxbElement, Class<?> marshalClass) throws JAXBException {
-        Marshaller m = createMarshallerForPiaXML(marshalClass);
-        m.marshal(jaxbElement, xmlOut);
+    public final void writeOutXML(File piaFile, PIAFileCompression compression) throws IOException {
+        try (OutputStream fos = compression.compressingStream(
+                new BufferedOutputStream(new FileOutputStream(piaFile), XML_BUFFER_SIZE))) {
+            LOGGER.info("Writing PIA XML file to {} (compression: {})", piaFile.getAbsolutePath(), compression);
+            writeOutXML(fos);
+        }
     }
 
 
     /**
-     * Creates an formatted (indenting) jaxb fragment marshaller for the given
-     * context, using the given jaxbElement and the given class for marshalling.
-     *
-     * @param xmlOut the writer
-     * @param object the object to be marshalled, will be casted to a
-     * jaxbElement
+     * Write out the intermediate structure into an XML file.
      *
-     * @throws JAXBException
+     * @param fileName
+     * @throws IOException
      */
-    private static <T> void marshalToFormattedFragmentMarshaller(
-            XMLStreamWriter xmlOut, T object) throws JAXBException {
-        QName aQName = ModelConstants.getQNameForClass(object.getClass());
-
-        @SuppressWarnings("unchecked")
-        Class<T> classCast = (Class<T>)object.getClass();
-        JAXBElement<T> jaxbElement = new JAXBElement<>(aQName, classCast, object);
-
-        marshalToFormattedFragmentMarshaller(xmlOut, jaxbElement, classCast);
+    public final void writeOutXML(String fileName) throws IOException {
+        File piaFile = new File(fileName);
+        writeOutXML(piaFile);
     }
 
 
     /**
-     * Writes out the filesList object to XML, using the given writer.
-     *
-     * @param xmlOut
-     * @throws JAXBException
+     * Write out the intermediate structure into an XML file.
+     * <p>
+     * If more than one thread is used, the objects of the large lists (PSMs,
+     * accessions, peptides and groups) are marshalled concurrently in chunks,
+     * resulting in the same file as the sequential writing.
      */
-    private void writeOutJaxbFilesList(XMLStreamWriter xmlOut) throws JAXBException {
-        FilesListXML fileslistXML = new FilesListXML();
-        for (Long fileID : getAllFileIDs()) {
-            PIAInputFile file = getFile(fileID);
-            PIAInputFileXML fileXML = new PIAInputFileXML();
-
-            fileXML.setId(file.getID());
-            fileXML.setName(file.getName());
-            fileXML.setFileName(file.getFileName());
-            fileXML.setFormat(file.getFormat());
-
-            fileXML.setAnalysisCollection(file.getAnalysisCollection());
-            fileXML.setAnalysisProtocolCollection(file.getAnalysisProtocolCollection());
+    public final void writeOutXML(OutputStream outputStream) {
+        PIAIntermediateXMLWriter xmlWriter = new PIAIntermediateXMLWriter(getIntermediateData());
+        xmlWriter.setNrThreads(getUsedNrThreads());
 
-            fileslistXML.getFiles().add(fileXML);
+        try {
+            xmlWriter.write(outputStream);
+        } catch (IOException e) {
+            LOGGER.error("error writing the PIA XML file", e);
         }
-
-        marshalToFormattedFragmentMarshaller(xmlOut, fileslistXML, FilesListXML.class);
     }
 
 
     /**
-     * Writes out the Inputs object to XML, using the given writer.
+     * Write out the intermediate structure into a binary intermediate file,
+     * see {@link PIABinaryWriter}.
      *
-     * @param xmlOut
-     * @throws JAXBException
+     * @param piaFile
+     * @throws IOException
      */
-    private void writeOutJaxbInputs(XMLStreamWriter xmlOut) throws JAXBException {
-        Inputs inputs = new Inputs();
-        inputs.getSearchDatabase().addAll(searchDatabasesMap.values());
-        inputs.getSpectraData().addAll(spectraDataMap.values());
-
-        marshalToFormattedFragmentMarshaller(xmlOut, inputs);
+    public final void writeOutBinary(File piaFile) throws IOException {
+        new PIABinaryWriter(getIntermediateData()).write(piaFile);
     }
 
 
     /**
-     * Writes out the AnalysisSoftwareList object to XML, using the given writer.
+     * Returns the compilation as {@link PIAIntermediateData}, which is used to
+     * write the intermediate files. The PSMs, peptides and accessions are
+     * fetched from the compiler while iterating over the maps.
      *
-     * @param xmlOut
-     * @throws JAXBException
+     * @return
      */
-    private void writeOutJaxbAnalysisSoftwareList(XMLStreamWriter xmlOut) throws JAXBException {
-        AnalysisSoftwareList softwareList = new AnalysisSoftwareList();
-        softwareList.getAnalysisSoftware().addAll(softwareMap.values());
-
-        marshalToFormattedFragmentMarshaller(xmlOut, softwareList);
+    private PIAIntermediateData getIntermediateData() {
+        return new CompilationData();
     }
 
 
     /**
-     * Writes out the PSMs to XML, using the given writer.
-     *
-     * @param xmlOut
-     * @throws JAXBException
+     * Creates a read-only map view over the given IDs, getting the values from
+     * the given getter.
      */
-    private void writeOutJaxbSpectra(XMLStreamWriter xmlOut) throws XMLStreamException, JAXBException {
-        xmlOut.writeStartElement("spectraList");
+    private static <T> Map<Long, T> createIDMapView(Collection<Long> ids, Function<Long, T> getter) {
+        return new AbstractMap<Long, T>() {
+            @Override
+            public Set<Entry<Long, T>> entrySet() {
+                return new AbstractSet<Entry<Long, T>>() {
+                    @Override
+                    public Iterator<Entry<Long, T>> iterator() {
+                        Iterator<Long> idIt = ids.iterator();
+                        return new Iterator<Entry<Long, T>>() {
+                            @Override
+                            public boolean hasNext() {
+                                return idIt.hasNext();
+                            }
 
-        Marshaller m = createMarshallerForPiaXML(SpectrumMatchXML.class);
+                            @Override
+                            public Entry<Long, T> next() {
+                                Long id = idIt.next();
+                                return new SimpleImmutableEntry<>(id, getter.apply(id));
+                            }
+                        };
+                    }
 
-        for (Long psmId : getAllPeptideSpectrumMatcheIDs()) {
-            // marshall all spectra
-            m.marshal(new SpectrumMatchXML(getPeptideSpectrumMatch(psmId)), xmlOut);
-        }
+                    @Override
+                    public int size() {
+                        return ids.size();
+                    }
+                };
+            }
 
-        xmlOut.writeEndElement(); // spectraList
+            @Override
+            public T get(Object key) {
+                return (key instanceof Long) ? getter.apply((Long) key) : null;
+            }
+        };
     }
 
 
     /**
-     * Writes out the accessions to XML, using the given writer.
-     *
-     * @param xmlOut
-     * @throws JAXBException
+     * The view of the compilation as {@link PIAIntermediateData}.
      */
-    private void writeOutJaxbAccessions(XMLStreamWriter xmlOut) throws XMLStreamException, JAXBException {
-        xmlOut.writeStartElement("accessionsList");
+    private class CompilationData implements PIAIntermediateData {
 
-        Marshaller m = createMarshallerForPiaXML(AccessionXML.class);
+        private static final long serialVersionUID = 1L;
 
-        for (Long accId : getAllAccessionIDs()) {
-            m.marshal(new AccessionXML(getAccession(accId)), xmlOut);
+        @Override
+        public String getProjectName() {
+            return compilationName;
         }
 
-        xmlOut.writeEndElement(); // accessionsList
-    }
-
+        @Override
+        public String getProjectDate() {
+            return startDate.toString();
+        }
 
-    /**
-     * Writes out the peptides to XML, using the given writer.
-     *
-     * @param xmlOut
-     * @throws JAXBException
-     */
-    private void writeOutJaxbPeptides(XMLStreamWriter xmlOut) throws XMLStreamException, JAXBException {
-        xmlOut.writeStartElement("peptidesList");
+        @Override
+        public Map<Long, PIAInputFile> getFiles() {
+            return files;
+        }
 
-        Marshaller m = createMarshallerForPiaXML(PeptideXML.class);
+        @Override
+        public Map<String, SpectraData> getSpectraData() {
+            return spectraDataMap;
+        }
 
-        for (Long pepId : getAllPeptideIDs()) {
-            m.marshal(new PeptideXML(getPeptide(pepId)), xmlOut);
+        @Override
+        public Map<String, SearchDatabase> getSearchDatabase() {
+            return searchDatabasesMap;
         }
 
-        xmlOut.writeEndElement(); // peptidesList
-    }
+        @Override
+        public Map<String, AnalysisSoftware> getAnalysisSoftware() {
+            return softwareMap;
+        }
 
+        @Override
+        public Map<Long, PeptideSpectrumMatch> getPSMs() {
+            return createIDMapView(getAllPeptideSpectrumMatcheIDs(), PIACompiler.this::getPeptideSpectrumMatch);
+        }
 
-    /**
-     * Writes out the groups to XML, using the given writer.
-     *
-     * @param xmlOut
-     * @throws JAXBException
-     */
-    private void writeOutJaxbGroups(XMLStreamWriter xmlOut) throws XMLStreamException, JAXBException {
-        xmlOut.writeStartElement("groupsList");
+        @Override
+        public Map<Long, Peptide> getPeptides() {
+            return createIDMapView(getAllPeptideIDs(), PIACompiler.this::getPeptide);
+        }
 
-        Marshaller m = createMarshallerForPiaXML(GroupXML.class);
+        @Override
+        public Map<Long, Accession> getAccessions() {
+            return createIDMapView(getAllAccessionIDs(), PIACompiler.this::getAccession);
+        }
 
-        for (Group group : groups.values()) {
-            m.marshal(new GroupXML(group), xmlOut);
+        @Override
+        public Map<Long, Group> getGroups() {
+            return groups;
         }
 
-        xmlOut.writeEndElement(); // groupsList
+        @Override
+        public Map<String, Set<Long>> getPSMSetSettingsWarnings() {
+            return PIAIntermediateData.createPSMSetSettingsWarnings(getPSMs().values());
+        }
     }
 
 
@@ -0,0 +1,729 @@
+package de.mpc.pia.intermediate.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentification;
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.intermediate.SpectrumReferenceList;
+
+/**
+ * This class is used to read in one or several input files and compile them
+ * into one PIA XML intermediate file. In contrast to the
+ * {@link PIASimpleCompiler}, the PSMs and the connections between accessions
+ * and peptides are stored in a temporary SQLite database, only a bounded
+ * number of recently used PSMs is cached on the heap. The accessions and
+ * peptides are still held in memory, as they are changed by the parsers and
+ * referenced by the groups.
+ * <p>
+ * The PSMs of the currently parsed file are kept in memory, as some parsers
+ * change them after the insertion. When the file is parsed, they are written
+ * into the database and the peptides only keep their IDs, the PSMs are
+ * loaded by {@link #getPeptideSpectrumMatch(Long)} on access. Hence, the files are parsed one after another, also if more threads
+ * are set.
+ * <p>
+ * The database file is removed by {@link #finish()}.
+ *
+ * @author julianu
+ *
+ */
+public class PIASQLiteCompiler extends PIACompiler {
+
+    /** map of the accessions, maps from the accession id to the Accession */
+    private Map<Long, Accession> accessions;
+
+    /** map of the accessions, maps from the accession String to the Accession */
+    private Map<String, Long> accessionStringsToIDs;
+
+    /** map of peptides, maps from the Id to the peptides */
+    private Map<Long, Peptide> peptides;
+
+    /** map of peptides, maps from the sequence to the peptides */
+    private Map<String, Long> peptideSequencesToIDs;
+
+    /** the number of PSMs in the database, the PSM IDs run from 1 to this number */
+    private long nrPSMs;
+
+    /** the PSMs of the currently parsed file, not yet written into the database */
+    private Map<Long, PeptideSpectrumMatch> pendingPSMs;
+
+    /** the LRU cache of recently read PSMs */
+    private Map<Long, PeptideSpectrumMatch> psmCache;
+
+    /** the temporary database file */
+    private File databaseFile;
+
+    /** the connection to the database */
+    private Connection connection;
+
+    private PreparedStatement insertPSMStatement;
+    private PreparedStatement selectPSMStatement;
+    private PreparedStatement updatePSMStatement;
+    private PreparedStatement insertConnectionStatement;
+    private PreparedStatement selectPeptidesOfAccessionStatement;
+    private PreparedStatement selectAccessionsOfPeptideStatement;
+
+    /** number of changes since the last commit */
+    private int uncommittedChanges;
+
+    /** the file and index of already referenced SpectrumIdentifications */
+    private Map<SpectrumIdentification, SpectrumIdentificationReference> spectrumIdentificationReferences;
+
+    private final Lz4Compressor compressor;
+    private final Lz4Decompressor decompressor;
+
+
+    /** logger for this class */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** the default number of cached PSMs */
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    /** the changes in the database after which a commit is performed */
+    private static final int COMMIT_INTERVAL = 100000;
+
+
+    /**
+     * Basic constructor, creates the database in the default temporary
+     * directory.
+     *
+     * @throws IOException if the database could not be created
+     */
+    public PIASQLiteCompiler() throws IOException {
+        this(null, DEFAULT_CACHE_SIZE);
+    }
+
+
+    /**
+     * Constructor creating the database in the given directory and caching at
+     * most the given number of PSMs.
+     *
+     * @param tmpDirectory directory for the database, if null the default
+     * temporary directory is used
+     * @param cacheSize maximal number of PSMs cached in memory
+     * @throws IOException if the database could not be created
+     */
+    public PIASQLiteCompiler(File tmpDirectory, int cacheSize) throws IOException {
+        super();
+
+        accessions = new HashMap<>();
+        accessionStringsToIDs = new HashMap<>();
+        peptides = new HashMap<>();
+        peptideSequencesToIDs = new HashMap<>();
+
+        nrPSMs = 0;
+        pendingPSMs = new LinkedHashMap<>();
+        psmCache = new LinkedHashMap<Long, PeptideSpectrumMatch>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, PeptideSpectrumMatch> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        spectrumIdentificationReferences = new IdentityHashMap<>();
+        compressor = new Lz4Compressor();
+        decompressor = new Lz4Decompressor();
+
+        databaseFile = File.createTempFile("pia_compilation", ".sqlite", tmpDirectory);
+        databaseFile.deleteOnExit();
+
+        try {
+            initializeDatabase();
+        } catch (SQLException e) {
+            Files.deleteIfExists(databaseFile.toPath());
+            throw new IOException("Could not create the compilation database " + databaseFile.getAbsolutePath(), e);
+        }
+
+        LOGGER.info("storing PSMs and connections in {}", databaseFile.getAbsolutePath());
+    }
+
+
+    /**
+     * Creates the connection, tables and statements. As the database is only
+     * temporary, journaling and syncing is switched off.
+     *
+     * @throws SQLException
+     */
+    private void initializeDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode = OFF");
+            statement.execute("PRAGMA synchronous = OFF");
+            statement.execute("PRAGMA temp_store = FILE");
+
+            statement.execute("CREATE TABLE psms (id INTEGER PRIMARY KEY, data BLOB NOT NULL)");
+            statement.execute("CREATE TABLE acc_pep (acc_id INTEGER NOT NULL, pep_id INTEGER NOT NULL, "
+                    + "PRIMARY KEY (acc_id, pep_id)) WITHOUT ROWID");
+            statement.execute("CREATE INDEX pep_acc_index ON acc_pep (pep_id, acc_id)");
+        }
+
+        connection.setAutoCommit(false);
+
+        insertPSMStatement = connection.prepareStatement("INSERT INTO psms (id, data) VALUES (?, ?)");
+        selectPSMStatement = connection.prepareStatement("SELECT data FROM psms WHERE id = ?");
+        updatePSMStatement = connection.prepareStatement("UPDATE psms SET data = ? WHERE id = ?");
+        insertConnectionStatement = connection.prepareStatement("INSERT OR IGNORE INTO acc_pep (acc_id, pep_id) VALUES (?, ?)");
+        selectPeptidesOfAccessionStatement = connection.prepareStatement("SELECT pep_id FROM acc_pep WHERE acc_id = ?");
+        selectAccessionsOfPeptideStatement = connection.prepareStatement("SELECT acc_id FROM acc_pep WHERE pep_id = ?");
+
+        uncommittedChanges = 0;
+    }
+
+
+    /**
+     * Counts a change in the database and commits after every
+     * {@link #COMMIT_INTERVAL} changes.
+     *
+     * @throws SQLException
+     */
+    private void countChange() throws SQLException {
+        uncommittedChanges++;
+        if (uncommittedChanges >= COMMIT_INTERVAL) {
+            connection.commit();
+            uncommittedChanges = 0;
+        }
+    }
+
+
+    @Override
+    public Accession getAccession(String acc) {
+        Long accId = accessionStringsToIDs.get(acc);
+        if (accId != null) {
+            return getAccession(accId);
+        } else {
+            return null;
+        }
+    }
+
+
+    @Override
+    public Accession getAccession(Long accId) {
+        return accessions.get(accId);
+    }
+
+
+    @Override
+    public Accession insertNewAccession(String accession, String dbSequence) {
+        Accession acc;
+        Long id = (long)accessions.size()+1;
+
+        acc = new Accession(id, accession, dbSequence);
+        accessions.put(id, acc);
+        accessionStringsToIDs.put(accession, id);
+
+        return acc;
+    }
+
+
+    @Override
+    public int getNrAccessions() {
+        return accessions.size();
+    }
+
+
+    @Override
+    public Set<Long> getAllAccessionIDs() {
+        return accessions.keySet();
+    }
+
+
+    @Override
+    public Peptide getPeptide(String sequence) {
+        Long pepId = peptideSequencesToIDs.get(sequence);
+        if (pepId != null) {
+            return getPeptide(pepId);
+        } else {
+            return null;
+        }
+    }
+
+
+    @Override
+    public Peptide getPeptide(Long peptideID) {
+        return peptides.get(peptideID);
+    }
+
+
+    @Override
+    public Peptide insertNewPeptide(String sequence) {
+        Peptide peptide;
+        Long id = (long)peptides.size()+1;
+
+        peptide = new Peptide(id, sequence);
+        peptide.setSpectra(new SpectrumReferenceList(this::getPeptideSpectrumMatch));
+        peptides.put(id, peptide);
+        peptideSequencesToIDs.put(sequence, id);
+
+        return peptide;
+    }
+
+
+    @Override
+    public int getNrPeptides() {
+        return peptides.size();
+    }
+
+
+    @Override
+    public Set<Long> getAllPeptideIDs() {
+        return peptides.keySet();
+    }
+
+
+    @Override
+    public synchronized PeptideSpectrumMatch getPeptideSpectrumMatch(Long psmId) {
+        PeptideSpectrumMatch psm = pendingPSMs.get(psmId);
+        if (psm == null) {
+            psm = psmCache.get(psmId);
+        }
+        if (psm != null) {
+            return psm;
+        }
+
+        try {
+            selectPSMStatement.setLong(1, psmId);
+            try (ResultSet rs = selectPSMStatement.executeQuery()) {
+                if (rs.next()) {
+                    psm = decodePSM(rs.getBytes(1));
+                    psmCache.put(psmId, psm);
+                }
+            }
+        } catch (SQLException | IOException | ClassNotFoundException e) {
+            LOGGER.error("Could not read the PSM with ID {} from the database", psmId, e);
+            throw new IllegalStateException("Could not read PSM from the compilation database", e);
+        }
+
+        return psm;
+    }
+
+
+    @Override
+    public synchronized PeptideSpectrumMatch createNewPeptideSpectrumMatch(Integer charge,
+            double massToCharge, double deltaMass, Double rt, String sequence,
+            int missed, String sourceID, String spectrumTitle,
+            PIAInputFile file, SpectrumIdentification spectrumID) {
+        return new PeptideSpectrumMatch(nrPSMs + 1, charge, massToCharge, deltaMass, rt,
+                sequence, missed, sourceID, spectrumTitle,
+                file, spectrumID);
+    }
+
+
+    @Override
+    public synchronized void insertCompletePeptideSpectrumMatch(PeptideSpectrumMatch psm) {
+        if (psm.getID() != nrPSMs + 1) {
+            LOGGER.warn("spectrum was already in list, this should not have happened! {}", psm.getSequence());
+            return;
+        }
+
+        pendingPSMs.put(psm.getID(), psm);
+        nrPSMs++;
+    }
+
+
+    /**
+     * Writes the changed PSM into the database, if it is not pending.
+     */
+    @Override
+    public synchronized void updatePeptideSpectrumMatch(PeptideSpectrumMatch psm) {
+        if (pendingPSMs.get(psm.getID()) == psm) {
+            return;
+        }
+
+        try {
+            updatePSMStatement.setBytes(1, encodePSM(psm));
+            updatePSMStatement.setLong(2, psm.getID());
+            updatePSMStatement.executeUpdate();
+            countChange();
+        } catch (SQLException | IOException e) {
+            LOGGER.error("Could not update the PSM with ID {} in the database", psm.getID(), e);
+            throw new IllegalStateException("Could not update PSM in the compilation database", e);
+        }
+        psmCache.put(psm.getID(), psm);
+    }
+
+
+    /**
+     * Writes the PSMs of the parsed file into the database.
+     */
+    @Override
+    protected synchronized void fileParsingFinished() {
+        if (pendingPSMs.isEmpty()) {
+            return;
+        }
+
+        try {
+            for (PeptideSpectrumMatch psm : pendingPSMs.values()) {
+                insertPSMStatement.setLong(1, psm.getID());
+                insertPSMStatement.setBytes(2, encodePSM(psm));
+                insertPSMStatement.executeUpdate();
+                countChange();
+            }
+            connection.commit();
+            uncommittedChanges = 0;
+        } catch (SQLException | IOException e) {
+            LOGGER.error("Could not write the PSMs into the database", e);
+            throw new IllegalStateException("Could not write PSMs into the compilation database", e);
+        }
+
+        LOGGER.debug("wrote {} PSMs into the database", pendingPSMs.size());
+        pendingPSMs.clear();
+    }
+
+
+    /**
+     * The files are parsed one after another, as concurrently parsed files
+     * would be staged in memory.
+     */
+    @Override
+    protected boolean isConcurrentParsingSupported() {
+        return false;
+    }
+
+
+    @Override
+    public int getNrPeptideSpectrumMatches() {
+        return (int)nrPSMs;
+    }
+
+
+    @Override
+    public Collection<Long> getAllPeptideSpectrumMatcheIDs() {
+        // the PSM IDs are consecutive, so no need to store them
+        final int size = (int)nrPSMs;
+        return new AbstractList<Long>() {
+            @Override
+            public Long get(int index) {
+                if ((index < 0) || (index >= size)) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return index + 1L;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+
+    @Override
+    public Set<Peptide> getPeptidesFromConnectionMap(String acc) {
+        Long accId = accessionStringsToIDs.get(acc);
+        if (accId != null) {
+            Set<Long> pepIds = getPepIDsFromConnectionMap(accId);
+            if (!pepIds.isEmpty()) {
+                return pepIds.stream().map(pepId -> peptides.get(pepId)).collect(Collectors.toSet());
+            }
+        }
+        return null;
+    }
+
+
+    @Override
+    public Set<Accession> getAccessionsFromConnectionMap(String pep) {
+        Long pepId = peptideSequencesToIDs.get(pep);
+        if (pepId != null) {
+            Set<Long> accIds = getAccIDsFromConnectionMap(pepId);
+            if (!accIds.isEmpty()) {
+                return accIds.stream().map(accId -> accessions.get(accId)).collect(Collectors.toSet());
+            }
+        }
+        return null;
+    }
+
+
+    @Override
+    public synchronized Set<Long> getPepIDsFromConnectionMap(Long accId) {
+        return selectIDs(selectPeptidesOfAccessionStatement, accId);
+    }
+
+
+    @Override
+    public synchronized Set<Long> getAccIDsFromConnectionMap(Long pepId) {
+        return selectIDs(selectAccessionsOfPeptideStatement, pepId);
+    }
+
+
+    /**
+     * Executes the given statement with the given ID as the only parameter
+     * and returns the IDs in the first column of the result. The IDs are
+     * returned in a {@link HashSet} like in the {@link PIASimpleCompiler},
+     * as their order is kept in the groups.
+     *
+     * @param statement
+     * @param id
+     * @return
+     */
+    private Set<Long> selectIDs(PreparedStatement statement, Long id) {
+        Set<Long> ids = new HashSet<>();
+
+        try {
+            statement.setLong(1, id);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Could not read the connections of {} from the database", id, e);
+            throw new IllegalStateException("Could not read from the compilation database", e);
+        }
+
+        return ids;
+    }
+
+
+    @Override
+    public synchronized void addAccessionPeptideConnection(Accession accession, Peptide peptide) {
+        Long pepId = peptide.getID();
+        Long accId = accession.getID();
+
+        if (!accessions.containsKey(accId) || !peptides.containsKey(pepId)) {
+            LOGGER.error("accession or peptide was not inserted into the compiler");
+            return;
+        }
+
+        try {
+            insertConnectionStatement.setLong(1, accId);
+            insertConnectionStatement.setLong(2, pepId);
+            if (insertConnectionStatement.executeUpdate() > 0) {
+                countChange();
+                addConnectionToClusters(accId, pepId);
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Could not write the connection between accession {} and peptide {}", accId, pepId, e);
+            throw new IllegalStateException("Could not write into the compilation database", e);
+        }
+    }
+
+
+    @Override
+    public synchronized void clearConnectionMap() {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM acc_pep");
+            connection.commit();
+            uncommittedChanges = 0;
+        } catch (SQLException e) {
+            LOGGER.error("Could not clear the connections", e);
+        }
+    }
+
+
+    @Override
+    public synchronized void finish() {
+        pendingPSMs.clear();
+        psmCache.clear();
+
+        try {
+            if ((connection != null) && !connection.isClosed()) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Could not close the compilation database", e);
+        }
+
+        try {
+            Files.deleteIfExists(databaseFile.toPath());
+        } catch (IOException e) {
+            LOGGER.error("Could not remove the compilation database {}", databaseFile.getAbsolutePath(), e);
+        }
+    }
+
+
+    /**
+     * Serializes the given PSM into LZ4 compressed bytes. The file and
+     * SpectrumIdentification of the PSM are only stored as references.
+     *
+     * @param psm
+     * @return
+     * @throws IOException
+     */
+    private byte[] encodePSM(PeptideSpectrumMatch psm) throws IOException {
+        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream(1024);
+        try (ObjectOutputStream objectOut = new ReferencingObjectOutputStream(bytesOut)) {
+            objectOut.writeObject(psm);
+        }
+        byte[] raw = bytesOut.toByteArray();
+
+        byte[] compressed = new byte[Integer.BYTES + compressor.maxCompressedLength(raw.length)];
+        ByteBuffer.wrap(compressed).putInt(raw.length);
+        int length = compressor.compress(raw, 0, raw.length,
+                compressed, Integer.BYTES, compressed.length - Integer.BYTES);
+
+        byte[] encoded = new byte[Integer.BYTES + length];
+        System.arraycopy(compressed, 0, encoded, 0, encoded.length);
+        return encoded;
+    }
+
+
+    /**
+     * Restores the PSM from the bytes created by
+     * {@link #encodePSM(PeptideSpectrumMatch)}.
+     *
+     * @param encoded
+     * @return
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private PeptideSpectrumMatch decodePSM(byte[] encoded) throws IOException, ClassNotFoundException {
+        int rawLength = ByteBuffer.wrap(encoded).getInt();
+        byte[] raw = new byte[rawLength];
+        decompressor.decompress(encoded, Integer.BYTES, encoded.length - Integer.BYTES,
+                raw, 0, rawLength);
+
+        try (ObjectInputStream objectIn = new ReferencingObjectInputStream(new ByteArrayInputStream(raw))) {
+            return (PeptideSpectrumMatch) objectIn.readObject();
+        }
+    }
+
+
+    /**
+     * Returns the reference to the given SpectrumIdentification, if it is in
+     * the analysisCollection of one of the files, otherwise null.
+     *
+     * @param spectrumIdentification
+     * @return
+     */
+    private SpectrumIdentificationReference getSpectrumIdentificationReference(
+            SpectrumIdentification spectrumIdentification) {
+        SpectrumIdentificationReference reference = spectrumIdentificationReferences.get(spectrumIdentification);
+
+        if (reference == null) {
+            for (Long fileID : getAllFileIDs()) {
+                List<SpectrumIdentification> fileSpectrumIDs =
+                        getFile(fileID).getAnalysisCollection().getSpectrumIdentification();
+                for (int idx = 0; idx < fileSpectrumIDs.size(); idx++) {
+                    if (fileSpectrumIDs.get(idx) == spectrumIdentification) {
+                        reference = new SpectrumIdentificationReference(fileID, idx);
+                        spectrumIdentificationReferences.put(spectrumIdentification, reference);
+                        return reference;
+                    }
+                }
+            }
+        }
+
+        return reference;
+    }
+
+
+    /**
+     * Replaces the files and SpectrumIdentifications by references, so that
+     * they are not stored with each PSM.
+     */
+    private class ReferencingObjectOutputStream extends ObjectOutputStream {
+
+        ReferencingObjectOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            if (obj instanceof PIAInputFile) {
+                return new FileReference(((PIAInputFile) obj).getID());
+            } else if (obj instanceof SpectrumIdentification) {
+                SpectrumIdentificationReference reference =
+                        getSpectrumIdentificationReference((SpectrumIdentification) obj);
+                if (reference != null) {
+                    return reference;
+                }
+            }
+            return obj;
+        }
+    }
+
+
+    /**
+     * Resolves the references written by the
+     * {@link ReferencingObjectOutputStream}.
+     */
+    private class ReferencingObjectInputStream extends ObjectInputStream {
+
+        ReferencingObjectInputStream(InputStream in) throws IOException {
+            super(in);
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) {
+            if (obj instanceof FileReference) {
+                return getFile(((FileReference) obj).fileID);
+            } else if (obj instanceof SpectrumIdentificationReference) {
+                SpectrumIdentificationReference reference = (SpectrumIdentificationReference) obj;
+                return getFile(reference.fileID).getAnalysisCollection()
+                        .getSpectrumIdentification().get(reference.index);
+            }
+            return obj;
+        }
+    }
+
+
+    /**
+     * Reference to a {@link PIAInputFile} in a serialized PSM.
+     */
+    private static final class FileReference implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long fileID;
+
+        FileReference(long fileID) {
+            this.fileID = fileID;
+        }
+    }
+
+
+    /**
+     * Reference to a {@link SpectrumIdentification} in a serialized PSM, given
+     * by the file and the index in the file's analysisCollection.
+     */
+    private static final class SpectrumIdentificationReference implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long fileID;
+
+        private final int index;
+
+        SpectrumIdentificationReference(long fileID, int index) {
+            this.fileID = fileID;
+            this.index = index;
+        }
+    }
+}
@@ -253,6 +253,8 @@ public class PIASimpleCompiler extends PIACompiler {
 
         accPepMapIDs.get(accId).add(pepId);
         pepAccMapIDs.get(pepId).add(accId);
+
+        addConnectionToClusters(accId, pepId);
     }
 
 
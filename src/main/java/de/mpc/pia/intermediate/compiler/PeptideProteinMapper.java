@@ -0,0 +1,451 @@
+package de.mpc.pia.intermediate.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.AccessionOccurrence;
+import de.mpc.pia.intermediate.Peptide;
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+
+/**
+ * Finds all occurrences of a set of peptide sequences in protein sequences,
+ * using an Aho-Corasick automaton over the peptide sequences. Each protein
+ * sequence is scanned once, independent of the number of peptides. After the
+ * creation, the mapper is not changed and may be used by several threads.
+ * <p>
+ * Optionally, isoleucine and leucine are treated as equal.
+ * <p>
+ * {@link #mapAccessionOccurrences(PIACompiler, boolean, int)} uses the mapper
+ * to find the occurrences of the peptides in the sequences of their connected
+ * accessions of a compilation, for which the input files give no positions.
+ *
+ * @author julianu
+ *
+ */
+public class PeptideProteinMapper {
+
+    /** the root state of the automaton */
+    private static final int ROOT = 0;
+
+    /** the number of accessions scanned by one task */
+    private static final int ACCESSIONS_PER_TASK = 256;
+
+    /** the maximal number of states, limited by the size of the transition map */
+    public static final int MAX_STATES = (int) ((1 << 30) * Hash.DEFAULT_LOAD_FACTOR);
+
+    /** logger for this class */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+
+    /** whether isoleucine and leucine are treated as equal */
+    private final boolean ilEquivalent;
+
+    /** the lengths of the peptide sequences */
+    private final int[] sequenceLengths;
+
+    /** the transitions of the automaton, keys are the state (shifted by 16 bits) and the character */
+    private final Long2IntOpenHashMap transitions;
+
+    /** the failure transition of each state */
+    private int[] failure;
+
+    /** the first sequence ending in each state, or -1 */
+    private int[] firstSequence;
+
+    /** the next sequence ending in the same state as the sequence, or -1 */
+    private final int[] nextSequence;
+
+    /** the next state in the failure chain of each state, in which sequences end, or -1 */
+    private int[] outputLink;
+
+    /** the number of states */
+    private int nrStates;
+
+
+    /**
+     * Receives the found occurrences.
+     */
+    @FunctionalInterface
+    public interface OccurrenceHandler {
+        /**
+         * Called for each occurrence of a peptide sequence.
+         *
+         * @param sequenceIdx the index of the peptide sequence
+         * @param start the start in the protein sequence (starting with 0)
+         */
+        void occurrence(int sequenceIdx, int start);
+    }
+
+
+    /**
+     * Creates the mapper for the given peptide sequences. Empty sequences are
+     * never found.
+     *
+     * @param sequences the peptide sequences
+     * @param ilEquivalent whether isoleucine and leucine are treated as equal
+     * @throws IllegalArgumentException if the sequences are too long in total
+     * (more than {@link #MAX_STATES} amino acids)
+     */
+    public PeptideProteinMapper(List<String> sequences, boolean ilEquivalent) {
+        this.ilEquivalent = ilEquivalent;
+        this.sequenceLengths = new int[sequences.size()];
+        this.nextSequence = new int[sequences.size()];
+
+        long totalLength = 1;
+        for (String sequence : sequences) {
+            totalLength += sequence.length();
+        }
+        if (totalLength > MAX_STATES) {
+            throw new IllegalArgumentException("The " + sequences.size() + " peptide sequences have "
+                    + (totalLength - 1) + " amino acids in total, at most " + MAX_STATES
+                    + " can be mapped at once");
+        }
+        int maxStates = (int) totalLength;
+
+        transitions = new Long2IntOpenHashMap(maxStates);
+        transitions.defaultReturnValue(-1);
+
+        int[] parents = new int[maxStates];
+        char[] symbols = new char[maxStates];
+        int[] depths = new int[maxStates];
+        firstSequence = new int[maxStates];
+        Arrays.fill(firstSequence, -1);
+        nrStates = 1;
+
+        for (int seqIdx = 0; seqIdx < sequences.size(); seqIdx++) {
+            String sequence = sequences.get(seqIdx);
+            sequenceLengths[seqIdx] = sequence.length();
+            nextSequence[seqIdx] = -1;
+            if (sequence.isEmpty()) {
+                continue;
+            }
+
+            int state = ROOT;
+            for (int pos = 0; pos < sequence.length(); pos++) {
+                char symbol = normalize(sequence.charAt(pos));
+                int next = transition(state, symbol);
+                if (next < 0) {
+                    next = nrStates++;
+                    transitions.put(transitionKey(state, symbol), next);
+                    parents[next] = state;
+                    symbols[next] = symbol;
+                    depths[next] = depths[state] + 1;
+                }
+                state = next;
+            }
+
+            nextSequence[seqIdx] = firstSequence[state];
+            firstSequence[state] = seqIdx;
+        }
+
+        createFailureTransitions(parents, symbols, depths);
+    }
+
+
+    /**
+     * Creates the failure transitions and output links, processing the states
+     * by increasing depth.
+     */
+    private void createFailureTransitions(int[] parents, char[] symbols, int[] depths) {
+        int maxDepth = 0;
+        for (int state = 0; state < nrStates; state++) {
+            maxDepth = Math.max(maxDepth, depths[state]);
+        }
+
+        // sort the states by their depth (counting sort)
+        int[] depthStarts = new int[maxDepth + 2];
+        for (int state = 0; state < nrStates; state++) {
+            depthStarts[depths[state] + 1]++;
+        }
+        for (int depth = 1; depth < depthStarts.length; depth++) {
+            depthStarts[depth] += depthStarts[depth - 1];
+        }
+        int[] statesByDepth = new int[nrStates];
+        for (int state = 0; state < nrStates; state++) {
+            statesByDepth[depthStarts[depths[state]]++] = state;
+        }
+
+        failure = new int[nrStates];
+        outputLink = new int[nrStates];
+        firstSequence = Arrays.copyOf(firstSequence, nrStates);
+        outputLink[ROOT] = -1;
+
+        for (int idx = 1; idx < nrStates; idx++) {
+            int state = statesByDepth[idx];
+            int parent = parents[state];
+
+            int fail = ROOT;
+            if (parent != ROOT) {
+                fail = failure[parent];
+                int next;
+                while (((next = transition(fail, symbols[state])) < 0) && (fail != ROOT)) {
+                    fail = failure[fail];
+                }
+                fail = (next < 0) ? ROOT : next;
+            }
+
+            failure[state] = fail;
+            outputLink[state] = (firstSequence[fail] >= 0) ? fail : outputLink[fail];
+        }
+    }
+
+
+    /**
+     * Returns the number of peptide sequences of this mapper.
+     *
+     * @return
+     */
+    public int getNrSequences() {
+        return sequenceLengths.length;
+    }
+
+
+    /**
+     * Whether isoleucine and leucine are treated as equal.
+     *
+     * @return
+     */
+    public boolean isILEquivalent() {
+        return ilEquivalent;
+    }
+
+
+    /**
+     * Finds all occurrences of the peptide sequences in the given protein
+     * sequence and passes them to the handler, ordered by their end position.
+     *
+     * @param proteinSequence
+     * @param handler
+     */
+    public void findOccurrences(CharSequence proteinSequence, OccurrenceHandler handler) {
+        int state = ROOT;
+
+        for (int pos = 0; pos < proteinSequence.length(); pos++) {
+            char symbol = normalize(proteinSequence.charAt(pos));
+
+            int next;
+            while (((next = transition(state, symbol)) < 0) && (state != ROOT)) {
+                state = failure[state];
+            }
+            state = (next < 0) ? ROOT : next;
+
+            int output = (firstSequence[state] >= 0) ? state : outputLink[state];
+            while (output >= 0) {
+                for (int seqIdx = firstSequence[output]; seqIdx >= 0; seqIdx = nextSequence[seqIdx]) {
+                    handler.occurrence(seqIdx, pos - sequenceLengths[seqIdx] + 1);
+                }
+                output = outputLink[output];
+            }
+        }
+    }
+
+
+    private char normalize(char symbol) {
+        return (ilEquivalent && (symbol == 'I')) ? 'L' : symbol;
+    }
+
+
+    private int transition(int state, char symbol) {
+        return transitions.get(transitionKey(state, symbol));
+    }
+
+
+    private static long transitionKey(int state, char symbol) {
+        return ((long) state << 16) | symbol;
+    }
+
+
+    /**
+     * Finds the occurrences of the peptides of the given compilation in the
+     * sequences of their connected accessions and adds them to the peptides.
+     * Only the pairs of peptide and accession are mapped, which have no
+     * occurrence with a start position yet, i.e. the positions given by the
+     * input files are kept. Accessions without sequence are skipped. If an
+     * occurrence is found for a pair, its placeholder occurrences (without or
+     * with a start position below 1) are removed.
+     * <p>
+     * The protein sequences are scanned in parallel, the occurrences are added
+     * afterwards in the order of the accession IDs. This must be called before
+     * the connection map of the compiler is cleared.
+     *
+     * @param compiler
+     * @param ilEquivalent whether isoleucine and leucine are treated as equal
+     * @param nrThreads the number of used threads
+     */
+    public static void mapAccessionOccurrences(PIACompiler compiler, boolean ilEquivalent, int nrThreads) {
+        List<Long> accessionIDs = new ArrayList<>(compiler.getAllAccessionIDs());
+        accessionIDs.sort(null);
+
+        List<Accession> accessions = new ArrayList<>();
+        List<int[]> connectedPeptides = new ArrayList<>();
+        List<Peptide> peptides = new ArrayList<>();
+        Map<Long, Integer> peptideIndices = new HashMap<>();
+
+        for (Long accID : accessionIDs) {
+            Accession accession = compiler.getAccession(accID);
+            Collection<Long> pepIDs = compiler.getPepIDsFromConnectionMap(accID);
+            if ((accession.getDbSequence() == null) || accession.getDbSequence().isEmpty()
+                    || (pepIDs == null) || pepIDs.isEmpty()) {
+                continue;
+            }
+
+            int[] pepIndices = new int[pepIDs.size()];
+            int idx = 0;
+            for (Long pepID : pepIDs) {
+                Peptide peptide = compiler.getPeptide(pepID);
+                if (!hasStartPosition(peptide, accID)) {
+                    pepIndices[idx++] = peptideIndices.computeIfAbsent(pepID, id -> {
+                        peptides.add(peptide);
+                        return peptides.size() - 1;
+                    });
+                }
+            }
+            if (idx == 0) {
+                continue;
+            }
+            pepIndices = Arrays.copyOf(pepIndices, idx);
+            Arrays.sort(pepIndices);
+
+            accessions.add(accession);
+            connectedPeptides.add(pepIndices);
+        }
+
+        if (accessions.isEmpty()) {
+            LOGGER.debug("no peptides without positions in accessions with sequences, no occurrences to map");
+            return;
+        }
+
+        List<String> sequences = new ArrayList<>(peptides.size());
+        for (Peptide peptide : peptides) {
+            sequences.add(peptide.getSequence());
+        }
+        PeptideProteinMapper mapper = new PeptideProteinMapper(sequences, ilEquivalent);
+
+        LOGGER.info("mapping {} peptides to {} accession sequences", peptides.size(), accessions.size());
+
+        int[][] occurrences = mapper.scanAccessions(accessions, connectedPeptides, nrThreads);
+
+        int nrOccurrences = 0;
+        for (int accIdx = 0; accIdx < accessions.size(); accIdx++) {
+            Accession accession = accessions.get(accIdx);
+            int[] accOccurrences = occurrences[accIdx];
+
+            for (int occIdx = 0; occIdx < accOccurrences.length; occIdx += 2) {
+                Peptide peptide = peptides.get(accOccurrences[occIdx]);
+                int start = accOccurrences[occIdx + 1] + 1;
+                if (peptide.addAccessionOccurrence(accession, start, start + peptide.getSequence().length() - 1)) {
+                    nrOccurrences++;
+                }
+            }
+
+            for (int occIdx = 0; occIdx < accOccurrences.length; occIdx += 2) {
+                peptides.get(accOccurrences[occIdx]).getAccessionOccurrences().removeIf(
+                        occ -> accession.getID().equals(occ.getAccession().getID())
+                                && ((occ.getStart() == null) || (occ.getStart() < 1)));
+            }
+        }
+
+        LOGGER.info("{} new accession occurrences mapped", nrOccurrences);
+    }
+
+
+    /**
+     * Whether the peptide has an occurrence with a start position in the
+     * accession with the given ID.
+     */
+    private static boolean hasStartPosition(Peptide peptide, Long accID) {
+        for (AccessionOccurrence occ : peptide.getAccessionOccurrences()) {
+            if (accID.equals(occ.getAccession().getID()) && (occ.getStart() != null) && (occ.getStart() > 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Scans the sequences of the given accessions for their connected
+     * peptides.
+     *
+     * @return for each accession the pairs of the peptide index and start (starting with 0)
+     */
+    private int[][] scanAccessions(List<Accession> accessions, List<int[]> connectedPeptides, int nrThreads) {
+        int[][] occurrences = new int[accessions.size()][];
+        int nrTasks = (accessions.size() + ACCESSIONS_PER_TASK - 1) / ACCESSIONS_PER_TASK;
+
+        if ((nrThreads < 2) || (nrTasks < 2)) {
+            scanAccessions(accessions, connectedPeptides, 0, accessions.size(), occurrences);
+            return occurrences;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(nrThreads, nrTasks), runnable -> {
+                    Thread thread = new Thread(runnable, "PIA-Mapper-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        try {
+            List<Future<?>> tasks = new ArrayList<>(nrTasks);
+            for (int from = 0; from < accessions.size(); from += ACCESSIONS_PER_TASK) {
+                int taskFrom = from;
+                int taskTo = Math.min(from + ACCESSIONS_PER_TASK, accessions.size());
+                tasks.add(executor.submit(
+                        () -> scanAccessions(accessions, connectedPeptides, taskFrom, taskTo, occurrences)));
+            }
+
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while mapping the peptides", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("error while mapping the peptides", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return occurrences;
+    }
+
+
+    /**
+     * Scans the sequences of the accessions with indices from (inclusive) to
+     * (exclusive).
+     */
+    private void scanAccessions(List<Accession> accessions, List<int[]> connectedPeptides, int from, int to,
+            int[][] occurrences) {
+        IntArrayList found = new IntArrayList();
+
+        for (int accIdx = from; accIdx < to; accIdx++) {
+            int[] connected = connectedPeptides.get(accIdx);
+            found.clear();
+
+            findOccurrences(accessions.get(accIdx).getDbSequence(), (seqIdx, start) -> {
+                if (Arrays.binarySearch(connected, seqIdx) >= 0) {
+                    found.add(seqIdx);
+                    found.add(start);
+                }
+            });
+
+            occurrences[accIdx] = found.toIntArray();
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package de.mpc.pia.intermediate.compiler.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import de.mpc.pia.tools.CleavageSiteScanner;
+
+
+/**
+ * Reads and digests the proteins of a FASTA file. The file is memory mapped in
+ * batches of whole records, which are digested in parallel. The digested
+ * proteins are passed to the consumer in the order of the file, on the calling
+ * thread.
+ * <p>
+ * The peptides are given by their offsets in the protein sequence, their
+ * sequences are deduplicated by a concurrent intern table, so each peptide
+ * sequence is only created once.
+ *
+ * @author julianu
+ *
+ */
+class FastaDigester {
+
+    /** the default (minimal) size of a batch in bytes */
+    private static final int BATCH_SIZE = 4 * 1024 * 1024;
+
+    /** size of the buffer for searching the record starts */
+    private static final int SEARCH_BUFFER_SIZE = 64 * 1024;
+
+
+    /** the scanner for the cleavage sites, null if the regular expression is used */
+    private final CleavageSiteScanner siteScanner;
+
+    /** the compiled enzyme pattern, used if there is no scanner */
+    private final Pattern enzymePattern;
+
+    private final int minPepLength;
+
+    private final int maxPepLength;
+
+    /** the maximal number of missed cleavages, below 0 for all possible */
+    private final int maxMissedCleavages;
+
+    /** the number of used threads */
+    private final int nrThreads;
+
+    /** the (minimal) size of a batch in bytes */
+    private final int batchSize;
+
+    /** the interned peptide sequences */
+    private final ConcurrentHashMap<SequenceSlice, String> internTable;
+
+
+    /**
+     * A digested protein.
+     */
+    static final class DigestedProtein {
+        /** the parsed header */
+        final FastaHeaderInfos headerInfos;
+
+        /** the sequence of the protein */
+        final String dbSequence;
+
+        /** the peptide sequences with valid lengths, in the order of the digestion */
+        final String[] peptides;
+
+        /** the start of each peptide (starting with 1) */
+        final int[] starts;
+
+        /** the number of missed cleavages of each peptide */
+        final int[] missedCleavages;
+
+        /** the spectrum count of each peptide (starting with 1) */
+        final int[] spectrumCounts;
+
+        /** the number of counted spectra of the protein plus 1, as in the former digestion */
+        final int nrSpectra;
+
+        private DigestedProtein(FastaHeaderInfos headerInfos, String dbSequence, String[] peptides,
+                int[] starts, int[] missedCleavages, int[] spectrumCounts, int nrSpectra) {
+            this.headerInfos = headerInfos;
+            this.dbSequence = dbSequence;
+            this.peptides = peptides;
+            this.starts = starts;
+            this.missedCleavages = missedCleavages;
+            this.spectrumCounts = spectrumCounts;
+            this.nrSpectra = nrSpectra;
+        }
+    }
+
+
+    /**
+     * A part of a sequence, used as key in the intern table without creating
+     * the string. Its hash code equals the one of the string.
+     */
+    private static final class SequenceSlice {
+        private final String sequence;
+        private final int start;
+        private final int end;
+        private final int hash;
+
+        private SequenceSlice(String sequence, int start, int end) {
+            this.sequence = sequence;
+            this.start = start;
+            this.end = end;
+
+            int h = 0;
+            for (int pos = start; pos < end; pos++) {
+                h = 31 * h + sequence.charAt(pos);
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SequenceSlice)) {
+                return false;
+            }
+            SequenceSlice other = (SequenceSlice) obj;
+            return (hash == other.hash) && (end - start == other.end - other.start)
+                    && sequence.regionMatches(start, other.sequence, other.start, end - start);
+        }
+    }
+
+
+    /**
+     * Creates a digester.
+     *
+     * @param enzymePattern the site regular expression of the enzyme
+     * @param minPepLength
+     * @param maxPepLength
+     * @param maxMissedCleavages the maximal number of missed cleavages, below 0 for all possible
+     * @param nrThreads the number of used threads, below 1 for all processors
+     */
+    FastaDigester(String enzymePattern, int minPepLength, int maxPepLength, int maxMissedCleavages,
+            int nrThreads) {
+        this(enzymePattern, minPepLength, maxPepLength, maxMissedCleavages, nrThreads, BATCH_SIZE);
+    }
+
+
+    /**
+     * Creates a digester with the given size of the batches.
+     */
+    FastaDigester(String enzymePattern, int minPepLength, int maxPepLength, int maxMissedCleavages,
+            int nrThreads, int batchSize) {
+        this.siteScanner = CleavageSiteScanner.compile(enzymePattern);
+        this.enzymePattern = (siteScanner == null) ? Pattern.compile(enzymePattern) : null;
+        this.minPepLength = minPepLength;
+        this.maxPepLength = maxPepLength;
+        this.maxMissedCleavages = maxMissedCleavages;
+        this.nrThreads = (nrThreads > 0) ? nrThreads : Runtime.getRuntime().availableProcessors();
+        this.batchSize = batchSize;
+        this.internTable = new ConcurrentHashMap<>();
+    }
+
+
+    /**
+     * Whether the cleavage sites are found without the regular expression.
+     *
+     * @return
+     */
+    boolean usesSiteScanner() {
+        return siteScanner != null;
+    }
+
+
+    /**
+     * Reads and digests all proteins of the given FASTA file and passes them
+     * in the order of the file to the consumer.
+     *
+     * @param fileName
+     * @param consumer
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    void digestFile(String fileName, Consumer<DigestedProtein> consumer) throws IOException, InterruptedException {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = (nrThreads > 1) ?
+                Executors.newFixedThreadPool(nrThreads, runnable -> {
+                    Thread thread = new Thread(runnable, "PIA-FASTA-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }) : null;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long batchStart = findRecordStart(channel, 0, size);
+
+            // digest at most two batches per thread ahead of the consumer, to limit the used memory
+            Deque<Future<List<DigestedProtein>>> pending = new ArrayDeque<>();
+            while ((batchStart < size) || !pending.isEmpty()) {
+                while ((batchStart < size) && ((executor == null) || (pending.size() < 2 * nrThreads))) {
+                    long batchEnd = findRecordStart(channel, Math.min(size, batchStart + batchSize), size);
+                    ByteBuffer batch = channel.map(FileChannel.MapMode.READ_ONLY, batchStart, batchEnd - batchStart);
+                    batchStart = batchEnd;
+
+                    if (executor != null) {
+                        pending.add(executor.submit(() -> digestBatch(batch)));
+                    } else {
+                        digestBatch(batch).forEach(consumer);
+                    }
+                }
+
+                if (!pending.isEmpty()) {
+                    pending.poll().get().forEach(consumer);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("error while digesting the FASTA file", e.getCause());
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            internTable.clear();
+        }
+    }
+
+
+    /**
+     * Returns the position of the first record start ('&gt;' at the start of a
+     * line) at or after the given position, or the size of the file.
+     */
+    private static long findRecordStart(FileChannel channel, long from, long size) throws IOException {
+        if (from >= size) {
+            return size;
+        }
+
+        // the byte before the position is needed to check for a line start
+        long bufferStart = Math.max(0, from - 1);
+        ByteBuffer buffer = ByteBuffer.allocate(SEARCH_BUFFER_SIZE);
+        boolean atLineStart = (from == 0);
+
+        while (bufferStart < size) {
+            buffer.clear();
+            int read = channel.read(buffer, bufferStart);
+            if (read <= 0) {
+                break;
+            }
+
+            for (int idx = 0; idx < read; idx++) {
+                long pos = bufferStart + idx;
+                byte b = buffer.get(idx);
+                if ((pos >= from) && atLineStart && (b == '>')) {
+                    return pos;
+                }
+                atLineStart = (b == '\n') || (b == '\r');
+            }
+            bufferStart += read;
+        }
+
+        return size;
+    }
+
+
+    /**
+     * Digests the records of the batch, which starts with a record.
+     */
+    private List<DigestedProtein> digestBatch(ByteBuffer batch) {
+        List<DigestedProtein> proteins = new ArrayList<>();
+
+        FastaHeaderInfos headerInfos = null;
+        byte[] sequence = new byte[1024];
+        int sequenceLength = 0;
+
+        int limit = batch.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while ((lineEnd < limit) && (batch.get(lineEnd) != '\n') && (batch.get(lineEnd) != '\r')) {
+                lineEnd++;
+            }
+
+            if ((lineEnd > lineStart) && (batch.get(lineStart) == '>')) {
+                if ((headerInfos != null) && (sequenceLength > 0)) {
+                    proteins.add(digestProtein(headerInfos,
+                            new String(sequence, 0, sequenceLength, StandardCharsets.UTF_8)));
+                }
+
+                byte[] header = new byte[lineEnd - lineStart];
+                batch.get(lineStart, header);
+                headerInfos = FastaHeaderInfos.parseHeaderInfos(new String(header, StandardCharsets.UTF_8));
+                sequenceLength = 0;
+            } else {
+                // append the trimmed line to the sequence
+                int start = lineStart;
+                int end = lineEnd;
+                while ((start < end) && ((batch.get(start) & 0xff) <= ' ')) {
+                    start++;
+                }
+                while ((end > start) && ((batch.get(end - 1) & 0xff) <= ' ')) {
+                    end--;
+                }
+
+                if (sequenceLength + end - start > sequence.length) {
+                    sequence = Arrays.copyOf(sequence, Math.max(2 * sequence.length, sequenceLength + end - start));
+                }
+                batch.get(start, sequence, sequenceLength, end - start);
+                sequenceLength += end - start;
+            }
+
+            // skip a "\r\n" as one line break
+            lineStart = lineEnd + 1;
+            if ((lineEnd < limit) && (batch.get(lineEnd) == '\r') && (lineStart < limit)
+                    && (batch.get(lineStart) == '\n')) {
+                lineStart++;
+            }
+        }
+
+        if ((headerInfos != null) && (sequenceLength > 0)) {
+            proteins.add(digestProtein(headerInfos, new String(sequence, 0, sequenceLength, StandardCharsets.UTF_8)));
+        }
+
+        return proteins;
+    }
+
+
+    /**
+     * Digests the protein. The peptides are built from the pieces between the
+     * cleavage sites, like by splitting the sequence with the enzyme pattern.
+     */
+    DigestedProtein digestProtein(FastaHeaderInfos headerInfos, String dbSequence) {
+        String pieceSequence;
+        int[] boundaries;
+        if (siteScanner != null) {
+            pieceSequence = dbSequence;
+            boundaries = siteScanner.getPieceBoundaries(dbSequence);
+        } else {
+            // the pattern may consume residues, so the peptides are built from the split pieces
+            String[] pieces = enzymePattern.split(dbSequence);
+            pieceSequence = String.join("", pieces);
+            boundaries = new int[pieces.length + 1];
+            for (int idx = 0; idx < pieces.length; idx++) {
+                boundaries[idx + 1] = boundaries[idx] + pieces[idx].length();
+            }
+        }
+
+        int nrPieces = boundaries.length - 1;
+        int missedCleavages = (maxMissedCleavages >= 0) ? maxMissedCleavages : (nrPieces - 1);
+
+        List<String> peptides = new ArrayList<>();
+        int[] starts = new int[16];
+        int[] missed = new int[16];
+        int[] spectrumCounts = new int[16];
+
+        int spectraCount = 1;
+        for (int miss = 0; miss <= missedCleavages; miss++) {
+            for (int i = 0; i < nrPieces - miss; i++) {
+                int start = boundaries[i];
+                int end = boundaries[i + miss + 1];
+
+                if ((end - start >= minPepLength) && (end - start <= maxPepLength)) {
+                    int idx = peptides.size();
+                    if (idx == starts.length) {
+                        starts = Arrays.copyOf(starts, 2 * idx);
+                        missed = Arrays.copyOf(missed, 2 * idx);
+                        spectrumCounts = Arrays.copyOf(spectrumCounts, 2 * idx);
+                    }
+
+                    peptides.add(intern(pieceSequence, start, end));
+                    starts[idx] = start + 1;
+                    missed[idx] = miss;
+                    spectrumCounts[idx] = spectraCount;
+                }
+                spectraCount++;
+            }
+        }
+
+        int nrPeptides = peptides.size();
+        return new DigestedProtein(headerInfos, dbSequence, peptides.toArray(new String[0]),
+                Arrays.copyOf(starts, nrPeptides), Arrays.copyOf(missed, nrPeptides),
+                Arrays.copyOf(spectrumCounts, nrPeptides), spectraCount);
+    }
+
+
+    /**
+     * Returns the interned string of the given part of the sequence.
+     */
+    private String intern(String sequence, int start, int end) {
+        String interned = internTable.get(new SequenceSlice(sequence, start, end));
+        if (interned == null) {
+            String peptide = sequence.substring(start, end);
+            String existing = internTable.putIfAbsent(new SequenceSlice(peptide, 0, peptide.length()), peptide);
+            interned = (existing != null) ? existing : peptide;
+        }
+        return interned;
+    }
+}
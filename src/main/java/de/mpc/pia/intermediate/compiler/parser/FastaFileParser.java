@@ -1,13 +1,10 @@
 package de.mpc.pia.intermediate.compiler.parser;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -21,11 +18,11 @@ import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentification;
 import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationProtocol;
 
 import de.mpc.pia.intermediate.Accession;
-import de.mpc.pia.intermediate.AccessionOccurrence;
 import de.mpc.pia.intermediate.PIAInputFile;
 import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.parser.FastaDigester.DigestedProtein;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.tools.MzIdentMLTools;
@@ -47,6 +44,10 @@ public class FastaFileParser {
     /**
      * Parses the data from a FASTA file, the proteins are digested by the
      * enzymePattern allowing for up to missedCleavages misses.
+     * <p>
+     * The proteins are read and digested in parallel by the number of threads
+     * of the compiler (see {@link FastaDigester}), but inserted into the
+     * compiler in the order of the file.
      *
      * @return
      */
@@ -58,10 +59,7 @@ public class FastaFileParser {
                     + "may result in a massive file and take very long!");
         }
 
-        try (FileInputStream fileStream = new FileInputStream(fileName)) {
-            DataInputStream in = new DataInputStream(fileStream);
-            BufferedReader br = new BufferedReader(new InputStreamReader(in));
-
+        try {
             PIAInputFile inputFile =
                     compiler.insertNewFile(name, fileName, "FASTA");
 
@@ -100,59 +98,33 @@ public class FastaFileParser {
             inputFile.addSpectrumIdentification(spectrumID);
 
 
-            String strLine;
-            int spectrumOffset = 0;
-            int accessions = 0;
-            FastaHeaderInfos headerInfos = null;
-            StringBuilder dbSequenceBuffer = new StringBuilder();
-
-            while ((strLine = br.readLine()) != null) {
-                if (strLine.startsWith(">")) {
-                    if ((headerInfos != null) && (dbSequenceBuffer.length() > 0)) {
-                        // a prior protein can be inserted and digested
-                        spectrumOffset += digestProtein(headerInfos,
-                                dbSequenceBuffer.toString(),
-                                compiler,
-                                inputFile,
-                                spectrumID,
-                                searchDatabase.getId(),
-                                enzymePattern,
-                                minPepLength,
-                                maxPepLength,
-                                missedCleavages,
-                                spectrumOffset);
-                        accessions++;
-
-                        if (accessions % 100000 == 0) {
-                            LOGGER.info(accessions + " accessions processed");
-                        }
-                    }
-
-                    // start of a new protein
-                    headerInfos = FastaHeaderInfos.parseHeaderInfos(strLine);
-                    dbSequenceBuffer = new StringBuilder();
-                } else {
-                    // just reading in the protein sequence
-                    dbSequenceBuffer.append(strLine.trim());
-                }
+            FastaDigester digester = new FastaDigester(enzymePattern, minPepLength, maxPepLength,
+                    missedCleavages, compiler.getNrThreads());
+            if (!digester.usesSiteScanner()) {
+                LOGGER.info("the enzyme pattern " + enzymePattern + " is not supported by the site scanner, "
+                        + "using the regular expression");
             }
 
-            if ((headerInfos != null) && (dbSequenceBuffer.length() > 0)) {
-                // the last protein can be inserted and digested
-                spectrumOffset += digestProtein(headerInfos,
-                        dbSequenceBuffer.toString(),
+            String searchDatabaseID = searchDatabase.getId();
+            int[] spectrumOffset = {0};
+            int[] accessions = {0};
+
+            digester.digestFile(fileName, protein -> {
+                spectrumOffset[0] += insertProtein(protein,
                         compiler,
                         inputFile,
                         spectrumID,
-                        searchDatabase.getId(),
-                        enzymePattern,
-                        minPepLength,
-                        maxPepLength,
-                        missedCleavages,
-                        spectrumOffset);
-            }
+                        searchDatabaseID,
+                        spectrumOffset[0]);
+                accessions[0]++;
 
-            in.close();
+                if (accessions[0] % 100000 == 0) {
+                    LOGGER.info(accessions[0] + " accessions processed");
+                }
+            });
+        } catch (InterruptedException e) {
+            LOGGER.error("Interrupted while parsing the FASTA file", e);
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             LOGGER.error("Error while parsing the FASTA file", e);
         }
@@ -162,17 +134,14 @@ public class FastaFileParser {
 
 
     /**
-     * Inserts the peptides of the given protein into the compiler.
+     * Inserts the given digested protein and its peptides into the compiler.
      *
-     * @param fastaHeader
-     * @param dbSequence
-     * @param compiler
+     * @return the number of counted spectra (plus 1) for the offset of the next protein
      */
-    private static int digestProtein(FastaHeaderInfos fastaHeader,
-            String dbSequence, PIACompiler compiler, PIAInputFile inputFile,
-            SpectrumIdentification spectrumID, String searchDBRef,
-            String enzymePattern, int minPepLength, int maxPepLength,
-            int maxMissedCleavages, int spectrumCountOffset) {
+    private static int insertProtein(DigestedProtein protein, PIACompiler compiler,
+            PIAInputFile inputFile, SpectrumIdentification spectrumID, String searchDatabaseID,
+            int spectrumCountOffset) {
+        FastaHeaderInfos fastaHeader = protein.headerInfos;
         Accession accession;
 
         // first, look if the accession is already in the compilation (this should not be the case!)
@@ -186,128 +155,72 @@ public class FastaFileParser {
 
         // put the new accession into the compiler
         accession = compiler.insertNewAccession(fastaHeader.getAccession(),
-                dbSequence);
+                protein.dbSequence);
 
         accession.addFile(inputFile.getID());
 
         accession.addDescription(inputFile.getID(),
                 fastaHeader.getDescription());
 
-        accession.addSearchDatabaseRef(searchDBRef);
-
-        // digest the protein
-        String[] peptides = dbSequence.split(enzymePattern);
-
-        // if the missedCleavages is below 0, allow for all possible missed cleavages
-        int missedCleavages;
-        if (maxMissedCleavages >= 0) {
-            missedCleavages = maxMissedCleavages;
-        } else {
-            missedCleavages = peptides.length - 1;
-        }
-
-        // get the peptides
-        int spectraCount = 1;
-        for (int missed=0; missed <= missedCleavages; missed++) {
-
-            int start = 0;
-            for (int i = 0; i < peptides.length-missed; i++) {
-                // build the sequence with misses
-                StringBuilder sequence = new StringBuilder(peptides[i]);
-                for (int miss=1; miss <= missed; miss++) {
-                    sequence.append(peptides[i+miss]);
-                }
-
-                if ((sequence.length() >= minPepLength) &&
-                        (sequence.length() <= maxPepLength)) {
-                    addSequence(sequence.toString(),
-                            accession,
-                            start+1,
-                            missed,
-                            compiler,
-                            inputFile,
-                            spectrumID,
-                            spectrumCountOffset + spectraCount);
-                }
-
-                start += peptides[i].length();
-                spectraCount++;
-            }
-
+        accession.addSearchDatabaseRef(searchDatabaseID);
+
+        // the accession is new, so each peptide's "FASTA Accession Count" is increased on its first occurrence
+        Set<String> countedPeptides = new HashSet<>();
+        for (int idx = 0; idx < protein.peptides.length; idx++) {
+            String sequence = protein.peptides[idx];
+            addSequence(sequence,
+                    accession,
+                    protein.starts[idx],
+                    protein.missedCleavages[idx],
+                    compiler,
+                    inputFile,
+                    spectrumID,
+                    spectrumCountOffset + protein.spectrumCounts[idx],
+                    countedPeptides.add(sequence));
         }
 
-        return spectraCount;
+        return protein.nrSpectra;
     }
 
 
     /**
      * Adds the sequence to the compiler.
+     *
+     * @param increaseAccessionCount whether this is the first occurrence of
+     * the peptide in the accession
      */
     private static void addSequence(String sequence, Accession accession,
             int start, int missed, PIACompiler compiler, PIAInputFile inputFile,
-            SpectrumIdentification spectrumID, int spectrumCount) {
+            SpectrumIdentification spectrumID, int spectrumCount,
+            boolean increaseAccessionCount) {
         Peptide peptide = compiler.getPeptide(sequence);
 
+        PeptideSpectrumMatch psm;
         if (peptide == null) {
             peptide = compiler.insertNewPeptide(sequence);
 
             // only add one PSM for one peptide-sequence
-            // TODO: calculate the mass
-            double massToCharge = sequence.length();
-
-            String sourceID = "index=" + spectrumCount;
-
-            PeptideSpectrumMatch psm = compiler.createNewPeptideSpectrumMatch(
-                    2,                          // just a pseudo-charge
-                    massToCharge,
-                    0,
-                    null,
-                    sequence,
-                    missed,
-                    sourceID,
-                    sequence,
-                    inputFile,
-                    spectrumID);
-
-            peptide.addSpectrum(psm);
-
-            // add the "FASTA Sequence Count" score
-            ScoreModel score = new ScoreModel(1.0,
-                    ScoreModelEnum.FASTA_SEQUENCE_COUNT);
-            psm.addScore(score);
-
-            // add the "FASTA Accession Count" score
-            score = new ScoreModel(0.0,
-                    ScoreModelEnum.FASTA_ACCESSION_COUNT);
-            psm.addScore(score);
-
-            compiler.insertCompletePeptideSpectrumMatch(psm);
+            psm = insertNewPSM(peptide, sequence, missed, compiler, inputFile,
+                    spectrumID, spectrumCount);
         } else {
             // increase the "FASTA Sequence Count" score
-            Optional<PeptideSpectrumMatch> psm = peptide.getSpectra().stream().findFirst();
-            if (psm.isPresent()) {
-                ScoreModel score = psm.get().getScore(ScoreModelEnum.FASTA_SEQUENCE_COUNT.getShortName());
-                Double value = score.getValue();
-                score.setValue(value + 1);
+            psm = peptide.getSpectra().stream().findFirst().orElse(null);
+            if (psm != null) {
+                ScoreModel score = psm.getScore(ScoreModelEnum.FASTA_SEQUENCE_COUNT.getShortName());
+                score.setValue(score.getValue() + 1);
             }
         }
 
-        boolean increaseAccessionCount = true;
-        for (AccessionOccurrence occ : peptide.getAccessionOccurrences()) {
-            // only count the accessions once for the "FASTA Accession Count"
-            if (accession.getID().equals(occ.getAccession().getID())) {
-                increaseAccessionCount = false;
-                break;
-            }
-        }
-        if (increaseAccessionCount) {
+        // only count the accessions once for the "FASTA Accession Count"
+        if (increaseAccessionCount && (psm != null)) {
             // increase the "FASTA Accession Count" score
-            Optional<PeptideSpectrumMatch> psm = peptide.getSpectra().stream().findFirst();
-            if (psm.isPresent()) {
-                ScoreModel score = psm.get().getScore(ScoreModelEnum.FASTA_ACCESSION_COUNT.getShortName());
-                Double value = score.getValue();
-                score.setValue(value + 1);
-            }
+            ScoreModel score = psm.getScore(ScoreModelEnum.FASTA_ACCESSION_COUNT.getShortName());
+            score.setValue(score.getValue() + 1);
+        }
+
+        if (psm != null) {
+            // the PSM may be of an earlier file, which is no longer held by the compiler
+            compiler.updatePeptideSpectrumMatch(psm);
         }
 
         peptide.addAccessionOccurrence(accession,
@@ -319,6 +232,50 @@ public class FastaFileParser {
     }
 
 
+    /**
+     * Creates the PSM of the new peptide with the initial
+     * "FASTA Sequence Count" and "FASTA Accession Count" scores and inserts
+     * it into the compiler.
+     *
+     * @return the new PSM
+     */
+    private static PeptideSpectrumMatch insertNewPSM(Peptide peptide, String sequence,
+            int missed, PIACompiler compiler, PIAInputFile inputFile,
+            SpectrumIdentification spectrumID, int spectrumCount) {
+        // TODO: calculate the mass
+        double massToCharge = sequence.length();
+
+        String sourceID = "index=" + spectrumCount;
+
+        PeptideSpectrumMatch psm = compiler.createNewPeptideSpectrumMatch(
+                2,                          // just a pseudo-charge
+                massToCharge,
+                0,
+                null,
+                sequence,
+                missed,
+                sourceID,
+                sequence,
+                inputFile,
+                spectrumID);
+
+        peptide.addSpectrum(psm);
+
+        // add the "FASTA Sequence Count" score
+        ScoreModel score = new ScoreModel(1.0,
+                ScoreModelEnum.FASTA_SEQUENCE_COUNT);
+        psm.addScore(score);
+
+        // add the "FASTA Accession Count" score
+        score = new ScoreModel(0.0,
+                ScoreModelEnum.FASTA_ACCESSION_COUNT);
+        psm.addScore(score);
+
+        compiler.insertCompletePeptideSpectrumMatch(psm);
+        return psm;
+    }
+
+
     /**
      * Checks, whether the given file looks like a FASTA file
      *
@@ -214,7 +214,7 @@ public class InputFileParserFactory {
             public boolean parseFile(String name,  String fileName,
                     PIACompiler compiler, String additionalInfoFileName) {
                 return MascotDatFileParser.getDataFromMascotDatFile(name,
-                        fileName, compiler);
+                        fileName, compiler, compiler.getStreamMascotDatFiles());
             }
         },
 
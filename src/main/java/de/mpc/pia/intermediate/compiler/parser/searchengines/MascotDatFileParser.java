@@ -8,6 +8,7 @@ import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -72,6 +73,9 @@ public class MascotDatFileParser {
     /** logger for this class */
     private static final Logger LOGGER = Logger.getLogger(MascotDatFileParser.class);
 
+    /** the start of a MIME section in the DAT file, followed by the section name */
+    private static final String SECTION_START = "Content-Type: application/x-Mascot; name=\"";
+
     /**
      * We don't ever want to instantiate this class
      */
@@ -81,13 +85,39 @@ public class MascotDatFileParser {
 
 
     /**
-     * Parses the data from an mzIdentML file given by its name into the given
-     * {@link PIACompiler}.
+     * Parses the data from a Mascot DAT file given by its name into the given
+     * {@link PIACompiler}, loading the whole file into the memory.
      *
-     * @param fileName name of the mzTab file
+     * @param fileName name of the DAT file
      */
     public static boolean getDataFromMascotDatFile(String name, String fileName,
             PIACompiler compiler) {
+        return getDataFromMascotDatFile(name, fileName, compiler, false);
+    }
+
+
+    /**
+     * Parses the data from a Mascot DAT file given by its name into the given
+     * {@link PIACompiler}.
+     * <p>
+     * In the streaming mode, the DAT file is not loaded into the memory, but
+     * indexed by the offsets of its sections and lines. The queries and their
+     * peptide hits are then read one after another and passed to the compiler.
+     * The protein descriptions are collected while the file is scanned for the
+     * query indices, so the memory is bounded by the largest section.
+     * Otherwise, the whole file is loaded into the memory.
+     * <p>
+     * The streaming mode must be requested explicitly: its protein
+     * descriptions are read from the proteins section and not from the
+     * target and decoy protein maps of the mascotdatfile library, so they are
+     * not verified to be identical (e.g. for escaped characters or decoy
+     * proteins).
+     *
+     * @param fileName name of the DAT file
+     * @param streaming whether to use the streaming mode, false by default
+     */
+    public static boolean getDataFromMascotDatFile(String name, String fileName,
+            PIACompiler compiler, boolean streaming) {
 
         // need to parse through the file, as mascotdatfile (3.2.11) does not support
         //   - the "index" variable of the queries
@@ -99,14 +129,26 @@ public class MascotDatFileParser {
         String enzymeCleavage = null;
         String enzymeRestrict = null;
 
+        // in the streaming mode, the descriptions are taken from the proteins section
+        Map<String, String> proteinDescriptions = streaming ? new HashMap<>() : null;
+
         try (BufferedReader rd = new BufferedReader(new FileReader(fileName))) {
             String line;
 
             boolean inQuery = false;
             boolean inEnzyme = false;
+            boolean inProteins = false;
             String queryName = null;
 
             while ((line = rd.readLine()) != null) {
+                if (streaming) {
+                    if (line.regionMatches(true, 0, SECTION_START, 0, SECTION_START.length())) {
+                        inProteins = line.regionMatches(true, SECTION_START.length(), "proteins\"", 0, 9);
+                    } else if (inProteins) {
+                        parseProteinDescription(line, proteinDescriptions);
+                    }
+                }
+
                 if (!inQuery) {
                     if (line.startsWith("Content-Type: application/x-Mascot; NAME=\"query")) {
                         queryName = line.substring(42, line.length()-1);
@@ -142,8 +184,8 @@ public class MascotDatFileParser {
         }
 
 
-        MascotDatfileInf mascotFile =
-                MascotDatfileFactory.create(fileName, MascotDatfileType.MEMORY);
+        MascotDatfileInf mascotFile = MascotDatfileFactory.create(fileName,
+                streaming ? MascotDatfileType.INDEX : MascotDatfileType.MEMORY);
 
         if (mascotFile == null) {
             LOGGER.error("could not read '" + fileName + "'.");
@@ -361,8 +403,19 @@ public class MascotDatFileParser {
         QueryEnumerator queryEnumerator = mascotFile.getQueryEnumerator();
         QueryToPeptideMapInf queryToPeptideMap = mascotFile.getQueryToPeptideMap();
         QueryToPeptideMapInf decoyQueryToPeptideMap = mascotFile.getDecoyQueryToPeptideMap(false);
-        ProteinMap proteinMap = mascotFile.getProteinMap();
-        ProteinMap decoyProteinMap = mascotFile.getDecoyProteinMap();
+
+        // the protein maps would need all peptide hits, so they are not used in the streaming mode
+        UnaryOperator<String> targetDescriptions;
+        UnaryOperator<String> decoyDescriptions;
+        if (streaming) {
+            targetDescriptions = proteinDescriptions::get;
+            decoyDescriptions = proteinDescriptions::get;
+        } else {
+            ProteinMap proteinMap = mascotFile.getProteinMap();
+            ProteinMap decoyProteinMap = mascotFile.getDecoyProteinMap();
+            targetDescriptions = accession -> proteinMap.getProteinID(accession).getDescription();
+            decoyDescriptions = accession -> decoyProteinMap.getProteinID(accession).getDescription();
+        }
 
         // one query is one spectrum, so go through the queries
         int nrQueries = mascotFile.getNumberOfQueries();
@@ -402,7 +455,7 @@ public class MascotDatFileParser {
             if (queryToPeptideMap != null) {
                 List<PeptideHit> peptideHits =
                         queryToPeptideMap.getAllPeptideHits(currQuery.getQueryNumber());
-                insertPeptideHitsIntoCompiler(compiler, peptideHits, proteinMap,
+                insertPeptideHitsIntoCompiler(compiler, peptideHits, targetDescriptions,
                         searchDatabase, charge, precursorMZ, retentionTime,
                         index, spectrumTitle, file, spectrumID, false);
             }
@@ -412,7 +465,7 @@ public class MascotDatFileParser {
                 List<PeptideHit> peptideHits =
                         decoyQueryToPeptideMap.getAllPeptideHits(currQuery.getQueryNumber());
                 insertPeptideHitsIntoCompiler(compiler, peptideHits,
-                        decoyProteinMap, searchDatabase, charge, precursorMZ,
+                        decoyDescriptions, searchDatabase, charge, precursorMZ,
                         retentionTime, index, spectrumTitle, file, spectrumID,
                         true);
             }
@@ -429,8 +482,27 @@ public class MascotDatFileParser {
     }
 
 
+    /**
+     * Parses a line of the proteins section (<code>"accession"=mass,"description"</code>)
+     * and puts the description into the map.
+     */
+    private static void parseProteinDescription(String line, Map<String, String> proteinDescriptions) {
+        int accessionEnd = line.indexOf("\"=");
+        if (!line.startsWith("\"") || (accessionEnd < 1)) {
+            return;
+        }
+
+        int descriptionStart = line.indexOf(",\"", accessionEnd);
+        String description = null;
+        if ((descriptionStart > 0) && (line.length() > descriptionStart + 2) && line.endsWith("\"")) {
+            description = line.substring(descriptionStart + 2, line.length() - 1);
+        }
+        proteinDescriptions.put(line.substring(1, accessionEnd), description);
+    }
+
+
     private static int insertPeptideHitsIntoCompiler(PIACompiler compiler,
-            List<PeptideHit> peptideHits, ProteinMap proteinMap,
+            List<PeptideHit> peptideHits, UnaryOperator<String> proteinDescriptions,
             SearchDatabase searchDatabase, int charge, Double precursorMZ,
             Double retentionTime, String sourceId, String spectrumTitle,
             PIAInputFile file, SpectrumIdentification spectrumID,
@@ -486,12 +558,11 @@ public class MascotDatFileParser {
                 if (fastaInfo == null) {
                     fastaInfo = new FastaHeaderInfos(null,
                             proteinHit.getAccession(),
-                            proteinMap.getProteinID(proteinHit.getAccession()).getDescription());
+                            proteinDescriptions.apply(proteinHit.getAccession()));
                 } else {
                     // if there was a protein description different to the now parsed one, take the original from mascot
-                    String proteinDescription = proteinMap.
-                            getProteinID(proteinHit.getAccession()).
-                            getDescription();
+                    String proteinDescription =
+                            proteinDescriptions.apply(proteinHit.getAccession());
                     if ((proteinDescription != null) &&
                             (proteinDescription.trim().length() > 0) &&
                             !proteinDescription.equals(fastaInfo.getDescription())) {
@@ -999,19 +999,9 @@ public class ThermoMSFFileParser {
                 acc.addSearchDatabaseRef(dbRef.getSearchDatabase().getId());
             }
 
-            // add the accession occurrence to the peptide
-            // have to recalculate the occurrence, because it is not saved in the MSF
-            if (proteinSequence != null) {
-                int start = proteinSequence.indexOf(pepSequence);
-
-                while (start > -1) {
-                    piaPeptide.addAccessionOccurrence(acc, start + 1,
-                            start + pepSequence.length());
-
-                    start = proteinSequence.indexOf(pepSequence, start + 1);
-                }
-            } else {
-                // without valid sequence, set a fake occurrence
+            // the occurrences are not saved in the MSF, they are mapped by the
+            // compiler after the parsing. Without valid sequence, set a fake occurrence
+            if (acc.getDbSequence() == null) {
                 piaPeptide.addAccessionOccurrence(acc, 0, 0);
             }
 
@@ -44,6 +44,27 @@ public class PIAInputFileXML {
 	private AnalysisProtocolCollection analysisProtocolCollection;
 	
 	
+	/**
+	 * Basic no-arg constructor.
+	 */
+	public PIAInputFileXML() {
+	}
+	
+	
+	/**
+	 * Basic constructor setting the data from the given file.
+	 */
+	public PIAInputFileXML(PIAInputFile file) {
+		id = file.getID();
+		name = file.getName();
+		fileName = file.getFileName();
+		format = file.getFormat();
+		
+		analysisCollection = file.getAnalysisCollection();
+		analysisProtocolCollection = file.getAnalysisProtocolCollection();
+	}
+	
+	
 	/**
 	 * Gets the value of the id attribute.
 	 * @return
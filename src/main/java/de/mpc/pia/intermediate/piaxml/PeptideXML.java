@@ -7,7 +7,6 @@ import javax.xml.bind.annotation.XmlType;
 
 import de.mpc.pia.intermediate.AccessionOccurrence;
 import de.mpc.pia.intermediate.Peptide;
-import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 
 
 @XmlRootElement(name = "peptide")
@@ -42,10 +41,8 @@ public class PeptideXML {
 		sequence = peptide.getSequence();
 		
 		spectrumRefList = new SpectrumRefListXML();
-		if (peptide.getSpectra() != null) {
-			for (PeptideSpectrumMatch psm : peptide.getSpectra()) {
-				spectrumRefList.getSpectrumRefs().add(new SpectrumRefXML(psm.getID()));
-			}
+		for (Long psmID : peptide.getSpectrumIDs()) {
+			spectrumRefList.getSpectrumRefs().add(new SpectrumRefXML(psmID));
 		}
 		
 		occurrences = new OccurrencesXML();
@@ -0,0 +1,226 @@
+package de.mpc.pia.intermediate.xmlhandler;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+
+/**
+ * Writes lists of JAXB objects into an XML document, converting and
+ * marshalling chunks of the list concurrently.
+ * <p>
+ * Each chunk is marshalled into its own buffer by a writer, which is in the
+ * same state as the document's writer at the list (i.e. same namespaces and
+ * indentation depth). The buffers are appended to the document in the order
+ * of the list, so the result is the same as marshalling the list's objects
+ * one after another into the document's writer.
+ * <p>
+ * The items are converted in the calling thread, so the converter may access
+ * data structures which are not thread safe.
+ *
+ * @author julianu
+ *
+ */
+class ChunkedXMLListWriter {
+
+    /** the underlying writer of the document */
+    private final Writer out;
+
+    /** the XML writer of the document */
+    private final XMLStreamWriter xmlOut;
+
+    /** creates the writers for the chunks */
+    private final DocumentWriterFactory writerFactory;
+
+    /** the number of objects in one chunk */
+    private final int chunkSize;
+
+    /** the maximal number of chunks, which are marshalled but not yet written */
+    private final int maxPendingChunks;
+
+    /** the executor for the marshalling */
+    private final ExecutorService executor;
+
+
+    /**
+     * Creates an XML writer, which writes into the given writer and is in the
+     * same state as the document's writer inside the document's root element.
+     */
+    @FunctionalInterface
+    interface DocumentWriterFactory {
+        XMLStreamWriter createWriter(Writer out) throws XMLStreamException;
+    }
+
+
+    /**
+     * Creates the marshallers, one is used per chunk.
+     */
+    @FunctionalInterface
+    interface MarshallerFactory {
+        Marshaller createMarshaller() throws JAXBException;
+    }
+
+
+    /**
+     * Creates a writer for the document.
+     *
+     * @param out the underlying writer of the document, used to append the chunks
+     * @param xmlOut the XML writer of the document, which writes into out
+     * @param writerFactory creates the writers for the chunks
+     * @param nrThreads the number of threads used for marshalling
+     * @param chunkSize the number of objects in one chunk
+     */
+    ChunkedXMLListWriter(Writer out, XMLStreamWriter xmlOut, DocumentWriterFactory writerFactory,
+            int nrThreads, int chunkSize) {
+        this.out = out;
+        this.xmlOut = xmlOut;
+        this.writerFactory = writerFactory;
+        this.chunkSize = chunkSize;
+        this.maxPendingChunks = 2 * nrThreads;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(nrThreads, runnable -> {
+                    Thread thread = new Thread(runnable, "PIA-XMLWriter-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+
+    /**
+     * Writes the list element with the given name, containing the converted
+     * items.
+     *
+     * @param listName the name of the list element
+     * @param items the items of the list
+     * @param converter converts an item into the object for marshalling
+     * @param marshallerFactory creates the marshallers for the converted items
+     * @throws XMLStreamException
+     * @throws JAXBException
+     */
+    <T> void writeList(String listName, Collection<T> items, Function<T, ?> converter,
+            MarshallerFactory marshallerFactory) throws XMLStreamException, JAXBException {
+        xmlOut.writeStartElement(listName);
+
+        Marshaller m = marshallerFactory.createMarshaller();
+        int size = items.size();
+        Iterator<T> itemIt = items.iterator();
+
+        if (size > 1) {
+            // close the start tag, so the chunks can be appended directly
+            xmlOut.writeCharacters("");
+            xmlOut.flush();
+
+            Deque<Future<String>> pendingChunks = new ArrayDeque<>();
+            try {
+                List<Object> chunk = new ArrayList<>(chunkSize);
+                for (int idx = 0; idx < size - 1; idx++) {
+                    chunk.add(converter.apply(itemIt.next()));
+                    if ((chunk.size() == chunkSize) || (idx == size - 2)) {
+                        if (pendingChunks.size() >= maxPendingChunks) {
+                            appendChunk(pendingChunks.poll());
+                        }
+
+                        List<Object> chunkObjects = chunk;
+                        pendingChunks.add(executor.submit(
+                                () -> marshalChunk(listName, chunkObjects, marshallerFactory)));
+                        chunk = new ArrayList<>(chunkSize);
+                    }
+                }
+
+                while (!pendingChunks.isEmpty()) {
+                    appendChunk(pendingChunks.poll());
+                }
+            } finally {
+                pendingChunks.forEach(future -> future.cancel(true));
+            }
+        }
+
+        // the last item is written directly, so the indentation state is the same as without chunks
+        while (itemIt.hasNext()) {
+            m.marshal(converter.apply(itemIt.next()), xmlOut);
+        }
+
+        xmlOut.writeEndElement();
+    }
+
+
+    /**
+     * Marshals the given objects into a new buffer, which is in the same state
+     * as the document at the given list.
+     *
+     * @return the marshalled objects
+     */
+    private String marshalChunk(String listName, List<Object> objects,
+            MarshallerFactory marshallerFactory) throws XMLStreamException, JAXBException {
+        StringWriter buffer = new StringWriter();
+        XMLStreamWriter chunkOut = writerFactory.createWriter(buffer);
+
+        chunkOut.writeStartElement(listName);
+        chunkOut.writeCharacters("");
+        chunkOut.flush();
+        int start = buffer.getBuffer().length();
+
+        Marshaller m = marshallerFactory.createMarshaller();
+        for (Object object : objects) {
+            m.marshal(object, chunkOut);
+        }
+        chunkOut.flush();
+
+        return buffer.getBuffer().substring(start);
+    }
+
+
+    /**
+     * Waits for the given chunk and appends it to the document.
+     *
+     * @param chunk
+     * @throws XMLStreamException
+     * @throws JAXBException
+     */
+    private void appendChunk(Future<String> chunk) throws XMLStreamException, JAXBException {
+        try {
+            out.write(chunk.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLStreamException("interrupted while writing the XML", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException) cause;
+            } else if (cause instanceof JAXBException) {
+                throw (JAXBException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new XMLStreamException("error while marshalling a chunk", e);
+        } catch (IOException e) {
+            throw new XMLStreamException("error while writing the XML", e);
+        }
+    }
+
+
+    /**
+     * Stops the marshalling threads.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
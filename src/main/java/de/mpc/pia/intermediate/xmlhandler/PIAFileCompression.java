@@ -0,0 +1,188 @@
+package de.mpc.pia.intermediate.xmlhandler;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+
+
+/**
+ * The compressions, which may be used for the PIA intermediate files. When
+ * reading, the compression is detected by the first bytes of the file.
+ *
+ * @author julianu
+ *
+ */
+public enum PIAFileCompression {
+
+    /**
+     * plain XML file
+     */
+    NONE {
+        @Override
+        public String getFileSuffix() {
+            return "";
+        }
+
+        @Override
+        public OutputStream compressingStream(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        protected boolean hasMagicBytes(byte[] header, int length) {
+            return false;
+        }
+
+        @Override
+        protected InputStream decompressingStream(InputStream in) {
+            return in;
+        }
+    },
+
+    /**
+     * gzip compressed XML file
+     */
+    GZIP {
+        @Override
+        public String getFileSuffix() {
+            return ".gz";
+        }
+
+        @Override
+        public OutputStream compressingStream(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+
+        @Override
+        protected boolean hasMagicBytes(byte[] header, int length) {
+            return (length >= 2) && (header[0] == (byte) 0x1f) && (header[1] == (byte) 0x8b);
+        }
+
+        @Override
+        protected InputStream decompressingStream(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+
+    /**
+     * Zstandard compressed XML file
+     */
+    ZSTD {
+        @Override
+        public String getFileSuffix() {
+            return ".zst";
+        }
+
+        @Override
+        public OutputStream compressingStream(OutputStream out) throws IOException {
+            return new ZstdOutputStream(out);
+        }
+
+        @Override
+        protected boolean hasMagicBytes(byte[] header, int length) {
+            return (length >= 4) && (header[0] == (byte) 0x28) && (header[1] == (byte) 0xb5)
+                    && (header[2] == (byte) 0x2f) && (header[3] == (byte) 0xfd);
+        }
+
+        @Override
+        protected InputStream decompressingStream(InputStream in) {
+            return new ZstdInputStream(in);
+        }
+    };
+
+
+    /** the buffer size for the streams */
+    private static final int BUFFER_SIZE = 65536;
+
+    /** the number of bytes needed to detect the compression */
+    private static final int MAGIC_BYTES_LENGTH = 4;
+
+
+    /**
+     * Returns the file suffix, which is usually appended for this compression.
+     *
+     * @return
+     */
+    public abstract String getFileSuffix();
+
+
+    /**
+     * Wraps the given stream into a stream compressing with this compression.
+     *
+     * @param out
+     * @return
+     * @throws IOException
+     */
+    public abstract OutputStream compressingStream(OutputStream out) throws IOException;
+
+
+    /**
+     * Checks whether the given first bytes of a file are the magic bytes of
+     * this compression.
+     *
+     * @param header the first bytes of the file
+     * @param length the number of read bytes
+     * @return
+     */
+    protected abstract boolean hasMagicBytes(byte[] header, int length);
+
+
+    /**
+     * Wraps the given stream into a stream decompressing this compression.
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    protected abstract InputStream decompressingStream(InputStream in) throws IOException;
+
+
+    /**
+     * Returns the compression given by the suffix of the file name, NONE if
+     * no compression matches.
+     *
+     * @param fileName
+     * @return
+     */
+    public static PIAFileCompression getByFileName(String fileName) {
+        for (PIAFileCompression compression : values()) {
+            if (!compression.getFileSuffix().isEmpty()
+                    && fileName.toLowerCase().endsWith(compression.getFileSuffix())) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+
+    /**
+     * Returns a stream of the uncompressed content of the given stream. The
+     * compression is detected by the first bytes, uncompressed streams are
+     * returned as they are (but buffered).
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static InputStream decompressedStream(InputStream in) throws IOException {
+        BufferedInputStream bufferedIn = new BufferedInputStream(in, BUFFER_SIZE);
+
+        bufferedIn.mark(MAGIC_BYTES_LENGTH);
+        byte[] header = new byte[MAGIC_BYTES_LENGTH];
+        int length = bufferedIn.readNBytes(header, 0, MAGIC_BYTES_LENGTH);
+        bufferedIn.reset();
+
+        for (PIAFileCompression compression : values()) {
+            if (compression.hasMagicBytes(header, length)) {
+                return compression.decompressingStream(bufferedIn);
+            }
+        }
+        return bufferedIn;
+    }
+}
@@ -1,8 +1,8 @@
 package de.mpc.pia.intermediate.xmlhandler;
 
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,6 +32,8 @@ import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentification;
 
 import de.mpc.pia.intermediate.Accession;
 import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.GroupTreeIndex;
+import de.mpc.pia.intermediate.PIAIntermediateData;
 import de.mpc.pia.intermediate.Modification;
 import de.mpc.pia.intermediate.PIAInputFile;
 import de.mpc.pia.intermediate.Peptide;
@@ -60,7 +62,7 @@ import de.mpc.pia.modeller.IdentificationKeySettings;
 import de.mpc.pia.modeller.score.ScoreModel;
 
 
-public class PIAIntermediateJAXBHandler implements Serializable {
+public class PIAIntermediateJAXBHandler implements PIAIntermediateData {
 
     private static final long serialVersionUID = -8416334186918951733L;
 
@@ -72,6 +74,9 @@ public class PIAIntermediateJAXBHandler implements Serializable {
     /** the name of the project */
     private String projectName;
 
+    /** the date of the project */
+    private String projectDate;
+
     /** the input files */
     private Map<Long, PIAInputFile> files;
 
@@ -99,6 +104,15 @@ public class PIAIntermediateJAXBHandler implements Serializable {
     /** Maps from the name of an {@link IdentificationKeySettings} to a set, containg the file IDs, which have warnings for this setting */
     private Map<String, Set<Long>> psmSetSettingsWarnings;
 
+    /** the number of used threads for parsing the spectra and accessions, 0 to use all available processors */
+    private int numThreads;
+
+    /** the namespaces declared at the root element of the parsed file */
+    private transient Map<String, String> rootNamespaces;
+
+    /** the parser for the large lists, if more than one thread is used */
+    private transient PipelinedListParser listParser;
+
 
     // XML file tag statics for parsing
     private static final String XML_TAG_FILES_LIST = "filesList";
@@ -108,6 +122,11 @@ public class PIAIntermediateJAXBHandler implements Serializable {
     private static final String XML_TAG_ACCESSIONS_LIST = "accessionsList";
     private static final String XML_TAG_PEPTIDES_LIST = "peptidesList";
     private static final String XML_TAG_GROUPS_LIST = "groupsList";
+    private static final String XML_TAG_SPECTRUM_MATCH = "spectrumMatch";
+    private static final String XML_TAG_ACCESSION = "accession";
+
+    /** the number of elements, which are unmarshalled together in one chunk when parsing concurrently */
+    private static final int XML_CHUNK_SIZE = 500;
 
 
 
@@ -116,6 +135,7 @@ public class PIAIntermediateJAXBHandler implements Serializable {
      */
     public PIAIntermediateJAXBHandler() {
         projectName = null;
+        projectDate = null;
         files = new HashMap<>();
         spectraData = new HashMap<>();
         searchDatabases = new HashMap<>();
@@ -129,11 +149,46 @@ public class PIAIntermediateJAXBHandler implements Serializable {
         for (IdentificationKeySettings setting : IdentificationKeySettings.values()) {
             psmSetSettingsWarnings.put(setting.toString(), new HashSet<>());
         }
+        numThreads = 0;
+    }
+
+
+    /**
+     * Sets the number of threads used for parsing the spectra and accessions.
+     * If set to 0 (default), all available processors are used.
+     *
+     * @param threads
+     */
+    public void setNrThreads(int threads) {
+        numThreads = threads;
+    }
+
+
+    /**
+     * Gets the number of threads used for parsing.
+     */
+    public int getNrThreads() {
+        return numThreads;
+    }
+
+
+    /**
+     * Gets the number of actually used threads, i.e. all available processors,
+     * if the number of threads is not set.
+     */
+    private int getUsedNrThreads() {
+        if (numThreads > 0) {
+            return numThreads;
+        } else {
+            return Runtime.getRuntime().availableProcessors();
+        }
     }
 
 
     /**
      * Parses the file in chunks and thus having a low memory footprint.<br/>
+     * If more than one thread is used, the spectra and accessions are
+     * unmarshalled and converted concurrently.
      *
      * @param fileName
      * @param progressArr stores the current progress of the parsing, gets increased by 40 by this method (remaining 60 are in the PIAModeller)
@@ -144,6 +199,7 @@ public class PIAIntermediateJAXBHandler implements Serializable {
             throws IOException {
         Long[] progress = progressArr;
         projectName = null;
+        projectDate = null;
         files = new HashMap<>();
         spectraData = new HashMap<>();
         searchDatabases = new HashMap<>();
@@ -170,7 +226,8 @@ public class PIAIntermediateJAXBHandler implements Serializable {
 
 
     /**
-     * Actually parses the XML file given by fileName.
+     * Actually parses the XML file given by fileName. Compressed files (see
+     * {@link PIAFileCompression}) are decompressed transparently.
      *
      * @param fileName
      * @param progress stores the current progress of the parsing
@@ -181,8 +238,8 @@ public class PIAIntermediateJAXBHandler implements Serializable {
         // set up a StAX reader
         XMLInputFactory xmlif = XMLInputFactory.newInstance();
         xmlif.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
-        try (FileReader fileReader = new FileReader(fileName)) {
-            XMLStreamReader xmlr = xmlif.createXMLStreamReader(fileReader);
+        try (InputStream fileStream = PIAFileCompression.decompressedStream(new FileInputStream(fileName))) {
+            XMLStreamReader xmlr = xmlif.createXMLStreamReader(fileStream);
 
             // move to the root element and check its name.
             xmlr.nextTag();
@@ -192,9 +249,24 @@ public class PIAIntermediateJAXBHandler implements Serializable {
             for (int attrIdx=0; attrIdx < xmlr.getAttributeCount(); attrIdx++) {
                 if ("name".equals(xmlr.getAttributeName(attrIdx).toString())) {
                     projectName = xmlr.getAttributeValue(attrIdx);
+                } else if ("date".equals(xmlr.getAttributeName(attrIdx).toString())) {
+                    projectDate = xmlr.getAttributeValue(attrIdx);
                 }
             }
 
+            // the namespaces are needed, if the lists are parsed in chunks
+            rootNamespaces = new HashMap<>();
+            for (int nsIdx = 0; nsIdx < xmlr.getNamespaceCount(); nsIdx++) {
+                String prefix = xmlr.getNamespacePrefix(nsIdx);
+                rootNamespaces.put((prefix == null) ? "" : prefix, xmlr.getNamespaceURI(nsIdx));
+            }
+
+            int nrThreads = getUsedNrThreads();
+            if (nrThreads > 1) {
+                LOGGER.debug("parsing the spectra and accessions with {} threads", nrThreads);
+                listParser = new PipelinedListParser(nrThreads, XML_CHUNK_SIZE);
+            }
+
             // move to the first not-root element
             xmlr.nextTag();
             while (xmlr.hasNext()) {
@@ -218,6 +290,11 @@ public class PIAIntermediateJAXBHandler implements Serializable {
         } catch (IOException | XMLStreamException | JAXBException e) {
             LOGGER.error("Error while parsing PIA XML file", e);
             throw new IOException(e);
+        } finally {
+            if (listParser != null) {
+                listParser.shutdown();
+                listParser = null;
+            }
         }
     }
 
@@ -305,20 +382,33 @@ public class PIAIntermediateJAXBHandler implements Serializable {
         }
 
         for (PIAInputFileXML fileXML : filesListXML.getFiles()) {
-            PIAInputFile file = new PIAInputFile(fileXML.getId(),
-                    fileXML.getName(), fileXML.getFileName(),
-                    fileXML.getFormat());
+            PIAInputFile file = createFileFromXML(fileXML);
+            files.put(file.getID(), file);
+        }
+    }
 
-            if (fileXML.getAnalysisCollection() != null) {
-                fileXML.getAnalysisCollection().getSpectrumIdentification().forEach(file::addSpectrumIdentification);
-            }
 
-            if (fileXML.getAnalysisProtocolCollection() != null) {
-                fileXML.getAnalysisProtocolCollection().getSpectrumIdentificationProtocol().forEach(file::addSpectrumIdentificationProtocol);
-            }
+    /**
+     * Creates the {@link PIAInputFile} from the {@link PIAInputFileXML}
+     * object.
+     *
+     * @param fileXML
+     * @return
+     */
+    public static PIAInputFile createFileFromXML(PIAInputFileXML fileXML) {
+        PIAInputFile file = new PIAInputFile(fileXML.getId(),
+                fileXML.getName(), fileXML.getFileName(),
+                fileXML.getFormat());
 
-            files.put(file.getID(), file);
+        if (fileXML.getAnalysisCollection() != null) {
+            fileXML.getAnalysisCollection().getSpectrumIdentification().forEach(file::addSpectrumIdentification);
+        }
+
+        if (fileXML.getAnalysisProtocolCollection() != null) {
+            fileXML.getAnalysisProtocolCollection().getSpectrumIdentificationProtocol().forEach(file::addSpectrumIdentificationProtocol);
         }
+
+        return file;
     }
 
 
@@ -382,7 +472,6 @@ public class PIAIntermediateJAXBHandler implements Serializable {
         xmlr.require(XMLStreamConstants.START_ELEMENT, null, XML_TAG_SPECTRA_LIST);
 
         JAXBContext jaxbContext = JAXBContext.newInstance(SpectrumMatchXML.class);
-        Unmarshaller um = jaxbContext.createUnmarshaller();
 
         psmSetSettingsWarnings =
                 new HashMap<>(IdentificationKeySettings.values().length);
@@ -390,18 +479,22 @@ public class PIAIntermediateJAXBHandler implements Serializable {
             psmSetSettingsWarnings.put(setting.toString(), new HashSet<>());
         }
 
-        // move to the first spectrumMatch element
-        xmlr.nextTag();
-        while (xmlr.getEventType() == XMLStreamConstants.START_ELEMENT) {
-            xmlr.require(XMLStreamConstants.START_ELEMENT, null, "spectrumMatch");
+        if (listParser != null) {
+            listParser.parseList(xmlr, XML_TAG_SPECTRUM_MATCH, rootNamespaces, jaxbContext,
+                    this::createPSMfromXML, this::putPSM);
+        } else {
+            Unmarshaller um = jaxbContext.createUnmarshaller();
 
-            SpectrumMatchXML psmXML = (SpectrumMatchXML) um.unmarshal(xmlr);
-            PeptideSpectrumMatch psm = createPSMfromXML(psmXML);
+            // move to the first spectrumMatch element
+            xmlr.nextTag();
+            while (xmlr.getEventType() == XMLStreamConstants.START_ELEMENT) {
+                xmlr.require(XMLStreamConstants.START_ELEMENT, null, XML_TAG_SPECTRUM_MATCH);
 
-            // put the PSM into the map
-            psms.put(psm.getID(), psm);
+                SpectrumMatchXML psmXML = (SpectrumMatchXML) um.unmarshal(xmlr);
+                putPSM(createPSMfromXML(psmXML));
 
-            skipWhitespacesInReader(xmlr);
+                skipWhitespacesInReader(xmlr);
+            }
         }
 
         xmlr.require(XMLStreamConstants.END_ELEMENT, null, XML_TAG_SPECTRA_LIST);
@@ -411,9 +504,23 @@ public class PIAIntermediateJAXBHandler implements Serializable {
     }
 
 
+    /**
+     * Puts the PSM into the map and updates the PSM set settings warnings.
+     *
+     * @param psm
+     */
+    private void putPSM(PeptideSpectrumMatch psm) {
+        psms.put(psm.getID(), psm);
+
+        // check for PSM set settings warnings
+        PIAIntermediateData.updatePSMSetSettingsWarnings(psmSetSettingsWarnings, psm);
+    }
+
+
     /**
      * Create a {@link PeptideSpectrumMatch} from the {@link SpectrumMatchXML}
-     * object.
+     * object. This may be called concurrently, as long as the files are not
+     * changed.
      *
      * @param psmXML
      * @return
@@ -470,9 +577,6 @@ public class PIAIntermediateJAXBHandler implements Serializable {
         // the params
         psmXML.getParamList().forEach(psm::addParam);
 
-        // check for PSM set settings warnings
-        updatePSMSetSettingsWarnings(psm);
-
         return psm;
     }
 
@@ -523,31 +627,6 @@ public class PIAIntermediateJAXBHandler implements Serializable {
         }
     }
 
-    /**
-     * Update the warnings with information of the new PSM.
-     *
-     * @param psm
-     */
-    private void updatePSMSetSettingsWarnings(PeptideSpectrumMatch psm) {
-        if (psm.getRetentionTime() == null) {
-            psmSetSettingsWarnings.get(IdentificationKeySettings.RETENTION_TIME.toString())
-                    .add(psm.getFile().getID());
-        }
-        if ((psm.getSourceID() == null) || psm.getSourceID().trim().isEmpty()) {
-            psmSetSettingsWarnings.get(IdentificationKeySettings.SOURCE_ID.toString())
-                    .add(psm.getFile().getID());
-        }
-        if ((psm.getSpectrumTitle() == null) || psm.getSpectrumTitle().trim().isEmpty()) {
-            psmSetSettingsWarnings.get(IdentificationKeySettings.SPECTRUM_TITLE.toString())
-                    .add(psm.getFile().getID());
-        }
-        if ((psm.getSequence() == null) || psm.getSequence().trim().isEmpty()) {
-            psmSetSettingsWarnings.get(IdentificationKeySettings.SEQUENCE.toString())
-                    .add(psm.getFile().getID());
-        }
-    }
-
-
     /**
      * Parses the accessions in a chunked matter. It assumes, the given
      * {@link XMLStreamReader} is at the position of an
@@ -562,36 +641,26 @@ public class PIAIntermediateJAXBHandler implements Serializable {
         xmlr.require(XMLStreamConstants.START_ELEMENT, null, XML_TAG_ACCESSIONS_LIST);
 
         JAXBContext jaxbContext = JAXBContext.newInstance(AccessionXML.class);
-        Unmarshaller um = jaxbContext.createUnmarshaller();
 
-        // move to the first accession element
-        xmlr.nextTag();
-        while (xmlr.getEventType() == XMLStreamConstants.START_ELEMENT) {
-            xmlr.require(XMLStreamConstants.START_ELEMENT, null, "accession");
-
-            AccessionXML accXML = (AccessionXML) um.unmarshal(xmlr);
-            Accession accession;
-            Map<Long, String> descriptions = new HashMap<>();
-
-            Set<Long> filesSet = accXML.getFileRefs().stream().map(FileRefXML::getFile_ref).collect(Collectors.toSet());
-
-            for (DescriptionXML descXML : accXML.getDescriptions()) {
-                descriptions.put(descXML.getFileRefID(), descXML.getValue());
-            }
+        if (listParser != null) {
+            listParser.parseList(xmlr, XML_TAG_ACCESSION, rootNamespaces, jaxbContext,
+                    PIAIntermediateJAXBHandler::createAccessionFromXML,
+                    accession -> accessions.put(accession.getID(), accession));
+        } else {
+            Unmarshaller um = jaxbContext.createUnmarshaller();
 
-            Set<String> searchDatabaseRefs = accXML.getSearchDatabaseRefs().stream().map(SearchDatabaseRefXML::getSearchDatabase_ref).collect(Collectors.toSet());
+            // move to the first accession element
+            xmlr.nextTag();
+            while (xmlr.getEventType() == XMLStreamConstants.START_ELEMENT) {
+                xmlr.require(XMLStreamConstants.START_ELEMENT, null, XML_TAG_ACCESSION);
 
-            accession = new Accession(accXML.getId(),
-                    accXML.getAcc(),
-                    filesSet,
-                    descriptions,
-                    accXML.getSequence(),
-                    searchDatabaseRefs,
-                    null);      // group = null, is set later with the groups
+                AccessionXML accXML = (AccessionXML) um.unmarshal(xmlr);
+                Accession accession = createAccessionFromXML(accXML);
 
-            accessions.put(accession.getID(), accession);
+                accessions.put(accession.getID(), accession);
 
-            skipWhitespacesInReader(xmlr);
+                skipWhitespacesInReader(xmlr);
+            }
         }
 
         xmlr.require(XMLStreamConstants.END_ELEMENT, null, XML_TAG_ACCESSIONS_LIST);
@@ -601,6 +670,34 @@ public class PIAIntermediateJAXBHandler implements Serializable {
     }
 
 
+    /**
+     * Create an {@link Accession} from the {@link AccessionXML} object. The
+     * group is set later with the groups.
+     *
+     * @param accXML
+     * @return
+     */
+    private static Accession createAccessionFromXML(AccessionXML accXML) {
+        Map<Long, String> descriptions = new HashMap<>();
+
+        Set<Long> filesSet = accXML.getFileRefs().stream().map(FileRefXML::getFile_ref).collect(Collectors.toSet());
+
+        for (DescriptionXML descXML : accXML.getDescriptions()) {
+            descriptions.put(descXML.getFileRefID(), descXML.getValue());
+        }
+
+        Set<String> searchDatabaseRefs = accXML.getSearchDatabaseRefs().stream().map(SearchDatabaseRefXML::getSearchDatabase_ref).collect(Collectors.toSet());
+
+        return new Accession(accXML.getId(),
+                accXML.getAcc(),
+                filesSet,
+                descriptions,
+                accXML.getSequence(),
+                searchDatabaseRefs,
+                null);      // group = null, is set later with the groups
+    }
+
+
     /**
      * Parses the peptides in a chunked matter. It assumes, the given
      * {@link XMLStreamReader} is at the position of a {@link PeptidesListXML}.
@@ -725,6 +822,8 @@ public class PIAIntermediateJAXBHandler implements Serializable {
                 }
             }
         }
+
+        GroupTreeIndex.buildIndices(groups.values());
     }
 
 
@@ -770,64 +869,67 @@ public class PIAIntermediateJAXBHandler implements Serializable {
     }
 
 
+    @Override
     public String getProjectName() {
         return projectName;
     }
 
 
+    @Override
+    public String getProjectDate() {
+        return projectDate;
+    }
+
+
+    @Override
     public Map<Long, PIAInputFile> getFiles() {
         return files;
     }
 
 
+    @Override
     public Map<String, SpectraData> getSpectraData() {
         return spectraData;
     }
 
 
+    @Override
     public Map<String, SearchDatabase> getSearchDatabase() {
         return searchDatabases;
     }
 
 
+    @Override
     public Map<String, AnalysisSoftware> getAnalysisSoftware() {
         return software;
     }
 
 
+    @Override
     public Map<Long, PeptideSpectrumMatch> getPSMs() {
         return psms;
     }
 
 
+    @Override
     public Map<Long, Peptide> getPeptides() {
         return peptides;
     }
 
 
+    @Override
     public Map<Long, Accession> getAccessions() {
         return accessions;
     }
 
 
+    @Override
     public Map<Long, Group> getGroups() {
         return groups;
     }
 
 
-    public long getNrTrees() {
-        long maxTreeID = 0;
-
-        for (Map.Entry<Long, Group> grIt : groups.entrySet()) {
-            if (grIt.getValue().getTreeID() > maxTreeID) {
-                maxTreeID = grIt.getValue().getTreeID();
-            }
-        }
-
-        return maxTreeID;
-    }
-
-
+    @Override
     public Map<String, Set<Long>> getPSMSetSettingsWarnings() {
         return psmSetSettingsWarnings;
     }
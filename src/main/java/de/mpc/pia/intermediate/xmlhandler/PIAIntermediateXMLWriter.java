@@ -0,0 +1,386 @@
+package de.mpc.pia.intermediate.xmlhandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Function;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
+
+import uk.ac.ebi.jmzidml.model.mzidml.AnalysisSoftwareList;
+import uk.ac.ebi.jmzidml.model.mzidml.Inputs;
+import uk.ac.ebi.jmzidml.model.utils.ModelConstants;
+import de.mpc.pia.intermediate.PIAIntermediateData;
+import de.mpc.pia.intermediate.piaxml.AccessionXML;
+import de.mpc.pia.intermediate.piaxml.FilesListXML;
+import de.mpc.pia.intermediate.piaxml.GroupXML;
+import de.mpc.pia.intermediate.piaxml.PIAInputFileXML;
+import de.mpc.pia.intermediate.piaxml.PeptideXML;
+import de.mpc.pia.intermediate.piaxml.SpectrumMatchXML;
+
+
+/**
+ * Writes the content of a PIA intermediate file into the PIA XML format.
+ * <p>
+ * If more than one thread is used, the objects of the large lists (PSMs,
+ * accessions, peptides and groups) are marshalled concurrently in chunks,
+ * resulting in the same file as the sequential writing.
+ *
+ * @author julianu
+ *
+ */
+public class PIAIntermediateXMLWriter {
+
+    /** logger for this class */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+
+    /** the written data */
+    private final PIAIntermediateData data;
+
+    /** the number of used threads, 0 to use all available processors */
+    private int numThreads;
+
+
+    /** namespace declaration for jPiaXML */
+    private static String nsjPiaXML = "http://www.medizinisches-proteom-center.de/PIA/piaintermediate";
+
+    /** prefixdeclaration for jPiaXML */
+    private static String prefixjPiaXML = "pia";
+
+    /** namespace declaration for mzIdentML */
+    private static String nsMzIdentML = "http://psidev.info/psi/pi/mzIdentML/1.1";
+
+    /** prefix declaration for mzIdentML */
+    private static String prefixMzIdentML = "mzid";
+
+    /** encoding specification */
+    private static String encoding = "UTF-8";
+
+    /** the number of objects, which are marshalled together in one chunk when writing concurrently */
+    private static final int XML_CHUNK_SIZE = 1000;
+
+
+    /**
+     * Creates a writer for the given data.
+     *
+     * @param data
+     */
+    public PIAIntermediateXMLWriter(PIAIntermediateData data) {
+        this.data = data;
+        this.numThreads = 0;
+    }
+
+
+    /**
+     * Sets the number of threads used for marshalling. If set to 0 (default),
+     * all available processors are used.
+     *
+     * @param threads
+     */
+    public void setNrThreads(int threads) {
+        numThreads = threads;
+    }
+
+
+    /**
+     * Gets the number of actually used threads, i.e. all available processors,
+     * if the number of threads is not set.
+     */
+    private int getUsedNrThreads() {
+        if (numThreads > 0) {
+            return numThreads;
+        } else {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+
+    /**
+     * Writes the data as PIA XML into the given stream. The stream is closed
+     * afterwards.
+     *
+     * @param outputStream
+     * @throws IOException
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        ChunkedXMLListWriter chunkedWriter = null;
+
+        try (Writer out = new OutputStreamWriter(outputStream, encoding)) {
+            LOGGER.info("Stream open, writing PIA XML");
+
+            XMLStreamWriter xmlOut = createXMLStreamWriter(out);
+            writeDocumentStart(xmlOut);
+
+            // filesList
+            writeOutJaxbFilesList(xmlOut);
+
+            // inputs
+            writeOutJaxbInputs(xmlOut);
+
+            // analysisSoftwareList
+            writeOutJaxbAnalysisSoftwareList(xmlOut);
+
+            int nrThreads = getUsedNrThreads();
+            if (nrThreads > 1) {
+                LOGGER.debug("marshalling the lists with {} threads", nrThreads);
+                chunkedWriter = new ChunkedXMLListWriter(out, xmlOut,
+                        chunkOut -> {
+                            XMLStreamWriter chunkXMLOut = createXMLStreamWriter(chunkOut);
+                            writeDocumentStart(chunkXMLOut);
+                            return chunkXMLOut;
+                        },
+                        nrThreads, XML_CHUNK_SIZE);
+            }
+
+            // spectraList
+            writeOutJaxbList(xmlOut, chunkedWriter, "spectraList", data.getPSMs().values(),
+                    SpectrumMatchXML::new, SpectrumMatchXML.class);
+
+            // accessionsList
+            writeOutJaxbList(xmlOut, chunkedWriter, "accessionsList", data.getAccessions().values(),
+                    AccessionXML::new, AccessionXML.class);
+
+            // peptidesList
+            writeOutJaxbList(xmlOut, chunkedWriter, "peptidesList", data.getPeptides().values(),
+                    PeptideXML::new, PeptideXML.class);
+
+            // groupsList
+            writeOutJaxbList(xmlOut, chunkedWriter, "groupsList", data.getGroups().values(),
+                    GroupXML::new, GroupXML.class);
+
+            xmlOut.writeEndElement(); // jPiaXML
+
+            xmlOut.close();
+        } catch (XMLStreamException | JAXBException e) {
+            LOGGER.error("Error while writing PIA XML file", e);
+            throw new IOException(e);
+        } finally {
+            if (chunkedWriter != null) {
+                chunkedWriter.shutdown();
+            }
+        }
+
+        LOGGER.info("Writing of PIA XML file finished.");
+    }
+
+
+    /**
+     * Creates the (indenting) XML writer for PIA XML files with the fixed
+     * namespace prefixes.
+     *
+     * @param out
+     * @return
+     * @throws XMLStreamException
+     */
+    private static XMLStreamWriter createXMLStreamWriter(Writer out) throws XMLStreamException {
+        XMLOutputFactory xmlof = XMLOutputFactory.newInstance();
+        XMLStreamWriter xmlOut = new IndentingXMLStreamWriter(xmlof.createXMLStreamWriter(out));
+
+        // take care of the namespace in the PIA XML files -> basically set them fixed to PIA and mzid 1.1
+        xmlOut.setNamespaceContext(new NamespaceContext() {
+            public Iterator<String> getPrefixes(String namespaceURI) {
+                return null;
+            }
+
+            public String getPrefix(String namespaceURI) {
+                if (namespaceURI.equals(nsjPiaXML)) {
+                    return prefixjPiaXML;
+                } else if (namespaceURI.contains("mzIdentML")) {
+                    return prefixMzIdentML;
+                }
+                return "";
+            }
+
+            public String getNamespaceURI(String prefix) {
+                return "";
+            }
+        });
+
+        return xmlOut;
+    }
+
+
+    /**
+     * Writes the XML header and the opening root element with its attributes
+     * and namespaces.
+     *
+     * @param xmlOut
+     * @throws XMLStreamException
+     */
+    private void writeDocumentStart(XMLStreamWriter xmlOut) throws XMLStreamException {
+        // xml header
+        xmlOut.writeStartDocument(encoding, "1.0");
+
+        // the piaXML root element
+        xmlOut.writeStartElement(prefixjPiaXML, "jPiaXML", nsjPiaXML);
+        xmlOut.setPrefix(prefixjPiaXML, nsjPiaXML);
+
+        xmlOut.writeAttribute("name", data.getProjectName());
+        xmlOut.writeAttribute("date", data.getProjectDate());
+
+        xmlOut.writeNamespace(prefixMzIdentML, nsMzIdentML);
+        xmlOut.writeNamespace(prefixjPiaXML, nsjPiaXML);
+    }
+
+
+    /**
+     * Creates a marshaller for PIA XML for the given class.
+     *
+     * @return
+     * @throws JAXBException
+     */
+    private static Marshaller createMarshallerForPiaXML(Class<?> marshalClass) throws JAXBException {
+        return createMarshallerForPiaXML(JAXBContext.newInstance(marshalClass));
+    }
+
+
+    /**
+     * Creates a marshaller for PIA XML for the given context.
+     *
+     * @return
+     * @throws JAXBException
+     */
+    private static Marshaller createMarshallerForPiaXML(JAXBContext context) throws JAXBException {
+        Marshaller m = context.createMarshaller();
+        m.setProperty(Marshaller.JAXB_ENCODING, encoding);
+        m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        m.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+
+        return m;
+    }
+
+
+    /**
+     * Creates an formatted (indenting) jaxb fragment marshaller for the given
+     * context, using the given jaxbElement and the given class for marshalling.
+     *
+     * @param xmlOut the writer
+     * @param jaxbElement an jaxbElement
+     * @param marshalClass the class for marshalling
+     *
+     * @throws JAXBException
+     */
+    private static void marshalToFormattedFragmentMarshaller(XMLStreamWriter xmlOut,
+            Object jaxbElement, Class<?> marshalClass) throws JAXBException {
+        Marshaller m = createMarshallerForPiaXML(marshalClass);
+        m.marshal(jaxbElement, xmlOut);
+    }
+
+
+    /**
+     * Creates an formatted (indenting) jaxb fragment marshaller for the given
+     * context, using the given jaxbElement and the given class for marshalling.
+     *
+     * @param xmlOut the writer
+     * @param object the object to be marshalled, will be casted to a
+     * jaxbElement
+     *
+     * @throws JAXBException
+     */
+    private static <T> void marshalToFormattedFragmentMarshaller(
+            XMLStreamWriter xmlOut, T object) throws JAXBException {
+        QName aQName = ModelConstants.getQNameForClass(object.getClass());
+
+        @SuppressWarnings("unchecked")
+        Class<T> classCast = (Class<T>)object.getClass();
+        JAXBElement<T> jaxbElement = new JAXBElement<>(aQName, classCast, object);
+
+        marshalToFormattedFragmentMarshaller(xmlOut, jaxbElement, classCast);
+    }
+
+
+    /**
+     * Writes out the filesList object to XML, using the given writer.
+     *
+     * @param xmlOut
+     * @throws JAXBException
+     */
+    private void writeOutJaxbFilesList(XMLStreamWriter xmlOut) throws JAXBException {
+        FilesListXML fileslistXML = new FilesListXML();
+        data.getFiles().values().stream()
+                .map(PIAInputFileXML::new)
+                .forEach(fileslistXML.getFiles()::add);
+
+        marshalToFormattedFragmentMarshaller(xmlOut, fileslistXML, FilesListXML.class);
+    }
+
+
+    /**
+     * Writes out the Inputs object to XML, using the given writer.
+     *
+     * @param xmlOut
+     * @throws JAXBException
+     */
+    private void writeOutJaxbInputs(XMLStreamWriter xmlOut) throws JAXBException {
+        Inputs inputs = new Inputs();
+        inputs.getSearchDatabase().addAll(data.getSearchDatabase().values());
+        inputs.getSpectraData().addAll(data.getSpectraData().values());
+
+        marshalToFormattedFragmentMarshaller(xmlOut, inputs);
+    }
+
+
+    /**
+     * Writes out the AnalysisSoftwareList object to XML, using the given writer.
+     *
+     * @param xmlOut
+     * @throws JAXBException
+     */
+    private void writeOutJaxbAnalysisSoftwareList(XMLStreamWriter xmlOut) throws JAXBException {
+        AnalysisSoftwareList softwareList = new AnalysisSoftwareList();
+        softwareList.getAnalysisSoftware().addAll(data.getAnalysisSoftware().values());
+
+        marshalToFormattedFragmentMarshaller(xmlOut, softwareList);
+    }
+
+
+    /**
+     * Writes out a list of objects (PSMs, accessions, peptides or groups) to
+     * XML, using the chunked writer if given, or else the XML writer.
+     *
+     * @param xmlOut the writer of the document
+     * @param chunkedWriter the chunked writer or null, if the list is written sequentially
+     * @param listName the name of the list element
+     * @param items the objects of the list
+     * @param converter converts the objects into the JAXB objects
+     * @param marshalClass the class of the JAXB objects
+     *
+     * @throws XMLStreamException
+     * @throws JAXBException
+     */
+    private static <T> void writeOutJaxbList(XMLStreamWriter xmlOut, ChunkedXMLListWriter chunkedWriter,
+            String listName, Collection<T> items, Function<T, ?> converter, Class<?> marshalClass)
+            throws XMLStreamException, JAXBException {
+        JAXBContext context = JAXBContext.newInstance(marshalClass);
+
+        if (chunkedWriter != null) {
+            chunkedWriter.writeList(listName, items, converter, () -> createMarshallerForPiaXML(context));
+        } else {
+            xmlOut.writeStartElement(listName);
+
+            Marshaller m = createMarshallerForPiaXML(context);
+            for (T item : items) {
+                m.marshal(converter.apply(item), xmlOut);
+            }
+
+            xmlOut.writeEndElement();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package de.mpc.pia.intermediate.xmlhandler;
+
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+
+/**
+ * Parses the elements of a list in a PIA XML file in a pipeline: the calling
+ * thread reads the element boundaries from the {@link XMLStreamReader} and
+ * copies the elements into chunks, the chunks are unmarshalled and converted
+ * by a pool of threads and the results are passed to the collector in the
+ * order of the file (again in the calling thread).
+ *
+ * @author julianu
+ *
+ */
+class PipelinedListParser {
+
+    /** the number of elements in one chunk */
+    private final int chunkSize;
+
+    /** the maximal number of chunks, which are in the pipeline but not yet collected */
+    private final int maxPendingChunks;
+
+    /** the executor for unmarshalling and converting */
+    private final ExecutorService executor;
+
+    /** the XML reader factory for the chunks, one per thread, as the factories are not guaranteed to be thread safe */
+    private final ThreadLocal<XMLInputFactory> inputFactory;
+
+
+    /**
+     * Creates a parser using the given number of threads.
+     *
+     * @param nrThreads the number of threads used for unmarshalling and converting
+     * @param chunkSize the number of elements in one chunk
+     */
+    PipelinedListParser(int nrThreads, int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.maxPendingChunks = 2 * nrThreads;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(nrThreads, runnable -> {
+                    Thread thread = new Thread(runnable, "PIA-XMLParser-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        this.inputFactory = ThreadLocal.withInitial(() -> {
+            XMLInputFactory xmlif = XMLInputFactory.newInstance();
+            xmlif.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            return xmlif;
+        });
+    }
+
+
+    /**
+     * Parses all elements of the list, at whose start element the reader is
+     * currently positioned. After the call, the reader is positioned at the
+     * end element of the list.
+     *
+     * @param xmlr the reader, positioned at the start element of the list
+     * @param elementName the local name of the list's elements
+     * @param namespaces the namespaces declared in the scope of the list
+     * (prefix to URI, the default namespace has the empty prefix)
+     * @param jaxbContext the context to unmarshal the elements
+     * @param converter converts an unmarshalled element, is called concurrently
+     * @param collector gets the converted elements in the order of the file
+     *
+     * @throws XMLStreamException
+     * @throws JAXBException
+     */
+    <X, R> void parseList(XMLStreamReader xmlr, String elementName, Map<String, String> namespaces,
+            JAXBContext jaxbContext, Function<X, R> converter, Consumer<R> collector)
+            throws XMLStreamException, JAXBException {
+        String listName = xmlr.getLocalName();
+
+        Map<String, String> listNamespaces = new LinkedHashMap<>(namespaces);
+        for (int nsIdx = 0; nsIdx < xmlr.getNamespaceCount(); nsIdx++) {
+            listNamespaces.put(nullToEmpty(xmlr.getNamespacePrefix(nsIdx)), xmlr.getNamespaceURI(nsIdx));
+        }
+        String chunkStart = createChunkStart(listName, listNamespaces);
+        String chunkEnd = "</" + listName + ">";
+
+        Deque<Future<List<R>>> pendingChunks = new ArrayDeque<>();
+        try {
+            StringBuilder chunk = new StringBuilder(chunkStart);
+            int nrElements = 0;
+
+            // move to the first element
+            xmlr.nextTag();
+            while (xmlr.getEventType() == XMLStreamConstants.START_ELEMENT) {
+                xmlr.require(XMLStreamConstants.START_ELEMENT, null, elementName);
+
+                copyElement(xmlr, chunk);
+                nrElements++;
+
+                if (nrElements == chunkSize) {
+                    submitChunk(chunk.append(chunkEnd).toString(), jaxbContext, converter, collector, pendingChunks);
+                    chunk = new StringBuilder(chunkStart);
+                    nrElements = 0;
+                }
+
+                // skip the whitespace between the elements
+                if (xmlr.getEventType() != XMLStreamConstants.START_ELEMENT
+                        && xmlr.getEventType() != XMLStreamConstants.END_ELEMENT) {
+                    xmlr.nextTag();
+                }
+            }
+
+            if (nrElements > 0) {
+                submitChunk(chunk.append(chunkEnd).toString(), jaxbContext, converter, collector, pendingChunks);
+            }
+
+            while (!pendingChunks.isEmpty()) {
+                collectChunk(pendingChunks.poll(), collector);
+            }
+        } finally {
+            pendingChunks.forEach(future -> future.cancel(true));
+        }
+    }
+
+
+    /**
+     * Submits the given chunk for parsing, collecting the oldest chunk before
+     * if the pipeline is full.
+     */
+    private <X, R> void submitChunk(String chunk, JAXBContext jaxbContext, Function<X, R> converter,
+            Consumer<R> collector, Deque<Future<List<R>>> pendingChunks)
+            throws XMLStreamException, JAXBException {
+        if (pendingChunks.size() >= maxPendingChunks) {
+            collectChunk(pendingChunks.poll(), collector);
+        }
+
+        pendingChunks.add(executor.submit(() -> parseChunk(chunk, jaxbContext, converter)));
+    }
+
+
+    /**
+     * Unmarshals and converts the elements of the given chunk.
+     *
+     * @return the converted elements
+     */
+    private <X, R> List<R> parseChunk(String chunk, JAXBContext jaxbContext, Function<X, R> converter)
+            throws XMLStreamException, JAXBException {
+        XMLStreamReader chunkReader = inputFactory.get().createXMLStreamReader(new StringReader(chunk));
+        Unmarshaller um = jaxbContext.createUnmarshaller();
+        List<R> converted = new ArrayList<>(chunkSize);
+
+        // move to the chunk's list and then to the first element
+        chunkReader.nextTag();
+        chunkReader.nextTag();
+        while (chunkReader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+            @SuppressWarnings("unchecked")
+            X element = (X) um.unmarshal(chunkReader);
+            converted.add(converter.apply(element));
+        }
+
+        chunkReader.close();
+        return converted;
+    }
+
+
+    /**
+     * Waits for the given chunk and passes its elements to the collector.
+     */
+    private static <R> void collectChunk(Future<List<R>> chunk, Consumer<R> collector)
+            throws XMLStreamException, JAXBException {
+        try {
+            chunk.get().forEach(collector);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLStreamException("interrupted while parsing the XML", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException) cause;
+            } else if (cause instanceof JAXBException) {
+                throw (JAXBException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new XMLStreamException("error while parsing a chunk", e);
+        }
+    }
+
+
+    /**
+     * Creates the start element for a chunk, which declares all the given
+     * namespaces.
+     */
+    private static String createChunkStart(String listName, Map<String, String> namespaces) {
+        StringBuilder start = new StringBuilder("<").append(listName);
+        for (Map.Entry<String, String> nsIt : namespaces.entrySet()) {
+            start.append(" xmlns");
+            if (!nsIt.getKey().isEmpty()) {
+                start.append(':').append(nsIt.getKey());
+            }
+            start.append("=\"");
+            appendEscaped(start, nsIt.getValue(), true);
+            start.append('"');
+        }
+        return start.append('>').toString();
+    }
+
+
+    /**
+     * Copies the element, at whose start the reader is positioned, into the
+     * given buffer. Afterwards the reader is positioned at the event after
+     * the element's end.
+     */
+    private static void copyElement(XMLStreamReader xmlr, StringBuilder buffer) throws XMLStreamException {
+        int depth = 0;
+        do {
+            switch (xmlr.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                buffer.append('<');
+                appendName(buffer, xmlr.getPrefix(), xmlr.getLocalName());
+
+                for (int nsIdx = 0; nsIdx < xmlr.getNamespaceCount(); nsIdx++) {
+                    buffer.append(' ');
+                    appendName(buffer, "xmlns", xmlr.getNamespacePrefix(nsIdx));
+                    buffer.append("=\"");
+                    appendEscaped(buffer, xmlr.getNamespaceURI(nsIdx), true);
+                    buffer.append('"');
+                }
+
+                for (int attIdx = 0; attIdx < xmlr.getAttributeCount(); attIdx++) {
+                    buffer.append(' ');
+                    appendName(buffer, xmlr.getAttributePrefix(attIdx), xmlr.getAttributeLocalName(attIdx));
+                    buffer.append("=\"");
+                    appendEscaped(buffer, xmlr.getAttributeValue(attIdx), true);
+                    buffer.append('"');
+                }
+                buffer.append('>');
+                break;
+
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                buffer.append("</");
+                appendName(buffer, xmlr.getPrefix(), xmlr.getLocalName());
+                buffer.append('>');
+                break;
+
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                appendEscaped(buffer, xmlr.getText(), false);
+                break;
+
+            default:
+                // comments and processing instructions are not needed
+                break;
+            }
+
+            xmlr.next();
+        } while (depth > 0);
+    }
+
+
+    /**
+     * Appends the (possibly prefixed) name.
+     */
+    private static void appendName(StringBuilder buffer, String prefix, String localName) {
+        if ((prefix != null) && !prefix.isEmpty()) {
+            buffer.append(prefix);
+            if ((localName != null) && !localName.isEmpty()) {
+                buffer.append(':');
+            }
+        }
+        if (localName != null) {
+            buffer.append(localName);
+        }
+    }
+
+
+    /**
+     * Appends the text escaped for XML content or attribute values.
+     */
+    private static void appendEscaped(StringBuilder buffer, String text, boolean isAttribute) {
+        for (int idx = 0; idx < text.length(); idx++) {
+            char c = text.charAt(idx);
+            switch (c) {
+            case '&':
+                buffer.append("&amp;");
+                break;
+            case '<':
+                buffer.append("&lt;");
+                break;
+            case '>':
+                buffer.append("&gt;");
+                break;
+            case '"':
+                buffer.append(isAttribute ? "&quot;" : "\"");
+                break;
+            case '\r':
+                buffer.append("&#13;");
+                break;
+            case '\n':
+                buffer.append(isAttribute ? "&#10;" : "\n");
+                break;
+            case '\t':
+                buffer.append(isAttribute ? "&#9;" : "\t");
+                break;
+            default:
+                buffer.append(c);
+                break;
+            }
+        }
+    }
+
+
+    private static String nullToEmpty(String string) {
+        return (string == null) ? "" : string;
+    }
+
+
+    /**
+     * Stops the parsing threads.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
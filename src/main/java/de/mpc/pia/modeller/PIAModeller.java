@@ -1,15 +1,9 @@
 package de.mpc.pia.modeller;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
@@ -18,11 +12,17 @@ import org.apache.logging.log4j.Logger;
 import de.mpc.pia.intermediate.Group;
 import de.mpc.pia.intermediate.PIAInputFile;
 import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PIAIntermediateData;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryHandler;
 import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler;
 import de.mpc.pia.modeller.exporter.CSVExporter;
 import de.mpc.pia.modeller.exporter.MzIdentMLExporter;
 import de.mpc.pia.modeller.exporter.MzTabExporter;
+import de.mpc.pia.modeller.snapshot.PIAModellerSnapshot;
+import de.mpc.pia.modeller.snapshot.SnapshotInput;
+import de.mpc.pia.modeller.snapshot.SnapshotOutput;
 import uk.ac.ebi.jmzidml.model.mzidml.AnalysisSoftware;
 import uk.ac.ebi.jmzidml.model.mzidml.SearchDatabase;
 import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
@@ -65,10 +65,10 @@ public class PIAModeller implements Serializable {
     private String fileName;
 
     /**
-     * handler for the intermediate file
+     * handler for the intermediate file (PIA XML or binary)
      * @serial
      */
-    private PIAIntermediateJAXBHandler intermediateHandler;
+    private PIAIntermediateData intermediateHandler;
 
 
     /** logger for this class */
@@ -105,6 +105,46 @@ public class PIAModeller implements Serializable {
     }
 
 
+    /**
+     * Creates the modeller from the state written into a snapshot by
+     * {@link #writeSnapshot(SnapshotOutput)}.
+     *
+     * @param in
+     * @throws IOException
+     */
+    public PIAModeller(SnapshotInput in) throws IOException {
+        this();
+
+        fileName = in.readString();
+        intermediateHandler = in.getIntermediateData();
+
+        if (in.readBoolean()) {
+            psmModeller = new PSMModeller(in);
+            peptideModeller = new PeptideModeller(psmModeller, in);
+            proteinModeller = new ProteinModeller(psmModeller, peptideModeller, getGroups(), in);
+        }
+    }
+
+
+    /**
+     * Writes the state of this modeller and its PSM, peptide and protein
+     * modellers into the snapshot.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeSnapshot(SnapshotOutput out) throws IOException {
+        out.writeString(fileName);
+
+        out.writeBoolean(psmModeller != null);
+        if (psmModeller != null) {
+            psmModeller.writeSnapshot(out);
+            peptideModeller.writeSnapshot(out);
+            proteinModeller.writeSnapshot(out);
+        }
+    }
+
+
     /**
      * Getter for the {@link PSMModeller} of this modeller.
      * @return
@@ -275,8 +315,15 @@ public class PIAModeller implements Serializable {
 
         LOGGER.info("Starting parse...");
 
-        intermediateHandler = new PIAIntermediateJAXBHandler();
-        intermediateHandler.parse(fileName, progress);
+        if (PIABinaryFormat.isBinaryIntermediateFile(fileName)) {
+            PIABinaryHandler binaryHandler = new PIABinaryHandler(fileName);
+            binaryHandler.parse(progress);
+            intermediateHandler = binaryHandler;
+        } else {
+            PIAIntermediateJAXBHandler xmlHandler = new PIAIntermediateJAXBHandler();
+            xmlHandler.parse(fileName, progress);
+            intermediateHandler = xmlHandler;
+        }
 
         LOGGER.info("{} successfully parsed.\n" +
                 "\t {} files\n" +
@@ -536,7 +583,8 @@ public class PIAModeller implements Serializable {
 
 
     /**
-     * Writes the complete processed model to the given file.
+     * Writes the complete processed model to the given file, as a
+     * {@link PIAModellerSnapshot}.
      *
      * @param piaModeller
      * @param file
@@ -544,13 +592,8 @@ public class PIAModeller implements Serializable {
      */
     public static void serializeToFile(PIAModeller piaModeller, File file) throws IOException {
         LOGGER.info("Serializing data to {}", file.getAbsolutePath());
-        try (FileOutputStream fos = new FileOutputStream(file);
-                GZIPOutputStream gzo = new GZIPOutputStream(fos);
-                ObjectOutputStream oos = new ObjectOutputStream(gzo)) {
-            oos.writeObject(piaModeller);
-        } catch (StackOverflowError se) {
-            LOGGER.error("Could not write whole PIA model to {}", file.getAbsolutePath(), se);
-            throw new IOException("Could not serialize whole PIA model, too complex.");
+        try {
+            PIAModellerSnapshot.write(piaModeller, piaModeller.intermediateHandler, file);
         } catch (Exception e) {
             LOGGER.error("Could not write PIA model to {}", file.getAbsolutePath(), e);
             throw new IOException(e);
@@ -573,7 +616,7 @@ public class PIAModeller implements Serializable {
 
 
     /**
-     * Reads a modeller from the given file
+     * Reads a modeller from the given {@link PIAModellerSnapshot} file.
      *
      * @param file
      * @throws IOException
@@ -581,28 +624,11 @@ public class PIAModeller implements Serializable {
     public static PIAModeller deSerializeFromFile(File file) throws IOException {
         LOGGER.info("reading modeller from {}", file.getAbsolutePath());
 
-        PIAModeller piaModeller;
-
-        try (FileInputStream fin = new FileInputStream(file);
-                GZIPInputStream gzi = new GZIPInputStream(fin);
-                ObjectInputStream ois = new ObjectInputStream(gzi)) {
-            Object readObject = ois.readObject();
-            if (readObject instanceof PIAModeller) {
-                piaModeller = (PIAModeller) readObject;
-            } else {
-                String msg = "Could not read a PIAModeller from the file " + file.getAbsolutePath();
-                LOGGER.error(msg);
-                throw new IOException(msg);
-            }
+        try {
+            return PIAModellerSnapshot.read(file);
         } catch (IOException e) {
             LOGGER.error("Could not read PIA model from {}", file.getAbsolutePath(), e);
             throw e;
-        } catch (ClassNotFoundException e) {
-            String msg = "Could not read PIA model from " + file.getAbsolutePath();
-            LOGGER.error(msg, e);
-            throw new IOException(msg, e);
         }
-
-        return piaModeller;
     }
 }
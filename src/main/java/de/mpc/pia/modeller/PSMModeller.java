@@ -26,7 +26,7 @@ import org.biojava.nbio.ontology.Triple;
 import de.mpc.pia.JsonAnalysis;
 import de.mpc.pia.intermediate.Group;
 import de.mpc.pia.intermediate.PIAInputFile;
-import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PIAIntermediateData;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler;
 import de.mpc.pia.modeller.psm.PSMReportItem;
@@ -41,9 +41,9 @@ import de.mpc.pia.modeller.report.filter.impl.PSMTopIdentificationFilter;
 import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
 import de.mpc.pia.modeller.score.comparator.RankCalculator;
 import de.mpc.pia.modeller.score.comparator.ScoreComparator;
+import de.mpc.pia.modeller.snapshot.SnapshotInput;
+import de.mpc.pia.modeller.snapshot.SnapshotOutput;
 import de.mpc.pia.tools.OntologyConstants;
-import de.mpc.pia.tools.PIAConstants;
-import de.mpc.pia.tools.PIATools;
 import de.mpc.pia.tools.obo.AbstractOBOMapper;
 import de.mpc.pia.tools.obo.OBOMapper;
 
@@ -95,6 +95,9 @@ public class PSMModeller implements Serializable {
     /** maps from the fileID to whether an FDR is calculated or not */
     private Map<Long, Boolean> fileFDRCalculated;
 
+    /** caches of the sorted PSMs for the FDR calculation, mapped by the file ID */
+    private transient Map<Long, FDRCalculationCache<PSMReportItem>> fileFDRCaches;
+
     /** map from the file's id to the used top identifications for FDR calculation */
     private Map<Long, Integer> fileTopIdentifications;
 
@@ -157,12 +160,28 @@ public class PSMModeller implements Serializable {
             String fileName,
             Map<String, Set<Long>> psmSetSettingsWarnings,
             int nrPSMs) {
+        this(groups, inputFiles, fileName, psmSetSettingsWarnings, nrPSMs, 0);
+    }
 
-        // create the file mapping and also add the overview file with ID 0
-        this.inputFiles = new HashMap<>(inputFiles.size() + 1);
-        this.inputFiles.put(0L, new PIAInputFile(0L, "All files",
-                "Overview_of_all_files", "none"));
-        this.inputFiles.putAll(inputFiles);
+
+    /**
+     * Basic constructor, creates the {@link ReportPSM}s and
+     * {@link ReportPSMSet}s from the given {@link Group}s using the given
+     * number of threads. The {@link Group}s should derive from a
+     * {@link PIAInputFile}.
+     *
+     * @param groups groups of the PIA intermediate file
+     * @param inputFiles the used {@link PIAInputFile}s
+     * @param nrThreads number of threads used to create the report PSMs, 0 for all available processors
+     */
+    public PSMModeller(Map<Long, Group> groups,
+            Map<Long, PIAInputFile> inputFiles,
+            String fileName,
+            Map<String, Set<Long>> psmSetSettingsWarnings,
+            int nrPSMs,
+            int nrThreads) {
+
+        this.inputFiles = createFilesMap(inputFiles);
 
         fileFiltersMap = new HashMap<>(inputFiles.size());
 
@@ -188,7 +207,119 @@ public class PSMModeller implements Serializable {
         this.psmSetSettings.remove(IdentificationKeySettings.FILE_ID.toString());
 
         // no settings are needed for the calculation of the ReportPSMs, but the PSM Set settings are used
-        createReportPSMsFromGroups(groups, nrPSMs);
+        createReportPSMsFromGroups(groups, nrPSMs, nrThreads);
+    }
+
+
+    /**
+     * Creates the modeller from the state written into a snapshot by
+     * {@link #writeSnapshot(SnapshotOutput)}.
+     *
+     * @param in
+     * @throws IOException
+     */
+    public PSMModeller(SnapshotInput in) throws IOException {
+        PIAIntermediateData data = in.getIntermediateData();
+        this.inputFiles = createFilesMap(data.getFiles());
+        this.psmSetSettingsWarnings = data.getPSMSetSettingsWarnings();
+
+        fileName = in.readString();
+
+        spectraPSMs = in.readReportPSMTable();
+        fileReportPSMs = in.readMap(in::readLong, () -> in.readList(in::readReportPSM));
+        reportPSMSets = in.readList(in::readReportPSMSet);
+        reportPSMSetMap = in.readMap(in::readString, in::readReportPSMSet);
+
+        fileScoreShortNames = in.readMap(in::readLong, () -> in.readList(in::readString));
+        fileSortables = in.readMap(in::readLong, () -> in.readSet(in::readString));
+        fileFDRData = in.readMap(in::readLong, in::readFDRData);
+        fileFDRCalculated = in.readMap(in::readLong, in::readBoolean);
+        fileTopIdentifications = in.readMap(in::readLong, in::readNullableInteger);
+        fileHasInternalDecoy = in.readMap(in::readLong, in::readBoolean);
+        psmSetSettings = in.readMap(in::readString, in::readBoolean);
+        createPSMSets = in.readBoolean();
+        preferredFDRScores = in.readList(in::readString);
+
+        scoreShortToScoreName = in.readMap(in::readString, in::readString);
+        scoreShortToHigherScoreBetter = in.readMap(in::readString, in::readNullableBoolean);
+        scoreShortToHigherScoreBetterChangeable = in.readMap(in::readString, in::readNullableBoolean);
+
+        scoreShortToComparator = new HashMap<>();
+        Map<String, Boolean> scoreComparators = in.readMap(in::readString, in::readBoolean);
+        for (Map.Entry<String, Boolean> compIt : scoreComparators.entrySet()) {
+            String scoreShort = compIt.getKey();
+            if (compIt.getValue()) {
+                Boolean higherScoreBetter = scoreShortToHigherScoreBetter.get(scoreShort);
+                scoreShortToComparator.put(scoreShort, (higherScoreBetter != null) ?
+                        new ScoreComparator<>(scoreShort, higherScoreBetter) : new ScoreComparator<>(scoreShort));
+            } else {
+                String scoreSortName = PSMReportItemComparator.getScoreSortName(scoreShort);
+                if (scoreSortName == null) {
+                    throw new IOException("No comparator for the score " + scoreShort + " in the snapshot");
+                }
+                scoreShortToComparator.put(scoreShort,
+                        PSMReportItemComparator.getComparatorByName(scoreSortName, SortOrder.ascending));
+            }
+        }
+
+        defaultDecoyPattern = in.readString();
+        defaultFDRThreshold = in.readNullableDouble();
+        defaultFDRTopIdentifications = in.readNullableInteger();
+
+        fileFiltersMap = in.readMap(in::readLong, () -> in.readList(in::readFilter));
+    }
+
+
+    /**
+     * Writes the state of this modeller into the snapshot, the
+     * {@link ReportPSM}s are written into the table of PSMs.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeSnapshot(SnapshotOutput out) throws IOException {
+        out.writeString(fileName);
+
+        out.writeReportPSMTable(spectraPSMs.values());
+        out.writeMap(fileReportPSMs, out::writeLong, psms -> out.writeCollection(psms, out::writeReportPSM));
+        out.writeCollection(reportPSMSets, out::writeReportPSMSet);
+        out.writeMap(reportPSMSetMap, out::writeString, out::writeReportPSMSet);
+
+        out.writeMap(fileScoreShortNames, out::writeLong, scoreShorts -> out.writeCollection(scoreShorts, out::writeString));
+        out.writeMap(fileSortables, out::writeLong, sortables -> out.writeCollection(sortables, out::writeString));
+        out.writeMap(fileFDRData, out::writeLong, out::writeFDRData);
+        out.writeMap(fileFDRCalculated, out::writeLong, out::writeBoolean);
+        out.writeMap(fileTopIdentifications, out::writeLong, out::writeNullableInteger);
+        out.writeMap(fileHasInternalDecoy, out::writeLong, out::writeBoolean);
+        out.writeMap(psmSetSettings, out::writeString, out::writeBoolean);
+        out.writeBoolean(createPSMSets);
+        out.writeCollection(preferredFDRScores, out::writeString);
+
+        out.writeMap(scoreShortToScoreName, out::writeString, out::writeString);
+        out.writeMap(scoreShortToHigherScoreBetter, out::writeString, out::writeNullableBoolean);
+        out.writeMap(scoreShortToHigherScoreBetterChangeable, out::writeString, out::writeNullableBoolean);
+        // the comparators are either ScoreComparators with the ordering above or the hard coded ones
+        out.writeMap(scoreShortToComparator, out::writeString,
+                comparator -> out.writeBoolean(comparator instanceof ScoreComparator));
+
+        out.writeString(defaultDecoyPattern);
+        out.writeNullableDouble(defaultFDRThreshold);
+        out.writeNullableInteger(defaultFDRTopIdentifications);
+
+        out.writeMap(fileFiltersMap, out::writeLong, filters -> out.writeCollection(filters, out::writeFilter));
+    }
+
+
+    /**
+     * Creates the mapping from the file IDs to the given files, also adding
+     * the overview file with ID 0.
+     */
+    private static Map<Long, PIAInputFile> createFilesMap(Map<Long, PIAInputFile> inputFiles) {
+        Map<Long, PIAInputFile> filesMap = new HashMap<>(inputFiles.size() + 1);
+        filesMap.put(0L, new PIAInputFile(0L, "All files",
+                "Overview_of_all_files", "none"));
+        filesMap.putAll(inputFiles);
+        return filesMap;
     }
 
 
@@ -223,6 +354,7 @@ public class PSMModeller implements Serializable {
         });
 
         createReportPSMSets(psmSetsMap);
+        invalidateFDRCaches();
     }
 
 
@@ -303,21 +435,16 @@ public class PSMModeller implements Serializable {
     /**
      * This method creates for each {@link PeptideSpectrumMatch} in the
      * given Map of {@link Group}s the corresponding {@link ReportPSM} and the
-     * List of {@link ReportPSMSet}s for the overview.
-     *
-     * TODO: this could be run threaded (by PIA clusters)!
+     * List of {@link ReportPSMSet}s for the overview. The groups are processed
+     * concurrently by the {@link ReportPSMsBuilder}.
      *
-     * @return a mapping from the spectrum ID to the ReportPSM
+     * @param nrThreads number of used threads, 0 for all available processors
      */
-    private void createReportPSMsFromGroups(Map<Long, Group> groups, int nrAllPSMs) {
+    private void createReportPSMsFromGroups(Map<Long, Group> groups, int nrAllPSMs, int nrThreads) {
         LOGGER.info("createReportPSMsFromGroups started...");
 
         Integer psmsPerFile = nrAllPSMs / (inputFiles.size()-1);
 
-        // reset the PSMs
-        spectraPSMs = new HashMap<>();
-        fileReportPSMs = new HashMap<>();
-
         // reset the scores
         fileScoreShortNames = new HashMap<>();
 
@@ -347,231 +474,136 @@ public class PSMModeller implements Serializable {
 
         scoreShortToHigherScoreBetterChangeable = new HashMap<>();
 
-        // map to create the PSMSets
-        Map<String, List<ReportPSM>> psmSetsMap =
-                new HashMap<>();
+        // create the PSMs and collect everything needed for the PSM sets and identification ranking
+        ReportPSMsBuilder builder = new ReportPSMsBuilder(psmSetSettings, nrThreads);
+        builder.buildReportPSMs(groups.values(), psmsPerFile);
 
-        // this map is used, to get the identification ranking for each score of a PSMs
-        //  fileID    spectrumID  scoreShort        psm
-        Map<Long, Map<String, Map<String, ArrayList<ReportPSM>>>> fileToRankings =
-                new HashMap<>();
+        spectraPSMs = builder.getSpectraPSMs();
+        fileReportPSMs = builder.getFileReportPSMs();
 
+        for (Long fileID : fileReportPSMs.keySet()) {
+            // add the scoreName-Maps and sorting maps
+            fileScoreShortNames.put(fileID, new ArrayList<>());
+            fileSortables.put(fileID, new HashSet<>());
 
-        // iterate through the groups
-        long nrPSMs = 0;
-        for (Map.Entry<Long, Group> groupIt : groups.entrySet()) {
-            Map<String, Peptide> peptides = groupIt.getValue().getPeptides();
-
-            // only groups with peptides can have PSMs
-            if ((peptides != null) && (peptides.size() > 0)) {
-                for (Map.Entry<String, Peptide> pepIt : peptides.entrySet()) {
-                    List<PeptideSpectrumMatch> spectra = pepIt.getValue().getSpectra();
-                    if (spectra != null) {
-                        for (PeptideSpectrumMatch spec : spectra) {
-                            ReportPSM psm = new ReportPSM(spec.getID(), spec);
-                            Long fileID = spec.getFile().getID();
-                            String psmKey = spec.getIdentificationKey(psmSetSettings);
-
-                            // add the accessions
-                            // only add accession, if it was found in the spectrum's file
-                            groupIt.getValue().getAllAccessions().values().stream().filter(acc -> acc.foundInFile(fileID)).forEach(psm::addAccession);
-
-                            if (spectraPSMs.put(spec.getID(), psm) != null) {
-                                // TODO: better warning
-                                LOGGER.warn("psm with ID '{}' already in map", spec.getID());
-                            }
-
-
-                            // put the PSM in the fileID -> ReportPSMs mapping
-                            List<ReportPSM> filesPSMList = fileReportPSMs.get(fileID);
-                            if (filesPSMList == null) {
-                                filesPSMList = new ArrayList<>(psmsPerFile);
-                                fileReportPSMs.put(fileID, filesPSMList);
-
-                                // this file is new, so also add the scoreName-Maps and sorting maps
-                                fileScoreShortNames.put(fileID, new ArrayList<>());
-
-                                fileSortables.put(fileID, new HashSet<>());
-
-                                // also re-initialise the FDR data
-                                fileFDRData.put(fileID,
-                                        new FDRData(FDRData.DecoyStrategy.ACCESSIONPATTERN,
-                                                defaultDecoyPattern,
-                                                defaultFDRThreshold));
-                                fileFDRCalculated.put(fileID, false);
-
-                                //and the topIdentifications
-                                fileTopIdentifications.put(fileID,
-                                        defaultFDRTopIdentifications);
-                            }
-                            filesPSMList.add(psm);
-
-                            // also put the PSM in the psmKey -> ReportPSM map, which is needed for the creation of the ReportPSMSets
-                            List<ReportPSM> psmSets = psmSetsMap.computeIfAbsent(psmKey, k -> new ArrayList<>());
-                            psmSets.add(psm);
-
-
-                            // record everything needed for the identification ranking
-                            Map<String, Map<String, ArrayList<ReportPSM>>> spectraToPSMs =
-                                    fileToRankings.computeIfAbsent(fileID, k -> new HashMap<>(psmsPerFile));
-
-
-                            String psmScoreRankKey = createPSMKeyForScoreRanking(psm);
-                            Map<String, ArrayList<ReportPSM>> scoreshortsToPSMs =
-                                    spectraToPSMs.computeIfAbsent(psmScoreRankKey, k -> new HashMap<>());
-
-                            for (ScoreModel score : psm.getScores()) {
-                                // add the scorenames, if not yet done, and take the values for topIdentificationRanking
-                                List<String> scoreShortNames = fileScoreShortNames.get(fileID);
-                                if (!scoreShortNames.contains(score.getShortName())) {
-                                    scoreShortNames.add(score.getShortName());
-
-                                    if (!scoreShortToScoreName.containsKey(score.getShortName())) {
-                                        scoreShortToScoreName.put(score.getShortName(),
-                                                score.getName());
-
-                                        LOGGER.debug("Added to scoremap: {} -> {}", score.getShortName(), score.getName());
-                                    }
-
-                                    // add score to the available sortings
-                                    String scoreSortName =
-                                            PSMReportItemComparator.getScoreSortName(score.getShortName());
-                                    if (scoreSortName != null) {
-                                        fileSortables.get(fileID).add(scoreSortName);
-                                    }
-                                }
-
-                                // get comparators for all the PSM scores
-                                if (!scoreShortToComparator.containsKey(score.getShortName())) {
-
-                                    String scoreSortName =
-                                            PSMReportItemComparator.getScoreSortName(score.getShortName());
-                                    Comparator<PSMReportItem> comp;
-                                    if (scoreSortName != null) {
-                                        // this score is hard coded
-                                        comp = PSMReportItemComparator.getComparatorByName(scoreSortName, SortOrder.ascending);
-
-                                        scoreShortToHigherScoreBetterChangeable.put(
-                                                score.getShortName(), false);
-
-                                        scoreShortToHigherScoreBetter.put(
-                                                score.getShortName(),
-                                                ScoreModelEnum.getModelByDescription(score.getShortName()).higherScoreBetter());
-                                    } else {
-                                        Boolean higherscorebetter = null;
-
-                                        Term oboTerm = getOBOMapper().getTerm(score.getAccession());
-                                        if (oboTerm != null) {
-                                            // the score is in the OBO file, get the relations etc.
-                                            Set<Triple> tripleSet = getOBOMapper().getTriples(oboTerm, null, null);
-
-                                            for (Triple triple : tripleSet) {
-                                                if (triple.getPredicate().getName().equals(AbstractOBOMapper.OBO_IS_A)) {
-                                                    if (triple.getObject().getName().equals(OntologyConstants.PSM_LEVEL_PVALUE.getPsiAccession())
-                                                            || triple.getObject().getName().equals(OntologyConstants.PSM_LEVEL_EVALUE.getPsiAccession())
-                                                            || triple.getObject().getName().equals(OntologyConstants.PSM_LEVEL_QVALUE.getPsiAccession())
-                                                            || triple.getObject().getName().equals(OntologyConstants.PEPTIDE_LEVEL_QVALUE.getPsiAccession())
-                                                            || triple.getObject().getName().equals(OntologyConstants.PEPTIDE_LEVEL_PVALUE.getPsiAccession())
-                                                            || triple.getObject().getName().equals(OntologyConstants.PEPTIDE_LEVEL_EVALUE.getPsiAccession())) {
-                                                        higherscorebetter = false;
-                                                    }
-                                                } else if (triple.getPredicate().getName().equals(AbstractOBOMapper.OBO_RELATIONSHIP)) {
-                                                    if (triple.getObject().getName().equals(OBOMapper.OBO_HAS_ORDER_HIGHERSCOREBETTER)) {
-                                                        higherscorebetter = true;
-                                                    } else if (triple.getObject().getName().equals(OBOMapper.OBO_HAS_ORDER_LOWERSCOREBETTER)) {
-                                                        higherscorebetter = false;
-                                                    }
-                                                }
-                                            }
-                                        }
-                                        
-                                        if (higherscorebetter != null) {
-                                            // the status of higherScoreBetter is not to be changed by the user
-                                            scoreShortToHigherScoreBetterChangeable.put(
-                                                    score.getShortName(), false);
-                                        } else {
-                                            // the status of higherScoreBetter may be changed by the user
-                                            scoreShortToHigherScoreBetterChangeable.put(
-                                                    score.getShortName(), true);
-                                            higherscorebetter = true;
-                                        }
-                                        scoreShortToHigherScoreBetter.put(
-                                                score.getShortName(),
-                                                higherscorebetter);
-                                        comp = new ScoreComparator<>(score.getShortName(), higherscorebetter);
-                                    }
-
-                                    LOGGER.debug("adding score comparator for {}: {}", score.getShortName(), comp);
-
-                                    scoreShortToComparator.put(score.getShortName(), comp);
-                                }
-
-                                ArrayList<ReportPSM> psmsOfSpectrum =
-                                        scoreshortsToPSMs.computeIfAbsent(score.getShortName(), k -> new ArrayList<>(10));
-                                psmsOfSpectrum.add(psm);
-                            }
-
-
-                            if (!fileHasInternalDecoy.get(fileID).booleanValue() &&
-                                    (spec.getIsDecoy() != null) && spec.getIsDecoy().booleanValue()) {
-                                fileHasInternalDecoy.put(fileID, true);
-                            }
-
-                            nrPSMs++;
-                            if (nrPSMs % 100000 == 0) {
-                                LOGGER.info("{} PSMs done", nrPSMs);
-                            }
-                        }
-                    }
+            // also re-initialise the FDR data
+            fileFDRData.put(fileID,
+                    new FDRData(FDRData.DecoyStrategy.ACCESSIONPATTERN,
+                            defaultDecoyPattern,
+                            defaultFDRThreshold));
+            fileFDRCalculated.put(fileID, false);
+
+            //and the topIdentifications
+            fileTopIdentifications.put(fileID,
+                    defaultFDRTopIdentifications);
+
+            if (builder.hasInternalDecoys(fileID)) {
+                fileHasInternalDecoy.put(fileID, true);
+            }
+        }
+
+        // get names and comparators for all the PSM scores, in the order of their occurrence
+        for (ScoreModel score : builder.getScoreModels().values()) {
+            scoreShortToScoreName.putIfAbsent(score.getShortName(), score.getName());
+            LOGGER.debug("Added to scoremap: {} -> {}", score.getShortName(), score.getName());
+
+            addScoreComparator(score);
+        }
+
+        // add the scorenames and the available sortings
+        for (Map.Entry<Long, Set<String>> fileScoresIt : builder.getFileScoreShortNames().entrySet()) {
+            fileScoreShortNames.get(fileScoresIt.getKey()).addAll(fileScoresIt.getValue());
+
+            for (String scoreShort : fileScoresIt.getValue()) {
+                String scoreSortName = PSMReportItemComparator.getScoreSortName(scoreShort);
+                if (scoreSortName != null) {
+                    fileSortables.get(fileScoresIt.getKey()).add(scoreSortName);
                 }
             }
         }
 
         // now set ranks to PSMs which have a known ranking
-        for (Map<String, Map<String, ArrayList<ReportPSM>>> spectraToPSM
-                : fileToRankings.values()) {
+        builder.rankPSMs(scoreShortToComparator);
 
-            for (Map<String, ArrayList<ReportPSM>> scoreshortsToPSMs
-                    : spectraToPSM.values()) {
+        // create and fill the ReportPSMSets for the overview
+        createReportPSMSets(builder.getPSMSetsMap());
 
-                for (Map.Entry<String, ArrayList<ReportPSM>> scoreToPSMsIt
-                        : scoreshortsToPSMs.entrySet()) {
-                    String scoreShort = scoreToPSMsIt.getKey();
-                    Comparator<PSMReportItem> comp = scoreShortToComparator.get(scoreShort);
+        LOGGER.info("createReportPSMsFromGroups done.");
+    }
 
-                    // only sort and rank, if we know how
-                    if (comp != null) {
-                        (scoreToPSMsIt.getValue()).sort(comp);
 
-                        // give the ranks to the PSMs
-                        Double lastScore = null;
-                        int rank = 0;
-                        for (ReportPSM psm : scoreToPSMsIt.getValue()) {
-                            Double thisScore =
-                                    psm.getScore(scoreShort);
+    /**
+     * Creates the comparator for the given score, if it is not yet known.
+     * Hard coded scores get their known comparator, for other scores the
+     * ordering is taken from the OBO file, if possible.
+     *
+     * @param score
+     */
+    private void addScoreComparator(ScoreModel score) {
+        if (scoreShortToComparator.containsKey(score.getShortName())) {
+            return;
+        }
 
-                            if (!thisScore.equals(lastScore)) {
-                                rank++;
-                            }
+        String scoreSortName =
+                PSMReportItemComparator.getScoreSortName(score.getShortName());
+        Comparator<PSMReportItem> comp;
+        if (scoreSortName != null) {
+            // this score is hard coded
+            comp = PSMReportItemComparator.getComparatorByName(scoreSortName, SortOrder.ascending);
 
-                            psm.setIdentificationRank(scoreShort, rank);
+            scoreShortToHigherScoreBetterChangeable.put(
+                    score.getShortName(), false);
 
-                            lastScore = thisScore;
+            scoreShortToHigherScoreBetter.put(
+                    score.getShortName(),
+                    ScoreModelEnum.getModelByDescription(score.getShortName()).higherScoreBetter());
+        } else {
+            Boolean higherscorebetter = null;
+
+            Term oboTerm = getOBOMapper().getTerm(score.getAccession());
+            if (oboTerm != null) {
+                // the score is in the OBO file, get the relations etc.
+                Set<Triple> tripleSet = getOBOMapper().getTriples(oboTerm, null, null);
+
+                for (Triple triple : tripleSet) {
+                    if (triple.getPredicate().getName().equals(AbstractOBOMapper.OBO_IS_A)) {
+                        if (triple.getObject().getName().equals(OntologyConstants.PSM_LEVEL_PVALUE.getPsiAccession())
+                                || triple.getObject().getName().equals(OntologyConstants.PSM_LEVEL_EVALUE.getPsiAccession())
+                                || triple.getObject().getName().equals(OntologyConstants.PSM_LEVEL_QVALUE.getPsiAccession())
+                                || triple.getObject().getName().equals(OntologyConstants.PEPTIDE_LEVEL_QVALUE.getPsiAccession())
+                                || triple.getObject().getName().equals(OntologyConstants.PEPTIDE_LEVEL_PVALUE.getPsiAccession())
+                                || triple.getObject().getName().equals(OntologyConstants.PEPTIDE_LEVEL_EVALUE.getPsiAccession())) {
+                            higherscorebetter = false;
                         }
-                    } else {
-                        // unrankable get all ranked as -1
-                        for (ReportPSM psm : scoreToPSMsIt.getValue()) {
-                            psm.setIdentificationRank(scoreShort, -1);
+                    } else if (triple.getPredicate().getName().equals(AbstractOBOMapper.OBO_RELATIONSHIP)) {
+                        if (triple.getObject().getName().equals(OBOMapper.OBO_HAS_ORDER_HIGHERSCOREBETTER)) {
+                            higherscorebetter = true;
+                        } else if (triple.getObject().getName().equals(OBOMapper.OBO_HAS_ORDER_LOWERSCOREBETTER)) {
+                            higherscorebetter = false;
                         }
                     }
                 }
             }
+
+            if (higherscorebetter != null) {
+                // the status of higherScoreBetter is not to be changed by the user
+                scoreShortToHigherScoreBetterChangeable.put(
+                        score.getShortName(), false);
+            } else {
+                // the status of higherScoreBetter may be changed by the user
+                scoreShortToHigherScoreBetterChangeable.put(
+                        score.getShortName(), true);
+                higherscorebetter = true;
+            }
+            scoreShortToHigherScoreBetter.put(
+                    score.getShortName(),
+                    higherscorebetter);
+            comp = new ScoreComparator<>(score.getShortName(), higherscorebetter);
         }
 
-        // create and fill the ReportPSMSets for the overview
-        createReportPSMSets(psmSetsMap);
+        LOGGER.debug("adding score comparator for {}: {}", score.getShortName(), comp);
 
-        LOGGER.info("createReportPSMsFromGroups done.");
+        scoreShortToComparator.put(score.getShortName(), comp);
     }
 
 
@@ -612,32 +644,6 @@ public class PSMModeller implements Serializable {
     }
 
 
-    /**
-     * Returns a key by which the PSMs can be grouped for calculation of top
-     * rank identifications.
-     *
-     * @param psm
-     * @return
-     */
-    private static String createPSMKeyForScoreRanking(ReportPSM psm) {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append(psm.getSourceID());
-        sb.append(':');
-        sb.append(psm.getSpectrum().getSpectrumTitle());
-        sb.append(':');
-        sb.append(Double.toString(PIATools.round(psm.getMassToCharge(), PIAConstants.MASS_TO_CHARGE_PRECISION)));
-        sb.append(':');
-        if (psm.getRetentionTime() != null) {
-            sb.append(Double.toString(PIATools.round(psm.getRetentionTime(), PIAConstants.RETENTION_TIME_PRECISION)));
-        } else {
-            sb.append("null");
-        }
-
-        return sb.toString();
-    }
-
-
     /**
      * Getter for the files used in the PIA intermediate file, including the
      * pseudo-overview-file.
@@ -807,6 +813,7 @@ public class PSMModeller implements Serializable {
             scoreShortToComparator.put(scoreShort,
                     new ScoreComparator<>(
                             scoreShort, higherScoreBetter));
+            invalidateFDRCaches();
 
             LOGGER.debug("setHigherScoreBetter: {}", scoreShortToComparator.get(scoreShort));
         } else {
@@ -1130,6 +1137,12 @@ public class PSMModeller implements Serializable {
                     psm.dumpFDRCalculation();
                     psm.updateDecoyStatus(fdrData.getDecoyStrategy(), p);
                 }
+
+                // the cached FDR calculation is dumped as well
+                FDRCalculationCache<PSMReportItem> fdrCache = getFDRCaches().get(fileID);
+                if (fdrCache != null) {
+                    fdrCache.invalidateDecoyStates();
+                }
             } else {
                 // set decoy information for PSM sets
                 for (ReportPSMSet psmSet : reportPSMSets) {
@@ -1151,7 +1164,12 @@ public class PSMModeller implements Serializable {
 
 
     /**
-     * Calculate the FDR for the file given by fileID
+     * Calculate the FDR for the file given by fileID.
+     * <p>
+     * The sorted PSMs are cached per file for the used score and top
+     * identifications. If only the FDR threshold changed since the last
+     * calculation, only the FDR good PSMs are updated. If the decoy states
+     * changed, the FDR is recalculated on the cached order.
      *
      * @param fileID
      */
@@ -1167,6 +1185,21 @@ public class PSMModeller implements Serializable {
             LOGGER.info("set the score for FDR calculation for fileID={}: {}",
             		fileID, fdrData.getScoreShortName());
 
+            int topIdentifications = (fileTopIdentifications.get(fileID) != null) ?
+                    fileTopIdentifications.get(fileID) : 0;
+            Comparator<PSMReportItem> comparator = scoreShortToComparator.get(fdrData.getScoreShortName());
+
+            FDRCalculationCache<PSMReportItem> fdrCache = getFDRCaches().get(fileID);
+            if ((fdrCache != null) && (comparator != null)
+                    && fdrCache.isValidFor(fdrData.getScoreShortName(), topIdentifications, comparator)
+                    && fdrCache.isCalculatedFor(fdrData)) {
+                // only the threshold may have changed
+                LOGGER.info("applying the FDR threshold {} on the cached FDR calculation", fdrData.getFDRThreshold());
+                fdrCache.applyThreshold(fdrData);
+                fileFDRCalculated.put(fileID, true);
+                return;
+            }
+
             // recalculate the decoy status (especially important, if decoy pattern was changed)
             updateDecoyStates(fileID);
 
@@ -1177,46 +1210,47 @@ public class PSMModeller implements Serializable {
                 return;
             }
 
-            // get a List of the ReportPSMs for FDR calculation
-            List<PSMReportItem> listForFDR = new ArrayList<>(fileReportPSMs.get(fileID));
+            if ((fdrCache == null) || (comparator == null)
+                    || !fdrCache.isValidFor(fdrData.getScoreShortName(), topIdentifications, comparator)) {
+                // get a List of the ReportPSMs for FDR calculation
+                List<PSMReportItem> listForFDR = new ArrayList<>(fileReportPSMs.get(fileID));
 
-            if ((fileTopIdentifications.get(fileID) != null) &&
-                    (fileTopIdentifications.get(fileID) > 0)) {
+                if (topIdentifications > 0) {
+                    LOGGER.info("applying topIdentification filter: top {} for {}",
+                    		topIdentifications, fdrData.getScoreShortName());
 
-                LOGGER.info("applying topIdentification filter: top {} for {}",
-                		fileTopIdentifications.get(fileID), fdrData.getScoreShortName());
+                    // as the used ReportPSMs may change with the filter, clear all prior FDR information
+                    listForFDR.forEach(FDRComputable::dumpFDRCalculation);
 
-                // as the used ReportPSMs may change with the filter, clear all prior FDR information
-                listForFDR.forEach(FDRComputable::dumpFDRCalculation);
+                    // only the topIdentifications should be used, so a filter is needed
+                    List<AbstractFilter> topRankFilter = new ArrayList<>(1);
 
-                // only the topIdentifications should be used, so a filter is needed
-                List<AbstractFilter> topRankFilter = new ArrayList<>(1);
+                    topRankFilter.add(new PSMTopIdentificationFilter(
+                            FilterComparator.less_equal,
+                            topIdentifications,
+                            false,
+                            fdrData.getScoreShortName()));
 
-                topRankFilter.add(new PSMTopIdentificationFilter(
-                        FilterComparator.less_equal,
-                        fileTopIdentifications.get(fileID),
-                        false,
-                        fdrData.getScoreShortName()));
+                    listForFDR = FilterFactory.applyFilters(
+                            listForFDR,
+                            topRankFilter,
+                            fileID);
+                }
 
-                listForFDR = FilterFactory.applyFilters(
-                        listForFDR,
-                        topRankFilter,
-                        fileID);
-            }
 
+                if (comparator == null) {
+                    LOGGER.warn("No comparator for FDR calculation, "
+                            + "aborted calculateFDR!");
+                    return;
+                }
 
-            if (scoreShortToComparator.get(fdrData.getScoreShortName()) == null) {
-                LOGGER.warn("No comparator for FDR calculation, "
-                        + "aborted calculateFDR!");
-                return;
+                fdrCache = new FDRCalculationCache<>(listForFDR, comparator,
+                        fdrData.getScoreShortName(), topIdentifications);
+                getFDRCaches().put(fileID, fdrCache);
             }
 
-            // calculate the FDR values
-            fdrData.calculateFDR(listForFDR,
-                    scoreShortToComparator.get(fdrData.getScoreShortName()));
-
-            // and also calculate the FDR score
-            FDRScore.calculateFDRScore(listForFDR, fdrData,
+            // calculate the FDR values and also the FDR score
+            fdrCache.calculateFDR(fdrData,
                     scoreShortToHigherScoreBetter.get(fdrData.getScoreShortName()));
 
             addPSMLevelFDRSCoreToFilesScores(fileID);
@@ -1232,6 +1266,31 @@ public class PSMModeller implements Serializable {
     }
 
 
+    /**
+     * Getter for the caches of the FDR calculations, mapped by the file IDs.
+     * The caches are not serialized.
+     *
+     * @return
+     */
+    private Map<Long, FDRCalculationCache<PSMReportItem>> getFDRCaches() {
+        if (fileFDRCaches == null) {
+            fileFDRCaches = new HashMap<>();
+        }
+        return fileFDRCaches;
+    }
+
+
+    /**
+     * Invalidates the caches of the FDR calculations, e.g. after the PSM sets
+     * or the filters changed.
+     */
+    private void invalidateFDRCaches() {
+        if (fileFDRCaches != null) {
+            fileFDRCaches.clear();
+        }
+    }
+
+
     /**
      * Adds the PSM FDR score to the given file's score short names
      *
@@ -1579,6 +1638,7 @@ public class PSMModeller implements Serializable {
      * Add a new filter for the given file
      */
     public boolean addFilter(Long fileID, AbstractFilter newFilter) {
+        invalidateFDRCaches();
         return newFilter != null && getFilters(fileID).add(newFilter);
     }
 
@@ -1595,6 +1655,7 @@ public class PSMModeller implements Serializable {
         if ((removingIndex >= 0) &&
                 (filters != null) &&
                 (removingIndex < filters.size())) {
+            invalidateFDRCaches();
             return filters.remove(removingIndex);
         }
 
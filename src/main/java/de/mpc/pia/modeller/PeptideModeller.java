@@ -1,5 +1,6 @@
 package de.mpc.pia.modeller;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -29,6 +30,8 @@ import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
 import de.mpc.pia.modeller.score.comparator.RankCalculator;
 import de.mpc.pia.modeller.score.comparator.ScoreComparator;
+import de.mpc.pia.modeller.snapshot.SnapshotInput;
+import de.mpc.pia.modeller.snapshot.SnapshotOutput;
 
 
 /**
@@ -95,6 +98,42 @@ public class PeptideModeller implements Serializable {
     }
 
 
+    /**
+     * Creates the modeller from the state written into a snapshot by
+     * {@link #writeSnapshot(SnapshotOutput)}.
+     *
+     * @param psmModeller the already read {@link PSMModeller}
+     * @param in
+     * @throws IOException
+     */
+    public PeptideModeller(PSMModeller psmModeller, SnapshotInput in) throws IOException {
+        this.psmModeller = psmModeller;
+
+        fileReportPeptides = in.readMap(in::readLong, () -> in.readList(in::readReportPeptide));
+        fileFiltersMap = in.readMap(in::readLong, () -> in.readList(in::readFilter));
+        inferePeptides = in.readMap(in::readLong, in::readBoolean);
+        fileFDRData = in.readMap(in::readLong, in::readFDRData);
+        fileFDRCalculated = in.readMap(in::readLong, in::readBoolean);
+        considerModifications = in.readBoolean();
+    }
+
+
+    /**
+     * Writes the state of this modeller into the snapshot.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeSnapshot(SnapshotOutput out) throws IOException {
+        out.writeMap(fileReportPeptides, out::writeLong, peptides -> out.writeCollection(peptides, out::writeReportPeptide));
+        out.writeMap(fileFiltersMap, out::writeLong, filters -> out.writeCollection(filters, out::writeFilter));
+        out.writeMap(inferePeptides, out::writeLong, out::writeBoolean);
+        out.writeMap(fileFDRData, out::writeLong, out::writeFDRData);
+        out.writeMap(fileFDRCalculated, out::writeLong, out::writeBoolean);
+        out.writeBoolean(considerModifications);
+    }
+
+
     /**
      * Getter for the files used in the PIA intermediate file, including the
      * pseudo-overview-file.<br/>
@@ -1,5 +1,6 @@
 package de.mpc.pia.modeller;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -27,6 +28,8 @@ import de.mpc.pia.modeller.score.FDRData;
 import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.modeller.score.comparator.RankCalculator;
+import de.mpc.pia.modeller.snapshot.SnapshotInput;
+import de.mpc.pia.modeller.snapshot.SnapshotOutput;
 
 
 /**
@@ -121,6 +124,73 @@ public class ProteinModeller  implements Serializable {
     }
 
 
+    /**
+     * Creates the modeller from the state written into a snapshot by
+     * {@link #writeSnapshot(SnapshotOutput)}.
+     *
+     * @param psmModeller the already read {@link PSMModeller}
+     * @param peptideModeller the already read {@link PeptideModeller}
+     * @param groups
+     * @param in
+     * @throws IOException
+     */
+    public ProteinModeller(PSMModeller psmModeller, PeptideModeller peptideModeller, Map<Long, Group> groups,
+            SnapshotInput in) throws IOException {
+        this.psmModeller = psmModeller;
+        this.peptideModeller = peptideModeller;
+        this.intermediateGroups = groups;
+
+        in.readReportProteinTable();
+        reportProteins = in.readList(in::readReportProtein);
+        reportProteinsMap = in.readMap(in::readLong, in::readReportProtein);
+
+        appliedProteinInference = in.readProteinInference();
+        if (in.readBoolean()) {
+            appliedScoringMethod = (appliedProteinInference != null) ? appliedProteinInference.getScoring() : null;
+        } else {
+            appliedScoringMethod = in.readScoring();
+        }
+
+        fdrData = in.readFDRData();
+        inferenceFilters = in.readList(in::readFilter);
+        reportFilters = in.readList(in::readFilter);
+    }
+
+
+    /**
+     * Writes the state of this modeller into the snapshot, the
+     * {@link ReportProtein}s are written into the table of proteins.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeSnapshot(SnapshotOutput out) throws IOException {
+        List<ReportProtein> tableProteins = new ArrayList<>();
+        if (reportProteins != null) {
+            tableProteins.addAll(reportProteins);
+        }
+        if (reportProteinsMap != null) {
+            tableProteins.addAll(reportProteinsMap.values());
+        }
+        out.writeReportProteinTable(tableProteins);
+        out.writeCollection(reportProteins, out::writeReportProtein);
+        out.writeMap(reportProteinsMap, out::writeLong, out::writeReportProtein);
+
+        out.writeProteinInference(appliedProteinInference);
+        // the applied scoring is usually the one of the inference
+        boolean inferenceScoring = (appliedProteinInference != null) ?
+                (appliedScoringMethod == appliedProteinInference.getScoring()) : (appliedScoringMethod == null);
+        out.writeBoolean(inferenceScoring);
+        if (!inferenceScoring) {
+            out.writeScoring(appliedScoringMethod);
+        }
+
+        out.writeFDRData(fdrData);
+        out.writeCollection(inferenceFilters, out::writeFilter);
+        out.writeCollection(reportFilters, out::writeFilter);
+    }
+
+
     /**
      * Returns whether modifications were considered while building the
      * peptides.
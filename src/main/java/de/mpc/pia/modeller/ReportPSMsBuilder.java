@@ -0,0 +1,668 @@
+package de.mpc.pia.modeller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.psm.PSMReportItem;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.tools.PIAConstants;
+import de.mpc.pia.tools.PIATools;
+
+
+/**
+ * Creates the {@link ReportPSM}s of the {@link PSMModeller} from the groups
+ * of the intermediate data, using several threads.
+ * <p>
+ * The groups are processed in chunks concurrently. Each PSM gets a key object
+ * for its PSM set and for its spectrum (used for the identification ranking),
+ * which is compared by the (packed) values instead of building the strings of
+ * {@link PeptideSpectrumMatch#getIdentificationKey(Map)} for each PSM. If the
+ * values of a PSM are not unambiguous in the string (i.e. they are null or
+ * contain the separator), the string key is used instead. The identification
+ * key strings are only built once per PSM set afterwards and sets with the
+ * same string are merged, so the result is the same as using the strings
+ * directly. The spectra are collected in concurrent maps per file and ranked
+ * concurrently, the PSMs of the files and sets keep the order of the groups.
+ *
+ * @author julianu
+ *
+ */
+class ReportPSMsBuilder {
+
+    /** logger for this class */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** the separator of the values in the string keys */
+    private static final char KEY_SEPARATOR = ':';
+
+    /** the number of chunks per thread, to balance groups of different sizes */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+
+    /** the settings for the PSM sets */
+    private final Map<String, Boolean> psmSetSettings;
+
+    /** the used settings of the PSM sets */
+    private final Set<IdentificationKeySettings> usedSettings;
+
+    /** number of used threads */
+    private final int nrThreads;
+
+
+    /** maps from the spectrum ID to the report PSM */
+    private Map<Long, ReportPSM> spectraPSMs;
+
+    /** maps from the file ID to the report PSMs */
+    private Map<Long, List<ReportPSM>> fileReportPSMs;
+
+    /** maps from the identification key to the PSMs of the set */
+    private Map<String, List<ReportPSM>> psmSetsMap;
+
+    /** the short names of the scores per file, in the order of their first occurrence */
+    private Map<Long, Set<String>> fileScoreShortNames;
+
+    /** the first occurring score model of each score short name */
+    private Map<String, ScoreModel> scoreModels;
+
+    /** the IDs of the files with decoys from the search engine */
+    private Set<Long> filesWithInternalDecoys;
+
+    /** per file collectors of the PSMs of each spectrum, used for the identification ranking */
+    private Map<Long, Map<Object, List<ReportPSM>>> fileSpectraPSMs;
+
+
+    /**
+     * Creates the builder for the given PSM set settings.
+     *
+     * @param psmSetSettings
+     * @param nrThreads number of threads, 0 for all available processors
+     */
+    public ReportPSMsBuilder(Map<String, Boolean> psmSetSettings, int nrThreads) {
+        this.psmSetSettings = psmSetSettings;
+        this.usedSettings = new HashSet<>();
+        psmSetSettings.entrySet().stream()
+                .filter(Map.Entry::getValue)
+                .map(setting -> IdentificationKeySettings.getByName(setting.getKey()))
+                .filter(Objects::nonNull)
+                .forEach(usedSettings::add);
+
+        this.nrThreads = (nrThreads > 0) ? nrThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+
+    /**
+     * Creates the report PSMs of all PSMs in the given groups.
+     *
+     * @param groups
+     * @param psmsPerFile the expected number of PSMs per file
+     */
+    public void buildReportPSMs(Collection<Group> groups, int psmsPerFile) {
+        spectraPSMs = new HashMap<>();
+        fileReportPSMs = new HashMap<>();
+        fileScoreShortNames = new LinkedHashMap<>();
+        scoreModels = new LinkedHashMap<>();
+        filesWithInternalDecoys = new HashSet<>();
+        fileSpectraPSMs = new ConcurrentHashMap<>();
+
+        List<Group> groupList = new ArrayList<>(groups);
+        int chunkSize = Math.max(1, groupList.size() / (nrThreads * CHUNKS_PER_THREAD) + 1);
+
+        List<Callable<ChunkResult>> tasks = new ArrayList<>();
+        for (int from = 0; from < groupList.size(); from += chunkSize) {
+            List<Group> chunk = groupList.subList(from, Math.min(from + chunkSize, groupList.size()));
+            tasks.add(() -> processGroups(chunk));
+        }
+
+        Map<Object, List<ReportPSM>> keyedPSMSets = new HashMap<>();
+        long nrPSMs = 0;
+        for (ChunkResult result : runTasks(tasks)) {
+            for (int idx = 0; idx < result.psms.size(); idx++) {
+                ReportPSM psm = result.psms.get(idx);
+                Long fileID = psm.getSpectrum().getFile().getID();
+
+                if (spectraPSMs.put(psm.getSpectrum().getID(), psm) != null) {
+                    // TODO: better warning
+                    LOGGER.warn("psm with ID '{}' already in map", psm.getSpectrum().getID());
+                }
+
+                fileReportPSMs.computeIfAbsent(fileID, k -> new ArrayList<>(psmsPerFile)).add(psm);
+                keyedPSMSets.computeIfAbsent(result.psmSetKeys.get(idx), k -> new ArrayList<>()).add(psm);
+
+                nrPSMs++;
+                if (nrPSMs % 100000 == 0) {
+                    LOGGER.info("{} PSMs done", nrPSMs);
+                }
+            }
+
+            for (Map.Entry<Long, Set<String>> fileScoresIt : result.fileScoreShortNames.entrySet()) {
+                fileScoreShortNames.computeIfAbsent(fileScoresIt.getKey(), k -> new LinkedHashSet<>())
+                        .addAll(fileScoresIt.getValue());
+            }
+            result.scoreModels.forEach(scoreModels::putIfAbsent);
+            filesWithInternalDecoys.addAll(result.filesWithInternalDecoys);
+        }
+
+        // the string keys are built once per PSM set, sets with the same string are merged
+        psmSetsMap = new HashMap<>(keyedPSMSets.size());
+        for (List<ReportPSM> psmSet : keyedPSMSets.values()) {
+            String psmKey = psmSet.get(0).getSpectrum().getIdentificationKey(psmSetSettings);
+            List<ReportPSM> setPSMs = psmSetsMap.putIfAbsent(psmKey, psmSet);
+            if (setPSMs != null) {
+                setPSMs.addAll(psmSet);
+            }
+        }
+    }
+
+
+    /**
+     * Creates the report PSMs and their keys of the given groups.
+     */
+    private ChunkResult processGroups(List<Group> groups) {
+        ChunkResult result = new ChunkResult();
+
+        for (Group group : groups) {
+            Map<String, Peptide> peptides = group.getPeptides();
+
+            // only groups with peptides can have PSMs
+            if ((peptides == null) || peptides.isEmpty()) {
+                continue;
+            }
+
+            for (Peptide peptide : peptides.values()) {
+                List<PeptideSpectrumMatch> spectra = peptide.getSpectra();
+                if (spectra == null) {
+                    continue;
+                }
+
+                for (PeptideSpectrumMatch spec : spectra) {
+                    ReportPSM psm = new ReportPSM(spec.getID(), spec);
+                    Long fileID = spec.getFile().getID();
+
+                    // only add accession, if it was found in the spectrum's file
+                    group.getAllAccessions().values().stream().filter(acc -> acc.foundInFile(fileID)).forEach(psm::addAccession);
+
+                    result.psms.add(psm);
+                    result.psmSetKeys.add(createPSMSetKey(spec));
+
+                    fileSpectraPSMs.computeIfAbsent(fileID, k -> new ConcurrentHashMap<>())
+                            .compute(createSpectrumKey(spec), (key, spectrumPSMs) -> {
+                                List<ReportPSM> psms = (spectrumPSMs != null) ? spectrumPSMs : new ArrayList<>(4);
+                                psms.add(psm);
+                                return psms;
+                            });
+
+                    Set<String> scoreShortNames = result.fileScoreShortNames.computeIfAbsent(fileID, k -> new LinkedHashSet<>());
+                    for (ScoreModel score : psm.getScores()) {
+                        if (scoreShortNames.add(score.getShortName())) {
+                            result.scoreModels.putIfAbsent(score.getShortName(), score);
+                        }
+                    }
+
+                    if ((spec.getIsDecoy() != null) && spec.getIsDecoy()) {
+                        result.filesWithInternalDecoys.add(fileID);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Creates the key of the PSM set for the given PSM. This is either the
+     * {@link PSMSetKey} or, if the values are ambiguous in the string, the
+     * identification key string.
+     */
+    private Object createPSMSetKey(PeptideSpectrumMatch spec) {
+        String sequence = null;
+        String modifications = null;
+        String sourceID = null;
+        String spectrumTitle = null;
+        int charge = 0;
+        int retentionTime = 0;
+        long massToCharge = 0;
+        long fileID = 0;
+
+        boolean unambiguous = true;
+        for (IdentificationKeySettings setting : usedSettings) {
+            switch (setting) {
+            case CHARGE:
+                charge = spec.getCharge();
+                break;
+
+            case FILE_ID:
+                fileID = spec.getFile().getID();
+                break;
+
+            case MASSTOCHARGE:
+                massToCharge = Double.doubleToLongBits(
+                        PIATools.round(spec.getMassToCharge(), PIAConstants.MASS_TO_CHARGE_PRECISION));
+                break;
+
+            case MODIFICATIONS:
+                modifications = spec.getModificationString();
+                unambiguous &= isUnambiguousValue(modifications);
+                break;
+
+            case RETENTION_TIME:
+                if (spec.getRetentionTime() != null) {
+                    retentionTime = (int) PIATools.round(spec.getRetentionTime(), PIAConstants.RETENTION_TIME_PRECISION);
+                } else {
+                    unambiguous = false;
+                }
+                break;
+
+            case SEQUENCE:
+                sequence = spec.getSequence();
+                unambiguous &= isUnambiguousValue(sequence);
+                break;
+
+            case SOURCE_ID:
+                sourceID = spec.getSourceID();
+                unambiguous &= isUnambiguousValue(sourceID);
+                break;
+
+            case SPECTRUM_TITLE:
+                spectrumTitle = spec.getSpectrumTitle();
+                unambiguous &= isUnambiguousValue(spectrumTitle);
+                break;
+
+            default:
+                break;
+            }
+        }
+
+        if (unambiguous) {
+            return new PSMSetKey(((long) charge << 32) | (retentionTime & 0xffffffffL), massToCharge, fileID,
+                    sequence, modifications, sourceID, spectrumTitle);
+        } else {
+            return spec.getIdentificationKey(psmSetSettings);
+        }
+    }
+
+
+    /**
+     * Creates the key of the spectrum of the given PSM, which groups the PSMs
+     * for the identification ranking. This is either the {@link SpectrumKey}
+     * or, if the values are ambiguous in the string, the string created by
+     * {@link #createPSMKeyForScoreRanking(PeptideSpectrumMatch)}.
+     */
+    private static Object createSpectrumKey(PeptideSpectrumMatch spec) {
+        String sourceID = String.valueOf(spec.getSourceID());
+        String spectrumTitle = String.valueOf(spec.getSpectrumTitle());
+
+        if ((sourceID.indexOf(KEY_SEPARATOR) < 0) && (spectrumTitle.indexOf(KEY_SEPARATOR) < 0)) {
+            long massToCharge = Double.doubleToLongBits(
+                    PIATools.round(spec.getMassToCharge(), PIAConstants.MASS_TO_CHARGE_PRECISION));
+            Double retentionTime = null;
+            if (spec.getRetentionTime() != null) {
+                retentionTime = PIATools.round(spec.getRetentionTime(), PIAConstants.RETENTION_TIME_PRECISION);
+            }
+
+            return new SpectrumKey(sourceID, spectrumTitle, massToCharge, retentionTime);
+        } else {
+            return createPSMKeyForScoreRanking(spec);
+        }
+    }
+
+
+    /**
+     * Returns a key by which the PSMs can be grouped for calculation of top
+     * rank identifications.
+     *
+     * @param spec
+     * @return
+     */
+    static String createPSMKeyForScoreRanking(PeptideSpectrumMatch spec) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(spec.getSourceID());
+        sb.append(KEY_SEPARATOR);
+        sb.append(spec.getSpectrumTitle());
+        sb.append(KEY_SEPARATOR);
+        sb.append(Double.toString(PIATools.round(spec.getMassToCharge(), PIAConstants.MASS_TO_CHARGE_PRECISION)));
+        sb.append(KEY_SEPARATOR);
+        if (spec.getRetentionTime() != null) {
+            sb.append(Double.toString(PIATools.round(spec.getRetentionTime(), PIAConstants.RETENTION_TIME_PRECISION)));
+        } else {
+            sb.append("null");
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Whether the value is written unambiguously into a key string, i.e. it is
+     * not null and contains no separator.
+     */
+    private static boolean isUnambiguousValue(String value) {
+        return (value != null) && (value.indexOf(KEY_SEPARATOR) < 0);
+    }
+
+
+    /**
+     * Sets the identification ranks of all PSMs for each score, given by the
+     * comparators. Ranks of scores without comparator are set to -1.
+     *
+     * @param scoreShortToComparator
+     */
+    public void rankPSMs(Map<String, Comparator<PSMReportItem>> scoreShortToComparator) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        // the string keys of the spectra are not needed: the values of a SpectrumKey contain no separator, so
+        // its string has exactly three separators and never equals the string key of an ambiguous spectrum
+        for (Map<Object, List<ReportPSM>> spectraPSMs : fileSpectraPSMs.values()) {
+            List<List<ReportPSM>> spectra = new ArrayList<>(spectraPSMs.values());
+
+            int chunkSize = Math.max(1, spectra.size() / (nrThreads * CHUNKS_PER_THREAD) + 1);
+            for (int from = 0; from < spectra.size(); from += chunkSize) {
+                List<List<ReportPSM>> chunk = spectra.subList(from, Math.min(from + chunkSize, spectra.size()));
+                tasks.add(() -> {
+                    chunk.forEach(spectrumPSMs -> rankSpectrumPSMs(spectrumPSMs, scoreShortToComparator));
+                    return null;
+                });
+            }
+        }
+
+        runTasks(tasks);
+        fileSpectraPSMs = null;
+    }
+
+
+    /**
+     * Sets the identification ranks of the PSMs of one spectrum.
+     */
+    private static void rankSpectrumPSMs(List<ReportPSM> spectrumPSMs,
+            Map<String, Comparator<PSMReportItem>> scoreShortToComparator) {
+        Map<String, List<ReportPSM>> scoreshortsToPSMs = new HashMap<>();
+        for (ReportPSM psm : spectrumPSMs) {
+            for (ScoreModel score : psm.getScores()) {
+                scoreshortsToPSMs.computeIfAbsent(score.getShortName(), k -> new ArrayList<>(spectrumPSMs.size()))
+                        .add(psm);
+            }
+        }
+
+        for (Map.Entry<String, List<ReportPSM>> scoreToPSMsIt : scoreshortsToPSMs.entrySet()) {
+            String scoreShort = scoreToPSMsIt.getKey();
+            Comparator<PSMReportItem> comp = scoreShortToComparator.get(scoreShort);
+
+            // only sort and rank, if we know how
+            if (comp != null) {
+                scoreToPSMsIt.getValue().sort(comp);
+
+                // give the ranks to the PSMs
+                Double lastScore = null;
+                int rank = 0;
+                for (ReportPSM psm : scoreToPSMsIt.getValue()) {
+                    Double thisScore = psm.getScore(scoreShort);
+
+                    if (!thisScore.equals(lastScore)) {
+                        rank++;
+                    }
+
+                    psm.setIdentificationRank(scoreShort, rank);
+
+                    lastScore = thisScore;
+                }
+            } else {
+                // unrankable get all ranked as -1
+                for (ReportPSM psm : scoreToPSMsIt.getValue()) {
+                    psm.setIdentificationRank(scoreShort, -1);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Runs the tasks and returns their results in the order of the tasks. If
+     * only one thread is used, the tasks are run in the calling thread.
+     */
+    private <T> List<T> runTasks(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+
+        try {
+            if ((nrThreads < 2) || (tasks.size() < 2)) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+
+            AtomicInteger threadCount = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(nrThreads, tasks.size()), runnable -> {
+                        Thread thread = new Thread(runnable, "PIA-ReportPSMs-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+            try {
+                for (Future<T> future : executor.invokeAll(tasks)) {
+                    results.add(future.get());
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while creating the report PSMs", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Error while creating the report PSMs", e.getCause());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error while creating the report PSMs", e);
+        }
+
+        return results;
+    }
+
+
+    /**
+     * Maps from the spectrum ID to the report PSM.
+     *
+     * @return
+     */
+    public Map<Long, ReportPSM> getSpectraPSMs() {
+        return spectraPSMs;
+    }
+
+
+    /**
+     * Maps from the file ID to the report PSMs, in the order of the groups.
+     *
+     * @return
+     */
+    public Map<Long, List<ReportPSM>> getFileReportPSMs() {
+        return fileReportPSMs;
+    }
+
+
+    /**
+     * Maps from the identification key to the PSMs of the set.
+     *
+     * @return
+     */
+    public Map<String, List<ReportPSM>> getPSMSetsMap() {
+        return psmSetsMap;
+    }
+
+
+    /**
+     * The short names of the scores per file, in the order of their first
+     * occurrence.
+     *
+     * @return
+     */
+    public Map<Long, Set<String>> getFileScoreShortNames() {
+        return fileScoreShortNames;
+    }
+
+
+    /**
+     * The first occurring score model of each score short name, in the order
+     * of their first occurrence.
+     *
+     * @return
+     */
+    public Map<String, ScoreModel> getScoreModels() {
+        return scoreModels;
+    }
+
+
+    /**
+     * Whether the file has PSMs with decoy information from the search engine.
+     *
+     * @param fileID
+     * @return
+     */
+    public boolean hasInternalDecoys(Long fileID) {
+        return filesWithInternalDecoys.contains(fileID);
+    }
+
+
+    /**
+     * The result of a chunk of groups.
+     */
+    private static class ChunkResult {
+        /** the report PSMs in the order of the groups */
+        private final List<ReportPSM> psms = new ArrayList<>();
+
+        /** the PSM set keys of the PSMs */
+        private final List<Object> psmSetKeys = new ArrayList<>();
+
+        /** the short names of the scores per file */
+        private final Map<Long, Set<String>> fileScoreShortNames = new LinkedHashMap<>();
+
+        /** the first occurring score model of each short name */
+        private final Map<String, ScoreModel> scoreModels = new LinkedHashMap<>();
+
+        /** the IDs of the files with decoys from the search engine */
+        private final Set<Long> filesWithInternalDecoys = new HashSet<>();
+    }
+
+
+    /**
+     * The key of a PSM set, holding the values of the used
+     * {@link IdentificationKeySettings}. Charge and retention time are packed
+     * into one long, the m/z value is stored by its bits.
+     */
+    private static final class PSMSetKey {
+        private final long chargeAndRetentionTime;
+        private final long massToCharge;
+        private final long fileID;
+        private final String sequence;
+        private final String modifications;
+        private final String sourceID;
+        private final String spectrumTitle;
+        private final int hash;
+
+        private PSMSetKey(long chargeAndRetentionTime, long massToCharge, long fileID, String sequence,
+                String modifications, String sourceID, String spectrumTitle) {
+            this.chargeAndRetentionTime = chargeAndRetentionTime;
+            this.massToCharge = massToCharge;
+            this.fileID = fileID;
+            this.sequence = sequence;
+            this.modifications = modifications;
+            this.sourceID = sourceID;
+            this.spectrumTitle = spectrumTitle;
+            this.hash = Objects.hash(chargeAndRetentionTime, massToCharge, fileID, sequence, modifications,
+                    sourceID, spectrumTitle);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PSMSetKey)) {
+                return false;
+            }
+
+            PSMSetKey other = (PSMSetKey) obj;
+            return (hash == other.hash)
+                    && (chargeAndRetentionTime == other.chargeAndRetentionTime)
+                    && (massToCharge == other.massToCharge)
+                    && (fileID == other.fileID)
+                    && Objects.equals(sequence, other.sequence)
+                    && Objects.equals(modifications, other.modifications)
+                    && Objects.equals(sourceID, other.sourceID)
+                    && Objects.equals(spectrumTitle, other.spectrumTitle);
+        }
+    }
+
+
+    /**
+     * The key of a spectrum for the identification ranking.
+     */
+    private static final class SpectrumKey {
+        private final String sourceID;
+        private final String spectrumTitle;
+        private final long massToCharge;
+        private final Double retentionTime;
+        private final int hash;
+
+        private SpectrumKey(String sourceID, String spectrumTitle, long massToCharge, Double retentionTime) {
+            this.sourceID = sourceID;
+            this.spectrumTitle = spectrumTitle;
+            this.massToCharge = massToCharge;
+            this.retentionTime = retentionTime;
+            this.hash = Objects.hash(sourceID, spectrumTitle, massToCharge, retentionTime);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SpectrumKey)) {
+                return false;
+            }
+
+            SpectrumKey other = (SpectrumKey) obj;
+            return (hash == other.hash)
+                    && (massToCharge == other.massToCharge)
+                    && sourceID.equals(other.sourceID)
+                    && spectrumTitle.equals(other.spectrumTitle)
+                    && Objects.equals(retentionTime, other.retentionTime);
+        }
+    }
+}
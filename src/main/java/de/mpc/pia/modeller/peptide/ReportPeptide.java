@@ -21,6 +21,7 @@ import de.mpc.pia.modeller.report.filter.Filterable;
 import de.mpc.pia.modeller.score.FDRComputable;
 import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
 import de.mpc.pia.modeller.score.FDRScoreComputable;
+import de.mpc.pia.modeller.score.ScoreIDs;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.modeller.score.comparator.Rankable;
@@ -92,6 +93,9 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
     /** the FDR Score of the peptide */
     private ScoreModel fdrScore;
 
+    /** counts the changes of the PSMs, used to invalidate aggregates depending on them */
+    private transient int psmsChangeCount;
+
 
     /**
      * Basic constructor
@@ -202,9 +206,30 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      */
     public void addPSM(PSMReportItem psm) {
         psmList.add(psm);
+        invalidatePSMAggregates();
+    }
+
+
+    /**
+     * Invalidates the cached values, which depend on the PSMs.
+     */
+    private void invalidatePSMAggregates() {
         allSpectraKeySet = null;
         maximalSpectraIdentificationSettings = null;
         maximalNonRedundantSpectraIdentificationSettings = null;
+        psmsChangeCount++;
+    }
+
+
+    /**
+     * Returns the number of changes of the PSMs of this peptide. This only
+     * increases, so aggregates over the PSMs (e.g. of a protein) can be cached
+     * as long as it does not change.
+     *
+     * @return
+     */
+    public int getPSMsChangeCount() {
+        return psmsChangeCount;
     }
 
 
@@ -291,9 +316,7 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      * @return the removed PSM, or null if none is removed
      */
     public ReportPSMSet removeReportPSMSet(ReportPSMSet remSet, Map<String, Boolean> psmSetSettings) {
-        allSpectraKeySet = null;
-        maximalSpectraIdentificationSettings = null;
-        maximalNonRedundantSpectraIdentificationSettings = null;
+        invalidatePSMAggregates();
         Iterator<PSMReportItem> psmIter = psmList.iterator();
         String remIdKey = remSet.getIdentificationKey(psmSetSettings);
 
@@ -500,6 +523,40 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
     }
 
 
+    /**
+     * Returns the ScoreModel with the best score value of all the PSMs for the
+     * score given by its ID (see {@link ScoreIDs}).
+     *
+     * @param scoreID
+     * @return
+     */
+    public ScoreModel getBestScoreModel(int scoreID) {
+        ScoreModel bestScoreModel = null;
+        boolean checkSpectra = !nonScoringSpectraIDKeys.isEmpty();
+
+        // get the best of the scores out of the list
+        for (PSMReportItem psm : psmList) {
+            ScoreModel newScoreModel = null;
+
+            if ((psm instanceof ReportPSM) &&
+                    !nonScoringPSMIDs.contains(((ReportPSM)psm).getId()) &&
+                    !(checkSpectra && nonScoringSpectraIDKeys.contains(((ReportPSM)psm).getSpectrum().getSpectrumIdentificationKey(psm.getAvailableIdentificationKeySettings())))) {
+                newScoreModel = psm.getCompareScore(scoreID);
+            } else if (psm instanceof ReportPSMSet) {
+                newScoreModel =((ReportPSMSet)psm).getCompareScore(scoreID,
+                        nonScoringPSMIDs, nonScoringSpectraIDKeys);
+            }
+
+            if ((newScoreModel != null) &&
+                    ((bestScoreModel == null) || (newScoreModel.compareTo(bestScoreModel) < 0))) {
+                bestScoreModel = newScoreModel;
+            }
+        }
+        // no score found
+        return bestScoreModel;
+    }
+
+
     /**
      * Returns the score, with which the comparison will be performed.
      * For this, the ScoreModel given by the scoreShortName with the highest
@@ -511,6 +568,12 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
     }
 
 
+    @Override
+    public ScoreModel getCompareScore(int scoreID) {
+        return getBestScoreModel(scoreID);
+    }
+
+
     /**
      * Returns a List of all the {@link Modification}s occurring in the PSMs.
      *
@@ -559,12 +622,21 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      *
      */
     public List<String> getSpectraIdentificationKeys() {
-        if (allSpectraKeySet == null) {
-            allSpectraKeySet = new HashSet<>(
+        return new ArrayList<>(getSpectraKeySet());
+    }
+
+
+    /**
+     * Returns the cached set of the IDs of all the used spectra.
+     */
+    private Set<String> getSpectraKeySet() {
+        Set<String> keySet = allSpectraKeySet;
+        if (keySet == null) {
+            keySet = new HashSet<>(
                     getSpectraIdentificationKeys(getNotRedundantIdentificationKeySettings()));
+            allSpectraKeySet = keySet;
         }
-
-        return new ArrayList<>(allSpectraKeySet);
+        return keySet;
     }
 
 
@@ -645,7 +717,7 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      * Getter for the number of spectra (not only scoring, but all).
      */
     public Integer getNrSpectra() {
-        return getSpectraIdentificationKeys().size();
+        return getSpectraKeySet().size();
     }
 
 
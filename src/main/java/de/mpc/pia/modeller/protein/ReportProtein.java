@@ -21,6 +21,7 @@ import de.mpc.pia.modeller.psm.ReportPSM;
 import de.mpc.pia.modeller.psm.ReportPSMSet;
 import de.mpc.pia.modeller.report.filter.Filterable;
 import de.mpc.pia.modeller.score.FDRComputable;
+import de.mpc.pia.modeller.score.ScoreIDs;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
@@ -35,6 +36,9 @@ public class ReportProtein implements Rankable, Filterable, FDRComputable, Seria
 
     private static final long serialVersionUID = -8360479444137408349L;
 
+    /** the score ID of the protein score */
+    private static final int PROTEIN_SCORE_ID = ScoreIDs.getScoreID(ScoreModelEnum.PROTEIN_SCORE);
+
 
     /** identifier for the peptide, for internal use only */
     private Long id;
@@ -83,6 +87,14 @@ public class ReportProtein implements Rankable, Filterable, FDRComputable, Seria
     /** maps from the accession to the coverage, if null, it needs to be calculated*/
     private HashMap<String, Double> coverages;
 
+    /** the cached number of PSMs, null if it needs to be calculated */
+    private transient Integer nrPSMs;
+
+    /** the cached number of spectra, null if it needs to be calculated */
+    private transient Integer nrSpectra;
+
+    /** the sum of the peptides' PSM change counts, for which the cached numbers were calculated */
+    private transient long statisticsChangeCount;
 
 
     public ReportProtein(Long id) {
@@ -146,6 +158,16 @@ public class ReportProtein implements Rankable, Filterable, FDRComputable, Seria
     }
 
 
+    /**
+     * Sets the decoy state of the given accession of this protein.
+     */
+    public void setAccessionDecoyState(String accession, Boolean isDecoy) {
+        if (accMap.containsKey(accession)) {
+            accessionDecoyStateMap.put(accession, isDecoy);
+        }
+    }
+
+
     /**
      * Adds the given accession to the accessions map, if it is not yet in it.
      *
@@ -190,6 +212,7 @@ public class ReportProtein implements Rankable, Filterable, FDRComputable, Seria
             peptideMap.put(pep.getStringID(), pep);
 
             addPeptideToAllCoverages(pep);
+            invalidateStatistics();
         }
     }
 
@@ -277,14 +300,59 @@ public class ReportProtein implements Rankable, Filterable, FDRComputable, Seria
         peptideMap.clear();
         coverageMaps.clear();
         coverages.clear();
+        invalidateStatistics();
+    }
+
+
+    /**
+     * Invalidates the cached numbers of PSMs and spectra.
+     */
+    private void invalidateStatistics() {
+        nrPSMs = null;
+        nrSpectra = null;
     }
 
 
     /**
-     * Getter for the number of spectra.
+     * Invalidates the cached numbers of PSMs and spectra, if the PSMs of any
+     * peptide changed since their calculation. As the change counts of the
+     * peptides only increase, their sum changes with any change of the PSMs.
+     */
+    private void validateStatistics() {
+        long changeCount = 0;
+        for (ReportPeptide pep : peptideMap.values()) {
+            changeCount += pep.getPSMsChangeCount();
+        }
+
+        if (changeCount != statisticsChangeCount) {
+            invalidateStatistics();
+            statisticsChangeCount = changeCount;
+        }
+    }
+
+
+    /**
+     * Getter for the number of spectra. The number is cached, until the
+     * peptides or their PSMs change.
      * @return
      */
     public Integer getNrSpectra() {
+        validateStatistics();
+
+        Integer nrSpectraValue = nrSpectra;
+        if (nrSpectraValue == null) {
+            nrSpectraValue = calculateNrSpectra();
+            nrSpectra = nrSpectraValue;
+        }
+        return nrSpectraValue;
+    }
+
+
+    /**
+     * Calculates the number of spectra, by the identification keys with the
+     * settings available in all peptides.
+     */
+    private int calculateNrSpectra() {
         Set<String> spectraIdentificationKeys = new HashSet<>();
 
         Map<String, Boolean> maximalSpectraIdentificationSettings = new HashMap<>(5);
@@ -324,17 +392,23 @@ public class ReportProtein implements Rankable, Filterable, FDRComputable, Seria
 
 
     /**
-     * Getter for the number of PSMs.
+     * Getter for the number of PSMs. The number is cached, until the peptides
+     * or their PSMs change.
      * @return
      */
     public Integer getNrPSMs() {
-        int nrPSMs = 0;
+        validateStatistics();
 
-        for (ReportPeptide pep : peptideMap.values()) {
-            nrPSMs += pep.getNrPSMs();
+        Integer nrPSMsValue = nrPSMs;
+        if (nrPSMsValue == null) {
+            int psmCount = 0;
+            for (ReportPeptide pep : peptideMap.values()) {
+                psmCount += pep.getNrPSMs();
+            }
+            nrPSMsValue = psmCount;
+            nrPSMs = nrPSMsValue;
         }
-
-        return nrPSMs;
+        return nrPSMsValue;
     }
 
 
@@ -450,6 +524,22 @@ public class ReportProtein implements Rankable, Filterable, FDRComputable, Seria
     }
 
 
+    @Override
+    public ScoreModel getCompareScore(int scoreID) {
+        return (scoreID == PROTEIN_SCORE_ID) ? score : null;
+    }
+
+
+    @Override
+    public Double getScore(int scoreID) {
+        if (scoreID == PROTEIN_SCORE_ID) {
+            return score.getValue();
+        } else {
+            return Double.NaN;
+        }
+    }
+
+
     @Override
     public Long getRank() {
         return rank;
@@ -595,4 +685,13 @@ public class ReportProtein implements Rankable, Filterable, FDRComputable, Seria
     public boolean getIsDecoy() {
         return isDecoy;
     }
+
+
+    /**
+     * Setter for isDecoy
+     * @param isDecoy
+     */
+    public void setIsDecoy(boolean isDecoy) {
+        this.isDecoy = isDecoy;
+    }
 }
@@ -2,6 +2,8 @@ package de.mpc.pia.modeller.protein.inference;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -49,6 +51,9 @@ public abstract class AbstractProteinInference implements Serializable {
     /** the number of allowed threads (smaller 1 = all available)*/
     private int allowedThreads;
 
+    /** whether the running inference should be cancelled */
+    private transient volatile boolean cancelled;
+
     /** the logger for this class */
     private static final Logger LOGGER = LogManager.getLogger(AbstractProteinInference.class);
 
@@ -310,6 +315,67 @@ public abstract class AbstractProteinInference implements Serializable {
     }
 
 
+    /**
+     * Cancels the running inference. The inference stops after the currently
+     * processed tasks and returns an empty list of proteins.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+
+    /**
+     * Whether the running inference was cancelled.
+     *
+     * @return
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+
+    /**
+     * Resets the cancellation, should be called at the end of an inference.
+     * Resetting at the start would drop a cancellation made just before.
+     */
+    protected void resetCancellation() {
+        cancelled = false;
+    }
+
+
+    /**
+     * Processes the given tasks on the shared {@link InferenceEngine}, using
+     * at most the allowed number of threads.
+     *
+     * @param tasks
+     * @param processor processes a single task
+     * @param taskFinished called after each processed task, may be null
+     * @return true, if all tasks were processed, false if the inference was
+     * cancelled
+     */
+    protected <T> boolean executeTasks(List<T> tasks, Consumer<? super T> processor,
+            Runnable taskFinished) {
+        return InferenceEngine.getSharedEngine().execute(tasks, processor, allowedThreads,
+                this::isCancelled, taskFinished);
+    }
+
+
+    /**
+     * Processes the tasks 0 to nrTasks - 1 on the shared
+     * {@link InferenceEngine}, using at most the allowed number of threads.
+     *
+     * @param nrTasks
+     * @param processor processes the task with the given index
+     * @param taskFinished called after each processed task, may be null
+     * @return true, if all tasks were processed, false if the inference was
+     * cancelled
+     */
+    protected boolean executeTasks(int nrTasks, IntConsumer processor, Runnable taskFinished) {
+        return InferenceEngine.getSharedEngine().execute(nrTasks, processor, allowedThreads,
+                this::isCancelled, taskFinished);
+    }
+
+
     /**
      * This method creates a Map from the groups' IDs to the associated
      * {@link ReportPeptide}s, which can be build and satisfy the currently set
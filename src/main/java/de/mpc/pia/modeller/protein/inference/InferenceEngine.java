@@ -0,0 +1,251 @@
+package de.mpc.pia.modeller.protein.inference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Executes the tasks of the protein inferences, e.g. the trees of the
+ * {@link OccamsRazorInference}, on a pool of threads.
+ * <p>
+ * By default, all inferences share one engine ({@link #getSharedEngine()}),
+ * so the number of threads stays bounded, even if several modellers run in
+ * one JVM. The pool either consists of a fixed number of platform threads or
+ * of virtual threads, of which at most the given number process tasks
+ * concurrently.
+ * <p>
+ * Each call of {@link #execute(int, IntConsumer, int, BooleanSupplier, Runnable)}
+ * starts at most the given parallelism of runners in the pool, which take the
+ * next task until all tasks are processed. The cancellation is checked before
+ * each task, so a cancelled execution stops after the currently processed
+ * tasks.
+ *
+ * @author julianu
+ *
+ */
+public final class InferenceEngine {
+
+    /** the types of threads used by an engine */
+    public enum ThreadType {
+        /** a fixed pool of platform threads */
+        PLATFORM,
+        /** a virtual thread per runner */
+        VIRTUAL,
+    }
+
+
+    /** the engine shared by all inferences */
+    private static InferenceEngine sharedEngine = null;
+
+
+    /** the executor running the runners */
+    private final ExecutorService executor;
+
+    /** the maximal number of concurrently processed tasks */
+    private final int nrThreads;
+
+    /** the type of the used threads */
+    private final ThreadType threadType;
+
+    /** bounds the concurrently processed tasks for virtual threads, null for platform threads */
+    private final Semaphore taskPermits;
+
+
+    /** logger for this class */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+
+    /**
+     * Creates an engine with the given number and type of threads.
+     *
+     * @param nrThreads the maximal number of concurrently processed tasks,
+     * smaller 1 means the number of available processors
+     * @param threadType the type of the threads
+     */
+    public InferenceEngine(int nrThreads, ThreadType threadType) {
+        this.nrThreads = (nrThreads < 1) ? Runtime.getRuntime().availableProcessors() : nrThreads;
+        this.threadType = threadType;
+
+        if (threadType == ThreadType.VIRTUAL) {
+            this.executor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("PIA-Inference-", 1).factory());
+            this.taskPermits = new Semaphore(this.nrThreads);
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(this.nrThreads, runnable -> {
+                        Thread thread = new Thread(runnable, "PIA-Inference-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            this.taskPermits = null;
+        }
+    }
+
+
+    /**
+     * Returns the engine shared by all inferences. If none was set, an engine
+     * with platform threads for all available processors is created.
+     *
+     * @return
+     */
+    public static synchronized InferenceEngine getSharedEngine() {
+        if (sharedEngine == null) {
+            sharedEngine = new InferenceEngine(0, ThreadType.PLATFORM);
+        }
+        return sharedEngine;
+    }
+
+
+    /**
+     * Sets the engine shared by all inferences, null resets it to the default
+     * engine. Running inferences finish on the previously shared engine, which
+     * is not shut down here: shutting it down is left to the one who created
+     * it, once no inference uses it anymore.
+     *
+     * @param engine
+     */
+    public static synchronized void setSharedEngine(InferenceEngine engine) {
+        sharedEngine = engine;
+    }
+
+
+    /**
+     * The maximal number of concurrently processed tasks.
+     *
+     * @return
+     */
+    public int getNrThreads() {
+        return nrThreads;
+    }
+
+
+    public ThreadType getThreadType() {
+        return threadType;
+    }
+
+
+    /**
+     * Processes the given tasks in parallel.
+     *
+     * @param tasks
+     * @param processor processes a single task
+     * @param parallelism the maximal number of concurrently processed tasks of
+     * this execution, smaller 1 means the number of threads of the engine
+     * @param cancelled whether the execution is cancelled
+     * @param taskFinished called after each processed task, may be null
+     * @return true, if all tasks were processed, false if the execution was
+     * cancelled or interrupted
+     */
+    public <T> boolean execute(List<T> tasks, Consumer<? super T> processor, int parallelism,
+            BooleanSupplier cancelled, Runnable taskFinished) {
+        return execute(tasks.size(), idx -> processor.accept(tasks.get(idx)), parallelism,
+                cancelled, taskFinished);
+    }
+
+
+    /**
+     * Processes the tasks 0 to nrTasks - 1 in parallel.
+     *
+     * @param nrTasks the number of tasks
+     * @param processor processes the task with the given index
+     * @param parallelism the maximal number of concurrently processed tasks of
+     * this execution, smaller 1 means the number of threads of the engine
+     * @param cancelled whether the execution is cancelled
+     * @param taskFinished called after each processed task, may be null
+     * @return true, if all tasks were processed, false if the execution was
+     * cancelled or interrupted
+     */
+    public boolean execute(int nrTasks, IntConsumer processor, int parallelism,
+            BooleanSupplier cancelled, Runnable taskFinished) {
+        int nrRunners = Math.min(nrTasks, ((parallelism < 1) || (parallelism > nrThreads)) ? nrThreads : parallelism);
+
+        AtomicInteger nextTask = new AtomicInteger();
+        AtomicInteger nrProcessed = new AtomicInteger();
+        Runnable runner = () -> {
+            int idx;
+            while (!cancelled.getAsBoolean() && !Thread.currentThread().isInterrupted()
+                    && ((idx = nextTask.getAndIncrement()) < nrTasks)) {
+                if (!processTask(idx, processor)) {
+                    break;
+                }
+                nrProcessed.incrementAndGet();
+                if (taskFinished != null) {
+                    taskFinished.run();
+                }
+            }
+        };
+
+        List<Future<?>> runners = new ArrayList<>(nrRunners);
+        try {
+            for (int i = 0; i < nrRunners; i++) {
+                runners.add(executor.submit(runner));
+            }
+            for (Future<?> future : runners) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("inference execution got interrupted", e);
+            runners.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            runners.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("inference task failed", cause);
+        }
+
+        return nrProcessed.get() == nrTasks;
+    }
+
+
+    /**
+     * Processes the task with the given index, waiting for a permit when
+     * virtual threads are used.
+     *
+     * @return false, if the runner got interrupted while waiting
+     */
+    private boolean processTask(int idx, IntConsumer processor) {
+        if (taskPermits == null) {
+            processor.accept(idx);
+            return true;
+        }
+
+        try {
+            taskPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            processor.accept(idx);
+        } finally {
+            taskPermits.release();
+        }
+        return true;
+    }
+
+
+    /**
+     * Shuts the engine down, running executions are finished.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -2,10 +2,11 @@ package de.mpc.pia.modeller.protein.inference;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -45,15 +46,14 @@ public class OccamsRazorInference extends AbstractProteinInference {
     /** the machine readable name of the filter */
     protected static final String SHORT_NAME= "inference_occams_razor";
 
-    /** the progress of the inference */
-    private Double progress;
+    /** the number of trees of the running inference */
+    private transient volatile int nrTrees;
 
+    /** the number of processed trees of the running inference */
+    private transient volatile AtomicInteger nrProcessedTrees;
 
-    /** this iterator iterates over the mapping from the tree ID to its groups*/
-    private transient Iterator<Map.Entry<Long,Map<Long,Group>>> treeGroupsIterator = null;
-
-    /** this list holds the reported proteins */
-    private List<ReportProtein> reportProteins;
+    /** whether the inference is done */
+    private transient volatile boolean inferenceDone;
 
     /** the logger for this class */
     private static final Logger LOGGER = Logger.getLogger(OccamsRazorInference.class);
@@ -111,7 +111,9 @@ public class OccamsRazorInference extends AbstractProteinInference {
             boolean considerModifications,
             Map<String, Boolean> psmSetSettings,
             Collection<ReportPeptide> reportPeptides) {
-        progress = 0.0;
+        inferenceDone = false;
+        nrProcessedTrees = new AtomicInteger();
+        nrTrees = 0;
         LOGGER.info(NAME + " calculateInference started...");
         LOGGER.info("scoring: " + getScoring().getName() + " with " +
                 getScoring().getScoreSetting().getValue() + ", " +
@@ -127,81 +129,36 @@ public class OccamsRazorInference extends AbstractProteinInference {
 
             treeGroups.put(groupIt.getKey(), groupIt.getValue());
         }
-        treeGroupsIterator = treeGroupMap.entrySet().iterator();
-        LOGGER.info("PIA trees sorted, " + treeGroupMap.size() + " trees");
+        List<Map<Long, Group>> trees = new ArrayList<>(treeGroupMap.values());
+        nrTrees = trees.size();
+        LOGGER.info("PIA trees sorted, " + nrTrees + " trees");
 
         // sort the peptides
         Map<String, ReportPeptide> reportPeptidesMap = sortPeptidesInMap(reportPeptides);
 
-        // initialize the reported list
-        reportProteins = new ArrayList<>();
-
-        // the number of threads used for the inference
-        int nrThreads = getAllowedThreads();
-        if (nrThreads < 1) {
-            nrThreads = Runtime.getRuntime().availableProcessors();
-        }
-        LOGGER.debug("used threads: " + nrThreads);
-
-        List<OccamsRazorWorkerThread> threads =
-                new ArrayList<>(nrThreads);
-
-        // initialize and start  the worker threads
-        threads.clear();
-        for (int i=0; i < nrThreads; i++) {
-            OccamsRazorWorkerThread workerThread =
-                    new OccamsRazorWorkerThread(i+1,
-                            this,
-                            getFilters(),
-                            reportPSMSetMap,
-                            considerModifications,
-                            psmSetSettings,
-                            reportPeptidesMap);
-            threads.add(workerThread);
-            workerThread.start();
+        OccamsRazorWorker worker = new OccamsRazorWorker(this, getFilters(), reportPSMSetMap,
+                considerModifications, psmSetSettings, reportPeptidesMap);
+
+        // each tree is one task, the proteins are collected in the order of the trees
+        List<List<ReportProtein>> treeProteins = new ArrayList<>(Collections.nCopies(nrTrees, null));
+        boolean completed = executeTasks(nrTrees,
+                treeIdx -> treeProteins.set(treeIdx, worker.processTree(trees.get(treeIdx))),
+                nrProcessedTrees::incrementAndGet);
+        resetCancellation();
+
+        List<ReportProtein> reportProteins = new ArrayList<>();
+        if (completed) {
+            treeProteins.forEach(reportProteins::addAll);
+            LOGGER.info(NAME + " calculateInference done, " + reportProteins.size() + " groups inferred");
+        } else {
+            LOGGER.info(NAME + " calculateInference cancelled");
         }
 
-        // wait for the threads to finish
-        for (OccamsRazorWorkerThread workerThread : threads) {
-            try {
-                workerThread.join();
-            } catch (InterruptedException e) {
-                LOGGER.error("thread got interrupted!", e);
-                Thread.currentThread().interrupt();
-            }
-        }
-
-        progress = 100.0;
-        LOGGER.info(NAME + " calculateInference done, " + reportProteins.size() + " groups inferred");
+        inferenceDone = true;
         return reportProteins;
     }
 
 
-    /**
-     * Returns the next tree in the map or null, if no more tree is available.
-     *
-     * @return
-     */
-    public synchronized Map.Entry<Long, Map<Long, Group>> getNextTree() {
-        if ((treeGroupsIterator != null)
-                && treeGroupsIterator.hasNext()) {
-            return treeGroupsIterator.next();
-        }
-
-        return null;
-    }
-
-
-    /**
-     * Adds the newProteins to the list of reported {@link ReportProtein}s.
-     *
-     * @param newProteins
-     */
-    public synchronized void addToReports(List<ReportProtein> newProteins) {
-        reportProteins.addAll(newProteins);
-    }
-
-
     @Override
     public String getName() {
         return NAME;
@@ -216,6 +173,11 @@ public class OccamsRazorInference extends AbstractProteinInference {
 
     @Override
     public Long getProgressValue() {
-        return progress.longValue();
+        if (inferenceDone) {
+            return 100L;
+        } else if ((nrProcessedTrees == null) || (nrTrees == 0)) {
+            return 0L;
+        }
+        return 100L * nrProcessedTrees.get() / nrTrees;
     }
 }
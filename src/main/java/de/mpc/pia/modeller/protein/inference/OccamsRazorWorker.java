@@ -0,0 +1,490 @@
+package de.mpc.pia.modeller.protein.inference;
+
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.report.filter.AbstractFilter;
+import de.mpc.pia.modeller.report.filter.FilterFactory;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+
+
+/**
+ * Processes single trees of groups for the {@link OccamsRazorInference}. The
+ * worker holds no state of a tree, so one worker is used by all threads of an
+ * inference.
+ *
+ * @author julianu
+ *
+ */
+class OccamsRazorWorker {
+
+    /** the calling inference */
+    private final OccamsRazorInference parent;
+
+    /** the applied inference filters */
+    private final List<AbstractFilter> filters;
+
+    /** maps of the ReportPSMSets (build by the PSM Viewer) */
+    private final Map<String, ReportPSMSet> reportPSMSetMap;
+
+    /** whether modifications are considered while inferring the peptides */
+    private final boolean considerModifications;
+
+    /** settings for PSMSet creation */
+    private final Map<String, Boolean> psmSetSettings;
+
+    /** the inferred peptides, may contain peptide level scores and FDR values */
+    private final Map<String, ReportPeptide> inferredReportPeptides;
+
+    /** logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(OccamsRazorWorker.class);
+
+
+    public OccamsRazorWorker(OccamsRazorInference parent,
+            List<AbstractFilter> filters,
+            Map<String, ReportPSMSet> reportPSMSetMap,
+            boolean considerModifications,
+            Map<String, Boolean> psmSetSettings,
+            Map<String, ReportPeptide> reportPeptidesMap) {
+        this.parent = parent;
+        this.filters = filters;
+        this.reportPSMSetMap = reportPSMSetMap;
+        this.considerModifications = considerModifications;
+        this.psmSetSettings = psmSetSettings;
+        this.inferredReportPeptides = reportPeptidesMap;
+    }
+
+
+    /**
+     * Infers the reported proteins of the given tree.
+     *
+     * @param groupMap the groups of the tree
+     * @return the reported proteins of the tree
+     */
+    public List<ReportProtein> processTree(Map<Long, Group> groupMap) {
+        // get the filtered report peptides mapping from the groups' IDs
+        Map<Long, List<ReportPeptide>> reportPeptidesMap =
+                parent.createFilteredReportPeptides(groupMap, reportPSMSetMap,
+                        considerModifications, psmSetSettings, inferredReportPeptides);
+
+        // the map of actually reported proteins
+        Map<Long, ReportProtein> proteins =
+                new HashMap<>(reportPeptidesMap.size());
+
+        // the dense IDs of the peptide keys
+        Object2IntOpenHashMap<String> peptideIDs = new Object2IntOpenHashMap<>();
+        peptideIDs.defaultReturnValue(-1);
+
+        // maps from the protein/group IDs to the sorted dense IDs of their peptides
+        Map<Long, int[]> proteinPeptidesMap = new HashMap<>();
+
+        // maps from the sorted peptide IDs to the groups having exactly these peptides
+        Map<IntArrayList, List<Long>> peptideSetGroups = new HashMap<>();
+
+        // maps from the groups ID to all the IDs, which have the same peptides
+        Map<Long, List<Long>> sameSetMap =
+                new HashMap<>(reportPeptidesMap.size());
+
+        // create for each group, which has at least one peptide and accession, a ReportProtein
+        for (Map.Entry<Long, Group> groupIt : groupMap.entrySet()) {
+            if ((groupIt.getValue().getAccessions().size() == 0) ||
+                    !parent.groupHasReportPeptides(
+                            groupIt.getValue(), reportPeptidesMap)) {
+                // this group has no peptides, skip it
+                continue;
+            }
+
+            ReportProtein protein = new ReportProtein(groupIt.getKey());
+
+            // add the accessions
+            groupIt.getValue().getAccessions().values().forEach(protein::addAccession);
+
+            // add the peptides
+            Set<Long> pepGroupIDs = new HashSet<>();
+            Set<String> peptideKeys = new HashSet<>();
+            pepGroupIDs.add(groupIt.getKey());
+            pepGroupIDs.addAll(groupIt.getValue().getAllPeptideChildren().keySet());
+            pepGroupIDs.stream().filter(reportPeptidesMap::containsKey).forEach(pepGroupID -> {
+                for (ReportPeptide peptide : reportPeptidesMap.get(pepGroupID)) {
+                    if (!peptideKeys.add(peptide.getStringID())) {
+                        LOGGER.warn("Peptide already in list of peptides '" + peptide.getStringID() + '\'');
+                    } else {
+                        protein.addPeptide(peptide);
+                    }
+                }
+            });
+
+            int[] proteinPeptides = internPeptideKeys(peptideKeys, peptideIDs);
+
+            // groups with the same peptides are found by hashing the sorted peptide IDs
+            List<Long> sameSet = peptideSetGroups.computeIfAbsent(
+                    IntArrayList.wrap(proteinPeptides), k -> new ArrayList<>(1));
+            sameSet.add(groupIt.getKey());
+            sameSetMap.put(groupIt.getKey(), sameSet);
+
+            proteinPeptidesMap.put(groupIt.getKey(), proteinPeptides);
+
+            proteins.put(protein.getID(), protein);
+        }
+
+        if (proteins.size() < 1) {
+            // no proteins could be created (e.g. due to filters?)
+            return Collections.emptyList();
+        }
+
+        // merge proteins with same peptides, the first one in the sameSetMap is kept
+        for (Map.Entry<Long, List<Long>> sameSetIt : sameSetMap.entrySet()) {
+            Long protID = sameSetIt.getKey();
+            ReportProtein protein = proteins.get(protID);
+            if (protein != null) {
+                // the protein is not yet deleted due to samesets
+                sameSetIt.getValue().stream().filter(sameID -> !Objects.equals(sameID, protID)).forEach(sameID -> {
+                    ReportProtein sameProtein = proteins.remove(sameID);
+                    if (sameProtein != null) {
+                        // add the accessions of sameProtein to protein
+                        sameProtein.getAccessions().forEach(protein::addAccession);
+                        proteinPeptidesMap.remove(sameID);
+                    }
+                });
+            }
+        }
+        // the sameSetMap is no longer needed
+
+        // check the proteins whether they satisfy the filters
+        Set<Long> removeProteins = new HashSet<>(proteins.size());
+        for (ReportProtein protein : proteins.values()) {
+            // score the proteins before filtering
+            Double protScore =
+                    parent.getScoring().calculateProteinScore(protein);
+            protein.setScore(protScore);
+
+            if (!FilterFactory.satisfiesFilterList(protein, 0L, filters)) {
+                removeProteins.add(protein.getID());
+            }
+        }
+        for (Long rID : removeProteins) {
+            proteins.remove(rID);
+            proteinPeptidesMap.remove(rID);
+        }
+
+        return selectReportProteins(proteins, proteinPeptidesMap, peptideIDs.size());
+    }
+
+
+    /**
+     * Returns the dense IDs of the given peptide keys as a sorted array, new
+     * keys get the next free ID.
+     *
+     * @param peptideKeys
+     * @param peptideIDs
+     * @return
+     */
+    private static int[] internPeptideKeys(Set<String> peptideKeys, Object2IntOpenHashMap<String> peptideIDs) {
+        int[] ids = new int[peptideKeys.size()];
+        int idx = 0;
+        for (String peptideKey : peptideKeys) {
+            int id = peptideIDs.getInt(peptideKey);
+            if (id < 0) {
+                id = peptideIDs.size();
+                peptideIDs.put(peptideKey, id);
+            }
+            ids[idx++] = id;
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+
+    /**
+     * Selects the proteins, which are reported after Occam's razor, and sets
+     * their subsets.
+     * <p>
+     * The proteins are numbered densely in the iteration order of the given
+     * map and an inverted index from the peptides to the proteins is used to
+     * find the sub-proteins and intersections. Afterwards, the proteins with
+     * intersections are reported greedily by the number of new peptides they
+     * explain.
+     *
+     * @param proteins the proteins after merging and filtering
+     * @param proteinPeptidesMap the sorted peptide IDs of the proteins
+     * @param nrPeptides the number of peptide IDs
+     * @return
+     */
+    private static List<ReportProtein> selectReportProteins(Map<Long, ReportProtein> proteins,
+            Map<Long, int[]> proteinPeptidesMap, int nrPeptides) {
+        int nrProteins = proteins.size();
+        ReportProtein[] denseProteins = new ReportProtein[nrProteins];
+        int[][] proteinPeptides = new int[nrProteins][];
+        Long2IntOpenHashMap denseIDs = new Long2IntOpenHashMap(nrProteins);
+
+        int protIdx = 0;
+        for (Map.Entry<Long, ReportProtein> proteinIt : proteins.entrySet()) {
+            denseProteins[protIdx] = proteinIt.getValue();
+            proteinPeptides[protIdx] = proteinPeptidesMap.get(proteinIt.getKey());
+            denseIDs.put(proteinIt.getKey().longValue(), protIdx);
+            protIdx++;
+        }
+        int[][] peptideProteins = createInvertedIndex(proteinPeptides, nrPeptides);
+
+        // this will be the list of reported proteins
+        List<ReportProtein> reportProteins = new ArrayList<>();
+
+        // the still unreported proteins
+        boolean[] unreported = new boolean[nrProteins];
+        Arrays.fill(unreported, true);
+        int nrUnreported = nrProteins;
+
+        // check proteins for sub-proteins and intersections. this cannot be
+        // done before, because all proteins have to be built beforehand
+        List<Set<Long>> subProteinSets = new ArrayList<>(nrProteins);
+        boolean[] isSubProtein = new boolean[nrProteins];
+        BitSet reportedPeptides = new BitSet(nrPeptides);
+        int[] intersectionSizes = new int[nrProteins];
+        int[] intersectingIdxs = new int[nrProteins];
+        for (protIdx = 0; protIdx < nrProteins; protIdx++) {
+            int[] peptides = proteinPeptides[protIdx];
+
+            // count the shared peptides with all other proteins
+            int nrIntersecting = 0;
+            for (int peptide : peptides) {
+                for (int otherIdx : peptideProteins[peptide]) {
+                    if ((otherIdx != protIdx) && (intersectionSizes[otherIdx]++ == 0)) {
+                        intersectingIdxs[nrIntersecting++] = otherIdx;
+                    }
+                }
+            }
+            // keep the order of the proteins map for the sets
+            Arrays.sort(intersectingIdxs, 0, nrIntersecting);
+
+            Set<Long> subProteins = new HashSet<>();
+            subProteinSets.add(subProteins);
+            boolean hasIntersections = false;
+            for (int i = 0; i < nrIntersecting; i++) {
+                int otherIdx = intersectingIdxs[i];
+                int intersectionSize = intersectionSizes[otherIdx];
+                intersectionSizes[otherIdx] = 0;
+
+                if (intersectionSize == proteinPeptides[otherIdx].length) {
+                    // the complete other protein is in this protein
+                    subProteins.add(denseProteins[otherIdx].getID());
+                } else if (intersectionSize == peptides.length) {
+                    // the complete protein is in the other protein
+                    isSubProtein[protIdx] = true;
+                } else {
+                    // the other protein intersects this protein somehow
+                    hasIntersections = true;
+                }
+            }
+
+            if (!hasIntersections && !isSubProtein[protIdx]) {
+                // this protein is no subProtein and has no intersections (but
+                // maybe subProteins) -> report this protein
+                reportProteins.add(denseProteins[protIdx]);
+                for (int peptide : peptides) {
+                    reportedPeptides.set(peptide);
+                }
+                if (unreported[protIdx]) {
+                    unreported[protIdx] = false;
+                    nrUnreported--;
+                }
+
+                // add the subproteins
+                for (Long subID : subProteins) {
+                    int subIdx = denseIDs.get(subID.longValue());
+                    denseProteins[protIdx].addToSubsets(denseProteins[subIdx]);
+                    if (unreported[subIdx]) {
+                        unreported[subIdx] = false;
+                        nrUnreported--;
+                    }
+                }
+            }
+        }
+
+        if (nrUnreported == 0) {
+            return reportProteins;
+        }
+
+        // report all the proteins ordered by which explains the most new
+        // peptides, ties are decided by the order of the unreported proteins map
+        int[] unreportedOrder = new int[nrProteins];
+        int order = 0;
+        for (Long protID : new HashMap<>(proteins).keySet()) {
+            unreportedOrder[denseIDs.get(protID.longValue())] = order++;
+        }
+
+        ProteinCoverageQueue queue = new ProteinCoverageQueue(unreportedOrder);
+        for (protIdx = 0; protIdx < nrProteins; protIdx++) {
+            if (unreported[protIdx] && !isSubProtein[protIdx]) {
+                // subproteins are reported indirectly
+                queue.add(protIdx, countUnreported(proteinPeptides[protIdx], reportedPeptides));
+            }
+        }
+
+        while ((nrUnreported > 0) && !queue.isEmpty()) {
+            int mostPepsIdx = queue.peek();
+            int nrMostPeps = queue.getCoverage(mostPepsIdx);
+            Set<Long> mostPepsIDs = collectSameCoverage(mostPepsIdx, queue, proteinPeptides,
+                    peptideProteins, reportedPeptides, unreportedOrder, denseProteins);
+
+            for (Long protID : mostPepsIDs) {
+                int idx = denseIDs.get(protID.longValue());
+                ReportProtein protein = denseProteins[idx];
+                if (nrMostPeps > 0) {
+                    // TODO: for now, the proteins which "explain" no more peptides are not reported (this happens sometimes)
+                    reportProteins.add(protein);
+                    for (int peptide : proteinPeptides[idx]) {
+                        if (!reportedPeptides.get(peptide)) {
+                            reportedPeptides.set(peptide);
+                            for (int otherIdx : peptideProteins[peptide]) {
+                                if (queue.contains(otherIdx)) {
+                                    queue.decreaseCoverage(otherIdx);
+                                }
+                            }
+                        }
+                    }
+                }
+                queue.remove(idx);
+                if (unreported[idx]) {
+                    unreported[idx] = false;
+                    nrUnreported--;
+                }
+
+                // add the subproteins
+                for (Long subID : subProteinSets.get(idx)) {
+                    int subIdx = denseIDs.get(subID.longValue());
+                    protein.addToSubsets(denseProteins[subIdx]);
+                    queue.remove(subIdx);
+                    if (unreported[subIdx]) {
+                        unreported[subIdx] = false;
+                        nrUnreported--;
+                    }
+                }
+            }
+        }
+
+        return reportProteins;
+    }
+
+
+    /**
+     * Creates the inverted index from the peptide IDs to the (ascending)
+     * indices of the proteins containing the peptide.
+     *
+     * @param proteinPeptides
+     * @param nrPeptides
+     * @return
+     */
+    private static int[][] createInvertedIndex(int[][] proteinPeptides, int nrPeptides) {
+        int[] nrProteins = new int[nrPeptides];
+        for (int[] peptides : proteinPeptides) {
+            for (int peptide : peptides) {
+                nrProteins[peptide]++;
+            }
+        }
+
+        int[][] peptideProteins = new int[nrPeptides][];
+        for (int peptide = 0; peptide < nrPeptides; peptide++) {
+            peptideProteins[peptide] = new int[nrProteins[peptide]];
+            nrProteins[peptide] = 0;
+        }
+        for (int protIdx = 0; protIdx < proteinPeptides.length; protIdx++) {
+            for (int peptide : proteinPeptides[protIdx]) {
+                peptideProteins[peptide][nrProteins[peptide]++] = protIdx;
+            }
+        }
+
+        return peptideProteins;
+    }
+
+
+    /**
+     * Counts the peptides, which are not yet reported.
+     */
+    private static int countUnreported(int[] peptides, BitSet reportedPeptides) {
+        int count = 0;
+        for (int peptide : peptides) {
+            if (!reportedPeptides.get(peptide)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Collects the IDs of the given protein and all queued proteins, which
+     * explain exactly the same unreported peptides. The IDs are added in the
+     * order of the unreported proteins.
+     */
+    private static Set<Long> collectSameCoverage(int protIdx, ProteinCoverageQueue queue,
+            int[][] proteinPeptides, int[][] peptideProteins, BitSet reportedPeptides,
+            int[] unreportedOrder, ReportProtein[] denseProteins) {
+        int coverage = queue.getCoverage(protIdx);
+        List<Integer> sameIdxs = new ArrayList<>();
+
+        if (coverage == 0) {
+            // all queued proteins explain no more peptides
+            for (int idx : queue.getProteins()) {
+                sameIdxs.add(idx);
+            }
+        } else {
+            // all candidates must contain the first unreported peptide
+            int firstPeptide = -1;
+            for (int peptide : proteinPeptides[protIdx]) {
+                if (!reportedPeptides.get(peptide)) {
+                    firstPeptide = peptide;
+                    break;
+                }
+            }
+
+            for (int otherIdx : peptideProteins[firstPeptide]) {
+                if (queue.contains(otherIdx) && (queue.getCoverage(otherIdx) == coverage)
+                        && haveSameUnreported(proteinPeptides[protIdx], proteinPeptides[otherIdx],
+                                reportedPeptides)) {
+                    sameIdxs.add(otherIdx);
+                }
+            }
+        }
+
+        sameIdxs.sort((idx1, idx2) -> Integer.compare(unreportedOrder[idx1], unreportedOrder[idx2]));
+        Set<Long> sameIDs = new HashSet<>();
+        for (int idx : sameIdxs) {
+            sameIDs.add(denseProteins[idx].getID());
+        }
+        return sameIDs;
+    }
+
+
+    /**
+     * Checks whether the sorted peptides have the same unreported peptides.
+     */
+    private static boolean haveSameUnreported(int[] peptides, int[] otherPeptides, BitSet reportedPeptides) {
+        int idx = 0;
+        int otherIdx = 0;
+        while (true) {
+            while ((idx < peptides.length) && reportedPeptides.get(peptides[idx])) {
+                idx++;
+            }
+            while ((otherIdx < otherPeptides.length) && reportedPeptides.get(otherPeptides[otherIdx])) {
+                otherIdx++;
+            }
+
+            if ((idx == peptides.length) || (otherIdx == otherPeptides.length)) {
+                return (idx == peptides.length) && (otherIdx == otherPeptides.length);
+            }
+            if (peptides[idx] != otherPeptides[otherIdx]) {
+                return false;
+            }
+            idx++;
+            otherIdx++;
+        }
+    }
+}
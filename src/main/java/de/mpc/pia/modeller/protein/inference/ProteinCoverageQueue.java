@@ -0,0 +1,200 @@
+package de.mpc.pia.modeller.protein.inference;
+
+import java.util.Arrays;
+
+
+/**
+ * An indexed priority queue of the proteins of the greedy step of the
+ * {@link OccamsRazorWorker}, ordered by the number of peptides each
+ * protein can still explain (its coverage).
+ * <p>
+ * The proteins are given by dense indices. The protein with the highest
+ * coverage is on top, ties are broken by the smaller given order, which
+ * mirrors the iteration order the proteins were formerly compared in. As the
+ * position of each protein in the heap is stored, the coverage of a protein
+ * can be decreased and a protein can be removed in logarithmic time.
+ *
+ * @author julianu
+ *
+ */
+class ProteinCoverageQueue {
+
+    /** the order of each protein for breaking ties */
+    private final int[] order;
+
+    /** the current coverage of each protein */
+    private final int[] coverages;
+
+    /** the position of each protein in the heap, -1 if not in the queue */
+    private final int[] positions;
+
+    /** the binary heap of the proteins */
+    private final int[] heap;
+
+    /** the number of proteins in the queue */
+    private int size;
+
+
+    /**
+     * Creates an empty queue for the proteins 0 to order.length - 1.
+     *
+     * @param order the order of each protein, used for breaking ties
+     */
+    public ProteinCoverageQueue(int[] order) {
+        this.order = order;
+        this.coverages = new int[order.length];
+        this.positions = new int[order.length];
+        this.heap = new int[order.length];
+        this.size = 0;
+
+        Arrays.fill(positions, -1);
+    }
+
+
+    /**
+     * Adds the protein with the given coverage to the queue.
+     *
+     * @param protein
+     * @param coverage
+     */
+    public void add(int protein, int coverage) {
+        coverages[protein] = coverage;
+        heap[size] = protein;
+        positions[protein] = size;
+        size++;
+        siftUp(size - 1);
+    }
+
+
+    /**
+     * Whether the queue contains the given protein.
+     *
+     * @param protein
+     * @return
+     */
+    public boolean contains(int protein) {
+        return positions[protein] >= 0;
+    }
+
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    /**
+     * Returns the protein with the highest coverage without removing it.
+     *
+     * @return
+     */
+    public int peek() {
+        return heap[0];
+    }
+
+
+    /**
+     * Returns the current coverage of the given protein.
+     *
+     * @param protein
+     * @return
+     */
+    public int getCoverage(int protein) {
+        return coverages[protein];
+    }
+
+
+    /**
+     * Returns the proteins currently in the queue, in no particular order.
+     *
+     * @return
+     */
+    public int[] getProteins() {
+        return Arrays.copyOf(heap, size);
+    }
+
+
+    /**
+     * Decreases the coverage of the given protein, which must be in the
+     * queue, by one.
+     *
+     * @param protein
+     */
+    public void decreaseCoverage(int protein) {
+        coverages[protein]--;
+        siftDown(positions[protein]);
+    }
+
+
+    /**
+     * Removes the given protein from the queue, if it is in it.
+     *
+     * @param protein
+     */
+    public void remove(int protein) {
+        int pos = positions[protein];
+        if (pos < 0) {
+            return;
+        }
+
+        size--;
+        positions[protein] = -1;
+        if (pos < size) {
+            int last = heap[size];
+            heap[pos] = last;
+            positions[last] = pos;
+            siftDown(pos);
+            siftUp(positions[last]);
+        }
+    }
+
+
+    /**
+     * Whether protein a is before protein b in the queue.
+     */
+    private boolean isBefore(int a, int b) {
+        if (coverages[a] != coverages[b]) {
+            return coverages[a] > coverages[b];
+        }
+        return order[a] < order[b];
+    }
+
+
+    private void siftUp(int pos) {
+        int protein = heap[pos];
+        while (pos > 0) {
+            int parentPos = (pos - 1) >>> 1;
+            int parent = heap[parentPos];
+            if (!isBefore(protein, parent)) {
+                break;
+            }
+            heap[pos] = parent;
+            positions[parent] = pos;
+            pos = parentPos;
+        }
+        heap[pos] = protein;
+        positions[protein] = pos;
+    }
+
+
+    private void siftDown(int pos) {
+        int protein = heap[pos];
+        int half = size >>> 1;
+        while (pos < half) {
+            int childPos = 2 * pos + 1;
+            int child = heap[childPos];
+            int rightPos = childPos + 1;
+            if ((rightPos < size) && isBefore(heap[rightPos], child)) {
+                childPos = rightPos;
+                child = heap[childPos];
+            }
+            if (!isBefore(child, protein)) {
+                break;
+            }
+            heap[pos] = child;
+            positions[child] = pos;
+            pos = childPos;
+        }
+        heap[pos] = protein;
+        positions[protein] = pos;
+    }
+}
@@ -33,7 +33,7 @@ public class ReportAllInference extends AbstractProteinInference {
     protected static final String SHORT_NAME = "inference_report_all";
 
     /** the progress of the inference */
-    private Double progress;
+    private volatile Double progress;
 
 
     /** the logger for this class */
@@ -98,30 +98,34 @@ public class ReportAllInference extends AbstractProteinInference {
         // maps from the groups' IDs to the groups' IDs with equal PSMs after filtering
         Map<Long, Set<Long>> sameSets = null;
 
-        // put every group with accessions into the map
-        // TODO: this COULD be parallelized for speedup, if it is too slow...
-        Double progressStep = 80.0 / groupMap.size();
-        for (Map.Entry<Long, Group> gIt : groupMap.entrySet()) {
+        // collect the peptides of every group with accessions in parallel
+        List<Map.Entry<Long, Group>> groupEntries = new ArrayList<>(groupMap.entrySet());
+        List<Set<String>> groupsPeptides = new ArrayList<>(Collections.nCopies(groupEntries.size(), null));
+        boolean completed = executeTasks(groupEntries.size(),
+                idx -> groupsPeptides.set(idx, collectGroupPeptides(groupEntries.get(idx).getValue(), reportPeptidesMap)),
+                null);
+        resetCancellation();
+        if (!completed) {
+            LOGGER.info("calculateInference cancelled");
+            progress = 100.0;
+            return new ArrayList<>();
+        }
+        progress = 70.0;
+
+        // put every group with accessions into the map, in the order of the groupMap
+        Double progressStep = 10.0 / groupMap.size();
+        for (int idx = 0; idx < groupEntries.size(); idx++) {
+            Set<String> allPeptidesSet = groupsPeptides.get(idx);
+            if (allPeptidesSet != null) {
+                Map.Entry<Long, Group> gIt = groupEntries.get(idx);
 
-            if ((gIt.getValue().getAccessions().size() > 0) &&
-                    groupHasReportPeptides(gIt.getValue(), reportPeptidesMap)) {
                 // report this group
                 reportGroupsIDs.add(gIt.getKey());
-
-                // get the peptides of this group / protein
-                Set<String> allPeptidesSet = new HashSet<>();
                 groupsAllPeptides.put(gIt.getKey(), allPeptidesSet);
 
-                if (reportPeptidesMap.containsKey(gIt.getKey())) {
-                    allPeptidesSet.addAll(reportPeptidesMap.get(gIt.getKey()).stream().map(ReportPeptide::getStringID).collect(Collectors.toList()));
-                }
-
-                gIt.getValue().getAllPeptideChildren().values().stream().filter(pepGroupIt -> reportPeptidesMap.containsKey(pepGroupIt.getID())).forEach(pepGroupIt -> allPeptidesSet.addAll(reportPeptidesMap.get(pepGroupIt.getID()).stream().map(ReportPeptide::getStringID).collect(Collectors.toList())));
-
                 // fill the treeMap
                 Set<Long> treeSet = treeMap.computeIfAbsent(gIt.getValue().getTreeID(), k -> new HashSet<>());
                 treeSet.add(gIt.getKey());
-
             }
 
             progress += progressStep;
@@ -209,6 +213,31 @@ public class ReportAllInference extends AbstractProteinInference {
     }
 
 
+    /**
+     * Collects the IDs of the peptides of the given group and its peptide
+     * children, if the group has accessions and report peptides.
+     *
+     * @param group
+     * @param reportPeptidesMap
+     * @return the peptides' IDs or null, if the group is not reported
+     */
+    private Set<String> collectGroupPeptides(Group group, Map<Long, List<ReportPeptide>> reportPeptidesMap) {
+        if (group.getAccessions().isEmpty() ||
+                !groupHasReportPeptides(group, reportPeptidesMap)) {
+            return null;
+        }
+
+        Set<String> allPeptidesSet = new HashSet<>();
+        if (reportPeptidesMap.containsKey(group.getID())) {
+            allPeptidesSet.addAll(reportPeptidesMap.get(group.getID()).stream().map(ReportPeptide::getStringID).collect(Collectors.toList()));
+        }
+
+        group.getAllPeptideChildren().values().stream().filter(pepGroupIt -> reportPeptidesMap.containsKey(pepGroupIt.getID())).forEach(pepGroupIt -> allPeptidesSet.addAll(reportPeptidesMap.get(pepGroupIt.getID()).stream().map(ReportPeptide::getStringID).collect(Collectors.toList())));
+
+        return allPeptidesSet;
+    }
+
+
     @Override
     public String getName() {
         return NAME;
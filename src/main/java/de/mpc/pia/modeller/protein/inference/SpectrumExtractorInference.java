@@ -9,7 +9,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -113,27 +112,24 @@ public class SpectrumExtractorInference extends AbstractProteinInference {
     /** the machine readable name of the filter */
     protected static final String SHORT_NAME = "inference_spectrum_extractor";
 
-    /** the list iterator used to give the reportProteins to the working threads */
-    private transient ListIterator<ReportProtein> proteinListIt = null;
-
     /** the number of all spectra */
-    private int nrSpectra;
+    private volatile int nrSpectra;
 
     /** the currently processed spectra */
-    private int nrUsedSpectra;
+    private volatile int nrUsedSpectra;
 
     /** the number of disjoint splits */
-    private int nrSplits;
+    private volatile int nrSplits;
 
     /** the number of finished splits */
-    private int nrFinishedSplits;
+    private volatile int nrFinishedSplits;
 
 
     /** the accessions' IDs, which may have changed by the spectra used during the last iteration */
     private Set<Long> changedAccessions;
 
     /** to return 101, when everything is done */
-    private boolean inferenceDone;
+    private volatile boolean inferenceDone;
 
     /** the logger for this class */
     private static final Logger LOGGER = Logger.getLogger(SpectrumExtractorInference.class);
@@ -196,6 +192,7 @@ public class SpectrumExtractorInference extends AbstractProteinInference {
         nrUsedSpectra = 0;
         nrFinishedSplits = 0;
         nrSplits = 1;
+        inferenceDone = false;
         LOGGER.info("calculateInference started...");
 
         StringBuilder filterSB = new StringBuilder();
@@ -254,94 +251,17 @@ public class SpectrumExtractorInference extends AbstractProteinInference {
 
         LOGGER.info("creating disjoint splits");
 
-        Long splitIDcounter = 0L;
-        Map<Long, Set<Long>> splitIdReportPSMid = new HashMap<>();
-        Map<Long, Set<Long>> splitIdAccessions = new HashMap<>();
-
-        Map<String, Long> psmIDsplitID = new HashMap<>();
-        Map<Long, Set<String>> splitIdSpectraID = new HashMap<>();
-
+        SpectrumSplitBuilder splitBuilder = new SpectrumSplitBuilder();
         for (Map.Entry<Long, ReportPSM> reportPSMIt : reportPSMMap.entrySet()) {
             String psmIdKey = reportPSMIt.getValue().getSpectrum().getSpectrumIdentificationKey(psmSetSettings);
-            Long splitID = psmIDsplitID.get(psmIdKey);
-
-            if (splitID != null) {
-                splitIdReportPSMid.get(splitID).add(reportPSMIt.getKey());
-            } else {
-                // find split with any accessions
-                Set<Long> mergeToReportPSMs = null;
-                Set<Long> mergeToAccessions = null;
-                Set<String> mergeToSplitIDs = null;
-
-                Iterator<Entry<Long, Set<Long>>> it = splitIdAccessions.entrySet().iterator();
-                while (it.hasNext()) {
-                    Map.Entry<Long, Set<Long>> splitIt = it.next();
-                    Set<Long> accessions = new HashSet<>(spectraAccessions.get(psmIdKey));
-
-                    if (accessions.removeAll(splitIdAccessions.get(splitIt.getKey()))) {
-                        // overlap in accessions
-                        if (splitID == null) {
-                            // any further split will be merged to this one
-                            splitID = splitIt.getKey();
-                            mergeToReportPSMs = splitIdReportPSMid.get(splitID);
-                            mergeToAccessions = splitIt.getValue();
-                            mergeToSplitIDs = splitIdSpectraID.get(splitID);
-                        } else {
-                            // need to merge
-                            mergeToReportPSMs.addAll(splitIdReportPSMid.get(splitIt.getKey()));
-                            splitIdReportPSMid.remove(splitIt.getKey());
-
-                            mergeToAccessions.addAll(splitIt.getValue());
-                            it.remove();
-
-                            // the psmIDs need to be re-linked
-                            Set<String> psmIDs = splitIdSpectraID.get(splitIt.getKey());
-                            for (String psmID : psmIDs) {
-                                psmIDsplitID.put(psmID, splitID);
-                            }
-
-                            mergeToSplitIDs.addAll(psmIDs);
-                            splitIdSpectraID.remove(splitIt.getKey());
-                        }
-                    }
-                }
-
-                // add the accessions and reportPSMid to the corresponding split or create new
-                if (splitID == null) {
-                    // a new split
-                    splitIDcounter++;
-                    splitID = splitIDcounter;
-                    mergeToReportPSMs = new HashSet<>();
-                    splitIdReportPSMid.put(splitID, mergeToReportPSMs);
-
-                    mergeToAccessions = new HashSet<>();
-                    splitIdAccessions.put(splitID, mergeToAccessions);
-
-                    mergeToSplitIDs = new HashSet<>();
-                    splitIdSpectraID.put(splitID, mergeToSplitIDs);
-                }
-
-
-                mergeToReportPSMs.add(reportPSMIt.getKey());
-                mergeToAccessions.addAll(spectraAccessions.get(psmIdKey));
-
-                psmIDsplitID.put(psmIdKey, splitID);
-                mergeToSplitIDs.add(psmIdKey);
-            }
+            splitBuilder.addPSM(reportPSMIt.getKey(), psmIdKey, spectraAccessions.get(psmIdKey));
         }
+        List<SpectrumSplitBuilder.Split> splits = splitBuilder.buildSplits();
 
-        nrSplits = splitIdAccessions.size();
+        nrSplits = splits.size();
 
-        LOGGER.debug("number of splits: " + nrSplits);
-
-        // get the number of threads used for the inference
-        int nrThreads = getAllowedThreads();
-        if (nrThreads < 1) {
-            nrThreads = Runtime.getRuntime().availableProcessors();
-        }
-        LOGGER.debug("used threads: " + nrThreads);
-
-        List<SpectrumExtractorWorkerThread> threads = new ArrayList<>(nrThreads);
+        LOGGER.info("number of splits: " + nrSplits + ", split sizes:"
+                + SpectrumSplitBuilder.formatSizeHistogram(SpectrumSplitBuilder.createSizeHistogram(splits)));
 
         // the proteins of all splits
         List<ReportProtein> completeReportProteinList = new ArrayList<>(groupMap.size());
@@ -349,7 +269,11 @@ public class SpectrumExtractorInference extends AbstractProteinInference {
         // the remaining group IDs, which were not yet processed
         Set<Long> leftGroupIDs = new HashSet<>(groupMap.keySet());
 
-        for (Map.Entry<Long, Set<Long>> splitIt : splitIdReportPSMid.entrySet()) {
+        for (SpectrumSplitBuilder.Split split : splits) {
+            if (isCancelled()) {
+                break;
+            }
+
             // maps from groupID / proteinID to the peptides, for rescoring / scoring
             Map<Long, Set<Peptide>> groupsPeptides =
                     new HashMap<>(groupMap.size());
@@ -358,7 +282,7 @@ public class SpectrumExtractorInference extends AbstractProteinInference {
             List<ReportProtein> proteinList =
                     new ArrayList<>(groupMap.size());
 
-            Set<Long> splitAccessions = splitIdAccessions.get(splitIt.getKey());
+            Set<Long> splitAccessions = split.getAccessionIDs();
 
             Iterator<Long> groupIt = leftGroupIDs.iterator();
             while (groupIt.hasNext()) {
@@ -399,8 +323,8 @@ public class SpectrumExtractorInference extends AbstractProteinInference {
                 groupIt.remove();
             }
 
-            Map<Long, ReportPSM> splitReportPSMMap = new HashMap<>(splitIt.getValue().size());
-            for (Long psmID : splitIt.getValue()) {
+            Map<Long, ReportPSM> splitReportPSMMap = new HashMap<>(split.getPSMIDs().size());
+            for (Long psmID : split.getPSMIDs()) {
                 splitReportPSMMap.put(psmID, reportPSMMap.get(psmID));
             }
 
@@ -415,37 +339,20 @@ public class SpectrumExtractorInference extends AbstractProteinInference {
             // reset the used spectra
             usedSpectra = new HashSet<>();
 
+            SpectrumExtractorWorker worker = new SpectrumExtractorWorker(getScoring(), getFilters(),
+                    groupsPeptides, reportPSMSetMap, splitReportPSMMap, peptidesSpectra,
+                    usedSpectra, scoreShort, considerModifications, psmSetSettings);
+
             changedAccessions = new HashSet<>();
             boolean iterate = true;
             while (iterate) {
                 // now the (remaining) proteins get rebuild (with usable spectra) and scored
-                proteinListIt = proteinList.listIterator();
-
-                // initialize and start  the worker threads
-                threads.clear();
-                for (int i=0; i < nrThreads; i++) {
-                    SpectrumExtractorWorkerThread workerThread =
-                            new SpectrumExtractorWorkerThread(i+1, this,
-                                    getScoring(), getFilters(), groupsPeptides,
-                                    reportPSMSetMap, splitReportPSMMap, peptidesSpectra,
-                                    usedSpectra, scoreShort, considerModifications,
-                                    psmSetSettings);
-                    threads.add(workerThread);
-                    workerThread.start();
-                }
-
-                // wait for the threads to finish
-                for (SpectrumExtractorWorkerThread workerThread : threads) {
-                    try {
-                        workerThread.join();
-                    } catch (InterruptedException e) {
-                        LOGGER.error("thread got interrupted!", e);
-                        Thread.currentThread().interrupt();
-                    }
+                if (!executeTasks(collectProteinsForRebuild(proteinList), worker::rebuildProtein, null)) {
+                    break;
                 }
 
                 // remove "empty" proteins
-                proteinListIt = proteinList.listIterator();
+                ListIterator<ReportProtein> proteinListIt = proteinList.listIterator();
                 while (proteinListIt.hasNext()) {
                     if (proteinListIt.next().getNrPeptides() < 1) {
                         proteinListIt.remove();
@@ -458,8 +365,6 @@ public class SpectrumExtractorInference extends AbstractProteinInference {
                 proteinList.sort(comparator);
 
                 // take the next protein from the list, that can be reported
-                proteinListIt = null;
-
                 Double reportScore = null;
                 changedAccessions.clear();
                 iterate = false;
@@ -686,52 +591,49 @@ public class SpectrumExtractorInference extends AbstractProteinInference {
             }
         }
 
-        proteinListIt = null;
         changedAccessions = null;
-        threads.clear();
+        inferenceDone = true;
+
+        boolean cancelled = isCancelled();
+        resetCancellation();
+        if (cancelled) {
+            LOGGER.info(NAME + " calculateInference cancelled");
+            return new ArrayList<>();
+        }
 
         LOGGER.info(NAME + " calculateInference done, " + completeReportProteinList.size() + " groups inferred");
-        inferenceDone = true;
         return completeReportProteinList;
     }
 
 
     /**
-     * Returns the next protein in the protein list.
+     * Collects the proteins of the protein list, which need to be (re)build.
+     * These are the not yet build proteins and the build proteins with an
+     * accession, which might have been changed in the last iteration.
      *
+     * @param proteinList
      * @return
      */
-    public synchronized ReportProtein getNextProteinForRebuild() {
-        synchronized (proteinListIt) {
-            if (proteinListIt != null) {
-
-                while (proteinListIt.hasNext()) {
-                    ReportProtein prot = proteinListIt.next();
-
-                    if (prot.getNrPeptides() > 0) {
-                        // protein is already build, check for possible changes in last iteration
-
-                        for (Accession acc : prot.getAccessions()) {
-                            if (changedAccessions.contains(acc.getID())) {
-                                // protein might have been changed, rebuild it
-                                return prot;
-                            }
-                        }
-                    } else {
-                        // protein is not yet build, build it
-                        return prot;
+    private List<ReportProtein> collectProteinsForRebuild(List<ReportProtein> proteinList) {
+        List<ReportProtein> rebuildProteins = new ArrayList<>(proteinList.size());
+
+        for (ReportProtein prot : proteinList) {
+            if (prot.getNrPeptides() > 0) {
+                // protein is already build, check for possible changes in last iteration
+                for (Accession acc : prot.getAccessions()) {
+                    if (changedAccessions.contains(acc.getID())) {
+                        // protein might have been changed, rebuild it
+                        rebuildProteins.add(prot);
+                        break;
                     }
-
-                    // the protein is not changed but build, no rebuild necessary
                 }
-
-                return null;
             } else {
-                // TODO: throw exception or something
-                LOGGER.error("The protein iterator is not yet initialized!");
-                return null;
+                // protein is not yet build, build it
+                rebuildProteins.add(prot);
             }
         }
+
+        return rebuildProteins;
     }
 
 
@@ -28,13 +28,15 @@ import de.mpc.pia.modeller.score.ScoreModelEnum;
 
 
 
-public class SpectrumExtractorWorkerThread extends Thread {
-
-    /** the ID of this worker thread */
-    private int id;
-
-    /** the caller of this thread */
-    private SpectrumExtractorInference parent;
+/**
+ * Rebuilds and rescores the proteins of one split for the
+ * {@link SpectrumExtractorInference}. The worker holds no state of a protein,
+ * so one worker is used by all threads of an iteration.
+ *
+ * @author julianu
+ *
+ */
+class SpectrumExtractorWorker {
 
     /** the used scoring */
     private AbstractScoring scoring;
@@ -68,14 +70,12 @@ public class SpectrumExtractorWorkerThread extends Thread {
 
 
     /** logger for this class */
-    private static final Logger LOGGER = Logger.getLogger(SpectrumExtractorWorkerThread.class);
+    private static final Logger LOGGER = Logger.getLogger(SpectrumExtractorWorker.class);
 
 
     /**
-     * Initializes the worker thread.
+     * Initializes the worker.
      *
-     * @param id the ID of the thread
-     * @param parent the caller of this thread
      * @param scoring the applied scoring
      * @param filters the applied inference filters
      * @param groupsPeptides maps from groupID/proteinID to the peptides
@@ -89,9 +89,7 @@ public class SpectrumExtractorWorkerThread extends Thread {
      * inferring the peptides
      * @param psmSetSettings settings for PSMSet creation
      */
-    public SpectrumExtractorWorkerThread(int id,
-            SpectrumExtractorInference parent,
-            AbstractScoring scoring,
+    public SpectrumExtractorWorker(AbstractScoring scoring,
             List<AbstractFilter> filters,
             Map<Long, Set<Peptide>> groupsPeptides,
             Map<String, ReportPSMSet> reportPSMSetMap,
@@ -101,8 +99,6 @@ public class SpectrumExtractorWorkerThread extends Thread {
             String scoreShort,
             boolean considerModifications,
             Map<String, Boolean> psmSetSettings) {
-        this.id = id;
-        this.parent = parent;
         this.scoring = scoring;
         this.filters = filters;
         this.groupsPeptides = groupsPeptides;
@@ -113,29 +109,15 @@ public class SpectrumExtractorWorkerThread extends Thread {
         this.scoreShort = scoreShort;
         this.considerModifications = considerModifications;
         this.psmSetSettings = psmSetSettings;
-
-        this.setName("ProteinExtractorWorker-" + this.id);
-    }
-
-
-    @Override
-    public void run() {
-        ReportProtein protein;
-
-        // get the next available protein from the parent
-        protein = parent.getNextProteinForRebuild();
-        while (protein != null) {
-            // rebuild the protein and get the next
-            rebuildProtein(protein);
-            protein = parent.getNextProteinForRebuild();
-        }
     }
 
 
     /**
+     * Rebuilds and rescores the given protein with the still usable spectra.
+     *
      * @param protein the protein, which will be rebuild and rescored
      */
-    private void rebuildProtein(ReportProtein protein) {
+    public void rebuildProtein(ReportProtein protein) {
         // first, clear all the peptides from the protein
         protein.clearPeptides();
 
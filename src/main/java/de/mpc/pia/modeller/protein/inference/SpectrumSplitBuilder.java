@@ -0,0 +1,222 @@
+package de.mpc.pia.modeller.protein.inference;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import de.mpc.pia.tools.UnionFind;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+
+/**
+ * Builds the disjoint splits of the {@link SpectrumExtractorInference}, i.e.
+ * the sets of spectra which are connected by shared accessions.
+ * <p>
+ * Each spectrum (given by its spectrumIdentificationKey) gets a dense element
+ * in a union-find on its first occurrence. An inverted index maps each
+ * accession to the element of the first spectrum with this accession, all
+ * further spectra with the accession are merged into its set. So adding a PSM
+ * is nearly constant in the number of its accessions, instead of comparing it
+ * against all existing splits. The splits are returned in the order of their
+ * first spectrum.
+ *
+ * @author julianu
+ *
+ */
+class SpectrumSplitBuilder {
+
+    /** maps from the spectrumIdentificationKeys to the elements */
+    private final Object2IntOpenHashMap<String> spectrumElements;
+
+    /** inverted index from the accession IDs to the element of the first spectrum with the accession */
+    private final Long2IntOpenHashMap accessionElements;
+
+    /** the spectrumIdentificationKey of each element */
+    private final List<String> elementSpectra;
+
+    /** the added PSM IDs of each element */
+    private final List<List<Long>> elementPSMs;
+
+    /** the accession IDs of each element */
+    private final List<Set<Long>> elementAccessions;
+
+    /** the disjoint sets of the spectra */
+    private final UnionFind unionFind;
+
+
+    /**
+     * Creates an empty split builder.
+     */
+    public SpectrumSplitBuilder() {
+        spectrumElements = new Object2IntOpenHashMap<>();
+        spectrumElements.defaultReturnValue(-1);
+        accessionElements = new Long2IntOpenHashMap();
+        accessionElements.defaultReturnValue(-1);
+        elementSpectra = new ArrayList<>();
+        elementPSMs = new ArrayList<>();
+        elementAccessions = new ArrayList<>();
+        unionFind = new UnionFind();
+    }
+
+
+    /**
+     * Adds the PSM with the given ID to the split of its spectrum, merging all
+     * splits which share any of the given accessions.
+     *
+     * @param psmID
+     * @param spectrumKey the spectrumIdentificationKey of the PSM
+     * @param accessionIDs the IDs of the PSM's accessions
+     */
+    public void addPSM(Long psmID, String spectrumKey, Set<Long> accessionIDs) {
+        int element = spectrumElements.getInt(spectrumKey);
+        if (element < 0) {
+            element = unionFind.makeSet();
+            spectrumElements.put(spectrumKey, element);
+            elementSpectra.add(spectrumKey);
+            elementPSMs.add(new ArrayList<>());
+            elementAccessions.add(new HashSet<>());
+        }
+        elementPSMs.get(element).add(psmID);
+
+        Set<Long> accessions = elementAccessions.get(element);
+        for (Long accID : accessionIDs) {
+            if (accessions.add(accID)) {
+                int accElement = accessionElements.putIfAbsent(accID.longValue(), element);
+                if (accElement >= 0) {
+                    unionFind.union(element, accElement);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Returns the number of currently built splits.
+     *
+     * @return
+     */
+    public int getNrSplits() {
+        return unionFind.getNrSets();
+    }
+
+
+    /**
+     * Builds the disjoint splits of all added PSMs.
+     *
+     * @return the splits, ordered by their first added spectrum
+     */
+    public List<Split> buildSplits() {
+        List<Split> splits = new ArrayList<>(unionFind.getNrSets());
+        Int2IntOpenHashMap rootSplits = new Int2IntOpenHashMap(unionFind.getNrSets());
+        rootSplits.defaultReturnValue(-1);
+
+        for (int element = 0; element < unionFind.size(); element++) {
+            int root = unionFind.find(element);
+            int splitIdx = rootSplits.get(root);
+            Split split;
+            if (splitIdx < 0) {
+                rootSplits.put(root, splits.size());
+                split = new Split();
+                splits.add(split);
+            } else {
+                split = splits.get(splitIdx);
+            }
+
+            split.psmIDs.addAll(elementPSMs.get(element));
+            split.accessionIDs.addAll(elementAccessions.get(element));
+            split.spectrumKeys.add(elementSpectra.get(element));
+        }
+
+        return splits;
+    }
+
+
+    /**
+     * Creates the histogram of the split sizes, i.e. the number of splits by
+     * their number of spectra. The sizes are binned in powers of two.
+     *
+     * @param splits
+     * @return maps from the smallest size of each bin to the number of splits
+     */
+    public static Map<Integer, Integer> createSizeHistogram(List<Split> splits) {
+        Map<Integer, Integer> histogram = new TreeMap<>();
+        for (Split split : splits) {
+            int bin = Integer.highestOneBit(Math.max(split.getNrSpectra(), 1));
+            histogram.merge(bin, 1, Integer::sum);
+        }
+        return histogram;
+    }
+
+
+    /**
+     * Formats the histogram of the split sizes for the log.
+     *
+     * @param histogram
+     * @return
+     */
+    public static String formatSizeHistogram(Map<Integer, Integer> histogram) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Integer> binIt : histogram.entrySet()) {
+            int lower = binIt.getKey();
+            int upper = 2 * lower - 1;
+
+            sb.append("\n\t");
+            if (lower == upper) {
+                sb.append(lower);
+            } else {
+                sb.append(lower).append('-').append(upper);
+            }
+            sb.append(" spectra: ").append(binIt.getValue());
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * A disjoint split, i.e. a set of spectra and their accessions, which are
+     * not connected to any other split.
+     */
+    static class Split {
+
+        /** the IDs of the PSMs in this split */
+        private final Set<Long> psmIDs;
+
+        /** the IDs of the accessions in this split */
+        private final Set<Long> accessionIDs;
+
+        /** the spectrumIdentificationKeys in this split */
+        private final Set<String> spectrumKeys;
+
+
+        private Split() {
+            psmIDs = new HashSet<>();
+            accessionIDs = new HashSet<>();
+            spectrumKeys = new HashSet<>();
+        }
+
+
+        public Set<Long> getPSMIDs() {
+            return psmIDs;
+        }
+
+
+        public Set<Long> getAccessionIDs() {
+            return accessionIDs;
+        }
+
+
+        public Set<String> getSpectrumKeys() {
+            return spectrumKeys;
+        }
+
+
+        public int getNrSpectra() {
+            return spectrumKeys.size();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package de.mpc.pia.modeller.protein.scoring;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -10,6 +11,8 @@ import de.mpc.pia.modeller.protein.ReportProtein;
 import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
 import de.mpc.pia.modeller.report.settings.Setting;
 import de.mpc.pia.modeller.report.settings.SettingType;
+import de.mpc.pia.modeller.score.ScoreIDs;
+import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 
 
@@ -37,6 +40,9 @@ public abstract class AbstractScoring implements Serializable {
 
     public static final String SCORING_SPECTRA_SETTING_ID = "used_spectra";
 
+    /** the minimal number of proteins for scoring them in parallel */
+    private static final int PARALLEL_THRESHOLD = 10000;
+
 
     /**
      * Basic constructor, requires a mapping of the available
@@ -181,27 +187,64 @@ public abstract class AbstractScoring implements Serializable {
     public abstract Double calculateProteinScore(ReportProtein protein);
 
 
+    /**
+     * Returns the scores of the given protein, which are used for the
+     * calculation of its score with the current settings. The score is looked
+     * up by its ID (see {@link ScoreIDs}), which is resolved only once per
+     * protein.
+     *
+     * @param protein
+     * @return
+     */
+    protected List<ScoreModel> getProteinsScores(ReportProtein protein) {
+        PSMForScoring psmForScoring = PSMForScoring.getByShortName(getPSMForScoringSetting().getValue());
+        if (psmForScoring == null) {
+            return new ArrayList<>(0);
+        }
+
+        return psmForScoring.getProteinsScores(protein,
+                ScoreIDs.getScoreID(getScoreSetting().getValue()));
+    }
+
+
     /**
      * Calculates the scores for each {@link ReportProtein} in the given List
      * with the current settings and set the them to the proteins. Also the
      * subProtein's scores are calculated.
+     * <p>
+     * The score of a protein only depends on its peptides, so large lists are
+     * scored in parallel, giving the same scores.
      *
      * @param proteinList
      */
     public final void calculateProteinScores(List<ReportProtein> proteinList) {
-        Map<Long, ReportProtein> subProteins = new HashMap<>();
+        Map<Long, ReportProtein> subProteins = new LinkedHashMap<>();
 
-        // calculate scores for the reported proteins
+        // get the subset proteins
         for (ReportProtein protein : proteinList) {
-            protein.setScore(calculateProteinScore(protein));
-
-            // get the subset proteins
-            protein.getSubSets().stream().filter(subProtein -> !subProteins.containsKey(subProtein.getID())).forEach(subProtein -> subProteins.put(subProtein.getID(), subProtein));
+            protein.getSubSets().forEach(subProtein -> subProteins.putIfAbsent(subProtein.getID(), subProtein));
         }
 
-        // and the scores for the subset proteins
-        for (ReportProtein subProtein : subProteins.values()) {
-            subProtein.setScore(calculateProteinScore(subProtein));
+        // calculate scores for the reported proteins and then for the subset proteins
+        scoreProteins(proteinList);
+        scoreProteins(new ArrayList<>(subProteins.values()));
+    }
+
+
+    /**
+     * Calculates and sets the scores of the given proteins, in parallel for
+     * large lists.
+     *
+     * @param proteins
+     */
+    private void scoreProteins(List<ReportProtein> proteins) {
+        if ((proteins.size() >= PARALLEL_THRESHOLD)
+                && (Runtime.getRuntime().availableProcessors() > 1)) {
+            proteins.parallelStream().forEach(protein -> protein.setScore(calculateProteinScore(protein)));
+        } else {
+            for (ReportProtein protein : proteins) {
+                protein.setScore(calculateProteinScore(protein));
+            }
         }
     }
 
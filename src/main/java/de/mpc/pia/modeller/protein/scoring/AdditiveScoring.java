@@ -4,7 +4,6 @@ import java.util.List;
 import java.util.Map;
 
 import de.mpc.pia.modeller.protein.ReportProtein;
-import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
 import de.mpc.pia.modeller.score.ScoreModel;
 
 
@@ -42,23 +41,24 @@ public class AdditiveScoring extends AbstractScoring {
      */
     @Override
     public Double calculateProteinScore(ReportProtein protein) {
-        List<ScoreModel> scores = PSMForScoring.getProteinsScores(
-                getPSMForScoringSetting().getValue(), protein,
-                getScoreSetting().getValue());
+        List<ScoreModel> scores = getProteinsScores(protein);
 
         if (scores.isEmpty()) {
             // no scores found -> no scoring possible
             return Double.NaN;
         }
 
-        Double proteinScore = Double.NaN;
+        double proteinScore = Double.NaN;
 
         for (ScoreModel score : scores) {
-            if ((score != null) && !score.getValue().equals(Double.NaN)) {
-                if (!proteinScore.equals(Double.NaN)) {
-                    proteinScore += score.getValue();
-                } else {
-                    proteinScore = score.getValue();
+            if (score != null) {
+                double value = score.getValue();
+                if (!Double.isNaN(value)) {
+                    if (!Double.isNaN(proteinScore)) {
+                        proteinScore += value;
+                    } else {
+                        proteinScore = value;
+                    }
                 }
             }
         }
@@ -4,7 +4,6 @@ import java.util.List;
 import java.util.Map;
 
 import de.mpc.pia.modeller.protein.ReportProtein;
-import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
 import de.mpc.pia.modeller.score.ScoreModel;
 
 
@@ -35,21 +34,19 @@ public class GeometricMeanScoring extends AbstractScoring {
 	
 	@Override
 	public Double calculateProteinScore(ReportProtein protein) {
-		List<ScoreModel> scores = PSMForScoring.getProteinsScores(
-				getPSMForScoringSetting().getValue(), protein,
-				getScoreSetting().getValue());
+		List<ScoreModel> scores = getProteinsScores(protein);
 		
 		if (scores.size() < 1) {
 			// no scores found -> no scoring possible
 			return Double.NaN;
 		}
 		
-		Double proteinScore = Double.NaN;
+		double proteinScore = Double.NaN;
 		int nrScore = 0;
 		
 		// count the scores
 		for (ScoreModel score : scores) {
-			if ((score != null) && !score.getValue().equals(Double.NaN)) {
+			if ((score != null) && !Double.isNaN(score.getValue())) {
 				nrScore++;
 			}
 		}
@@ -59,14 +56,14 @@ public class GeometricMeanScoring extends AbstractScoring {
 			
 			// calculate the product(scores)^(1/nrScores) respectively -log() of it for higherScoreBetter
 			for (ScoreModel score : scores) {
-				Double signum = 1.0;
+				double signum = 1.0;
 				if ((score.getType().higherScoreBetter() != null) &&
 						!score.getType().higherScoreBetter()) {
 					signum = -1.0;
 				}
 				
-				if (!score.getValue().equals(Double.NaN)) {
-					if (!proteinScore.equals(Double.NaN)) {
+				if (!Double.isNaN(score.getValue())) {
+					if (!Double.isNaN(proteinScore)) {
 						if (signum < 0) {
 							proteinScore -= Math.log10(Math.pow(score.getValue(), exp));
 						} else {
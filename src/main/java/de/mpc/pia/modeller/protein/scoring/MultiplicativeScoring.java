@@ -4,7 +4,6 @@ import java.util.List;
 import java.util.Map;
 
 import de.mpc.pia.modeller.protein.ReportProtein;
-import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
 import de.mpc.pia.modeller.score.ScoreModel;
 
 
@@ -39,29 +38,28 @@ public class MultiplicativeScoring extends AbstractScoring {
 
     @Override
     public Double calculateProteinScore(ReportProtein protein) {
-        List<ScoreModel> scores = PSMForScoring.getProteinsScores(
-                getPSMForScoringSetting().getValue(), protein,
-                getScoreSetting().getValue());
+        List<ScoreModel> scores = getProteinsScores(protein);
 
         if (scores.isEmpty()) {
             // no scores found -> no scoring possible
             return Double.NaN;
         }
 
-        Double proteinScore = Double.NaN;
+        double proteinScore = Double.NaN;
 
         for (ScoreModel score : scores) {
-            Double signum = 1.0;
+            double signum = 1.0;
             if ((score.getType().higherScoreBetter() != null) &&
                     !score.getType().higherScoreBetter()) {
                 signum = -1.0;
             }
 
-            if (!score.getValue().equals(Double.NaN)) {
-                if (!proteinScore.equals(Double.NaN)) {
-                    proteinScore = addToScore(proteinScore, signum, score.getValue());
+            double value = score.getValue();
+            if (!Double.isNaN(value)) {
+                if (!Double.isNaN(proteinScore)) {
+                    proteinScore = addToScore(proteinScore, signum, value);
                 } else {
-                    proteinScore = initializeScore(signum, score.getValue());
+                    proteinScore = initializeScore(signum, value);
                 }
             }
         }
@@ -77,8 +75,8 @@ public class MultiplicativeScoring extends AbstractScoring {
      * @param value
      * @return
      */
-    private static Double initializeScore(Double signum, Double value) {
-        Double ret = value;
+    private static double initializeScore(double signum, double value) {
+        double ret = value;
 
         if (signum < 0) {
             ret = -Math.log10(value);
@@ -96,8 +94,8 @@ public class MultiplicativeScoring extends AbstractScoring {
      * @param value
      * @return
      */
-    private static Double addToScore(Double score, Double signum, Double value) {
-        Double ret = score;
+    private static double addToScore(double score, double signum, double value) {
+        double ret = score;
 
         if (signum < 0) {
             ret -= Math.log10(value);
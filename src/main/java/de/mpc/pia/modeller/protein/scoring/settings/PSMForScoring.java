@@ -6,6 +6,7 @@ import java.util.List;
 import de.mpc.pia.modeller.peptide.ReportPeptide;
 import de.mpc.pia.modeller.protein.ReportProtein;
 import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.score.ScoreIDs;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 
@@ -32,13 +33,13 @@ public enum PSMForScoring {
 
 		@Override
 		public List<ScoreModel> getProteinsScores(ReportProtein protein,
-				String scoreShortName) {
+				int scoreID) {
 			List<ScoreModel> scores = new ArrayList<>(protein.getNrPeptides());
 			
 			// get the best score of each peptide
 			for (ReportPeptide peptide : protein.getPeptides()) {
 				
-				ScoreModel pepScore = peptide.getBestScoreModel(scoreShortName);
+				ScoreModel pepScore = peptide.getBestScoreModel(scoreID);
 				
 				if (pepScore != null) {
 					scores.add(pepScore);
@@ -64,7 +65,7 @@ public enum PSMForScoring {
 
 		@Override
 		public List<ScoreModel> getProteinsScores(ReportProtein protein,
-				String scoreShortName) {
+				int scoreID) {
 			// TODO: implement
 			List<ScoreModel> scores = new ArrayList<>(protein.getNrPeptides());
 			
@@ -76,16 +77,16 @@ public enum PSMForScoring {
 // ... go through all PSMs and take all their (scoring) scores
 				peptide.getPSMs().stream().filter(repPSM -> repPSM instanceof ReportPSMSet).forEach(repPSM -> {
 					// the repPSM has to be a ReportPSMSet, we have only the overview here
-					if (ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.isValidDescriptor(scoreShortName)) {
+					if (scoreID == ScoreIDs.getScoreID(ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE)) {
 						// ... the COMBINED_FDR_SCORE is in the PSM set
-						ScoreModel psmScore = repPSM.getCompareScore(scoreShortName);
+						ScoreModel psmScore = repPSM.getCompareScore(scoreID);
 						if (psmScore != null) {
 							scores.add(psmScore);
 						}
 					} else {
 						// ... go through all PSMs and take all their (scoring) scores
 						((ReportPSMSet) repPSM).getPSMs().stream().filter(psm -> !peptide.getNonScoringPSMIDs().contains(psm.getId())).forEach(psm -> {
-							ScoreModel psmScore = psm.getCompareScore(scoreShortName);
+							ScoreModel psmScore = psm.getCompareScore(scoreID);
 							if (psmScore != null) {
 								scores.add(psmScore);
 							}
@@ -114,12 +115,40 @@ public enum PSMForScoring {
 	public abstract String getShortName();
 	
 	
+	/**
+	 * Gets all the scores with the given ID (see {@link ScoreIDs}), this
+	 * method needs for its calculation.
+	 * 
+	 * @return
+	 */
+	public abstract List<ScoreModel> getProteinsScores(ReportProtein protein, int scoreID);
+	
+	
 	/**
 	 * Gets all the scores, this method needs for its calculation.
 	 * 
 	 * @return
 	 */
-	public abstract List<ScoreModel> getProteinsScores(ReportProtein protein, String scoreShortName);
+	public List<ScoreModel> getProteinsScores(ReportProtein protein, String scoreShortName) {
+		return getProteinsScores(protein, ScoreIDs.getScoreID(scoreShortName));
+	}
+	
+	
+	/**
+	 * Returns the method with the given shortName or null, if there is none.
+	 * 
+	 * @param methodName
+	 * @return
+	 */
+	public static PSMForScoring getByShortName(String methodName) {
+		for (PSMForScoring method : values()) {
+			if (method.getShortName().equals(methodName)) {
+				return method;
+			}
+		}
+		
+		return null;
+	}
 	
 	
 	/**
@@ -130,10 +159,9 @@ public enum PSMForScoring {
 	 */
 	public static List<ScoreModel> getProteinsScores(String methodName,
 			ReportProtein protein, String scoreShortName) {
-		for (PSMForScoring method : values()) {
-			if (method.getShortName().equals(methodName)) {
-				return method.getProteinsScores(protein, scoreShortName);
-			}
+		PSMForScoring method = getByShortName(methodName);
+		if (method != null) {
+			return method.getProteinsScores(protein, scoreShortName);
 		}
 		
 		return new ArrayList<>(0);
@@ -16,6 +16,7 @@ import de.mpc.pia.intermediate.PIAInputFile;
 import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.modeller.IdentificationKeySettings;
+import de.mpc.pia.modeller.score.ScoreIDs;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
@@ -31,6 +32,12 @@ public class ReportPSM  implements PSMReportItem {
 
     private static final long serialVersionUID = 4553213161575220358L;
 
+    /** the score ID of the PSM level FDR score */
+    private static final int FDR_SCORE_ID = ScoreIDs.getScoreID(ScoreModelEnum.PSM_LEVEL_FDR_SCORE);
+
+    /** the score ID of the PSM level q-value */
+    private static final int Q_VALUE_ID = ScoreIDs.getScoreID(ScoreModelEnum.PSM_LEVEL_Q_VALUE);
+
 
     /** unique ID of the item */
     private Long id;
@@ -337,17 +344,21 @@ public class ReportPSM  implements PSMReportItem {
 
     @Override
     public Double getScore(String scoreName) {
+        return getScore(ScoreIDs.getScoreID(scoreName));
+    }
+
+
+    @Override
+    public Double getScore(int scoreID) {
         Double scoreVal = Double.NaN;
 
-        if (ScoreModelEnum.PSM_LEVEL_FDR_SCORE.isValidDescriptor(scoreName)
-                && (fdrScore != null)) {
+        if ((scoreID == FDR_SCORE_ID) && (fdrScore != null)) {
             scoreVal = fdrScore.getValue();
-        } else if (ScoreModelEnum.PSM_LEVEL_Q_VALUE.isValidDescriptor(scoreName)
-                && (qValue != null)) {
+        } else if ((scoreID == Q_VALUE_ID) && (qValue != null)) {
             scoreVal = qValue;
         } else {
             // for all other cases: get score from spectrum
-            ScoreModel score = spectrum.getScore(scoreName);
+            ScoreModel score = spectrum.getScore(scoreID);
             if (score != null) {
                 scoreVal = score.getValue();
             }
@@ -555,6 +566,16 @@ public class ReportPSM  implements PSMReportItem {
     }
 
 
+    @Override
+    public ScoreModel getCompareScore(int scoreID) {
+        if (scoreID == FDR_SCORE_ID) {
+            return fdrScore;
+        } else {
+            return spectrum.getScore(scoreID);
+        }
+    }
+
+
     @Override
     public Map<String, Boolean> getAvailableIdentificationKeySettings() {
         return maximalSpectraIdentificationSettings;
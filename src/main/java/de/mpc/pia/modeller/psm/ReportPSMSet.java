@@ -16,6 +16,7 @@ import de.mpc.pia.intermediate.Modification;
 import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.modeller.IdentificationKeySettings;
+import de.mpc.pia.modeller.score.ScoreIDs;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
@@ -25,6 +26,8 @@ public class ReportPSMSet implements PSMReportItem {
 
     private static final long serialVersionUID = -1392636658449738523L;
 
+    /** the score ID of the PSM level combined FDR score */
+    private static final int COMBINED_FDR_SCORE_ID = ScoreIDs.getScoreID(ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE);
 
     /** the {@link IdentificationKeySettings} used for creating this set */
     private Map<String, Boolean> psmSetSettings;
@@ -234,6 +237,16 @@ public class ReportPSMSet implements PSMReportItem {
     }
 
 
+    /**
+     * Getter for the {@link IdentificationKeySettings} used for creating this
+     * set.
+     * @return
+     */
+    public Map<String, Boolean> getPSMSetSettings() {
+        return psmSetSettings;
+    }
+
+
     /**
      * Getter for the PSMs
      * @return
@@ -504,11 +517,46 @@ public class ReportPSMSet implements PSMReportItem {
     }
 
 
+    @Override
+    public ScoreModel getCompareScore(int scoreID) {
+        return getCompareScore(scoreID, null, null);
+    }
+
+
+    /**
+     * Returns the score given by its ID (see {@link ScoreIDs}), with which the
+     * comparison will be performed, and using only ReportPSMs whose IDs are
+     * not in the nonScoringPSMs and whose spectra are not in the
+     * nonScoringSpectra.
+     */
+    public ScoreModel getCompareScore(int scoreID,
+            Set<Long> nonScoringPSMs, Set<String> nonScoringSpectra) {
+        ScoreModel compareScore = null;
+
+        if (!anyPSMinSet(nonScoringPSMs) && !anySpectrumInSet(nonScoringSpectra)) {
+            if ((averageFDRScore != null)
+                    && (ScoreIDs.getScoreID(averageFDRScore.getType()) == scoreID)) {
+                compareScore = averageFDRScore;
+            } else if ((fdrScore != null)
+                    && ((ScoreIDs.getScoreID(fdrScore.getType()) == scoreID)
+                            || (COMBINED_FDR_SCORE_ID == scoreID))) {
+                compareScore = fdrScore;
+            }
+        }
+
+        if (compareScore == null) {
+            compareScore = getBestScoreModel(scoreID, nonScoringPSMs, nonScoringSpectra);
+        }
+
+        return compareScore;
+    }
+
+
     /**
      * Returns true, if any of the set's PSMs' IDs is in the given set of IDs
      */
     private boolean anyPSMinSet(Set<Long> nonScoringPSMs) {
-        if (nonScoringPSMs == null) {
+        if ((nonScoringPSMs == null) || nonScoringPSMs.isEmpty()) {
             return false;
         }
 
@@ -526,7 +574,7 @@ public class ReportPSMSet implements PSMReportItem {
      * ID keys.
      */
     private boolean anySpectrumInSet(Set<String> nonScoringPSMs) {
-        if (nonScoringPSMs == null) {
+        if ((nonScoringPSMs == null) || nonScoringPSMs.isEmpty()) {
             return false;
         }
 
@@ -677,6 +725,42 @@ public class ReportPSMSet implements PSMReportItem {
         return bestScoreModel;
     }
 
+
+    /**
+     * Gets the ScoreModel with the best score value of the PSMs in this
+     * ReportPSMSet for the score given by its ID (see {@link ScoreIDs}), using
+     * only ReportPSMs whose IDs are not in the nonScoringPSMs and whose
+     * spectra are not in the nonScoringSpectra.
+     *
+     * @param scoreID
+     * @param nonScoringPSMs may be null
+     * @param nonScoringSpectra may be null
+     * @return
+     */
+    public ScoreModel getBestScoreModel(int scoreID,
+            Set<Long> nonScoringPSMs, Set<String> nonScoringSpectra) {
+        boolean checkPSMs = (nonScoringPSMs != null) && !nonScoringPSMs.isEmpty();
+        boolean checkSpectra = (nonScoringSpectra != null) && !nonScoringSpectra.isEmpty();
+
+        ScoreModel bestScoreModel = null;
+        for (ReportPSM psm : psmsList) {
+            if ((checkPSMs && nonScoringPSMs.contains(psm.getId()))
+                    || (checkSpectra && nonScoringSpectra.contains(
+                            psm.getSpectrum().getSpectrumIdentificationKey(
+                                    getAvailableIdentificationKeySettings())))) {
+                continue;
+            }
+
+            ScoreModel newScoreModel = psm.getCompareScore(scoreID);
+            if ((newScoreModel != null)
+                    && ((bestScoreModel == null) || (newScoreModel.compareTo(bestScoreModel) < 0))) {
+                bestScoreModel = newScoreModel;
+            }
+        }
+
+        return bestScoreModel;
+    }
+
     @Override
     public double getFDR() {
         if (fdrValue == null) {
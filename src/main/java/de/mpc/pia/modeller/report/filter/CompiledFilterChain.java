@@ -0,0 +1,525 @@
+package de.mpc.pia.modeller.report.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoublePredicate;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import de.mpc.pia.intermediate.Modification;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.score.ScoreIDs;
+import de.mpc.pia.tools.unimod.UnimodParser;
+
+
+/**
+ * A list of filters, which is compiled once into specialized tests and then
+ * applied to many {@link Filterable}s. The results are the same as given by
+ * {@link FilterFactory#satisfiesFilterList(Filterable, Long, List)}.
+ * <p>
+ * For each filter, the comparison with the filter value is prepared at
+ * compilation: numerical filters compare primitive doubles, regular
+ * expressions are compiled only once and the supported classes are looked up
+ * once per class of the filtered items. Filters which cannot be compiled use
+ * {@link AbstractFilter#satisfiesFilter(Object, Long)}.
+ * <p>
+ * When a list is filtered, all filters are evaluated on a sample of the first
+ * items to observe their costs and selectivity. The remaining items are
+ * evaluated with the filters ordered by rejections per time, stopping at the
+ * first failed filter. Large lists of {@link ReportPSM}s are filtered in
+ * parallel, because their filtered values are not lazily calculated.
+ *
+ * @author julianu
+ *
+ */
+public class CompiledFilterChain {
+
+    /** the compiled filters, ordered by their observed efficiency after a list was filtered */
+    private CompiledFilter[] filters;
+
+    /** the compiled filters supporting the items of a class */
+    private final Map<Class<?>, CompiledFilter[]> classFilters;
+
+
+    /** the number of items, on which all filters are evaluated to observe their costs and selectivity */
+    private static final int SAMPLE_SIZE = 1024;
+
+    /** the minimal number of items for parallel filtering */
+    private static final int PARALLEL_THRESHOLD = 100000;
+
+    /** the number of items filtered by one parallel task */
+    private static final int PARALLEL_CHUNK_SIZE = 16384;
+
+
+    /**
+     * Compiles the given filters.
+     *
+     * @param filters
+     */
+    private CompiledFilterChain(List<AbstractFilter> filters) {
+        this.filters = new CompiledFilter[filters.size()];
+        for (int idx = 0; idx < filters.size(); idx++) {
+            this.filters[idx] = new CompiledFilter(filters.get(idx));
+        }
+        this.classFilters = new ConcurrentHashMap<>();
+    }
+
+
+    /**
+     * Compiles the given list of filters.
+     *
+     * @param filters
+     * @return
+     */
+    public static CompiledFilterChain compile(List<AbstractFilter> filters) {
+        return new CompiledFilterChain(filters);
+    }
+
+
+    /**
+     * Checks whether all the filters supporting the item are satisfied.
+     *
+     * @param item
+     * @param fileID
+     * @return
+     */
+    public boolean satisfies(Object item, Long fileID) {
+        for (CompiledFilter filter : getFiltersForClass(item.getClass(), item)) {
+            if (!filter.satisfies(item, fileID)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Applies the filters to the given list and returns a new list with the
+     * items satisfying all filters, in the same order.
+     *
+     * @param items
+     * @param fileID
+     * @return
+     */
+    public <T extends Filterable> List<T> apply(List<T> items, Long fileID) {
+        int sampleSize = Math.min(SAMPLE_SIZE, items.size());
+
+        List<T> filteredItems = new ArrayList<>();
+        for (T item : items.subList(0, sampleSize)) {
+            if (satisfiesObserved(item, fileID)) {
+                filteredItems.add(item);
+            }
+        }
+
+        if (sampleSize == items.size()) {
+            return filteredItems;
+        }
+
+        orderByObservedEfficiency();
+        List<T> remainingItems = items.subList(sampleSize, items.size());
+
+        if ((remainingItems.size() >= PARALLEL_THRESHOLD)
+                && (Runtime.getRuntime().availableProcessors() > 1)
+                && remainingItems.stream().allMatch(ReportPSM.class::isInstance)) {
+            int nrChunks = (remainingItems.size() + PARALLEL_CHUNK_SIZE - 1) / PARALLEL_CHUNK_SIZE;
+
+            List<List<T>> filteredChunks = IntStream.range(0, nrChunks).parallel()
+                    .mapToObj(chunk -> filterSublist(remainingItems.subList(chunk * PARALLEL_CHUNK_SIZE,
+                            Math.min((chunk + 1) * PARALLEL_CHUNK_SIZE, remainingItems.size())), fileID))
+                    .collect(Collectors.toList());
+
+            filteredChunks.forEach(filteredItems::addAll);
+        } else {
+            filteredItems.addAll(filterSublist(remainingItems, fileID));
+        }
+
+        return filteredItems;
+    }
+
+
+    /**
+     * Returns the items of the list satisfying all filters.
+     */
+    private <T extends Filterable> List<T> filterSublist(List<T> items, Long fileID) {
+        List<T> filteredItems = new ArrayList<>();
+        for (T item : items) {
+            if (satisfies(item, fileID)) {
+                filteredItems.add(item);
+            }
+        }
+        return filteredItems;
+    }
+
+
+    /**
+     * Checks whether all the filters supporting the item are satisfied. All
+     * filters are evaluated, to record their costs and rejections.
+     */
+    private boolean satisfiesObserved(Object item, Long fileID) {
+        boolean satisfiesAll = true;
+
+        for (CompiledFilter filter : getFiltersForClass(item.getClass(), item)) {
+            long start = System.nanoTime();
+            boolean satisfies = filter.satisfies(item, fileID);
+            filter.nanos += System.nanoTime() - start;
+
+            if (!satisfies) {
+                filter.rejections++;
+                satisfiesAll = false;
+            }
+        }
+
+        return satisfiesAll;
+    }
+
+
+    /**
+     * Orders the filters by the observed rejections per time, so that cheap
+     * and selective filters are evaluated first.
+     */
+    private void orderByObservedEfficiency() {
+        CompiledFilter[] ordered = Arrays.copyOf(filters, filters.length);
+        Arrays.sort(ordered, Comparator.comparingDouble(CompiledFilter::getExpectedCostPerRejection));
+
+        filters = ordered;
+        classFilters.clear();
+    }
+
+
+    /**
+     * Returns the filters supporting the items of the given class, which is
+     * the class of the given item.
+     */
+    private CompiledFilter[] getFiltersForClass(Class<?> itemClass, Object item) {
+        CompiledFilter[] supported = classFilters.get(itemClass);
+        if (supported == null) {
+            supported = Arrays.stream(filters)
+                    .filter(filter -> filter.filter.supportsClass(item))
+                    .toArray(CompiledFilter[]::new);
+            classFilters.put(itemClass, supported);
+        }
+        return supported;
+    }
+
+
+    /**
+     * A single filter with its comparison prepared for the filter value.
+     */
+    private static class CompiledFilter {
+
+        /** the compiled filter */
+        private final AbstractFilter filter;
+
+        /** whether the objects' values need a file refinement */
+        private final boolean needsFileRefinement;
+
+        /** the score ID of a PSM score filter, or {@link ScoreIDs#NO_SCORE_ID} */
+        private final int psmScoreID;
+
+        /** the test of the (refined) objects' value, null if the filter is not compiled */
+        private final Predicate<Object> valueTest;
+
+        /** the observed time of the evaluations */
+        private long nanos;
+
+        /** the number of observed failed evaluations */
+        private int rejections;
+
+
+        private CompiledFilter(AbstractFilter filter) {
+            this.filter = filter;
+            this.needsFileRefinement = filter.getRegisteredFilter().valueNeedsFileRefinement();
+
+            if (filter instanceof PSMScoreFilter) {
+                psmScoreID = ScoreIDs.getScoreID(((PSMScoreFilter) filter).getScoreShortName());
+            } else {
+                psmScoreID = ScoreIDs.NO_SCORE_ID;
+            }
+
+            Predicate<Object> test;
+            try {
+                test = compileValueTest(filter.getFilterType(), filter.getFilterComparator(),
+                        filter.getFilterNegate(), filter.getFilterValue());
+            } catch (RuntimeException e) {
+                // e.g. an invalid pattern or value, the filter throws this on evaluation, not on compilation
+                test = null;
+            }
+            this.valueTest = test;
+        }
+
+
+        /**
+         * Checks whether the item satisfies this filter.
+         */
+        private boolean satisfies(Object item, Long fileID) {
+            if (valueTest == null) {
+                return filter.satisfiesFilter(item, fileID);
+            }
+
+            Object objValue;
+            if ((psmScoreID != ScoreIDs.NO_SCORE_ID) && (item instanceof ReportPSM)) {
+                objValue = ((ReportPSM) item).getScore(psmScoreID);
+            } else {
+                objValue = filter.getObjectsValue(item);
+            }
+
+            if (needsFileRefinement) {
+                objValue = filter.getRegisteredFilter().doFileRefinement(fileID, objValue);
+            }
+
+            return (objValue != null) && valueTest.test(objValue);
+        }
+
+
+        /**
+         * The expected time of the evaluations until one rejection. Filters
+         * without any observed rejection come last.
+         */
+        private double getExpectedCostPerRejection() {
+            if (rejections == 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return (double) nanos / rejections;
+        }
+    }
+
+
+    /**
+     * Compiles the test of a (non-null) objects' value of a filter with the
+     * given type, comparator, negation and value. This gives the same results
+     * as {@link AbstractFilter#satisfiesFilter(Object, Long)}.
+     *
+     * @return the test or null, if the filter type is not known
+     */
+    @SuppressWarnings("unchecked")
+    private static Predicate<Object> compileValueTest(FilterType type, FilterComparator comparator,
+            boolean negate, Object filterValue) {
+        switch (type) {
+        case bool:
+            Predicate<Boolean> booleanTest = compileBooleanTest(comparator, negate, filterValue);
+            return singleOrAll(Boolean.class, booleanTest);
+
+        case numerical:
+            Predicate<Number> numberTest = compileNumericalTest(comparator, negate, filterValue);
+            return singleOrAll(Number.class, numberTest);
+
+        case literal:
+            Predicate<String> stringTest = compileLiteralTest(comparator, negate, filterValue);
+            return singleOrAll(String.class, stringTest);
+
+        case literal_list:
+            Predicate<List<String>> listTest = compileLiteralListTest(comparator, negate, filterValue);
+            return value -> (value instanceof List<?>) && listTest.test((List<String>) value);
+
+        case modification:
+            Predicate<List<Modification>> modificationsTest = compileModificationTest(comparator, negate, filterValue);
+            return value -> (value instanceof List<?>) && modificationsTest.test((List<Modification>) value);
+
+        default:
+            return null;
+        }
+    }
+
+
+    /**
+     * Creates the test of a value, which is either an instance of the given
+     * class or a collection, of which all elements must be instances and
+     * satisfy the test.
+     */
+    private static <V> Predicate<Object> singleOrAll(Class<V> valueClass, Predicate<V> test) {
+        return value -> {
+            if (valueClass.isInstance(value)) {
+                return test.test(valueClass.cast(value));
+            } else if (value instanceof Collection<?>) {
+                for (Object obj : (Collection<?>) value) {
+                    if (!valueClass.isInstance(obj) || !test.test(valueClass.cast(obj))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return false;
+        };
+    }
+
+
+    private static Predicate<Boolean> compileBooleanTest(FilterComparator comparator, boolean negate,
+            Object filterValue) {
+        if (comparator == FilterComparator.equal) {
+            return value -> negate ^ filterValue.equals(value);
+        }
+        return value -> false;
+    }
+
+
+    private static Predicate<Number> compileNumericalTest(FilterComparator comparator, boolean negate,
+            Object filterValue) {
+        if (comparator == FilterComparator.equal) {
+            // the equality is given by the value objects' equals
+            return value -> negate ^ filterValue.equals(value);
+        }
+
+        DoublePredicate comparison;
+        switch (comparator) {
+        case less:
+            double lessThreshold = ((Number) filterValue).doubleValue();
+            comparison = value -> value < lessThreshold;
+            break;
+
+        case less_equal:
+            double lessEqualThreshold = ((Number) filterValue).doubleValue();
+            comparison = value -> value <= lessEqualThreshold;
+            break;
+
+        case greater_equal:
+            double greaterEqualThreshold = ((Number) filterValue).doubleValue();
+            comparison = value -> value >= greaterEqualThreshold;
+            break;
+
+        case greater:
+            double greaterThreshold = ((Number) filterValue).doubleValue();
+            comparison = value -> value > greaterThreshold;
+            break;
+
+        default:
+            return value -> false;
+        }
+
+        return value -> negate ^ comparison.test(value.doubleValue());
+    }
+
+
+    private static Predicate<String> compileLiteralTest(FilterComparator comparator, boolean negate,
+            Object filterValue) {
+        switch (comparator) {
+        case equal:
+            return value -> negate ^ value.equals(filterValue);
+
+        case contains:
+            String contained = (String) filterValue;
+            return value -> negate ^ value.contains(contained);
+
+        case regex:
+            Pattern pattern = Pattern.compile((String) filterValue);
+            return value -> negate ^ pattern.matcher(value).matches();
+
+        default:
+            return value -> false;
+        }
+    }
+
+
+    private static Predicate<List<String>> compileLiteralListTest(FilterComparator comparator, boolean negate,
+            Object filterValue) {
+        switch (comparator) {
+        case contains:
+            return values -> {
+                for (String value : values) {
+                    if (value.equals(filterValue)) {
+                        return !negate;
+                    }
+                }
+                return negate;
+            };
+
+        case contains_only:
+            return values -> {
+                if (values.isEmpty()) {
+                    return negate;
+                }
+                for (String value : values) {
+                    if (!value.equals(filterValue)) {
+                        return negate;
+                    }
+                }
+                return !negate;
+            };
+
+        case regex:
+            Pattern pattern = Pattern.compile((String) filterValue);
+            return values -> {
+                for (String value : values) {
+                    if (pattern.matcher(value).matches()) {
+                        return !negate;
+                    }
+                }
+                return negate;
+            };
+
+        case regex_only:
+            Pattern onlyPattern = Pattern.compile((String) filterValue);
+            return values -> {
+                if (values.isEmpty()) {
+                    return negate;
+                }
+                for (String value : values) {
+                    if (!onlyPattern.matcher(value).matches()) {
+                        return negate;
+                    }
+                }
+                return !negate;
+            };
+
+        default:
+            return values -> false;
+        }
+    }
+
+
+    private static Predicate<List<Modification>> compileModificationTest(FilterComparator comparator,
+            boolean negate, Object filterValue) {
+        switch (comparator) {
+        case has_any_modification:
+            return modifications -> negate ^ !modifications.isEmpty();
+
+        case has_description:
+            return modifications -> {
+                for (Modification mod : modifications) {
+                    if ((mod.getDescription() != null) && mod.getDescription().equals(filterValue)) {
+                        return !negate;
+                    }
+                }
+                return negate;
+            };
+
+        case has_mass:
+            double mass;
+            try {
+                mass = Double.parseDouble((String) filterValue);
+            } catch (NumberFormatException e) {
+                // a wrong number format fails for any modification
+                return modifications -> modifications.isEmpty() && negate;
+            }
+            return modifications -> {
+                for (Modification mod : modifications) {
+                    if (Math.abs(mod.getMass() - mass) <= UnimodParser.UNIMOD_MASS_TOLERANCE) {
+                        return !negate;
+                    }
+                }
+                return negate;
+            };
+
+        case has_residue:
+            String residue = (String) filterValue;
+            return modifications -> {
+                for (Modification mod : modifications) {
+                    if ((mod.getResidue() != null) && mod.getResidue().toString().startsWith(residue)) {
+                        return !negate;
+                    }
+                }
+                return negate;
+            };
+
+        default:
+            return modifications -> false;
+        }
+    }
+}
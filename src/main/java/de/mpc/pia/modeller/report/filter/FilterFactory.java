@@ -2,7 +2,6 @@ package de.mpc.pia.modeller.report.filter;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
 import de.mpc.pia.modeller.report.filter.impl.PSMTopIdentificationFilter;
@@ -229,7 +228,8 @@ public class FilterFactory {
 
     /**
      * Applies the filtering given by the filters to the given List of
-     * Filterables and returns the filtered list.
+     * Filterables and returns the filtered list. The filters are compiled
+     * once for the whole list, see {@link CompiledFilterChain}.
      *
      * @param <T>
      * @param reportItems
@@ -243,13 +243,11 @@ public class FilterFactory {
             return reportItems;
         }
 
-        List<T> filteredReportItems = new ArrayList<>();
-
-        if (reportItems != null) {
-            filteredReportItems.addAll(reportItems.stream().filter(item -> satisfiesFilterList(item, fileID, filters)).collect(Collectors.toList()));
+        if (reportItems == null) {
+            return new ArrayList<>();
         }
 
-        return filteredReportItems;
+        return CompiledFilterChain.compile(filters).apply(reportItems, fileID);
     }
 
 
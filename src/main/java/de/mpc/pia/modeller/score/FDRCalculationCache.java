@@ -0,0 +1,275 @@
+package de.mpc.pia.modeller.score;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.log4j.Logger;
+
+import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
+
+
+/**
+ * Caches the sorted items of an FDR calculation, which are given by the used
+ * score and the number of top identifications, to speed up recalculations
+ * with changed settings.
+ * <p>
+ * The items are only sorted once. If only the FDR threshold changes, the FDR
+ * values, q-values and FDR scores stay the same and only the FDR good items
+ * change. These are always a prefix of the sorted items: the possible cut
+ * points are recorded during the calculation and the cut point of a new
+ * threshold is found by a binary search. Only the flags of the items between
+ * the old and new cut point are updated. If the decoy states change, the FDR
+ * is recalculated in a linear pass over the sorted items.
+ *
+ * @author julianu
+ *
+ */
+public class FDRCalculationCache<T extends FDRScoreComputable> {
+
+    /** the items, sorted by the comparator */
+    private final List<T> sortedItems;
+
+    /** the comparator, which sorted the items */
+    private final Comparator<T> comparator;
+
+    /** the short name of the score used for sorting */
+    private final String scoreShortName;
+
+    /** the number of top identifications, which were used to select the items */
+    private final int topIdentifications;
+
+
+    /** the indices of the possible last good items, in order of the calculation */
+    private int[] cutIndices;
+
+    /** the minimal FDR of the cut candidate and all following ones, this is sorted ascending */
+    private double[] cutFDRs;
+
+    /** the number of possible cut points */
+    private int nrCutCandidates;
+
+    /** the number of decoys before each index in the sorted items */
+    private int[] decoysBefore;
+
+    /** the current number of FDR good items, which are a prefix of the sorted items */
+    private int nrGoodItems;
+
+    /** the number of targets */
+    private int nrTargets;
+
+    /** the number of decoys */
+    private int nrDecoys;
+
+    /** the FDR of an artificially added decoy at the last position */
+    private Double artificialDecoyFDR;
+
+    /** the decoy strategy of the calculated FDR, null if the FDR is not calculated for the current decoy states */
+    private DecoyStrategy decoyStrategy;
+
+    /** the decoy pattern of the calculated FDR */
+    private String decoyPattern;
+
+
+    /** logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(FDRCalculationCache.class);
+
+
+    /**
+     * Creates the cache of the given items, which are sorted with the
+     * comparator.
+     *
+     * @param items the items used for FDR calculation, this list is not changed
+     * @param comparator comparator for the score with the given short name
+     * @param scoreShortName
+     * @param topIdentifications the number of top identifications used to select the items
+     */
+    public FDRCalculationCache(List<T> items, Comparator<T> comparator, String scoreShortName,
+            int topIdentifications) {
+        this.sortedItems = new ArrayList<>(items);
+        FDRData.sortItems(this.sortedItems, comparator);
+        this.comparator = comparator;
+        this.scoreShortName = scoreShortName;
+        this.topIdentifications = topIdentifications;
+
+        this.cutIndices = new int[16];
+        this.cutFDRs = new double[16];
+        this.nrCutCandidates = 0;
+        this.decoyStrategy = null;
+        this.decoyPattern = null;
+    }
+
+
+    /**
+     * Whether this cache holds the items sorted for the given settings.
+     *
+     * @param scoreShort
+     * @param topIDs
+     * @param comp
+     * @return
+     */
+    public boolean isValidFor(String scoreShort, int topIDs, Comparator<T> comp) {
+        return Objects.equals(scoreShortName, scoreShort)
+                && (topIdentifications == topIDs)
+                && (comparator == comp);
+    }
+
+
+    /**
+     * Whether the FDR was calculated with the current decoy states, which are
+     * given by the strategy and pattern of the FDR data. If this is true, a
+     * changed threshold can be applied by
+     * {@link #applyThreshold(FDRData)}.
+     *
+     * @param fdrData
+     * @return
+     */
+    public boolean isCalculatedFor(FDRData fdrData) {
+        return (decoyStrategy != null)
+                && (decoyStrategy == fdrData.getDecoyStrategy())
+                && Objects.equals(decoyPattern, fdrData.getDecoyPattern())
+                && Objects.equals(scoreShortName, fdrData.getScoreShortName());
+    }
+
+
+    /**
+     * Marks the decoy states as changed, so the FDR must be calculated again.
+     */
+    public void invalidateDecoyStates() {
+        decoyStrategy = null;
+        decoyPattern = null;
+    }
+
+
+    /**
+     * Calculates the FDR, q-values and FDR scores of the sorted items, which
+     * must have their decoy states set for the FDR data.
+     *
+     * @param fdrData
+     * @param higherScoreBetter
+     */
+    public void calculateFDR(FDRData fdrData, boolean higherScoreBetter) {
+        invalidateDecoyStates();
+        if (fdrData.getScoreShortName() == null) {
+            LOGGER.warn("No score set for FDR calculation!");
+            return;
+        }
+
+        nrCutCandidates = 0;
+        fdrData.calculateFDROnSortedItems(sortedItems, comparator, this);
+
+        // the suffix minima of the FDRs are the q-values at the cut points, which are ascending
+        for (int idx = nrCutCandidates - 2; idx >= 0; idx--) {
+            cutFDRs[idx] = Math.min(cutFDRs[idx], cutFDRs[idx + 1]);
+        }
+
+        decoysBefore = new int[sortedItems.size() + 1];
+        for (int idx = 0; idx < sortedItems.size(); idx++) {
+            decoysBefore[idx + 1] = decoysBefore[idx] + (sortedItems.get(idx).getIsDecoy() ? 1 : 0);
+        }
+
+        nrGoodItems = fdrData.getNrFDRGoodItems();
+        nrTargets = fdrData.getNrTargets();
+        nrDecoys = fdrData.getNrDecoys();
+        artificialDecoyFDR = fdrData.getArtificialDecoyFDR();
+
+        FDRScore.calculateFDRScore(sortedItems, fdrData, higherScoreBetter);
+
+        decoyStrategy = fdrData.getDecoyStrategy();
+        decoyPattern = fdrData.getDecoyPattern();
+    }
+
+
+    /**
+     * Records a possible cut point while calculating the FDR: if the FDR is
+     * below the threshold, the item at the index is the last good item (until
+     * a later cut point is also below the threshold).
+     *
+     * @param index
+     * @param fdr
+     */
+    void addCutCandidate(int index, double fdr) {
+        if (nrCutCandidates == cutIndices.length) {
+            cutIndices = Arrays.copyOf(cutIndices, 2 * nrCutCandidates);
+            cutFDRs = Arrays.copyOf(cutFDRs, 2 * nrCutCandidates);
+        }
+
+        cutIndices[nrCutCandidates] = index;
+        cutFDRs[nrCutCandidates] = fdr;
+        nrCutCandidates++;
+    }
+
+
+    /**
+     * Applies the threshold of the FDR data to the already calculated FDR, i.e.
+     * sets the FDR good flags and the numbers of the FDR data. The FDR must be
+     * calculated for the FDR data before (see
+     * {@link #isCalculatedFor(FDRData)}).
+     *
+     * @param fdrData
+     */
+    public void applyThreshold(FDRData fdrData) {
+        double threshold = fdrData.getFDRThreshold();
+
+        // the last cut point with an FDR below the threshold is the last one with a q-value below it
+        int low = 0;
+        int high = nrCutCandidates;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cutFDRs[mid] <= threshold) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int cut = low - 1;
+
+        T lastGoodScoreItem = null;
+        int newNrGoodItems;
+        if (cut < 0) {
+            // without a good item, all items are compared against null and are good
+            newNrGoodItems = sortedItems.size();
+        } else {
+            lastGoodScoreItem = sortedItems.get(cutIndices[cut]);
+
+            // the items up to the last one comparing equal to the last good item are good
+            low = cutIndices[cut];
+            high = sortedItems.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (comparator.compare(sortedItems.get(mid), lastGoodScoreItem) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            newNrGoodItems = low;
+        }
+
+        for (int idx = Math.min(nrGoodItems, newNrGoodItems); idx < Math.max(nrGoodItems, newNrGoodItems); idx++) {
+            sortedItems.get(idx).setIsFDRGood(idx < newNrGoodItems);
+        }
+        nrGoodItems = newNrGoodItems;
+
+        Double scoreAtThreshold = null;
+        if (lastGoodScoreItem != null) {
+            scoreAtThreshold = lastGoodScoreItem.getScore(ScoreIDs.getScoreID(scoreShortName));
+        }
+
+        int nrFDRGoodDecoys = decoysBefore[nrGoodItems];
+        fdrData.setCalculatedResults(sortedItems.size(), nrTargets, nrDecoys, nrGoodItems - nrFDRGoodDecoys,
+                nrFDRGoodDecoys, scoreAtThreshold, artificialDecoyFDR);
+    }
+
+
+    /**
+     * Returns the sorted items.
+     *
+     * @return
+     */
+    public List<T> getSortedItems() {
+        return sortedItems;
+    }
+}
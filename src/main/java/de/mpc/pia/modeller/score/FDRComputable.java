@@ -21,6 +21,18 @@ public interface FDRComputable extends ScoreComparable {
     Double getScore(String scoreShortName);
 	
 	
+	/**
+	 * Returns the score value of the model with the given ID (see
+	 * {@link ScoreIDs}).
+	 * 
+	 * @param scoreID
+	 * @return
+	 */
+    default Double getScore(int scoreID) {
+        return getScore(ScoreIDs.getShortName(scoreID));
+    }
+	
+	
 	/**
 	 * Gets the local FDR value.
 	 * @return
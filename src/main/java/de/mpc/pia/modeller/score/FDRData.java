@@ -3,6 +3,7 @@ package de.mpc.pia.modeller.score;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.ListIterator;
@@ -57,6 +58,10 @@ public class FDRData implements Serializable {
     private Double artificialDecoyFDR;
 
 
+    /** the minimal number of items for sorting them in parallel */
+    private static final int PARALLEL_SORT_THRESHOLD = 10000;
+
+
     /** logger for this class */
     private static final Logger LOGGER = Logger.getLogger(FDRData.class);
 
@@ -298,6 +303,25 @@ public class FDRData implements Serializable {
     }
 
 
+    /**
+     * Sets the results of an FDR calculation, which were not calculated here
+     * but e.g. taken from an {@link FDRCalculationCache} or read from a
+     * snapshot.
+     */
+    public void setCalculatedResults(Integer nrItems, Integer nrTargets, Integer nrDecoys,
+            Integer nrFDRGoodTargets, Integer nrFDRGoodDecoys, Double scoreAtThreshold, Double artificialDecoyFDR) {
+        this.nrItems = nrItems;
+        this.nrTargets = nrTargets;
+        this.nrDecoys = nrDecoys;
+        this.nrFDRGoodTargets = nrFDRGoodTargets;
+        this.nrFDRGoodDecoys = nrFDRGoodDecoys;
+        if (scoreAtThreshold != null) {
+            this.scoreAtThreshold = scoreAtThreshold;
+        }
+        this.artificialDecoyFDR = artificialDecoyFDR;
+    }
+
+
     /**
      * Getter for the scoreAtThreshold.
      * @return
@@ -391,6 +415,77 @@ public class FDRData implements Serializable {
             return;
         }
 
+        // sort the items with the given comparator
+        sortItems(reportItems, comparator);
+
+        calculateFDROnSortedItems(reportItems, comparator, null);
+    }
+
+
+    /**
+     * Sorts the given items with the comparator. Large lists are sorted in
+     * parallel, if the comparator is a {@link ScoreComparator} and a total
+     * order on the items. Equal items are ordered by their former position,
+     * so the order is the same as with the stable {@link List#sort(Comparator)}.
+     *
+     * @param items
+     * @param comparator
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends FDRComputable> void sortItems(List<T> items, Comparator<T> comparator) {
+        if ((items.size() < PARALLEL_SORT_THRESHOLD)
+                || (Runtime.getRuntime().availableProcessors() < 2)
+                || !(comparator instanceof ScoreComparator)
+                || !((ScoreComparator<T>) comparator).isTotalOrderOn(items)) {
+            items.sort(comparator);
+            return;
+        }
+
+        IndexedItem<T>[] sortedItems = new IndexedItem[items.size()];
+        ListIterator<T> itemsIt = items.listIterator();
+        while (itemsIt.hasNext()) {
+            int idx = itemsIt.nextIndex();
+            sortedItems[idx] = new IndexedItem<>(itemsIt.next(), idx);
+        }
+
+        Arrays.parallelSort(sortedItems, (item1, item2) -> {
+            int compRet = comparator.compare(item1.item, item2.item);
+            return (compRet != 0) ? compRet : Integer.compare(item1.index, item2.index);
+        });
+
+        itemsIt = items.listIterator();
+        for (IndexedItem<T> sortedItem : sortedItems) {
+            itemsIt.next();
+            itemsIt.set(sortedItem.item);
+        }
+    }
+
+
+    /**
+     * An item with its position in the list before sorting.
+     */
+    private static final class IndexedItem<T> {
+        private final T item;
+        private final int index;
+
+        private IndexedItem(T item, int index) {
+            this.item = item;
+            this.index = index;
+        }
+    }
+
+
+    /**
+     * Calculate the FDR on the given List of comparable objects, which is
+     * already sorted by the given comparator.
+     *
+     * @param reportItems
+     * @param comparator
+     * @param cache if not null, the possible cut points of the threshold are
+     * recorded in the cache
+     */
+    <T extends FDRComputable> void calculateFDROnSortedItems(List<T> reportItems,
+            Comparator<T> comparator, FDRCalculationCache<?> cache) {
         LOGGER.info("calculating FDR in FDRData with " + scoreShortName +
                 "\n\tstrategy " + decoyStrategy +
                 "\n\tpattern " + decoyPattern +
@@ -398,13 +493,11 @@ public class FDRData implements Serializable {
 
         double fdr;
         T lastGoodScoreItem;
+        int scoreID = ScoreIDs.getScoreID(scoreShortName);
 
         Double rankScore;
         List<T> rankItems;
 
-        // sort the items with the given comparator
-        reportItems.sort(comparator);
-
         nrTargets = 0;
         nrDecoys = 0;
 
@@ -412,8 +505,10 @@ public class FDRData implements Serializable {
         lastGoodScoreItem = null;
         rankItems = new ArrayList<>();
 
+        int itemIdx = -1;
         for (T item : reportItems) {
-            if (!rankScore.equals(item.getScore(scoreShortName))) {
+            itemIdx++;
+            if (!rankScore.equals(item.getScore(scoreID))) {
                 // this is a new rank, calculate FDR
                 if ((nrTargets < 1) && !rankScore.equals(Double.NaN)) {
                     // only decoys until now -> set FDR to infinity
@@ -429,12 +524,15 @@ public class FDRData implements Serializable {
                 if (fdr <= fdrThreshold) {
                     lastGoodScoreItem = item;
                 }
+                if (cache != null) {
+                    cache.addCutCandidate(itemIdx, fdr);
+                }
 
                 for (FDRComputable rankItem : rankItems) {
                     rankItem.setFDR(fdr);
                 }
 
-                rankScore = item.getScore(scoreShortName);
+                rankScore = item.getScore(scoreID);
                 rankItems = new ArrayList<>();
             }
 
@@ -460,6 +558,9 @@ public class FDRData implements Serializable {
         if (fdr <= fdrThreshold) {
             lastGoodScoreItem = reportItems.get(reportItems.size()-1);
         }
+        if ((cache != null) && !reportItems.isEmpty()) {
+            cache.addCutCandidate(reportItems.size()-1, fdr);
+        }
 
         for (FDRComputable rankItem : rankItems) {
             rankItem.setFDR(fdr);
@@ -489,7 +590,7 @@ public class FDRData implements Serializable {
         nrItems = reportItems.size();
         if (lastGoodScoreItem != null) {
             scoreAtThreshold =
-                    lastGoodScoreItem.getScore(scoreShortName);
+                    lastGoodScoreItem.getScore(scoreID);
         }
 
         // at last calculate the q-values
@@ -0,0 +1,135 @@
+package de.mpc.pia.modeller.score;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * The immutable description of a score, i.e. its type, accession, name and
+ * cvLabel. The descriptors are shared by all {@link ScoreModel}s with the same
+ * description (flyweight), so the models only hold the reference and the score
+ * value.
+ *
+ * @author julianu
+ *
+ */
+final class ScoreDescriptor implements Serializable {
+
+    private static final long serialVersionUID = -2259405233519271474L;
+
+
+    /** all created descriptors */
+    private static final ConcurrentHashMap<ScoreDescriptor, ScoreDescriptor> descriptors =
+            new ConcurrentHashMap<>();
+
+
+    /** the type of the score, if known */
+    private final ScoreModelEnum type;
+
+    /** the cvAccession, if possible. only used for unknown type */
+    private final String cvAccession;
+
+    /** the cvName, if possible, or just a name. only used for unknown type */
+    private final String name;
+
+    /** cvLabel is use to describe the id of the ontology **/
+    private final String cvLabel;
+
+    /** the ID of the score (see {@link ScoreIDs}) plus 1, 0 if not yet resolved */
+    private transient volatile int scoreIDPlusOne;
+
+
+    private ScoreDescriptor(ScoreModelEnum type, String cvAccession, String name, String cvLabel) {
+        this.type = type;
+        this.cvAccession = cvAccession;
+        this.name = name;
+        this.cvLabel = cvLabel;
+        this.scoreIDPlusOne = 0;
+    }
+
+
+    /**
+     * Returns the shared descriptor with the given values.
+     *
+     * @param type
+     * @param cvAccession
+     * @param name
+     * @param cvLabel
+     * @return
+     */
+    static ScoreDescriptor getDescriptor(ScoreModelEnum type, String cvAccession, String name,
+            String cvLabel) {
+        ScoreDescriptor descriptor = new ScoreDescriptor(type, cvAccession, name, cvLabel);
+        ScoreDescriptor shared = descriptors.putIfAbsent(descriptor, descriptor);
+        return (shared != null) ? shared : descriptor;
+    }
+
+
+    ScoreModelEnum getType() {
+        return type;
+    }
+
+
+    String getCvAccession() {
+        return cvAccession;
+    }
+
+
+    String getName() {
+        return name;
+    }
+
+
+    String getCvLabel() {
+        return cvLabel;
+    }
+
+
+    /**
+     * Returns the ID of the described score, see {@link ScoreIDs}.
+     *
+     * @param model a model with this descriptor, used for resolving the ID
+     * @return
+     */
+    int getScoreID(ScoreModel model) {
+        int idPlusOne = scoreIDPlusOne;
+        if (idPlusOne == 0) {
+            // resolving is deterministic, so concurrent resolving is no problem
+            idPlusOne = ScoreIDs.resolveModelScoreID(model) + 1;
+            scoreIDPlusOne = idPlusOne;
+        }
+        return idPlusOne - 1;
+    }
+
+
+    /**
+     * Replaces deserialized descriptors by the shared ones.
+     */
+    private Object readResolve() {
+        return getDescriptor(type, cvAccession, name, cvLabel);
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+
+        ScoreDescriptor other = (ScoreDescriptor) obj;
+        return (type == other.type)
+                && Objects.equals(cvAccession, other.cvAccession)
+                && Objects.equals(name, other.name)
+                && Objects.equals(cvLabel, other.cvLabel);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, cvAccession, name, cvLabel);
+    }
+}
@@ -0,0 +1,165 @@
+package de.mpc.pia.modeller.score;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Assigns small integer IDs to the scores, so that scores can be looked up by
+ * an array index instead of comparing the descriptors of the
+ * {@link ScoreModelEnum}s for each access.
+ * <p>
+ * The known scores of the {@link ScoreModelEnum} get their ordinal as ID,
+ * unknown scores get the following IDs by their short name, in the order they
+ * are first requested. The IDs are only valid during the runtime of the JVM,
+ * so they must not be persisted.
+ *
+ * @author julianu
+ *
+ */
+public final class ScoreIDs {
+
+    /** the ID for no score, i.e. for a null descriptor */
+    public static final int NO_SCORE_ID = -1;
+
+    /** the known scores, their ordinals are their IDs */
+    private static final ScoreModelEnum[] knownScores = ScoreModelEnum.values();
+
+    /** the IDs of all already resolved descriptors */
+    private static final Map<String, Integer> descriptorIDs = new ConcurrentHashMap<>();
+
+    /** the short names of the unknown scores, index is the ID minus the number of known scores */
+    private static final List<String> unknownShortNames = new ArrayList<>();
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private ScoreIDs() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Returns the ID of the score given by any valid descriptor (i.e. name,
+     * shortName or cvAccession) of a known score or the short name of an
+     * unknown score.
+     *
+     * @param scoreDescriptor
+     * @return
+     */
+    public static int getScoreID(String scoreDescriptor) {
+        if (scoreDescriptor == null) {
+            return NO_SCORE_ID;
+        }
+
+        Integer id = descriptorIDs.get(scoreDescriptor);
+        if (id == null) {
+            id = descriptorIDs.computeIfAbsent(scoreDescriptor, ScoreIDs::resolveScoreID);
+        }
+        return id;
+    }
+
+
+    /**
+     * Returns the ID of the given score model, which is the same as the one of
+     * all descriptors, which find this model.
+     *
+     * @param scoreModel
+     * @return
+     */
+    public static int getScoreID(ScoreModel scoreModel) {
+        // the ID is cached in the shared descriptor of the model
+        return scoreModel.getScoreID();
+    }
+
+
+    /**
+     * Resolves the ID of the given score model, which is then cached by its
+     * {@link ScoreDescriptor}.
+     *
+     * @param scoreModel
+     * @return
+     */
+    static int resolveModelScoreID(ScoreModel scoreModel) {
+        ScoreModelEnum type = scoreModel.getType();
+        if (type == null) {
+            // the type was never resolved, such a model cannot be found by a descriptor
+            return NO_SCORE_ID;
+        } else if (!type.equals(ScoreModelEnum.UNKNOWN_SCORE)) {
+            return type.ordinal();
+        } else {
+            return getScoreID(scoreModel.getShortName());
+        }
+    }
+
+
+    /**
+     * Returns the ID of the given known score.
+     *
+     * @param scoreModelEnum
+     * @return
+     */
+    public static int getScoreID(ScoreModelEnum scoreModelEnum) {
+        if (scoreModelEnum.equals(ScoreModelEnum.UNKNOWN_SCORE)) {
+            return NO_SCORE_ID;
+        }
+        return scoreModelEnum.ordinal();
+    }
+
+
+    /**
+     * Returns the short name of the score with the given ID or null, if the ID
+     * is not assigned.
+     *
+     * @param scoreID
+     * @return
+     */
+    public static String getShortName(int scoreID) {
+        if ((scoreID < 0) || (scoreID == ScoreModelEnum.UNKNOWN_SCORE.ordinal())) {
+            return null;
+        } else if (scoreID < knownScores.length) {
+            return knownScores[scoreID].getShortName();
+        }
+
+        synchronized (unknownShortNames) {
+            int idx = scoreID - knownScores.length;
+            return (idx < unknownShortNames.size()) ? unknownShortNames.get(idx) : null;
+        }
+    }
+
+
+    /**
+     * Returns the number of currently assigned IDs, i.e. all IDs are smaller
+     * than this.
+     *
+     * @return
+     */
+    public static int getNrScoreIDs() {
+        synchronized (unknownShortNames) {
+            return knownScores.length + unknownShortNames.size();
+        }
+    }
+
+
+    /**
+     * Resolves the ID of a descriptor, which was not requested before.
+     */
+    private static Integer resolveScoreID(String scoreDescriptor) {
+        ScoreModelEnum model = ScoreModelEnum.getModelByDescription(scoreDescriptor);
+        if (!model.equals(ScoreModelEnum.UNKNOWN_SCORE)) {
+            return model.ordinal();
+        }
+
+        synchronized (unknownShortNames) {
+            int idx = unknownShortNames.indexOf(scoreDescriptor);
+            if (idx < 0) {
+                idx = unknownShortNames.size();
+                unknownShortNames.add(scoreDescriptor);
+            }
+            return knownScores.length + idx;
+        }
+    }
+}
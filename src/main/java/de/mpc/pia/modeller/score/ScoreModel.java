@@ -1,31 +1,30 @@
 package de.mpc.pia.modeller.score;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 /**
  * This class models all scores in PIA.
+ * <p>
+ * The description of the score (type, accession, name and cvLabel) is held by
+ * a shared {@link ScoreDescriptor}, the value as primitive double, so a model
+ * only needs the memory for these two fields.
  *
  * @author julian
  *
  */
 public class ScoreModel implements Serializable, Comparable<ScoreModel> {
 
-    private static final long serialVersionUID = 1697318886689764656L;
+    private static final long serialVersionUID = -6452911425426212117L;
 
-    /** the actual score value */
-    private Double score;
+    /** the shared description of the score */
+    private ScoreDescriptor descriptor;
 
-    /** the type of the score, if known */
-    private ScoreModelEnum type;
+    /** the actual score value, only valid if hasValue is set */
+    private double value;
 
-    /** the cvAccession, if possible. only used for unknown type */
-    private String cvAccession;
-
-    /** the cvName, if possible, or just a name. only used for unknown type */
-    private String name;
-
-    /** cvLabel is use to describe the id of the ontology **/
-    private String cvLabel;
+    /** whether the score value is set (i.e. not null) */
+    private boolean hasValue;
 
 
     /**
@@ -42,10 +41,8 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
             modelEnum =  ScoreModelEnum.getModelByDescription(name);
         }
 
-        this.score = score;
-        this.type = modelEnum;
-        this.cvAccession = cvAccession;
-        this.name = name;
+        setValue(score);
+        this.descriptor = ScoreDescriptor.getDescriptor(modelEnum, cvAccession, name, null);
     }
 
     /**
@@ -56,10 +53,8 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
      * @param cvLabel
      */
     public ScoreModel(Double score, String cvAccession, String name, String cvLabel) {
-        this.score = score;
-        this.cvAccession = cvAccession;
-        this.name = name;
-        this.cvLabel = cvLabel;
+        setValue(score);
+        this.descriptor = ScoreDescriptor.getDescriptor(null, cvAccession, name, cvLabel);
     }
 
     /**
@@ -71,10 +66,8 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
                     "type UNKNOWN_SCORE");
         }
 
-        this.score = score;
-        this.type = type;
-        this.cvAccession = null;
-        this.name = null;
+        setValue(score);
+        this.descriptor = ScoreDescriptor.getDescriptor(type, null, null, null);
     }
 
 
@@ -84,10 +77,10 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
      * @return
      */
     public String getName() {
-        if (!type.equals(ScoreModelEnum.UNKNOWN_SCORE)) {
-            return type.getName();
+        if (!descriptor.getType().equals(ScoreModelEnum.UNKNOWN_SCORE)) {
+            return descriptor.getType().getName();
         } else {
-            return name;
+            return descriptor.getName();
         }
     }
 
@@ -97,9 +90,10 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
      * @return
      */
     public String getShortName() {
-        if (!type.equals(ScoreModelEnum.UNKNOWN_SCORE)) {
-            return type.getShortName();
+        if (!descriptor.getType().equals(ScoreModelEnum.UNKNOWN_SCORE)) {
+            return descriptor.getType().getShortName();
         } else {
+            String cvAccession = descriptor.getCvAccession();
             if (cvAccession != null) {
                 if (cvAccession.contains(":")) {
                     String[] splitted = cvAccession.split(":");
@@ -121,19 +115,20 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
      * @return
      */
     public String getAccession() {
-        if (!type.equals(ScoreModelEnum.UNKNOWN_SCORE)) {
-            return type.getCvAccession();
+        if (!descriptor.getType().equals(ScoreModelEnum.UNKNOWN_SCORE)) {
+            return descriptor.getType().getCvAccession();
         } else {
-            return cvAccession;
+            return descriptor.getCvAccession();
         }
     }
 
     public String getCvLabel() {
-        return cvLabel;
+        return descriptor.getCvLabel();
     }
 
     public void setCvLabel(String cvLabel) {
-        this.cvLabel = cvLabel;
+        this.descriptor = ScoreDescriptor.getDescriptor(descriptor.getType(),
+                descriptor.getCvAccession(), descriptor.getName(), cvLabel);
     }
 
     /**
@@ -142,7 +137,7 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
      * @return
      */
     public Double getValue() {
-        return score;
+        return hasValue ? value : null;
     }
 
 
@@ -151,7 +146,17 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
      * @return
      */
     public ScoreModelEnum getType() {
-        return type;
+        return descriptor.getType();
+    }
+
+
+    /**
+     * Returns the ID of this score, see {@link ScoreIDs}.
+     *
+     * @return
+     */
+    int getScoreID() {
+        return descriptor.getScoreID(this);
     }
 
 
@@ -160,12 +165,13 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
      * @param score
      */
     public void setValue(Double score) {
-        this.score = score;
+        this.hasValue = (score != null);
+        this.value = hasValue ? score : 0.0;
     }
 
     @Override
     public final String toString() {
-        return getName() + ": " + score;
+        return getName() + ": " + getValue();
     }
 
     @Override
@@ -175,22 +181,25 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
 
         ScoreModel that = (ScoreModel) o;
 
-        if (!score.equals(that.score)) return false;
-        if (type != that.type) return false;
-        if (cvAccession != null ? !cvAccession.equals(that.cvAccession) : that.cvAccession != null) return false;
-        return name != null ? name.equals(that.name) : that.name == null;
+        // same as comparing the boxed values
+        if ((hasValue != that.hasValue)
+                || (Double.doubleToLongBits(value) != Double.doubleToLongBits(that.value))) return false;
+        if (descriptor == that.descriptor) return true;
+        if (descriptor.getType() != that.descriptor.getType()) return false;
+        if (!Objects.equals(descriptor.getCvAccession(), that.descriptor.getCvAccession())) return false;
+        return Objects.equals(descriptor.getName(), that.descriptor.getName());
     }
 
     @Override
     public int hashCode() {
-        int result = score.hashCode();
-        result = 31 * result + (name != null ? name.hashCode() : 0);
+        int result = Double.hashCode(value);
+        result = 31 * result + (descriptor.getName() != null ? descriptor.getName().hashCode() : 0);
         return result;
     }
 
     @Override
     public int compareTo(ScoreModel s) {
-        return compareTo(s, type.higherScoreBetter());
+        return compareTo(s, descriptor.getType().higherScoreBetter());
     }
 
 
@@ -205,35 +214,30 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
      */
     public int compareTo(ScoreModel s, Boolean higherScoreBetter) {
         int compRet;
-        if ((s == null) || !type.equals(s.type)) {
+        if ((s == null) || !getType().equals(s.getType())) {
             // s.type is null or not this.type, therefore this one is better
             compRet = -1;
         } else {
-            if (((this.score == null) || this.score.equals(Double.NaN))
-                    && ((s.score == null) || s.score.equals(Double.NaN))) {
+            boolean valid = hasValue && !Double.isNaN(value);
+            boolean sValid = s.hasValue && !Double.isNaN(s.value);
+
+            if (!valid && !sValid) {
                 // both are invalid
-                if ((this.score == null) && (s.score == null)) {
+                if (!hasValue && !s.hasValue) {
                     // both null
                     compRet = 0;
-                } else if (this.score == null) {
+                } else if (!hasValue) {
                     // this.score == null AND s.score == NaN
                     compRet = 1;
-                } else if (s.score == null) {
+                } else if (!s.hasValue) {
                     // this.score ==  NaN, s.score == null
                     compRet = -1;
                 } else {
                     // both NaN
                     compRet = 0;
                 }
-            } else if (((this.score == null) || this.score.equals(Double.NaN))
-                    && ((s.score != null) && !s.score.equals(Double.NaN))) {
-                    // s.score is a valid double
-                    // this.score is null or NaN, which is always worse!
-                compRet = 1;
-            } else if (((this.score != null) && !this.score.equals(Double.NaN))
-                    && ((s.score == null) || s.score.equals(Double.NaN))) {
-                    // s.score is a valid double
-                    // this.score is null or NaN, which is always worse!
+            } else if (!valid || !sValid) {
+                // one score is a valid double, the other is null or NaN, which is always worse!
                 compRet = 1;
             } else {
                 // both are valid doubles
@@ -246,9 +250,9 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
                     factor = -1;
                 }
 
-                if (this.score < s.score) {
+                if (value < s.value) {
                     compRet = factor;
-                } else if (this.score > s.score) {
+                } else if (value > s.value) {
                     compRet = -factor;
                 } else {
                     compRet = 0;
@@ -275,7 +279,7 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
     public static Integer compareScoreModels(ScoreModel score1, ScoreModel score2) {
         if ((score1 != null)
                 && (score2 != null)
-                && score1.type.equals(score2.type)) {
+                && score1.getType().equals(score2.getType())) {
             return score1.compareTo(score2);
         }
 
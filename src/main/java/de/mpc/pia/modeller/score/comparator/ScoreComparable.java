@@ -1,5 +1,6 @@
 package de.mpc.pia.modeller.score.comparator;
 
+import de.mpc.pia.modeller.score.ScoreIDs;
 import de.mpc.pia.modeller.score.ScoreModel;
 
 public interface ScoreComparable {
@@ -10,4 +11,15 @@ public interface ScoreComparable {
      * @return
      */
     ScoreModel getCompareScore(String scoreShortname);
+
+
+    /**
+     * returns the score, with which the comparison will be performed, given by
+     * its ID (see {@link ScoreIDs}).
+     * @param scoreID
+     * @return
+     */
+    default ScoreModel getCompareScore(int scoreID) {
+        return getCompareScore(ScoreIDs.getShortName(scoreID));
+    }
 }
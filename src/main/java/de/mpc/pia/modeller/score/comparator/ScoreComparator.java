@@ -1,9 +1,14 @@
 package de.mpc.pia.modeller.score.comparator;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Comparator;
+import java.util.List;
 
+import de.mpc.pia.modeller.score.ScoreIDs;
 import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
 
 
 public class ScoreComparator<T extends ScoreComparable> implements Comparator<T>, Serializable {
@@ -14,6 +19,9 @@ public class ScoreComparator<T extends ScoreComparable> implements Comparator<T>
     /** the index of the compared score model of the spectrum */
     private String scoreModelName;
 
+    /** the ID of the compared score model, resolved from the name (IDs are not persistent) */
+    private transient int scoreModelID;
+
     /** whether a higher score is better or not, if not set, the {@link ScoreComparable} must decide */
     private Boolean higherScoreBetter;
 
@@ -21,6 +29,7 @@ public class ScoreComparator<T extends ScoreComparable> implements Comparator<T>
     public ScoreComparator() {
         super();
         this.scoreModelName = "";
+        this.scoreModelID = ScoreIDs.getScoreID(scoreModelName);
         this.higherScoreBetter = null;
     }
 
@@ -28,6 +37,7 @@ public class ScoreComparator<T extends ScoreComparable> implements Comparator<T>
     public ScoreComparator(String modelName) {
         super();
         this.scoreModelName = modelName;
+        this.scoreModelID = ScoreIDs.getScoreID(modelName);
         this.higherScoreBetter = null;
     }
 
@@ -43,6 +53,16 @@ public class ScoreComparator<T extends ScoreComparable> implements Comparator<T>
      */
     public void setComparedScoreModel(String modelName) {
         this.scoreModelName = modelName;
+        this.scoreModelID = ScoreIDs.getScoreID(modelName);
+    }
+
+
+    /**
+     * Resolves the score ID again after deserialization.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        scoreModelID = ScoreIDs.getScoreID(scoreModelName);
     }
 
 
@@ -52,11 +72,11 @@ public class ScoreComparator<T extends ScoreComparable> implements Comparator<T>
         ScoreModel score2 = null;
 
         if (o1 != null) {
-            score1 = o1.getCompareScore(scoreModelName);
+            score1 = o1.getCompareScore(scoreModelID);
         }
 
         if (o2 != null) {
-            score2 = o2.getCompareScore(scoreModelName);
+            score2 = o2.getCompareScore(scoreModelID);
         }
 
         int compRet;
@@ -82,6 +102,33 @@ public class ScoreComparator<T extends ScoreComparable> implements Comparator<T>
         return compRet;
     }
 
+    /**
+     * Whether this comparator is a total order on the given items, i.e. all
+     * items have a valid value for the compared score and all these scores
+     * have the same type. Only then, every stable sorting algorithm sorts the
+     * items into the same order.
+     *
+     * @param items
+     * @return
+     */
+    public boolean isTotalOrderOn(List<? extends T> items) {
+        ScoreModelEnum type = null;
+        for (T item : items) {
+            ScoreModel score = (item == null) ? null : item.getCompareScore(scoreModelID);
+            if ((score == null) || (score.getValue() == null) || score.getValue().isNaN()) {
+                return false;
+            }
+
+            if (type == null) {
+                type = score.getType();
+            } else if (!type.equals(score.getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
     @Override
     public String toString() {
         return scoreModelName + ':' + higherScoreBetter;
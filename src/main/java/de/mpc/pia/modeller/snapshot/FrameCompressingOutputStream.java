@@ -0,0 +1,199 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+
+
+/**
+ * Compresses the written data in frames of {@link PIAModellerSnapshot#FRAME_SIZE}
+ * bytes, which are compressed concurrently (Zstandard) and written in their
+ * original order. Each frame is written as its uncompressed length, its
+ * compressed length and the compressed bytes; a frame with uncompressed
+ * length 0 ends the stream.
+ *
+ * @author julianu
+ *
+ */
+class FrameCompressingOutputStream extends OutputStream {
+
+    /** the stream of the compressed frames */
+    private final DataOutputStream out;
+
+    /** the compressing threads */
+    private final ExecutorService executor;
+
+    /** the maximal number of frames in compression */
+    private final int maxPendingFrames;
+
+    /** the frames in compression, in their order */
+    private final Deque<Future<byte[]>> pendingFrames;
+
+    /** the currently filled frame */
+    private byte[] frame;
+
+    /** the number of bytes in the current frame */
+    private int frameLength;
+
+    /** whether the stream is closed */
+    private boolean closed;
+
+
+    /**
+     * Creates the compressing stream.
+     *
+     * @param out the stream of the compressed frames, closed with this stream
+     * @param nrThreads number of compressing threads
+     */
+    FrameCompressingOutputStream(OutputStream out, int nrThreads) {
+        this.out = new DataOutputStream(out);
+        this.executor = Executors.newFixedThreadPool(nrThreads, runnable -> {
+            Thread thread = new Thread(runnable, "PIA-SnapshotCompressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxPendingFrames = 2 * nrThreads;
+        this.pendingFrames = new ArrayDeque<>();
+        this.frame = new byte[PIAModellerSnapshot.FRAME_SIZE];
+        this.frameLength = 0;
+        this.closed = false;
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+        if (frameLength == frame.length) {
+            submitFrame();
+        }
+        frame[frameLength++] = (byte) b;
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int written = 0;
+        while (written < len) {
+            if (frameLength == frame.length) {
+                submitFrame();
+            }
+
+            int copied = Math.min(len - written, frame.length - frameLength);
+            System.arraycopy(b, off + written, frame, frameLength, copied);
+            frameLength += copied;
+            written += copied;
+        }
+    }
+
+
+    /**
+     * Submits the current frame for compression and writes out finished
+     * frames, if too many are pending.
+     *
+     * @throws IOException
+     */
+    private void submitFrame() throws IOException {
+        if (frameLength == 0) {
+            return;
+        }
+
+        byte[] rawFrame = frame;
+        int rawLength = frameLength;
+        pendingFrames.add(executor.submit(() -> compressFrame(rawFrame, rawLength)));
+
+        frame = new byte[PIAModellerSnapshot.FRAME_SIZE];
+        frameLength = 0;
+
+        while (pendingFrames.size() >= maxPendingFrames) {
+            writePendingFrame();
+        }
+    }
+
+
+    /**
+     * Compresses the frame, returning it with its header.
+     */
+    private static byte[] compressFrame(byte[] rawFrame, int rawLength) {
+        ZstdCompressor compressor = new ZstdCompressor();
+        int headerLength = 2 * Integer.BYTES;
+        byte[] compressed = new byte[headerLength + compressor.maxCompressedLength(rawLength)];
+
+        int compressedLength = compressor.compress(rawFrame, 0, rawLength,
+                compressed, headerLength, compressed.length - headerLength);
+
+        writeInt(compressed, 0, rawLength);
+        writeInt(compressed, Integer.BYTES, compressedLength);
+        return Arrays.copyOf(compressed, headerLength + compressedLength);
+    }
+
+
+    /**
+     * Writes the int in big-endian order into the array.
+     */
+    private static void writeInt(byte[] array, int offset, int value) {
+        array[offset] = (byte) (value >>> 24);
+        array[offset + 1] = (byte) (value >>> 16);
+        array[offset + 2] = (byte) (value >>> 8);
+        array[offset + 3] = (byte) value;
+    }
+
+
+    /**
+     * Waits for the oldest pending frame and writes it.
+     *
+     * @throws IOException
+     */
+    private void writePendingFrame() throws IOException {
+        try {
+            out.write(pendingFrames.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing the snapshot");
+        } catch (ExecutionException e) {
+            throw new IOException("Error while compressing the snapshot", e.getCause());
+        }
+    }
+
+
+    /**
+     * Writes all complete frames, the current frame is only written on
+     * closing.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pendingFrames.isEmpty()) {
+            writePendingFrame();
+        }
+        out.flush();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            submitFrame();
+            flush();
+
+            // the end of the stream
+            out.writeInt(0);
+            out.writeInt(0);
+            out.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
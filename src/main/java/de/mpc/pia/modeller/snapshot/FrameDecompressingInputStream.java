@@ -0,0 +1,165 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.airlift.compress.zstd.ZstdDecompressor;
+
+
+/**
+ * Reads the frames written by the {@link FrameCompressingOutputStream} from a
+ * stream. The following frames are decompressed concurrently while the
+ * current one is read, so only a few frames are held in memory.
+ *
+ * @author julianu
+ *
+ */
+class FrameDecompressingInputStream extends InputStream {
+
+    /** the stream of the compressed frames */
+    private final DataInputStream in;
+
+    /** the decompressing threads */
+    private final ExecutorService executor;
+
+    /** the maximal number of frames in decompression */
+    private final int maxPendingFrames;
+
+    /** the frames in decompression, in their order */
+    private final Deque<Future<byte[]>> pendingFrames;
+
+    /** the current frame */
+    private byte[] frame;
+
+    /** the read position in the current frame */
+    private int framePosition;
+
+    /** whether the last frame was reached in the stream */
+    private boolean lastFrameSubmitted;
+
+
+    /**
+     * Creates the stream over the given stream, positioned at the first
+     * frame.
+     *
+     * @param in the stream of the compressed frames, closed with this stream
+     * @param nrThreads number of decompressing threads
+     */
+    FrameDecompressingInputStream(InputStream in, int nrThreads) {
+        this.in = new DataInputStream(in);
+        this.executor = Executors.newFixedThreadPool(nrThreads, runnable -> {
+            Thread thread = new Thread(runnable, "PIA-SnapshotDecompressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxPendingFrames = 2 * nrThreads;
+        this.pendingFrames = new ArrayDeque<>();
+        this.frame = new byte[0];
+        this.framePosition = 0;
+        this.lastFrameSubmitted = false;
+    }
+
+
+    /**
+     * Submits the next frames for decompression, until enough are pending.
+     *
+     * @throws IOException
+     */
+    private void submitFrames() throws IOException {
+        try {
+            while (!lastFrameSubmitted && (pendingFrames.size() < maxPendingFrames)) {
+                int rawLength = in.readInt();
+                int compressedLength = in.readInt();
+                if (rawLength == 0) {
+                    lastFrameSubmitted = true;
+                } else {
+                    byte[] compressed = new byte[compressedLength];
+                    in.readFully(compressed);
+                    pendingFrames.add(executor.submit(() -> decompressFrame(compressed, rawLength)));
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Unexpected end of the snapshot", e);
+        }
+    }
+
+
+    /**
+     * Decompresses the frame.
+     */
+    private static byte[] decompressFrame(byte[] compressed, int rawLength) {
+        byte[] rawFrame = new byte[rawLength];
+        new ZstdDecompressor().decompress(compressed, 0, compressed.length,
+                rawFrame, 0, rawLength);
+        return rawFrame;
+    }
+
+
+    /**
+     * Makes sure, that the current frame has data left, if the stream has not
+     * ended.
+     *
+     * @return false, if the stream ended
+     * @throws IOException
+     */
+    private boolean nextFrameIfNeeded() throws IOException {
+        while (framePosition >= frame.length) {
+            submitFrames();
+            if (pendingFrames.isEmpty()) {
+                return false;
+            }
+
+            try {
+                frame = pendingFrames.poll().get();
+                framePosition = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while decompressing the snapshot");
+            } catch (ExecutionException e) {
+                throw new IOException("Error while decompressing the snapshot", e.getCause());
+            }
+        }
+        return true;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        if (!nextFrameIfNeeded()) {
+            return -1;
+        }
+        return frame[framePosition++] & 0xff;
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextFrameIfNeeded()) {
+            return -1;
+        }
+
+        int copied = Math.min(len, frame.length - framePosition);
+        System.arraycopy(frame, framePosition, b, off, copied);
+        framePosition += copied;
+        return copied;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        in.close();
+    }
+}
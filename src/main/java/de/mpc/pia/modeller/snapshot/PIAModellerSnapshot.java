@@ -0,0 +1,282 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.mpc.pia.intermediate.PIAIntermediateData;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryFormat;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryHandler;
+import de.mpc.pia.intermediate.binaryhandler.PIABinaryWriter;
+import de.mpc.pia.modeller.PIAModeller;
+
+
+/**
+ * Writes and reads snapshots of a {@link PIAModeller}, i.e. the intermediate
+ * data together with the state of the PSM, peptide and protein modellers.
+ * <p>
+ * A snapshot starts with the {@link #MAGIC_BYTES} and the
+ * {@link #SCHEMA_VERSION}, followed by the content in concurrently compressed
+ * frames (see {@link FrameCompressingOutputStream}). The content consists of
+ * the length of the intermediate data and the data in the binary intermediate
+ * format, followed by the state of the modellers. The modellers write their
+ * state explicitly, field by field (see {@link SnapshotOutput}): objects of
+ * the intermediate data are written as their IDs and the report items into
+ * shared-reference tables, so nothing is serialized recursively. No Java
+ * serialization is used, so changes of the classes do not invalidate
+ * snapshots, as long as the written fields stay the same. Snapshots are
+ * written and read as streams, the intermediate data is buffered in a
+ * temporary file, so snapshots may exceed 2 GB.
+ * <p>
+ * Snapshots of another schema version are rejected.
+ *
+ * @author julianu
+ *
+ */
+public final class PIAModellerSnapshot {
+
+    /** logger for this class */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** the magic bytes at the start of each snapshot */
+    static final byte[] MAGIC_BYTES = {'P', 'I', 'A', 'S'};
+
+    /** the version of the snapshot schema, increase on any change of the written fields */
+    public static final int SCHEMA_VERSION = 3;
+
+    /** the uncompressed size of a frame */
+    static final int FRAME_SIZE = 4 * 1024 * 1024;
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private PIAModellerSnapshot() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Writes the snapshot of the modeller and its intermediate data into the
+     * given file, using all available processors for the compression.
+     *
+     * @param piaModeller
+     * @param data the intermediate data of the modeller, null only for a modeller without data
+     * @param file
+     * @throws IOException
+     */
+    public static void write(PIAModeller piaModeller, PIAIntermediateData data, File file) throws IOException {
+        write(piaModeller, data, file, 0);
+    }
+
+
+    /**
+     * Writes the snapshot of the modeller and its intermediate data into the
+     * given file.
+     *
+     * @param piaModeller
+     * @param data the intermediate data of the modeller, null only for a modeller without data
+     * @param file
+     * @param nrThreads number of compressing threads, 0 for all available processors
+     * @throws IOException
+     */
+    public static void write(PIAModeller piaModeller, PIAIntermediateData data, File file, int nrThreads)
+            throws IOException {
+        long start = System.currentTimeMillis();
+
+        try (OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(file))) {
+            fileOut.write(MAGIC_BYTES);
+            new DataOutputStream(fileOut).writeInt(SCHEMA_VERSION);
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new FrameCompressingOutputStream(fileOut, getUsedNrThreads(nrThreads)))) {
+                if (data != null) {
+                    writeIntermediateData(data, out);
+                } else {
+                    out.writeLong(0);
+                }
+
+                piaModeller.writeSnapshot(new SnapshotOutput(out, data));
+            }
+        }
+
+        LOGGER.info("Snapshot written to {} in {} ms", file.getAbsolutePath(), System.currentTimeMillis() - start);
+    }
+
+
+    /**
+     * Reads the modeller from the given snapshot file, using all available
+     * processors for the decompression.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static PIAModeller read(File file) throws IOException {
+        return read(file, 0);
+    }
+
+
+    /**
+     * Reads the modeller from the given snapshot file.
+     *
+     * @param file
+     * @param nrThreads number of decompressing threads, 0 for all available processors
+     * @return
+     * @throws IOException
+     */
+    public static PIAModeller read(File file, int nrThreads) throws IOException {
+        long start = System.currentTimeMillis();
+        PIAModeller piaModeller;
+
+        try (DataInputStream fileIn = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magicBytes = new byte[MAGIC_BYTES.length];
+            if ((fileIn.readNBytes(magicBytes, 0, magicBytes.length) < magicBytes.length)
+                    || !Arrays.equals(magicBytes, MAGIC_BYTES)) {
+                throw new IOException(file.getAbsolutePath() + " is no PIA snapshot");
+            }
+
+            int version;
+            try {
+                version = fileIn.readInt();
+            } catch (EOFException e) {
+                throw new IOException(file.getAbsolutePath() + " is no PIA snapshot", e);
+            }
+            if (version != SCHEMA_VERSION) {
+                throw new IOException(getIncompatibleMessage(file) + " (schema version " + version
+                        + ", supported is " + SCHEMA_VERSION + ")");
+            }
+
+            try (DataInputStream in = new DataInputStream(
+                    new FrameDecompressingInputStream(fileIn, getUsedNrThreads(nrThreads)))) {
+                PIAIntermediateData data = readIntermediateData(in);
+
+                piaModeller = new PIAModeller(new SnapshotInput(in, data));
+            }
+        }
+
+        LOGGER.info("Snapshot read from {} in {} ms", file.getAbsolutePath(), System.currentTimeMillis() - start);
+        return piaModeller;
+    }
+
+
+    /**
+     * The message for snapshots, which cannot be read by this version.
+     */
+    private static String getIncompatibleMessage(File file) {
+        return "Snapshot " + file.getAbsolutePath() + " was written by an incompatible version of PIA";
+    }
+
+
+    /**
+     * Writes the length of the intermediate data and the data in the binary
+     * intermediate format into the snapshot content. The data is buffered in
+     * a temporary file, as its length is written first.
+     *
+     * @param data
+     * @param out
+     * @throws IOException
+     */
+    private static void writeIntermediateData(PIAIntermediateData data, DataOutputStream out)
+            throws IOException {
+        File intermediateFile = File.createTempFile("pia_snapshot", PIABinaryFormat.FILE_SUFFIX);
+        try {
+            new PIABinaryWriter(data).write(intermediateFile);
+
+            out.writeLong(intermediateFile.length());
+            Files.copy(intermediateFile.toPath(), out);
+        } finally {
+            Files.deleteIfExists(intermediateFile.toPath());
+        }
+    }
+
+
+    /**
+     * Reads the intermediate data from the snapshot content. The data is
+     * copied into a temporary file, which is removed after all sections are
+     * read.
+     *
+     * @param in
+     * @return the intermediate data or null, if the snapshot has none
+     * @throws IOException
+     */
+    private static PIAIntermediateData readIntermediateData(DataInputStream in) throws IOException {
+        long length = in.readLong();
+        if (length == 0) {
+            return null;
+        }
+
+        File intermediateFile = File.createTempFile("pia_snapshot", PIABinaryFormat.FILE_SUFFIX);
+        try {
+            try (OutputStream out = new FileOutputStream(intermediateFile)) {
+                byte[] buffer = new byte[64 * 1024];
+                long remaining = length;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of the intermediate data in the snapshot");
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+
+            PIABinaryHandler handler = new PIABinaryHandler(intermediateFile.getAbsolutePath());
+            handler.parse(new Long[] {0L});
+            return handler;
+        } finally {
+            if (!intermediateFile.delete()) {
+                // e.g. still mapped on some platforms
+                intermediateFile.deleteOnExit();
+            }
+        }
+    }
+
+
+    /**
+     * Checks whether the given file is a snapshot, i.e. starts with the magic
+     * bytes.
+     *
+     * @param file
+     * @return
+     */
+    public static boolean isSnapshotFile(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] header = new byte[MAGIC_BYTES.length];
+            return (in.readNBytes(header, 0, header.length) == header.length)
+                    && Arrays.equals(header, MAGIC_BYTES);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Gets the number of actually used threads, i.e. all available processors,
+     * if the number of threads is not set.
+     */
+    private static int getUsedNrThreads(int nrThreads) {
+        if (nrThreads > 0) {
+            return nrThreads;
+        } else {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+}
@@ -0,0 +1,561 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.PIAIntermediateData;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.inference.AbstractProteinInference;
+import de.mpc.pia.modeller.protein.inference.ProteinInferenceFactory;
+import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
+import de.mpc.pia.modeller.protein.scoring.ProteinScoringFactory;
+import de.mpc.pia.modeller.psm.PSMReportItem;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.report.filter.AbstractFilter;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.RegisteredFilters;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.report.filter.impl.PSMTopIdentificationFilter;
+import de.mpc.pia.modeller.report.filter.impl.PeptideScoreFilter;
+import de.mpc.pia.modeller.score.FDRComputable;
+import de.mpc.pia.modeller.score.FDRData;
+import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
+
+
+/**
+ * Reads the state of the modellers from the content of a
+ * {@link PIAModellerSnapshot}, in the order it was written by the
+ * {@link SnapshotOutput}.
+ *
+ * @author julianu
+ *
+ */
+public final class SnapshotInput {
+
+    /** the input of the snapshot content */
+    private final DataInputStream in;
+
+    /** the intermediate data, which is referenced by the modellers */
+    private final PIAIntermediateData data;
+
+    /** the table of the report PSMs, mapped by their IDs */
+    private final Map<Long, ReportPSM> reportPSMs;
+
+    /** the already read PSM sets, by their index */
+    private final List<ReportPSMSet> psmSets;
+
+    /** the already read report peptides, by their index */
+    private final List<ReportPeptide> peptides;
+
+    /** the read report proteins, by their index */
+    private final List<ReportProtein> proteins;
+
+
+    /**
+     * Reads a single value from the snapshot.
+     *
+     * @param <T>
+     */
+    @FunctionalInterface
+    public interface ValueReader<T> {
+        T read() throws IOException;
+    }
+
+
+    /**
+     * Creates the input for the given intermediate data.
+     *
+     * @param in
+     * @param data the intermediate data, null if the snapshot has none
+     */
+    SnapshotInput(DataInputStream in, PIAIntermediateData data) {
+        this.in = in;
+        this.data = data;
+        this.reportPSMs = new HashMap<>();
+        this.psmSets = new ArrayList<>();
+        this.peptides = new ArrayList<>();
+        this.proteins = new ArrayList<>();
+    }
+
+
+    /**
+     * Returns the intermediate data of the snapshot, null if it has none.
+     */
+    public PIAIntermediateData getIntermediateData() {
+        return data;
+    }
+
+
+    public boolean readBoolean() throws IOException {
+        return in.readBoolean();
+    }
+
+
+    public int readInt() throws IOException {
+        return in.readInt();
+    }
+
+
+    public long readLong() throws IOException {
+        return in.readLong();
+    }
+
+
+    public double readDouble() throws IOException {
+        return in.readDouble();
+    }
+
+
+    public String readString() throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    public Boolean readNullableBoolean() throws IOException {
+        return in.readBoolean() ? in.readBoolean() : null;
+    }
+
+
+    public Integer readNullableInteger() throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+
+    public Long readNullableLong() throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+
+    public Double readNullableDouble() throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+
+    /**
+     * Reads the value of a score, written by
+     * {@link SnapshotOutput#writeScoreValue(de.mpc.pia.modeller.score.ScoreModel)},
+     * and passes it to the scoreSetter, if the score was present.
+     */
+    private void readScoreValue(Consumer<Double> scoreSetter) throws IOException {
+        if (in.readBoolean()) {
+            scoreSetter.accept(readNullableDouble());
+        }
+    }
+
+
+    /**
+     * Reads a list written by
+     * {@link SnapshotOutput#writeCollection(java.util.Collection, SnapshotOutput.ValueWriter)}.
+     *
+     * @return the list or null, if null was written
+     */
+    public <T> List<T> readList(ValueReader<T> elementReader) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+
+        List<T> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(elementReader.read());
+        }
+        return list;
+    }
+
+
+    /**
+     * Reads a set written by
+     * {@link SnapshotOutput#writeCollection(java.util.Collection, SnapshotOutput.ValueWriter)}.
+     *
+     * @return the set or null, if null was written
+     */
+    public <T> Set<T> readSet(ValueReader<T> elementReader) throws IOException {
+        List<T> list = readList(elementReader);
+        return (list != null) ? new HashSet<>(list) : null;
+    }
+
+
+    /**
+     * Reads a map written by
+     * {@link SnapshotOutput#writeMap(Map, SnapshotOutput.ValueWriter, SnapshotOutput.ValueWriter)}.
+     *
+     * @return the map or null, if null was written
+     */
+    public <K, V> Map<K, V> readMap(ValueReader<K> keyReader, ValueReader<V> valueReader) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+
+        Map<K, V> map = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            K key = keyReader.read();
+            map.put(key, valueReader.read());
+        }
+        return map;
+    }
+
+
+    public PeptideSpectrumMatch readPSMReference() throws IOException {
+        long id = in.readLong();
+        PeptideSpectrumMatch psm = (data != null) ? data.getPSMs().get(id) : null;
+        if (psm == null) {
+            throw new IOException("The PSM " + id + " is not in the intermediate data of the snapshot");
+        }
+        return psm;
+    }
+
+
+    public Peptide readPeptideReference() throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        long id = in.readLong();
+        Peptide peptide = (data != null) ? data.getPeptides().get(id) : null;
+        if (peptide == null) {
+            throw new IOException("The peptide " + id + " is not in the intermediate data of the snapshot");
+        }
+        return peptide;
+    }
+
+
+    public Accession readAccessionReference() throws IOException {
+        long id = in.readLong();
+        Accession accession = (data != null) ? data.getAccessions().get(id) : null;
+        if (accession == null) {
+            throw new IOException("The accession " + id + " is not in the intermediate data of the snapshot");
+        }
+        return accession;
+    }
+
+
+    /**
+     * Reads the table of all report PSMs.
+     *
+     * @return the PSMs, mapped by their IDs
+     */
+    public Map<Long, ReportPSM> readReportPSMTable() throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            ReportPSM psm = new ReportPSM(in.readLong(), readPSMReference());
+
+            List<Accession> accessions = readList(this::readAccessionReference);
+            if (accessions != null) {
+                accessions.forEach(psm::addAccession);
+            }
+            psm.setIsDecoy(in.readBoolean());
+            psm.setIsFDRGood(in.readBoolean());
+            psm.setRank(readNullableLong());
+            psm.setFDR(in.readDouble());
+            setQValue(psm, in.readDouble());
+            readScoreValue(psm::setFDRScore);
+
+            Map<String, Integer> ranks = readMap(this::readString, this::readNullableInteger);
+            if (ranks != null) {
+                ranks.forEach(psm::setIdentificationRank);
+            }
+
+            reportPSMs.put(psm.getId(), psm);
+        }
+
+        return new HashMap<>(reportPSMs);
+    }
+
+
+    public ReportPSM readReportPSM() throws IOException {
+        long id = in.readLong();
+        ReportPSM psm = reportPSMs.get(id);
+        if (psm == null) {
+            throw new IOException("The report PSM " + id + " is not in the PSM table of the snapshot");
+        }
+        return psm;
+    }
+
+
+    public ReportPSMSet readReportPSMSet() throws IOException {
+        int index = in.readInt();
+        if (index >= 0) {
+            return getByIndex(psmSets, index, "PSM set");
+        }
+
+        Map<String, Boolean> psmSetSettings = readMap(this::readString, this::readBoolean);
+        List<ReportPSM> psms = readList(this::readReportPSM);
+        ReportPSMSet psmSet = new ReportPSMSet(psms, psmSetSettings);
+
+        readScoreValue(averageFDRScore -> {
+            psmSet.calculateAverageFDRScore();
+            psmSet.getAverageFDRScore().setValue(averageFDRScore);
+        });
+        readScoreValue(psmSet::setFDRScore);
+
+        psmSet.setFDR(in.readDouble());
+        psmSet.setRank(readNullableLong());
+        psmSet.setIsDecoy(in.readBoolean());
+        psmSet.setIsFDRGood(in.readBoolean());
+        setQValue(psmSet, in.readDouble());
+
+        psmSets.add(psmSet);
+        return psmSet;
+    }
+
+
+    public PSMReportItem readPSMReportItem() throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case SnapshotOutput.ITEM_PSM:
+            return readReportPSM();
+
+        case SnapshotOutput.ITEM_PSM_SET:
+            return readReportPSMSet();
+
+        default:
+            throw new IOException("Unknown type of PSM item in the snapshot: " + type);
+        }
+    }
+
+
+    public ReportPeptide readReportPeptide() throws IOException {
+        int index = in.readInt();
+        if (index >= 0) {
+            return getByIndex(peptides, index, "peptide");
+        }
+
+        String sequence = readString();
+        String stringID = readString();
+        ReportPeptide peptide = new ReportPeptide(sequence, stringID, readPeptideReference());
+        peptide.setRank(readNullableLong());
+
+        List<PSMReportItem> psms = readList(this::readPSMReportItem);
+        if (psms != null) {
+            psms.forEach(peptide::addPSM);
+        }
+        List<Long> nonScoringPSMIDs = readList(this::readLong);
+        if (nonScoringPSMIDs != null) {
+            nonScoringPSMIDs.forEach(peptide::addToNonScoringPSMs);
+        }
+        List<String> nonScoringSpectraIDKeys = readList(this::readString);
+        if (nonScoringSpectraIDKeys != null) {
+            nonScoringSpectraIDKeys.forEach(peptide::addToNonScoringSpectra);
+        }
+
+        peptide.setIsDecoy(in.readBoolean());
+        peptide.setFDR(in.readDouble());
+        setQValue(peptide, in.readDouble());
+        peptide.setIsFDRGood(in.readBoolean());
+        readScoreValue(peptide::setFDRScore);
+
+        peptides.add(peptide);
+        return peptide;
+    }
+
+
+    /**
+     * Reads the table of the report proteins and their subset proteins.
+     */
+    public void readReportProteinTable() throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            ReportProtein protein = new ReportProtein(in.readLong());
+
+            List<Accession> accessions = readList(this::readAccessionReference);
+            if (accessions != null) {
+                accessions.forEach(protein::addAccession);
+                for (Accession accession : accessions) {
+                    protein.setAccessionDecoyState(accession.getAccession(), readNullableBoolean());
+                }
+            }
+
+            List<ReportPeptide> proteinPeptides = readList(this::readReportPeptide);
+            if (proteinPeptides != null) {
+                proteinPeptides.forEach(protein::addPeptide);
+            }
+
+            protein.setRank(readNullableLong());
+            protein.setScore(readNullableDouble());
+            protein.setIsDecoy(in.readBoolean());
+            protein.setFDR(in.readDouble());
+            protein.setQValue(in.readDouble());
+            protein.setIsFDRGood(in.readBoolean());
+
+            proteins.add(protein);
+        }
+
+        for (ReportProtein protein : proteins) {
+            List<ReportProtein> subSets = readList(this::readReportProtein);
+            if (subSets != null) {
+                subSets.forEach(protein::addToSubsets);
+            }
+        }
+    }
+
+
+    public ReportProtein readReportProtein() throws IOException {
+        return getByIndex(proteins, in.readInt(), "protein");
+    }
+
+
+    public FDRData readFDRData() throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        String strategy = readString();
+        String pattern = readString();
+        Double threshold = readNullableDouble();
+        FDRData fdrData = new FDRData((strategy != null) ? DecoyStrategy.valueOf(strategy) : null,
+                pattern, threshold);
+        fdrData.setScoreShortName(readString());
+
+        Integer nrItems = readNullableInteger();
+        Integer nrTargets = readNullableInteger();
+        Integer nrDecoys = readNullableInteger();
+        Integer nrFDRGoodTargets = readNullableInteger();
+        Integer nrFDRGoodDecoys = readNullableInteger();
+        Double scoreAtThreshold = readNullableDouble();
+        Double artificialDecoyFDR = readNullableDouble();
+        if (nrItems != null) {
+            fdrData.setCalculatedResults(nrItems, nrTargets, nrDecoys, nrFDRGoodTargets, nrFDRGoodDecoys,
+                    scoreAtThreshold, artificialDecoyFDR);
+        }
+
+        return fdrData;
+    }
+
+
+    public AbstractFilter readFilter() throws IOException {
+        byte type = in.readByte();
+        String name = readString();
+        FilterComparator comparator = FilterComparator.valueOf(readString());
+        boolean negate = in.readBoolean();
+
+        Object value;
+        byte valueType = in.readByte();
+        switch (valueType) {
+        case SnapshotOutput.VALUE_NUMBER:
+            value = in.readDouble();
+            break;
+
+        case SnapshotOutput.VALUE_BOOLEAN:
+            value = in.readBoolean();
+            break;
+
+        case SnapshotOutput.VALUE_STRING:
+            value = readString();
+            break;
+
+        default:
+            throw new IOException("Unknown type of filter value in the snapshot: " + valueType);
+        }
+
+        try {
+            switch (type) {
+            case SnapshotOutput.FILTER_PSM_SCORE:
+                return new PSMScoreFilter(comparator, negate, (Double) value, name);
+
+            case SnapshotOutput.FILTER_PEPTIDE_SCORE:
+                return new PeptideScoreFilter(comparator, negate, (Double) value, name);
+
+            case SnapshotOutput.FILTER_PSM_TOP_IDENTIFICATION:
+                return new PSMTopIdentificationFilter(comparator, ((Double) value).intValue(), negate, name);
+
+            case SnapshotOutput.FILTER_SIMPLE:
+                return RegisteredFilters.valueOf(name).newInstanceOf(comparator, value, negate);
+
+            default:
+                throw new IOException("Unknown type of filter in the snapshot: " + type);
+            }
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw new IOException("Could not create the filter " + name + " from the snapshot", e);
+        }
+    }
+
+
+    public AbstractProteinInference readProteinInference() throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        String shortName = readString();
+        AbstractProteinInference inference = ProteinInferenceFactory.createInstanceOf(shortName);
+        if (inference == null) {
+            throw new IOException("Unknown protein inference in the snapshot: " + shortName);
+        }
+
+        List<AbstractFilter> filters = readList(this::readFilter);
+        if (filters != null) {
+            filters.forEach(inference::addFilter);
+        }
+        inference.setAvailableScoreShorts(readMap(this::readString, this::readString));
+        inference.setAllowedThreads(in.readInt());
+        inference.setScoring(readScoring());
+
+        return inference;
+    }
+
+
+    public AbstractScoring readScoring() throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        String shortName = readString();
+
+        // the typed parameters are written, which map from the names to the shorts
+        Map<String, String> scoreNameMap = new HashMap<>();
+        Map<String, String> typedParams = readMap(this::readString, this::readString);
+        if (typedParams != null) {
+            typedParams.forEach((name, scoreShort) -> scoreNameMap.put(scoreShort, name));
+        }
+
+        AbstractScoring scoring = ProteinScoringFactory.getNewInstanceByName(shortName, scoreNameMap);
+        if (scoring == null) {
+            throw new IOException("Unknown protein scoring in the snapshot: " + shortName);
+        }
+        scoring.setSetting(AbstractScoring.SCORING_SETTING_ID, readString());
+        scoring.setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID, readString());
+
+        return scoring;
+    }
+
+
+    /**
+     * Sets the q-value of the item, if it was calculated, i.e. is not NaN.
+     */
+    private static void setQValue(FDRComputable item, double qValue) {
+        if (!Double.isNaN(qValue)) {
+            item.setQValue(qValue);
+        }
+    }
+
+
+    /**
+     * Returns the object with the given index of the table.
+     */
+    private static <T> T getByIndex(List<T> table, int index, String name) throws IOException {
+        if (index >= table.size()) {
+            throw new IOException("The " + name + " " + index + " is not in the snapshot");
+        }
+        return table.get(index);
+    }
+}
@@ -0,0 +1,530 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.PIAIntermediateData;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.inference.AbstractProteinInference;
+import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
+import de.mpc.pia.modeller.psm.PSMReportItem;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.report.filter.AbstractFilter;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.report.filter.impl.PSMTopIdentificationFilter;
+import de.mpc.pia.modeller.report.filter.impl.PeptideScoreFilter;
+import de.mpc.pia.modeller.report.filter.impl.SimpleTypeFilter;
+import de.mpc.pia.modeller.score.FDRData;
+import de.mpc.pia.modeller.score.ScoreModel;
+
+
+/**
+ * Writes the state of the modellers into the content of a
+ * {@link PIAModellerSnapshot}. Each value is written explicitly, field by
+ * field, in the order given by the {@link PIAModellerSnapshot#SCHEMA_VERSION},
+ * and read back in the same order by the {@link SnapshotInput}.
+ * <p>
+ * Objects of the intermediate data are written as their IDs. The report items
+ * are written into shared-reference tables: the {@link ReportPSM}s are written
+ * once by the PSM modeller and then referenced by their IDs, the
+ * {@link ReportPSMSet}s and {@link ReportPeptide}s are written on their first
+ * occurrence and referenced by their index afterwards and the
+ * {@link ReportProtein}s are written as a table with the subset proteins
+ * referenced by index.
+ *
+ * @author julianu
+ *
+ */
+public final class SnapshotOutput {
+
+    /** the output of the snapshot content */
+    private final DataOutputStream out;
+
+    /** the intermediate data, which is referenced by the modellers */
+    private final PIAIntermediateData data;
+
+    /** the table of the report PSMs, mapped by their IDs */
+    private final Map<Long, ReportPSM> reportPSMs;
+
+    /** the indices of the already written PSM sets */
+    private final Map<ReportPSMSet, Integer> psmSetIndices;
+
+    /** the indices of the already written report peptides */
+    private final Map<ReportPeptide, Integer> peptideIndices;
+
+    /** the indices of the written report proteins */
+    private final Map<ReportProtein, Integer> proteinIndices;
+
+
+    /** tags of the PSM report items */
+    static final byte ITEM_PSM = 0;
+    static final byte ITEM_PSM_SET = 1;
+
+    /** tags of the filter implementations */
+    static final byte FILTER_SIMPLE = 0;
+    static final byte FILTER_PSM_SCORE = 1;
+    static final byte FILTER_PEPTIDE_SCORE = 2;
+    static final byte FILTER_PSM_TOP_IDENTIFICATION = 3;
+
+    /** tags of the values of simple type filters */
+    static final byte VALUE_NUMBER = 0;
+    static final byte VALUE_BOOLEAN = 1;
+    static final byte VALUE_STRING = 2;
+
+
+    /**
+     * Writes a single value into the snapshot.
+     *
+     * @param <T>
+     */
+    @FunctionalInterface
+    public interface ValueWriter<T> {
+        void write(T value) throws IOException;
+    }
+
+
+    /**
+     * Creates the output for the given intermediate data.
+     *
+     * @param out
+     * @param data the intermediate data, null if the modeller has none
+     */
+    SnapshotOutput(DataOutputStream out, PIAIntermediateData data) {
+        this.out = out;
+        this.data = data;
+        this.reportPSMs = new HashMap<>();
+        this.psmSetIndices = new IdentityHashMap<>();
+        this.peptideIndices = new IdentityHashMap<>();
+        this.proteinIndices = new IdentityHashMap<>();
+    }
+
+
+    public void writeBoolean(boolean value) throws IOException {
+        out.writeBoolean(value);
+    }
+
+
+    public void writeInt(int value) throws IOException {
+        out.writeInt(value);
+    }
+
+
+    public void writeLong(long value) throws IOException {
+        out.writeLong(value);
+    }
+
+
+    public void writeDouble(double value) throws IOException {
+        out.writeDouble(value);
+    }
+
+
+    /**
+     * Writes the given String (or null) in UTF-8, without the length
+     * restriction of {@link DataOutputStream#writeUTF(String)}.
+     */
+    public void writeString(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+
+    public void writeNullableBoolean(Boolean value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeBoolean(value);
+        }
+    }
+
+
+    public void writeNullableInteger(Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+
+    public void writeNullableLong(Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+
+    public void writeNullableDouble(Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+
+    /**
+     * Writes the value of the given score, the score itself may be null.
+     */
+    public void writeScoreValue(ScoreModel score) throws IOException {
+        out.writeBoolean(score != null);
+        if (score != null) {
+            writeNullableDouble(score.getValue());
+        }
+    }
+
+
+    /**
+     * Writes the size and all elements of the given collection, which may be
+     * null.
+     */
+    public <T> void writeCollection(Collection<T> collection, ValueWriter<T> elementWriter)
+            throws IOException {
+        if (collection == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(collection.size());
+        for (T element : collection) {
+            elementWriter.write(element);
+        }
+    }
+
+
+    /**
+     * Writes the size and all entries of the given map, which may be null.
+     */
+    public <K, V> void writeMap(Map<K, V> map, ValueWriter<K> keyWriter, ValueWriter<V> valueWriter)
+            throws IOException {
+        if (map == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(map.size());
+        for (Map.Entry<K, V> entry : map.entrySet()) {
+            keyWriter.write(entry.getKey());
+            valueWriter.write(entry.getValue());
+        }
+    }
+
+
+    /**
+     * Writes the reference to the given PSM of the intermediate data.
+     */
+    public void writePSMReference(PeptideSpectrumMatch psm) throws IOException {
+        if ((data == null) || (data.getPSMs().get(psm.getID()) != psm)) {
+            throw new IOException("The PSM " + psm.getID() + " is not part of the intermediate data");
+        }
+        out.writeLong(psm.getID());
+    }
+
+
+    /**
+     * Writes the reference to the given peptide of the intermediate data, the
+     * peptide may be null.
+     */
+    public void writePeptideReference(Peptide peptide) throws IOException {
+        out.writeBoolean(peptide != null);
+        if (peptide != null) {
+            if ((data == null) || (data.getPeptides().get(peptide.getID()) != peptide)) {
+                throw new IOException("The peptide " + peptide.getID() + " is not part of the intermediate data");
+            }
+            out.writeLong(peptide.getID());
+        }
+    }
+
+
+    /**
+     * Writes the reference to the given accession of the intermediate data.
+     */
+    public void writeAccessionReference(Accession accession) throws IOException {
+        if ((data == null) || (data.getAccessions().get(accession.getID()) != accession)) {
+            throw new IOException("The accession " + accession.getAccession() + " is not part of the intermediate data");
+        }
+        out.writeLong(accession.getID());
+    }
+
+
+    /**
+     * Writes the table of all report PSMs. The PSMs are referenced by their IDs
+     * afterwards (see {@link #writeReportPSM(ReportPSM)}).
+     */
+    public void writeReportPSMTable(Collection<ReportPSM> psms) throws IOException {
+        out.writeInt(psms.size());
+        for (ReportPSM psm : psms) {
+            reportPSMs.put(psm.getId(), psm);
+
+            out.writeLong(psm.getId());
+            writePSMReference(psm.getSpectrum());
+            writeCollection(psm.getAccessions(), this::writeAccessionReference);
+            out.writeBoolean(psm.getIsDecoy());
+            out.writeBoolean(psm.getIsFDRGood());
+            writeNullableLong(psm.getRank());
+            out.writeDouble(psm.getFDR());
+            out.writeDouble(psm.getQValue());
+            writeScoreValue(psm.getFDRScore());
+            writeMap(psm.getIdentificationRanks(), this::writeString, this::writeNullableInteger);
+        }
+    }
+
+
+    /**
+     * Writes the reference to a PSM of the table.
+     */
+    public void writeReportPSM(ReportPSM psm) throws IOException {
+        if (reportPSMs.get(psm.getId()) != psm) {
+            throw new IOException("The report PSM " + psm.getId() + " is not part of the PSM modeller");
+        }
+        out.writeLong(psm.getId());
+    }
+
+
+    /**
+     * Writes the given PSM set, or only its index, if it was written before.
+     */
+    public void writeReportPSMSet(ReportPSMSet psmSet) throws IOException {
+        Integer index = psmSetIndices.get(psmSet);
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+
+        psmSetIndices.put(psmSet, psmSetIndices.size());
+        out.writeInt(-1);
+
+        writeMap(psmSet.getPSMSetSettings(), this::writeString, this::writeBoolean);
+        writeCollection(psmSet.getPSMs(), this::writeReportPSM);
+        writeScoreValue(psmSet.getAverageFDRScore());
+        writeScoreValue(psmSet.getFDRScore());
+        out.writeDouble(psmSet.getFDR());
+        writeNullableLong(psmSet.getRank());
+        out.writeBoolean(psmSet.getIsDecoy());
+        out.writeBoolean(psmSet.getIsFDRGood());
+        out.writeDouble(psmSet.getQValue());
+    }
+
+
+    /**
+     * Writes a PSM or PSM set.
+     */
+    public void writePSMReportItem(PSMReportItem item) throws IOException {
+        if (item instanceof ReportPSM) {
+            out.writeByte(ITEM_PSM);
+            writeReportPSM((ReportPSM) item);
+        } else if (item instanceof ReportPSMSet) {
+            out.writeByte(ITEM_PSM_SET);
+            writeReportPSMSet((ReportPSMSet) item);
+        } else {
+            throw new IOException("Cannot write the PSM item " + item.getClass().getCanonicalName());
+        }
+    }
+
+
+    /**
+     * Writes the given report peptide, or only its index, if it was written
+     * before.
+     */
+    public void writeReportPeptide(ReportPeptide peptide) throws IOException {
+        Integer index = peptideIndices.get(peptide);
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+
+        peptideIndices.put(peptide, peptideIndices.size());
+        out.writeInt(-1);
+
+        writeString(peptide.getSequence());
+        writeString(peptide.getStringID());
+        writePeptideReference(peptide.getPeptide());
+        writeNullableLong(peptide.getRank());
+        writeCollection(peptide.getPSMs(), this::writePSMReportItem);
+        writeCollection(peptide.getNonScoringPSMIDs(), this::writeLong);
+        writeCollection(peptide.getNonScoringSpectraIDKeys(), this::writeString);
+        out.writeBoolean(peptide.getIsDecoy());
+        out.writeDouble(peptide.getFDR());
+        out.writeDouble(peptide.getQValue());
+        out.writeBoolean(peptide.getIsFDRGood());
+        writeScoreValue(peptide.getFDRScore());
+    }
+
+
+    /**
+     * Writes the table of the given report proteins and their subset proteins.
+     * The proteins are referenced by their index afterwards (see
+     * {@link #writeReportProtein(ReportProtein)}).
+     */
+    public void writeReportProteinTable(Collection<ReportProtein> proteins) throws IOException {
+        // collect the proteins and (iteratively) their subsets
+        List<ReportProtein> table = new ArrayList<>();
+        Deque<ReportProtein> pending = new ArrayDeque<>(proteins);
+        while (!pending.isEmpty()) {
+            ReportProtein protein = pending.poll();
+            if (!proteinIndices.containsKey(protein)) {
+                proteinIndices.put(protein, table.size());
+                table.add(protein);
+                pending.addAll(protein.getSubSets());
+            }
+        }
+
+        out.writeInt(table.size());
+        for (ReportProtein protein : table) {
+            out.writeLong(protein.getID());
+
+            // the representative is written first, as it is the first added accession
+            Accession representative = protein.getRepresentative();
+            List<Accession> accessions = new ArrayList<>(protein.getAccessions());
+            if (representative != null) {
+                accessions.remove(representative);
+                accessions.add(0, representative);
+            }
+            writeCollection(accessions, this::writeAccessionReference);
+            for (Accession accession : accessions) {
+                writeNullableBoolean(protein.getAccessionDecoyState(accession.getAccession()));
+            }
+
+            writeCollection(protein.getPeptides(), this::writeReportPeptide);
+            writeNullableLong(protein.getRank());
+            writeNullableDouble(protein.getScore());
+            out.writeBoolean(protein.getIsDecoy());
+            out.writeDouble(protein.getFDR());
+            out.writeDouble(protein.getQValue());
+            out.writeBoolean(protein.getIsFDRGood());
+        }
+
+        for (ReportProtein protein : table) {
+            writeCollection(protein.getSubSets(), this::writeReportProtein);
+        }
+    }
+
+
+    /**
+     * Writes the reference to a protein of the table.
+     */
+    public void writeReportProtein(ReportProtein protein) throws IOException {
+        Integer index = proteinIndices.get(protein);
+        if (index == null) {
+            throw new IOException("The report protein " + protein.getID() + " is not part of the protein table");
+        }
+        out.writeInt(index);
+    }
+
+
+    /**
+     * Writes the settings and calculated values of the given FDR data, which
+     * may be null.
+     */
+    public void writeFDRData(FDRData fdrData) throws IOException {
+        out.writeBoolean(fdrData != null);
+        if (fdrData == null) {
+            return;
+        }
+
+        writeString((fdrData.getDecoyStrategy() != null) ? fdrData.getDecoyStrategy().name() : null);
+        writeString(fdrData.getDecoyPattern());
+        writeNullableDouble(fdrData.getFDRThreshold());
+        writeString(fdrData.getScoreShortName());
+
+        writeNullableInteger(fdrData.getNrItems());
+        writeNullableInteger(fdrData.getNrTargets());
+        writeNullableInteger(fdrData.getNrDecoys());
+        writeNullableInteger(fdrData.getNrFDRGoodTargets());
+        writeNullableInteger(fdrData.getNrFDRGoodDecoys());
+        writeNullableDouble(fdrData.getScoreAtThreshold());
+        writeNullableDouble(fdrData.getArtificialDecoyFDR());
+    }
+
+
+    /**
+     * Writes the given filter.
+     */
+    public void writeFilter(AbstractFilter filter) throws IOException {
+        if (filter instanceof PSMScoreFilter) {
+            out.writeByte(FILTER_PSM_SCORE);
+            writeString(((PSMScoreFilter) filter).getScoreShortName());
+        } else if (filter instanceof PeptideScoreFilter) {
+            out.writeByte(FILTER_PEPTIDE_SCORE);
+            writeString(((PeptideScoreFilter) filter).getScoreShortName());
+        } else if (filter instanceof PSMTopIdentificationFilter) {
+            out.writeByte(FILTER_PSM_TOP_IDENTIFICATION);
+            writeString(((PSMTopIdentificationFilter) filter).getScoreShortName());
+        } else if (filter instanceof SimpleTypeFilter) {
+            out.writeByte(FILTER_SIMPLE);
+            writeString(filter.getRegisteredFilter().name());
+        } else {
+            throw new IOException("Cannot write the filter " + filter.getClass().getCanonicalName());
+        }
+
+        writeString(filter.getFilterComparator().name());
+        out.writeBoolean(filter.getFilterNegate());
+
+        Object value = filter.getFilterValue();
+        if (value instanceof Number) {
+            out.writeByte(VALUE_NUMBER);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(VALUE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            out.writeByte(VALUE_STRING);
+            writeString((String) value);
+        } else {
+            throw new IOException("Cannot write the value of the filter " + filter);
+        }
+    }
+
+
+    /**
+     * Writes the settings of the given protein inference, which may be null.
+     */
+    public void writeProteinInference(AbstractProteinInference inference) throws IOException {
+        out.writeBoolean(inference != null);
+        if (inference == null) {
+            return;
+        }
+
+        writeString(inference.getShortName());
+        writeCollection(inference.getFilters(), this::writeFilter);
+        writeMap(inference.getAvailableScoreShorts(), this::writeString, this::writeString);
+        out.writeInt(inference.getAllowedThreads());
+        writeScoring(inference.getScoring());
+    }
+
+
+    /**
+     * Writes the settings of the given protein scoring, which may be null.
+     */
+    @SuppressWarnings("unchecked")
+    public void writeScoring(AbstractScoring scoring) throws IOException {
+        out.writeBoolean(scoring != null);
+        if (scoring == null) {
+            return;
+        }
+
+        writeString(scoring.getShortName());
+        // the typed parameters map from the score names to the score shorts
+        writeMap((Map<String, String>) scoring.getScoreSetting().getTypedParams(),
+                this::writeString, this::writeString);
+        writeString(scoring.getScoreSetting().getValue());
+        writeString(scoring.getPSMForScoringSetting().getValue());
+    }
+}
@@ -0,0 +1,269 @@
+package de.mpc.pia.tools;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+
+/**
+ * Finds the cleavage sites of a cleavage agent in a sequence without regular
+ * expressions. The site regular expressions of the {@link CleavageAgent}s
+ * consist of look-behind and look-ahead assertions on single residues (like
+ * <code>(?&lt;=[KR])(?!P)</code>), optionally combined by alternatives (like
+ * <code>((?&lt;=D))|((?=D))</code>). These are compiled into residue sets, a
+ * site is then checked by a lookup of the residues before and after it.
+ * <p>
+ * The found sites are the positions, at which {@link String#split(String)}
+ * splits the sequence with the regular expression. Scanners are immutable and
+ * may be shared by several threads.
+ *
+ * @author julianu
+ *
+ */
+public final class CleavageSiteScanner {
+
+    /** the alternatives, each a list of assertions, one of which must match */
+    private final Assertion[][] alternatives;
+
+
+    /**
+     * An assertion on the residue before (look-behind) or after (look-ahead)
+     * a site.
+     */
+    private static final class Assertion {
+        /** whether the residue before the site is checked */
+        private final boolean lookBehind;
+
+        /** whether the residue must not be in the set */
+        private final boolean negative;
+
+        /** the residues of the assertion */
+        private final BitSet residues;
+
+        private Assertion(boolean lookBehind, boolean negative, BitSet residues) {
+            this.lookBehind = lookBehind;
+            this.negative = negative;
+            this.residues = residues;
+        }
+
+        /**
+         * Checks the assertion for the site before the given position.
+         */
+        private boolean matches(CharSequence sequence, int pos) {
+            int checkedPos = lookBehind ? (pos - 1) : pos;
+            if ((checkedPos < 0) || (checkedPos >= sequence.length())) {
+                // there is no residue, so only a negative assertion is fulfilled
+                return negative;
+            }
+            return residues.get(sequence.charAt(checkedPos)) != negative;
+        }
+    }
+
+
+    private CleavageSiteScanner(Assertion[][] alternatives) {
+        this.alternatives = alternatives;
+    }
+
+
+    /**
+     * Compiles the given site regular expression into a scanner.
+     *
+     * @param siteRegexp the regular expression, e.g. from
+     * {@link CleavageAgent#getSiteRegexp()}
+     * @return the scanner or null, if the regular expression is not supported
+     * (i.e. uses more than look-arounds on single residues)
+     */
+    public static CleavageSiteScanner compile(String siteRegexp) {
+        if ((siteRegexp == null) || siteRegexp.isEmpty()) {
+            return null;
+        }
+
+        List<Assertion[]> alternatives = new ArrayList<>();
+        for (String alternative : splitAlternatives(siteRegexp)) {
+            Assertion[] assertions = parseAssertions(unwrapGroups(alternative));
+            if ((assertions == null) || (assertions.length == 0)) {
+                return null;
+            }
+            alternatives.add(assertions);
+        }
+
+        return new CleavageSiteScanner(alternatives.toArray(new Assertion[0][]));
+    }
+
+
+    /**
+     * Compiles the site regular expression of the given cleavage agent.
+     *
+     * @param cleavageAgent
+     * @return the scanner or null, if the regular expression is not supported
+     */
+    public static CleavageSiteScanner compile(CleavageAgent cleavageAgent) {
+        return compile(cleavageAgent.getSiteRegexp());
+    }
+
+
+    /**
+     * Splits the regular expression at the top-level alternatives.
+     */
+    private static List<String> splitAlternatives(String regexp) {
+        List<String> alternatives = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int pos = 0; pos < regexp.length(); pos++) {
+            char c = regexp.charAt(pos);
+            if ((c == '(') || (c == '[')) {
+                depth++;
+            } else if ((c == ')') || (c == ']')) {
+                depth--;
+            } else if ((c == '|') && (depth == 0)) {
+                alternatives.add(regexp.substring(start, pos));
+                start = pos + 1;
+            }
+        }
+        alternatives.add(regexp.substring(start));
+        return alternatives;
+    }
+
+
+    /**
+     * Removes enclosing capturing groups, like in <code>((?&lt;=D))</code>.
+     */
+    private static String unwrapGroups(String regexp) {
+        String unwrapped = regexp;
+        while (unwrapped.startsWith("((") && unwrapped.endsWith("))")
+                && (closingParenthesis(unwrapped, 0) == unwrapped.length() - 1)) {
+            unwrapped = unwrapped.substring(1, unwrapped.length() - 1);
+        }
+        return unwrapped;
+    }
+
+
+    /**
+     * Returns the position of the parenthesis closing the one at the given
+     * position, or -1.
+     */
+    private static int closingParenthesis(String regexp, int openPos) {
+        int depth = 0;
+        for (int pos = openPos; pos < regexp.length(); pos++) {
+            if (regexp.charAt(pos) == '(') {
+                depth++;
+            } else if ((regexp.charAt(pos) == ')') && (--depth == 0)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Parses a sequence of look-around assertions on single residues or
+     * residue classes.
+     *
+     * @return the assertions or null, if the expression is not supported
+     */
+    private static Assertion[] parseAssertions(String regexp) {
+        List<Assertion> assertions = new ArrayList<>();
+
+        int pos = 0;
+        while (pos < regexp.length()) {
+            boolean lookBehind;
+            boolean negative;
+            if (regexp.startsWith("(?<=", pos)) {
+                lookBehind = true;
+                negative = false;
+                pos += 4;
+            } else if (regexp.startsWith("(?<!", pos)) {
+                lookBehind = true;
+                negative = true;
+                pos += 4;
+            } else if (regexp.startsWith("(?=", pos)) {
+                lookBehind = false;
+                negative = false;
+                pos += 3;
+            } else if (regexp.startsWith("(?!", pos)) {
+                lookBehind = false;
+                negative = true;
+                pos += 3;
+            } else {
+                return null;
+            }
+
+            BitSet residues = new BitSet(128);
+            if ((pos < regexp.length()) && (regexp.charAt(pos) == '[')) {
+                int classEnd = regexp.indexOf(']', pos);
+                if (classEnd < 0) {
+                    return null;
+                }
+                for (int classPos = pos + 1; classPos < classEnd; classPos++) {
+                    if (!Character.isLetter(regexp.charAt(classPos))) {
+                        return null;
+                    }
+                    residues.set(regexp.charAt(classPos));
+                }
+                pos = classEnd + 1;
+            } else if ((pos < regexp.length()) && Character.isLetter(regexp.charAt(pos))) {
+                residues.set(regexp.charAt(pos));
+                pos++;
+            } else {
+                return null;
+            }
+
+            if ((pos >= regexp.length()) || (regexp.charAt(pos) != ')') || residues.isEmpty()) {
+                return null;
+            }
+            pos++;
+
+            assertions.add(new Assertion(lookBehind, negative, residues));
+        }
+
+        return assertions.toArray(new Assertion[0]);
+    }
+
+
+    /**
+     * Checks, whether there is a cleavage site before the given position.
+     *
+     * @param sequence
+     * @param pos
+     * @return
+     */
+    public boolean isCleavageSite(CharSequence sequence, int pos) {
+        for (Assertion[] assertions : alternatives) {
+            boolean matches = true;
+            for (Assertion assertion : assertions) {
+                if (!assertion.matches(sequence, pos)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Returns the boundaries of the cleaved pieces of the sequence, i.e. 0,
+     * the cleavage sites inside the sequence in ascending order and the length
+     * of the sequence. The pieces are the same as by
+     * {@link String#split(String)} with the site regular expression.
+     *
+     * @param sequence
+     * @return
+     */
+    public int[] getPieceBoundaries(CharSequence sequence) {
+        IntArrayList boundaries = new IntArrayList();
+        boundaries.add(0);
+        for (int pos = 1; pos < sequence.length(); pos++) {
+            if (isCleavageSite(sequence, pos)) {
+                boundaries.add(pos);
+            }
+        }
+        boundaries.add(sequence.length());
+        return boundaries.toIntArray();
+    }
+}
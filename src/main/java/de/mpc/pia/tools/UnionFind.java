@@ -0,0 +1,150 @@
+package de.mpc.pia.tools;
+
+import java.util.Arrays;
+
+
+/**
+ * A disjoint-set (union-find) structure over dense int elements, using union
+ * by rank and path halving. The elements are created consecutively by
+ * {@link #makeSet()} starting with 0 and stored in primitive arrays, which
+ * grow as needed.
+ *
+ * @author julianu
+ *
+ */
+public final class UnionFind {
+
+    /** the parent of each element, a root points to itself */
+    private int[] parents;
+
+    /** the rank (upper bound of the tree height) of each element */
+    private byte[] ranks;
+
+    /** the number of created elements */
+    private int size;
+
+    /** the number of disjoint sets */
+    private int nrSets;
+
+
+    /** the default initial capacity */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+
+    /**
+     * Creates an empty union-find with the default initial capacity.
+     */
+    public UnionFind() {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Creates an empty union-find with the given initial capacity.
+     *
+     * @param initialCapacity
+     */
+    public UnionFind(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        parents = new int[capacity];
+        ranks = new byte[capacity];
+        size = 0;
+        nrSets = 0;
+    }
+
+
+    /**
+     * Creates a new singleton set and returns its element.
+     *
+     * @return the new element, which is the number of elements created before
+     */
+    public int makeSet() {
+        if (size == parents.length) {
+            int newCapacity = parents.length + (parents.length >> 1);
+            parents = Arrays.copyOf(parents, newCapacity);
+            ranks = Arrays.copyOf(ranks, newCapacity);
+        }
+
+        parents[size] = size;
+        nrSets++;
+        return size++;
+    }
+
+
+    /**
+     * Returns the representative (root) of the set containing the given
+     * element. The path to the root is halved on the way.
+     *
+     * @param element
+     * @return
+     */
+    public int find(int element) {
+        int x = element;
+        while (parents[x] != x) {
+            parents[x] = parents[parents[x]];
+            x = parents[x];
+        }
+        return x;
+    }
+
+
+    /**
+     * Merges the sets containing the two given elements.
+     *
+     * @param a
+     * @param b
+     * @return the representative of the merged set
+     */
+    public int union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+
+        if (rootA == rootB) {
+            return rootA;
+        }
+
+        nrSets--;
+        if (ranks[rootA] < ranks[rootB]) {
+            parents[rootA] = rootB;
+            return rootB;
+        } else if (ranks[rootA] > ranks[rootB]) {
+            parents[rootB] = rootA;
+            return rootA;
+        } else {
+            parents[rootB] = rootA;
+            ranks[rootA]++;
+            return rootA;
+        }
+    }
+
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Returns the number of disjoint sets.
+     *
+     * @return
+     */
+    public int getNrSets() {
+        return nrSets;
+    }
+
+
+    /**
+     * Removes all elements.
+     */
+    public void clear() {
+        parents = new int[DEFAULT_CAPACITY];
+        ranks = new byte[DEFAULT_CAPACITY];
+        size = 0;
+        nrSets = 0;
+    }
+}
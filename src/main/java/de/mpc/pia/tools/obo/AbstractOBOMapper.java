@@ -33,6 +33,17 @@ public abstract class AbstractOBOMapper {
     public abstract Ontology getCurrentOntology();
 
 
+    /**
+     * Returns the ontology backed by the shipped index, if it is used instead
+     * of a parsed ontology. Otherwise returns null.
+     *
+     * @return
+     */
+    IndexedOntology getIndexedOntology() {
+        return null;
+    }
+
+
     /**
      * Fetch {@link Term} with specified accession
      *
@@ -40,6 +51,11 @@ public abstract class AbstractOBOMapper {
      * @return
      */
     public Term getTerm(String accession) {
+        IndexedOntology indexedOntology = getIndexedOntology();
+        if (indexedOntology != null) {
+            return indexedOntology.getTerm(accession);
+        }
+
         try {
             return getCurrentOntology().getTerm(accession);
         } catch (NoSuchElementException e) {
@@ -75,6 +91,11 @@ public abstract class AbstractOBOMapper {
      * @return
      */
     public Set<Triple> getTriples(Term subject, Term object, Term predicate) {
+        IndexedOntology indexedOntology = getIndexedOntology();
+        if (indexedOntology != null) {
+            return indexedOntology.getTriples(subject, object, predicate);
+        }
+
         return getCurrentOntology().getTriples(subject, object, predicate);
     }
 
@@ -87,6 +108,11 @@ public abstract class AbstractOBOMapper {
      * @return
      */
     public Term getTermByName(String name) {
+        IndexedOntology indexedOntology = getIndexedOntology();
+        if (indexedOntology != null) {
+            return indexedOntology.getTermByName(name);
+        }
+
         Set<Term> keys = getTerms();
         for (Term term : keys) {
             if (name.equals(term.getDescription())) {
@@ -0,0 +1,195 @@
+package de.mpc.pia.tools.obo;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.biojava.nbio.ontology.AlreadyExistsException;
+import org.biojava.nbio.ontology.Ontology;
+import org.biojava.nbio.ontology.Term;
+import org.biojava.nbio.ontology.Triple;
+
+
+/**
+ * An ontology backed by an {@link OntologyIndex}. The terms and their triples
+ * are only created when they are requested, the whole ontology only if all
+ * terms or triples are needed.
+ *
+ * @author julianu
+ *
+ */
+class IndexedOntology {
+
+    /** the index of the ontology */
+    private final OntologyIndex index;
+
+    /** the ontology containing the already created terms and triples */
+    private final Ontology ontology;
+
+    /** the created terms by their index */
+    private final Term[] terms;
+
+    /** the terms, whose triples (as subject) are created */
+    private final BitSet createdTriples;
+
+    /** whether all terms and triples are created */
+    private boolean complete;
+
+
+    /**
+     * Creates the ontology for the given index.
+     *
+     * @param index
+     * @param name
+     * @param description
+     */
+    IndexedOntology(OntologyIndex index, String name, String description) {
+        this.index = index;
+        this.ontology = new Ontology.Impl(name, description);
+        this.terms = new Term[index.getNrTerms()];
+        this.createdTriples = new BitSet(index.getNrTerms());
+        this.complete = false;
+    }
+
+
+    /**
+     * Returns the term with the given ID or null, if there is none.
+     *
+     * @param id
+     * @return
+     */
+    synchronized Term getTerm(String id) {
+        int termIdx = index.findTerm(id);
+        return (termIdx >= 0) ? getTerm(termIdx) : null;
+    }
+
+
+    /**
+     * Returns the first term with the given description or null, if there is
+     * none.
+     *
+     * @param description
+     * @return
+     */
+    synchronized Term getTermByName(String description) {
+        int termIdx = index.findTermByDescription(description);
+        return (termIdx >= 0) ? getTerm(termIdx) : null;
+    }
+
+
+    /**
+     * Returns the triples matching the pattern, null values are wildcards.
+     *
+     * @param subject
+     * @param object
+     * @param predicate
+     * @return
+     */
+    synchronized Set<Triple> getTriples(Term subject, Term object, Term predicate) {
+        if (subject != null) {
+            int termIdx = index.findTerm(subject.getName());
+            if (termIdx >= 0) {
+                createTriples(termIdx);
+            }
+        } else {
+            createAll();
+        }
+
+        return ontology.getTriples(subject, object, predicate);
+    }
+
+
+    /**
+     * Returns the complete ontology.
+     *
+     * @return
+     */
+    synchronized Ontology getOntology() {
+        createAll();
+        return ontology;
+    }
+
+
+    /**
+     * Creates all terms and triples.
+     */
+    private void createAll() {
+        if (!complete) {
+            for (int termIdx = 0; termIdx < terms.length; termIdx++) {
+                createTriples(termIdx);
+            }
+            complete = true;
+        }
+    }
+
+
+    /**
+     * Returns the term with the given index, it is created on the first call.
+     */
+    private Term getTerm(int termIdx) {
+        Term term = terms[termIdx];
+        if (term == null) {
+            try {
+                term = ontology.createTerm(index.getName(termIdx), index.getDescription(termIdx));
+            } catch (AlreadyExistsException e) {
+                throw new IllegalStateException("duplicate term in ontology index: " + index.getName(termIdx), e);
+            }
+
+            for (Map.Entry<String, Object> annotationIt : index.getAnnotations(termIdx).entrySet()) {
+                term.getAnnotation().setProperty(annotationIt.getKey(), annotationIt.getValue());
+            }
+            index.getSynonyms(termIdx).forEach(term::addSynonym);
+
+            terms[termIdx] = term;
+        }
+        return term;
+    }
+
+
+    /**
+     * Creates the triples with the given term as subject, like created by the
+     * OBO parser.
+     */
+    private void createTriples(int termIdx) {
+        if (createdTriples.get(termIdx)) {
+            return;
+        }
+
+        Term subject = getTerm(termIdx);
+        for (int relIdx = 0; relIdx < index.getNrRelations(termIdx); relIdx++) {
+            Term predicate = getOrCreateTerm(index.getRelationPredicate(termIdx, relIdx));
+            Term object = getOrCreateTerm(index.getRelationObject(termIdx, relIdx));
+
+            try {
+                ontology.createTriple(subject, object, predicate,
+                        subject.getName() + ' ' + predicate.getName() + ' ' + object.getName(),
+                        predicate.getName() + "-relationship");
+            } catch (AlreadyExistsException e) {
+                throw new IllegalStateException("duplicate triple in ontology index for " + subject.getName(), e);
+            }
+        }
+
+        createdTriples.set(termIdx);
+    }
+
+
+    /**
+     * Returns the term with the given ID, or creates a term without index
+     * entry.
+     */
+    private Term getOrCreateTerm(String id) {
+        int termIdx = index.findTerm(id);
+        if (termIdx >= 0) {
+            return getTerm(termIdx);
+        }
+
+        if (ontology.containsTerm(id)) {
+            return ontology.getTerm(id);
+        }
+        try {
+            return ontology.createTerm(id);
+        } catch (AlreadyExistsException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
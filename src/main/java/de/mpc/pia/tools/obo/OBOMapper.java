@@ -1,10 +1,12 @@
 package de.mpc.pia.tools.obo;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.text.ParseException;
 
 import org.apache.log4j.Logger;
 import org.biojava.nbio.ontology.Ontology;
@@ -24,12 +26,24 @@ public class OBOMapper extends AbstractOBOMapper {
     /** the logger for this class */
     private static final Logger LOGGER = Logger.getLogger(OBOMapper.class);
 
-    /** the actual ontology in the OBO file */
+    /** the ontology in the online or explicitly given OBO file */
     private Ontology onlineOntology;
 
     /** the actual ontology in the OBO file */
     private Ontology shippedOntology;
 
+    /** the shipped ontology, read from its index */
+    private IndexedOntology indexedOntology;
+
+    /** the path to the shipped OBO file, its index has the additional ending {@link OntologyIndex#INDEX_FILE_ENDING} */
+    public static final String PATH_TO_SHIPPED_OBO = "/de/mpc/pia/psi-ms.obo";
+
+    /** name of the ontology */
+    private static final String ONTOLOGY_NAME = "PSI-MS";
+
+    /** description of the ontology */
+    private static final String ONTOLOGY_DESCRIPTION = "MS ontology of the HUPO-PSI";
+
     // some statics
     public static final String OBO_HAS_REGEXP = "has_regexp";
     public static final String OBO_HAS_ORDER_HIGHERSCOREBETTER = "has_order MS:1002108";
@@ -37,44 +51,74 @@ public class OBOMapper extends AbstractOBOMapper {
 
 
     /**
-     * Constructor for the OBOMapper. Uses the online OBO file (if accessible)
-     * or a locally shipped file.
-     *
+     * Constructor for the OBOMapper. Uses the index of the shipped OBO file.
      */
     public OBOMapper() {
-        this(true);
+        this(false);
     }
 
 
     /**
-     * Creates a new OBOMapper, using the online OBO or the shipped only.
+     * Creates a new OBOMapper, using the online OBO or the shipped only. The
+     * online OBO is parsed, the shipped OBO is read from its index created at
+     * build time (or parsed, if there is no index). If the online OBO is not
+     * accessible, the shipped one is used.
      *
      * @param useOnline whether to use the online OBO
      */
     public OBOMapper(boolean useOnline) {
-        try (InputStream inStreamOffline = OBOMapper.class.getResourceAsStream("/de/mpc/pia/psi-ms.obo")) {
-            // get the shipped ontology
-            OboParser parser = new OboParser();
-            BufferedReader oboFile = new BufferedReader(new InputStreamReader(inStreamOffline));
-
-            shippedOntology = parser.parseOBO(oboFile, "PSI-MS", "MS ontology of the HUPO-PSI");
-
-            // get the online ontology
-            if (useOnline) {
-                try (InputStream inStreamOnline = new URL(OntologyConstants.PSI_MS_OBO_URL).openStream()) {
-                    parser = new OboParser();
-                    oboFile = new BufferedReader(new InputStreamReader(inStreamOnline));
-
-                    onlineOntology = parser.parseOBO(oboFile, "PSI-MS", "MS ontology of the HUPO-PSI");
-                }
-            } else {
-                onlineOntology = null;
-            }
-        } catch (IOException e) {
-            onlineOntology = null;
-            if (useOnline) {
+        onlineOntology = null;
+        if (useOnline) {
+            try (InputStream inStreamOnline = new URL(OntologyConstants.PSI_MS_OBO_URL).openStream()) {
+                onlineOntology = parseOntology(inStreamOnline);
+            } catch (IOException e) {
                 LOGGER.warn("could not use remote obo file, check internet connection", e);
+            } catch (Exception e) {
+                LOGGER.error(e);
+                throw new AssertionError(e);
             }
+        }
+
+        if (onlineOntology == null) {
+            initializeShippedOntology();
+        }
+    }
+
+
+    /**
+     * Creates a new OBOMapper for the given OBO file, e.g. for a newer version
+     * than the shipped one.
+     *
+     * @param oboFileName the path to the OBO file
+     */
+    public OBOMapper(String oboFileName) {
+        try (InputStream inStream = new FileInputStream(oboFileName)) {
+            onlineOntology = parseOntology(inStream);
+        } catch (Exception e) {
+            LOGGER.error("could not parse obo file " + oboFileName, e);
+            throw new AssertionError(e);
+        }
+    }
+
+
+    /**
+     * Initializes the shipped ontology by its index, or by parsing the shipped
+     * file if there is no index.
+     */
+    private void initializeShippedOntology() {
+        try {
+            OntologyIndex index = OntologyIndex.load(
+                    OBOMapper.class.getResource(PATH_TO_SHIPPED_OBO + OntologyIndex.INDEX_FILE_ENDING));
+            if (index != null) {
+                indexedOntology = new IndexedOntology(index, ONTOLOGY_NAME, ONTOLOGY_DESCRIPTION);
+                return;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("could not read the index of the shipped obo file, parsing it", e);
+        }
+
+        try (InputStream inStreamOffline = OBOMapper.class.getResourceAsStream(PATH_TO_SHIPPED_OBO)) {
+            shippedOntology = parseOntology(inStreamOffline);
         } catch (Exception e) {
             LOGGER.error(e);
             throw new AssertionError(e);
@@ -82,12 +126,38 @@ public class OBOMapper extends AbstractOBOMapper {
     }
 
 
+    /**
+     * Parses the PSI-MS ontology from the given stream.
+     *
+     * @param inStream
+     * @return
+     * @throws IOException
+     * @throws ParseException
+     */
+    static Ontology parseOntology(InputStream inStream) throws IOException, ParseException {
+        OboParser parser = new OboParser();
+        BufferedReader oboFile = new BufferedReader(new InputStreamReader(inStream));
+        return parser.parseOBO(oboFile, ONTOLOGY_NAME, ONTOLOGY_DESCRIPTION);
+    }
+
+
     @Override
     public Ontology getCurrentOntology() {
         if (onlineOntology != null) {
             return onlineOntology;
+        } else if (indexedOntology != null) {
+            return indexedOntology.getOntology();
         } else {
             return shippedOntology;
         }
     }
+
+
+    @Override
+    IndexedOntology getIndexedOntology() {
+        if (onlineOntology != null) {
+            return null;
+        }
+        return indexedOntology;
+    }
 }
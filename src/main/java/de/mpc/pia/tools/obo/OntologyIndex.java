@@ -0,0 +1,587 @@
+package de.mpc.pia.tools.obo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.biojava.nbio.ontology.Ontology;
+import org.biojava.nbio.ontology.Synonym;
+import org.biojava.nbio.ontology.Term;
+import org.biojava.nbio.ontology.Triple;
+
+
+/**
+ * A compact binary index of an OBO ontology, which is created at build time
+ * from the shipped ontologies and read without parsing the OBO file.
+ * <p>
+ * The index contains the terms with their descriptions, annotations, synonyms
+ * and the relations (e.g. is_a and has_regexp), given by the triples with the
+ * term as subject. The terms can be found by their ID (the name) and by their
+ * description with hash tables stored in the index. All values are read from
+ * the buffer on access, which is memory mapped if the index is a file.
+ *
+ * @author julianu
+ *
+ */
+public final class OntologyIndex {
+
+    /** the index data */
+    private final ByteBuffer buffer;
+
+    /** the number of strings in the string table */
+    private final int nrStrings;
+
+    /** the number of terms */
+    private final int nrTerms;
+
+    /** the size of the hash tables */
+    private final int hashSize;
+
+    /** the start positions of the sections */
+    private final int stringOffsetsPos;
+    private final int termsPos;
+    private final int relationsPos;
+    private final int annotationsPos;
+    private final int synonymsPos;
+    private final int idHashPos;
+    private final int descriptionHashPos;
+    private final int stringDataPos;
+
+
+    /** the file ending of the index files */
+    public static final String INDEX_FILE_ENDING = ".idx";
+
+    /** magic number at the start of the index */
+    private static final int MAGIC = 0x5049414f;
+
+    /** the version of the index format */
+    private static final int VERSION = 1;
+
+    /** the number of ints in the header */
+    private static final int HEADER_INTS = 8;
+
+    /** the number of ints of a term entry: name, description, first relation, first annotation, first synonym */
+    private static final int TERM_INTS = 5;
+
+    /** annotation value types */
+    private static final int ANNOTATION_STRING = 0;
+    private static final int ANNOTATION_BOOLEAN = 1;
+    private static final int ANNOTATION_LIST_ELEMENT = 2;
+
+    /** designates a null string */
+    private static final int NO_STRING = -1;
+
+
+    /**
+     * Creates the index from the given buffer, containing the data written by
+     * {@link #write(Ontology, OutputStream)}.
+     *
+     * @param buffer
+     * @throws IOException if the buffer contains no valid index
+     */
+    private OntologyIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if ((buffer.capacity() < 4 * HEADER_INTS) || (buffer.getInt(0) != MAGIC)) {
+            throw new IOException("no valid ontology index");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("unsupported ontology index version " + buffer.getInt(4));
+        }
+
+        nrStrings = buffer.getInt(8);
+        nrTerms = buffer.getInt(12);
+        int nrRelations = buffer.getInt(16);
+        int nrAnnotations = buffer.getInt(20);
+        int nrSynonyms = buffer.getInt(24);
+        hashSize = buffer.getInt(28);
+
+        stringOffsetsPos = 4 * HEADER_INTS;
+        termsPos = stringOffsetsPos + 4 * (nrStrings + 1);
+        relationsPos = termsPos + 4 * TERM_INTS * (nrTerms + 1);
+        annotationsPos = relationsPos + 4 * 2 * nrRelations;
+        synonymsPos = annotationsPos + 4 * 3 * nrAnnotations;
+        idHashPos = synonymsPos + 4 * 3 * nrSynonyms;
+        descriptionHashPos = idHashPos + 4 * hashSize;
+        stringDataPos = descriptionHashPos + 4 * hashSize;
+    }
+
+
+    /**
+     * Loads the index from the given resource. A resource in the file system
+     * is memory mapped, otherwise (e.g. in a jar) it is read into memory.
+     *
+     * @param resource
+     * @return the index or null, if the resource is null
+     * @throws IOException
+     */
+    public static OntologyIndex load(URL resource) throws IOException {
+        if (resource == null) {
+            return null;
+        }
+
+        ByteBuffer buffer;
+        if ("file".equals(resource.getProtocol())) {
+            Path path;
+            try {
+                path = Paths.get(resource.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        } else {
+            try (InputStream inStream = resource.openStream()) {
+                buffer = ByteBuffer.wrap(inStream.readAllBytes());
+            }
+        }
+
+        return new OntologyIndex(buffer);
+    }
+
+
+    /**
+     * Returns the number of terms.
+     *
+     * @return
+     */
+    public int getNrTerms() {
+        return nrTerms;
+    }
+
+
+    /**
+     * Returns the index of the term with the given ID (name), or -1 if there
+     * is none.
+     *
+     * @param id
+     * @return
+     */
+    public int findTerm(String id) {
+        return findInHash(idHashPos, id, 0);
+    }
+
+
+    /**
+     * Returns the index of the first term with the given description, or -1
+     * if there is none.
+     *
+     * @param description
+     * @return
+     */
+    public int findTermByDescription(String description) {
+        return findInHash(descriptionHashPos, description, 1);
+    }
+
+
+    /**
+     * Returns the ID (name) of the term.
+     *
+     * @param termIdx
+     * @return
+     */
+    public String getName(int termIdx) {
+        return getString(getTermInt(termIdx, 0));
+    }
+
+
+    /**
+     * Returns the description of the term.
+     *
+     * @param termIdx
+     * @return
+     */
+    public String getDescription(int termIdx) {
+        return getString(getTermInt(termIdx, 1));
+    }
+
+
+    /**
+     * Returns the number of relations, which have the term as subject.
+     *
+     * @param termIdx
+     * @return
+     */
+    public int getNrRelations(int termIdx) {
+        return getTermInt(termIdx + 1, 2) - getTermInt(termIdx, 2);
+    }
+
+
+    /**
+     * Returns the predicate (e.g. "is_a" or "relationship") of the term's
+     * relation.
+     *
+     * @param termIdx
+     * @param relationIdx
+     * @return
+     */
+    public String getRelationPredicate(int termIdx, int relationIdx) {
+        return getString(buffer.getInt(relationsPos + 8 * (getTermInt(termIdx, 2) + relationIdx)));
+    }
+
+
+    /**
+     * Returns the object (e.g. "MS:1001045" or "has_regexp MS:1001176") of the
+     * term's relation.
+     *
+     * @param termIdx
+     * @param relationIdx
+     * @return
+     */
+    public String getRelationObject(int termIdx, int relationIdx) {
+        return getString(buffer.getInt(relationsPos + 8 * (getTermInt(termIdx, 2) + relationIdx) + 4));
+    }
+
+
+    /**
+     * Returns the objects of the relations with the given predicate, e.g. the
+     * parents by "is_a".
+     *
+     * @param termIdx
+     * @param predicate
+     * @return
+     */
+    public List<String> getRelationObjects(int termIdx, String predicate) {
+        List<String> objects = new ArrayList<>();
+        for (int relIdx = 0; relIdx < getNrRelations(termIdx); relIdx++) {
+            if (predicate.equals(getRelationPredicate(termIdx, relIdx))) {
+                objects.add(getRelationObject(termIdx, relIdx));
+            }
+        }
+        return objects;
+    }
+
+
+    /**
+     * Returns the annotations of the term, with values of the same types as
+     * given by the OBO parser (Strings, Booleans and Lists of Strings).
+     *
+     * @param termIdx
+     * @return
+     */
+    public Map<String, Object> getAnnotations(int termIdx) {
+        Map<String, Object> annotations = new HashMap<>();
+
+        for (int annIdx = getTermInt(termIdx, 3); annIdx < getTermInt(termIdx + 1, 3); annIdx++) {
+            int pos = annotationsPos + 12 * annIdx;
+            String key = getString(buffer.getInt(pos));
+            int value = buffer.getInt(pos + 8);
+
+            switch (buffer.getInt(pos + 4)) {
+            case ANNOTATION_BOOLEAN:
+                annotations.put(key, value != 0);
+                break;
+
+            case ANNOTATION_LIST_ELEMENT:
+                @SuppressWarnings("unchecked")
+                List<String> list = (List<String>) annotations.computeIfAbsent(key, k -> new ArrayList<String>());
+                list.add(getString(value));
+                break;
+
+            case ANNOTATION_STRING:
+            default:
+                annotations.put(key, getString(value));
+                break;
+            }
+        }
+
+        return annotations;
+    }
+
+
+    /**
+     * Returns the synonyms of the term.
+     *
+     * @param termIdx
+     * @return
+     */
+    public List<Synonym> getSynonyms(int termIdx) {
+        List<Synonym> synonyms = new ArrayList<>();
+
+        for (int synIdx = getTermInt(termIdx, 4); synIdx < getTermInt(termIdx + 1, 4); synIdx++) {
+            int pos = synonymsPos + 12 * synIdx;
+            Synonym synonym = new Synonym();
+            synonym.setName(getString(buffer.getInt(pos)));
+            synonym.setCategory(getString(buffer.getInt(pos + 4)));
+            synonym.setScope(buffer.getInt(pos + 8));
+            synonyms.add(synonym);
+        }
+
+        return synonyms;
+    }
+
+
+    /**
+     * Returns the given int of the term's entry.
+     */
+    private int getTermInt(int termIdx, int field) {
+        return buffer.getInt(termsPos + 4 * (TERM_INTS * termIdx + field));
+    }
+
+
+    /**
+     * Returns the string with the given index in the string table.
+     */
+    private String getString(int stringIdx) {
+        if ((stringIdx < 0) || (stringIdx >= nrStrings)) {
+            return null;
+        }
+
+        int start = buffer.getInt(stringOffsetsPos + 4 * stringIdx);
+        int end = buffer.getInt(stringOffsetsPos + 4 * (stringIdx + 1));
+        byte[] bytes = new byte[end - start];
+        buffer.get(stringDataPos + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Looks up the term with the given key in the hash table at the given
+     * position, which is compared to the given field of the terms.
+     */
+    private int findInHash(int hashPos, String key, int field) {
+        if ((key == null) || (hashSize == 0)) {
+            return -1;
+        }
+
+        for (int slot = hashSlot(key, hashSize); ; slot = (slot + 1) & (hashSize - 1)) {
+            int termIdx = buffer.getInt(hashPos + 4 * slot);
+            if (termIdx < 0) {
+                return -1;
+            }
+            if (key.equals(getString(getTermInt(termIdx, field)))) {
+                return termIdx;
+            }
+        }
+    }
+
+
+    /**
+     * The first slot of the key in a hash table of the given size (a power of
+     * two), given by the specified {@link String#hashCode()}.
+     */
+    private static int hashSlot(String key, int size) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (size - 1);
+    }
+
+
+    /**
+     * Writes the index of the given ontology. The terms are sorted by their
+     * names, the triples are stored as relations of their subjects.
+     *
+     * @param ontology
+     * @param outStream
+     * @throws IOException
+     */
+    public static void write(Ontology ontology, OutputStream outStream) throws IOException {
+        List<Term> terms = new ArrayList<>();
+        for (Term term : ontology.getTerms()) {
+            if (!(term instanceof Triple)) {
+                terms.add(term);
+            }
+        }
+        terms.sort(Comparator.comparing(Term::getName));
+
+        StringTable strings = new StringTable();
+        int[] termInts = new int[TERM_INTS * (terms.size() + 1)];
+        List<int[]> relations = new ArrayList<>();
+        List<int[]> annotations = new ArrayList<>();
+        List<int[]> synonyms = new ArrayList<>();
+
+        for (int termIdx = 0; termIdx < terms.size(); termIdx++) {
+            Term term = terms.get(termIdx);
+            int base = TERM_INTS * termIdx;
+
+            termInts[base] = strings.add(term.getName());
+            termInts[base + 1] = strings.add(term.getDescription());
+            termInts[base + 2] = relations.size();
+            termInts[base + 3] = annotations.size();
+            termInts[base + 4] = synonyms.size();
+
+            List<Triple> triples = new ArrayList<>(ontology.getTriples(term, null, null));
+            triples.sort(Comparator.comparing(Triple::getName));
+            for (Triple triple : triples) {
+                relations.add(new int[] {strings.add(triple.getPredicate().getName()),
+                        strings.add(triple.getObject().getName())});
+            }
+
+            List<String> keys = new ArrayList<>();
+            for (Object key : term.getAnnotation().keys()) {
+                keys.add(key.toString());
+            }
+            keys.sort(null);
+            for (String key : keys) {
+                addAnnotation(annotations, strings, key, term.getAnnotation().getProperty(key));
+            }
+
+            Object[] termSynonyms = term.getSynonyms();
+            Arrays.sort(termSynonyms, Comparator.comparing(Object::toString));
+            for (Object synonym : termSynonyms) {
+                if (synonym instanceof Synonym) {
+                    synonyms.add(new int[] {strings.add(((Synonym) synonym).getName()),
+                            strings.add(((Synonym) synonym).getCategory()), ((Synonym) synonym).getScope()});
+                } else {
+                    synonyms.add(new int[] {strings.add(synonym.toString()), NO_STRING, Synonym.UNKNOWN_SCOPE});
+                }
+            }
+        }
+
+        int base = TERM_INTS * terms.size();
+        termInts[base] = NO_STRING;
+        termInts[base + 1] = NO_STRING;
+        termInts[base + 2] = relations.size();
+        termInts[base + 3] = annotations.size();
+        termInts[base + 4] = synonyms.size();
+
+        int hashSize = Integer.highestOneBit(Math.max(2 * terms.size(), 1)) << 1;
+        int[] idHash = createHashTable(terms, hashSize, Term::getName);
+        int[] descriptionHash = createHashTable(terms, hashSize, Term::getDescription);
+
+        DataOutputStream out = new DataOutputStream(outStream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(strings.size());
+        out.writeInt(terms.size());
+        out.writeInt(relations.size());
+        out.writeInt(annotations.size());
+        out.writeInt(synonyms.size());
+        out.writeInt(hashSize);
+
+        strings.writeOffsets(out);
+        writeInts(out, termInts);
+        writeEntries(out, relations);
+        writeEntries(out, annotations);
+        writeEntries(out, synonyms);
+        writeInts(out, idHash);
+        writeInts(out, descriptionHash);
+        strings.writeData(out);
+        out.flush();
+    }
+
+
+    /**
+     * Adds the annotation with the given key and value.
+     */
+    private static void addAnnotation(List<int[]> annotations, StringTable strings, String key, Object value) {
+        int keyIdx = strings.add(key);
+
+        if (value instanceof Boolean) {
+            annotations.add(new int[] {keyIdx, ANNOTATION_BOOLEAN, ((Boolean) value) ? 1 : 0});
+        } else if (value instanceof Collection<?>) {
+            for (Object element : (Collection<?>) value) {
+                annotations.add(new int[] {keyIdx, ANNOTATION_LIST_ELEMENT, strings.add(String.valueOf(element))});
+            }
+        } else {
+            annotations.add(new int[] {keyIdx, ANNOTATION_STRING, strings.add(String.valueOf(value))});
+        }
+    }
+
+
+    /**
+     * Creates a hash table of the term indices by the given key, for equal
+     * keys only the first term is added.
+     */
+    private static int[] createHashTable(List<Term> terms, int size, Function<Term, String> keyFunction) {
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+
+        for (int termIdx = 0; termIdx < terms.size(); termIdx++) {
+            String key = keyFunction.apply(terms.get(termIdx));
+            if (key == null) {
+                continue;
+            }
+
+            int slot = hashSlot(key, size);
+            while ((table[slot] >= 0) && !key.equals(keyFunction.apply(terms.get(table[slot])))) {
+                slot = (slot + 1) & (size - 1);
+            }
+            if (table[slot] < 0) {
+                table[slot] = termIdx;
+            }
+        }
+
+        return table;
+    }
+
+
+    private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+        for (int value : ints) {
+            out.writeInt(value);
+        }
+    }
+
+
+    private static void writeEntries(DataOutputStream out, List<int[]> entries) throws IOException {
+        for (int[] entry : entries) {
+            writeInts(out, entry);
+        }
+    }
+
+
+    /**
+     * The table of the distinct strings of the index, stored as UTF-8.
+     */
+    private static class StringTable {
+
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        private final List<Integer> offsets = new ArrayList<>();
+
+
+        /**
+         * Adds the string (if not yet in the table) and returns its index.
+         */
+        private int add(String str) {
+            if (str == null) {
+                return NO_STRING;
+            }
+
+            return indices.computeIfAbsent(str, s -> {
+                offsets.add(data.size());
+                data.writeBytes(s.getBytes(StandardCharsets.UTF_8));
+                return offsets.size() - 1;
+            });
+        }
+
+
+        private int size() {
+            return offsets.size();
+        }
+
+
+        private void writeOffsets(DataOutputStream out) throws IOException {
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            out.writeInt(data.size());
+        }
+
+
+        private void writeData(DataOutputStream out) throws IOException {
+            data.writeTo(out);
+        }
+    }
+}
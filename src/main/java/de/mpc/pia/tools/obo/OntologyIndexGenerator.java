@@ -0,0 +1,89 @@
+package de.mpc.pia.tools.obo;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.log4j.Logger;
+import org.biojava.nbio.ontology.Ontology;
+
+import de.mpc.pia.tools.unimod.UnimodIndex;
+import de.mpc.pia.tools.unimod.UnimodParser;
+
+
+/**
+ * Creates the indices of the shipped ontologies (PSI-MS, PSI-MOD and Unimod).
+ * This is called during the build, the indices are written next to the shipped
+ * files into the given directory.
+ *
+ * @author julianu
+ *
+ */
+public final class OntologyIndexGenerator {
+
+    /** the logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(OntologyIndexGenerator.class);
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private OntologyIndexGenerator() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Writes the indices of the shipped ontologies.
+     *
+     * @param args the output directory (i.e. the directory of the shipped
+     * files in the build output)
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            LOGGER.error("usage: OntologyIndexGenerator <output directory>");
+            throw new IllegalArgumentException("the output directory must be given");
+        }
+        File outDir = new File(args[0]);
+
+        try (InputStream inStream = OBOMapper.class.getResourceAsStream(OBOMapper.PATH_TO_SHIPPED_OBO)) {
+            writeOntologyIndex(OBOMapper.parseOntology(inStream),
+                    indexFile(outDir, OBOMapper.PATH_TO_SHIPPED_OBO, OntologyIndex.INDEX_FILE_ENDING));
+        }
+
+        try (InputStream inStream = PsiModParser.class.getResourceAsStream(PsiModParser.PATH_TO_SHIPPED_OBO)) {
+            writeOntologyIndex(PsiModParser.parseOntology(inStream),
+                    indexFile(outDir, PsiModParser.PATH_TO_SHIPPED_OBO, OntologyIndex.INDEX_FILE_ENDING));
+        }
+
+        try (InputStream inStream = UnimodParser.class.getResourceAsStream(UnimodParser.PATH_TO_SHIPPED_UNIMOD);
+                OutputStream outStream = new BufferedOutputStream(new FileOutputStream(
+                        indexFile(outDir, UnimodParser.PATH_TO_SHIPPED_UNIMOD, UnimodIndex.INDEX_FILE_ENDING)))) {
+            UnimodIndex.write(UnimodParser.parseModifications(inStream), outStream);
+        }
+    }
+
+
+    /**
+     * Returns the index file for the given shipped resource.
+     */
+    private static File indexFile(File outDir, String resourcePath, String ending) {
+        File file = new File(outDir, resourcePath.substring(resourcePath.lastIndexOf('/') + 1) + ending);
+        LOGGER.info("writing index " + file.getAbsolutePath());
+        return file;
+    }
+
+
+    /**
+     * Writes the index of the ontology into the given file.
+     */
+    private static void writeOntologyIndex(Ontology ontology, File file) throws IOException {
+        try (OutputStream outStream = new BufferedOutputStream(new FileOutputStream(file))) {
+            OntologyIndex.write(ontology, outStream);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package de.mpc.pia.tools.obo;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -35,54 +37,47 @@ public class PsiModParser extends AbstractOBOMapper {
     /** the logger for this class */
     private static final Logger LOGGER = Logger.getLogger(PsiModParser.class);
 
-    /** the actual ontology in the OBO file */
+    /** the actual ontology in the online or explicitly given OBO file */
     private Ontology ontology;
 
+    /** the shipped ontology, read from its index */
+    private IndexedOntology indexedOntology;
+
+    /** the path to the shipped OBO file, its index has the additional ending {@link OntologyIndex#INDEX_FILE_ENDING} */
+    public static final String PATH_TO_SHIPPED_OBO = "/de/mpc/pia/PSI-MOD.obo";
+
+    /** name of the ontology */
+    private static final String ONTOLOGY_NAME = "PSI-MOD";
+
+    /** description of the ontology */
+    private static final String ONTOLOGY_DESCRIPTION = "modifications defined by the HUPO-PSI";
+
     /** pattern to identify the unimod id in a definition */
     private static Pattern unimodInDescription = Pattern.compile(".+\\[.*Unimod:([^, ]+).*\\].*$");
 
 
     /**
-     * Constructor for the PsiModParser. Uses the online OBO file (if accessible)
-     * or a locally shipped file otherwise.
-     *
+     * Constructor for the PsiModParser. Uses the index of the shipped OBO
+     * file.
      */
     public PsiModParser() {
-        this(true);
+        this(false);
     }
 
 
     /**
-     * Creates a new PsiModParser, using the online OBO or the shipped file only.
+     * Creates a new PsiModParser, using the online OBO or the shipped file
+     * only. The online OBO is parsed, the shipped OBO is read from its index
+     * created at build time (or parsed, if there is no index). If the online
+     * OBO is not accessible, the shipped one is used.
      *
      * @param useOnline whether to use the online OBO
      */
     public PsiModParser(boolean useOnline) {
-
-
-        // get the shipped ontology
-        try (InputStream inStream = OBOMapper.class.getResourceAsStream("/de/mpc/pia/PSI-MOD.obo")) {
-            OboParser parser = new OboParser();
-            BufferedReader oboFile = new BufferedReader(new InputStreamReader(inStream));
-
-            ontology = parser.parseOBO(oboFile, "PSI-MOD", "modifications defined by the HUPO-PSI");
-        } catch (IOException e) {
-            if (!useOnline) {
-                LOGGER.warn("could not read local obo file", e);
-            }
-        } catch (Exception e) {
-            if (!useOnline) {
-                LOGGER.error(e);
-            }
-        }
-
         if (useOnline) {
             // get the online ontology
             try (InputStream inStream = new URL(OntologyConstants.PSI_MOD_OBO_URL).openStream()) {
-                OboParser parser = new OboParser();
-                BufferedReader oboFile = new BufferedReader(new InputStreamReader(inStream));
-
-                ontology = parser.parseOBO(oboFile, "PSI-MOD", "modifications defined by the HUPO-PSI");
+                ontology = parseOntology(inStream);
             } catch (IOException e) {
                 LOGGER.warn("Could not read online obo file, check internet connection.", e);
             } catch (Exception e) {
@@ -91,14 +86,93 @@ public class PsiModParser extends AbstractOBOMapper {
         }
 
         if (ontology == null) {
+            initializeShippedOntology(!useOnline);
+        }
+
+        if ((ontology == null) && (indexedOntology == null)) {
             throw new AssertionError("Could not read ontology file.");
         }
     }
 
 
+    /**
+     * Creates a new PsiModParser for the given OBO file, e.g. for a newer
+     * version than the shipped one.
+     *
+     * @param oboFileName the path to the OBO file
+     */
+    public PsiModParser(String oboFileName) {
+        try (InputStream inStream = new FileInputStream(oboFileName)) {
+            ontology = parseOntology(inStream);
+        } catch (Exception e) {
+            LOGGER.error("could not parse obo file " + oboFileName, e);
+            throw new AssertionError(e);
+        }
+    }
+
+
+    /**
+     * Initializes the shipped ontology by its index, or by parsing the shipped
+     * file if there is no index.
+     *
+     * @param logErrors whether errors on reading the shipped file are logged
+     */
+    private void initializeShippedOntology(boolean logErrors) {
+        try {
+            OntologyIndex index = OntologyIndex.load(
+                    PsiModParser.class.getResource(PATH_TO_SHIPPED_OBO + OntologyIndex.INDEX_FILE_ENDING));
+            if (index != null) {
+                indexedOntology = new IndexedOntology(index, ONTOLOGY_NAME, ONTOLOGY_DESCRIPTION);
+                return;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("could not read the index of the shipped obo file, parsing it", e);
+        }
+
+        try (InputStream inStream = PsiModParser.class.getResourceAsStream(PATH_TO_SHIPPED_OBO)) {
+            ontology = parseOntology(inStream);
+        } catch (IOException e) {
+            if (logErrors) {
+                LOGGER.warn("could not read local obo file", e);
+            }
+        } catch (Exception e) {
+            if (logErrors) {
+                LOGGER.error(e);
+            }
+        }
+    }
+
+
+    /**
+     * Parses the PSI-MOD ontology from the given stream.
+     *
+     * @param inStream
+     * @return
+     * @throws IOException
+     * @throws ParseException
+     */
+    static Ontology parseOntology(InputStream inStream) throws IOException, ParseException {
+        OboParser parser = new OboParser();
+        BufferedReader oboFile = new BufferedReader(new InputStreamReader(inStream));
+        return parser.parseOBO(oboFile, ONTOLOGY_NAME, ONTOLOGY_DESCRIPTION);
+    }
+
+
     @Override
     public Ontology getCurrentOntology() {
-        return ontology;
+        if (ontology != null) {
+            return ontology;
+        }
+        return indexedOntology.getOntology();
+    }
+
+
+    @Override
+    IndexedOntology getIndexedOntology() {
+        if (ontology != null) {
+            return null;
+        }
+        return indexedOntology;
     }
 
 
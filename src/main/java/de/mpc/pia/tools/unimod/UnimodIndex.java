@@ -0,0 +1,216 @@
+package de.mpc.pia.tools.unimod;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.mpc.pia.tools.unimod.jaxb.CompositionT;
+import de.mpc.pia.tools.unimod.jaxb.ModT;
+import de.mpc.pia.tools.unimod.jaxb.PositionT;
+import de.mpc.pia.tools.unimod.jaxb.SpecificityT;
+
+
+/**
+ * A compact binary file of the Unimod modifications, which is created at build
+ * time from the shipped unimod.xml and read without XML unmarshalling.
+ * <p>
+ * It contains the values of the modifications used by PIA: the record ID,
+ * title, full and alternative names, approval, the mass delta and the
+ * specificities. Other values (like cross references and neutral losses) are
+ * only available when the XML is parsed.
+ *
+ * @author julianu
+ *
+ */
+public final class UnimodIndex {
+
+    /** the file ending of the index files */
+    public static final String INDEX_FILE_ENDING = ".idx";
+
+    /** magic number at the start of the index */
+    private static final int MAGIC = 0x5049414d;
+
+    /** the version of the index format */
+    private static final int VERSION = 1;
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private UnimodIndex() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Writes the index of the given modifications.
+     *
+     * @param modifications
+     * @param outStream
+     * @throws IOException
+     */
+    public static void write(List<ModT> modifications, OutputStream outStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outStream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(modifications.size());
+
+        for (ModT mod : modifications) {
+            writeLong(out, mod.getRecordId());
+            writeString(out, mod.getTitle());
+            writeString(out, mod.getFullName());
+            out.writeInt(mod.getAltName().size());
+            for (String altName : mod.getAltName()) {
+                writeString(out, altName);
+            }
+            writeBoolean(out, mod.isApproved());
+
+            CompositionT delta = mod.getDelta();
+            out.writeBoolean(delta != null);
+            if (delta != null) {
+                writeString(out, delta.getComposition());
+                writeDouble(out, delta.getMonoMass());
+                writeDouble(out, delta.getAvgeMass());
+            }
+
+            out.writeInt(mod.getSpecificity().size());
+            for (SpecificityT spec : mod.getSpecificity()) {
+                writeString(out, spec.getSite());
+                writeString(out, (spec.getPosition() != null) ? spec.getPosition().value() : null);
+                writeString(out, spec.getClassification());
+                writeBoolean(out, spec.isHidden());
+                writeString(out, (spec.getSpecGroup() != null) ? spec.getSpecGroup().toString() : null);
+            }
+        }
+
+        out.flush();
+    }
+
+
+    /**
+     * Reads the modifications from the index at the given resource.
+     *
+     * @param resource
+     * @return the modifications or null, if the resource is null
+     * @throws IOException
+     */
+    public static List<ModT> read(URL resource) throws IOException {
+        if (resource == null) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(resource.openStream()))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("no valid unimod index");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported unimod index version " + version);
+            }
+
+            int nrModifications = in.readInt();
+            List<ModT> modifications = new ArrayList<>(nrModifications);
+            for (int modIdx = 0; modIdx < nrModifications; modIdx++) {
+                modifications.add(readModification(in));
+            }
+            return modifications;
+        }
+    }
+
+
+    /**
+     * Reads the next modification.
+     */
+    private static ModT readModification(DataInputStream in) throws IOException {
+        ModT mod = new ModT();
+        mod.setRecordId(readLong(in));
+        mod.setTitle(readString(in));
+        mod.setFullName(readString(in));
+        for (int nrAltNames = in.readInt(); nrAltNames > 0; nrAltNames--) {
+            mod.getAltName().add(readString(in));
+        }
+        mod.setApproved(readBoolean(in));
+
+        if (in.readBoolean()) {
+            CompositionT delta = new CompositionT();
+            delta.setComposition(readString(in));
+            delta.setMonoMass(readDouble(in));
+            delta.setAvgeMass(readDouble(in));
+            mod.setDelta(delta);
+        }
+
+        for (int nrSpecificities = in.readInt(); nrSpecificities > 0; nrSpecificities--) {
+            SpecificityT spec = new SpecificityT();
+            spec.setSite(readString(in));
+            String position = readString(in);
+            if (position != null) {
+                spec.setPosition(PositionT.fromValue(position));
+            }
+            spec.setClassification(readString(in));
+            spec.setHidden(readBoolean(in));
+            String specGroup = readString(in);
+            if (specGroup != null) {
+                spec.setSpecGroup(new BigInteger(specGroup));
+            }
+            mod.getSpecificity().add(spec);
+        }
+
+        return mod;
+    }
+
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+
+    private static void writeBoolean(DataOutputStream out, Boolean value) throws IOException {
+        out.writeByte((value == null) ? -1 : (value ? 1 : 0));
+    }
+
+
+    private static Boolean readBoolean(DataInputStream in) throws IOException {
+        byte value = in.readByte();
+        return (value < 0) ? null : (value == 1);
+    }
+}
@@ -1,15 +1,21 @@
 package de.mpc.pia.tools.unimod;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 
 import org.apache.log4j.Logger;
@@ -23,13 +29,18 @@ import de.mpc.pia.tools.unimod.jaxb.SpecificityT;
 import de.mpc.pia.tools.unimod.jaxb.UnimodT;
 
 
+/**
+ * Parser for the Unimod modifications. The modifications are indexed by mass,
+ * names and accession and the results of the mass queries are cached, all
+ * lookups are thread-safe.
+ */
 public class UnimodParser {
 
     /** the mass tolerance for finding a modification by mass in Unimod */
     public static final Double UNIMOD_MASS_TOLERANCE = 0.001;
 
     /** the path to the packaged unimod */
-    private static final String PATH_TO_SHIPPED_UNIMOD =  "/de/mpc/pia/unimod.xml";
+    public static final String PATH_TO_SHIPPED_UNIMOD =  "/de/mpc/pia/unimod.xml";
 
     /** designation for the position anywhere */
     public static final String UNIMOD_ANYWHERE = "Anywhere";
@@ -57,51 +68,194 @@ public class UnimodParser {
     /** the modifications from the unimod */
     private List<ModT> modifications;
 
+    /** the monoisotopic mass deltas of the modifications, sorted ascending */
+    private double[] sortedMasses;
+
+    /** the indices of the modifications in the order of {@link #sortedMasses} */
+    private int[] sortedMassModIndices;
+
+    /** the indices of the modifications (ascending) by their normalized title, full and alternative names */
+    private Map<String, int[]> nameIndex;
+
+    /** the first modification by its record ID */
+    private Map<Long, ModT> accessionIndex;
+
+    /** the cached results of {@link #getModificationByMass(Double, List)}, as index in the modifications or -1 */
+    private final Map<MassQueryKey, Integer> massQueryCache;
+
+
+    /** the maximal number of cached mass queries */
+    private static final int MAX_CACHED_MASS_QUERIES = 100000;
+
 
     /** logger for this class */
     private static final Logger LOGGER = Logger.getLogger(UnimodParser.class);
 
 
+    /**
+     * Creates a new UnimodParser using the shipped Unimod index.
+     */
     public UnimodParser() {
-        this(true);
+        this(false);
     }
 
 
+    /**
+     * Creates a new UnimodParser. If useOnline is set, the current unimod.xml
+     * is downloaded and parsed, otherwise (or if the download fails) the
+     * shipped index is used. The shipped unimod.xml is only parsed, if no
+     * index is available.
+     *
+     * @param useOnline
+     */
     public UnimodParser(boolean useOnline) {
-        InputStream inStream = null;
-
-        try {
-            if (useOnline) {
-                try {
-                    inStream = new URL("http://www.unimod.org/xml/unimod.xml").openStream();
-                } catch (IOException e) {
-                    LOGGER.warn("could not use remote unimod.xml file, check internet connection", e);
-                }
+        if (useOnline) {
+            try (InputStream inStream = new URL("http://www.unimod.org/xml/unimod.xml").openStream()) {
+                modifications = parseModifications(inStream);
+            } catch (IOException e) {
+                LOGGER.warn("could not use remote unimod.xml file, check internet connection", e);
+            } catch (JAXBException e) {
+                LOGGER.error("could not parse remote unimod.xml file", e);
+                throw new AssertionError(e);
             }
+        }
 
-            if (inStream == null) {
-                // try shipped version
-                inStream = this.getClass().getResourceAsStream(PATH_TO_SHIPPED_UNIMOD);
-            }
+        if (modifications == null) {
+            modifications = loadShippedModifications();
+        }
+
+        createIndices();
+        massQueryCache = new ConcurrentHashMap<>();
+    }
+
+
+    /**
+     * Creates a new UnimodParser for the given unimod.xml file, e.g. for a
+     * newer version than the shipped one.
+     *
+     * @param unimodFileName
+     */
+    public UnimodParser(String unimodFileName) {
+        try (InputStream inStream = new FileInputStream(unimodFileName)) {
+            modifications = parseModifications(inStream);
+        } catch (IOException | JAXBException e) {
+            LOGGER.error("could not parse unimod file " + unimodFileName, e);
+            throw new AssertionError(e);
+        }
 
-            JAXBContext context = JAXBContext.newInstance(UnimodT.class.getPackage().getName());
-            Unmarshaller um = context.createUnmarshaller();
-            @SuppressWarnings("unchecked")
-            JAXBElement<UnimodT> doc = (JAXBElement<UnimodT>)um.unmarshal(inStream);
+        createIndices();
+        massQueryCache = new ConcurrentHashMap<>();
+    }
+
+
+    /**
+     * Loads the shipped modifications, preferably from the index created at
+     * build time.
+     */
+    private List<ModT> loadShippedModifications() {
+        try {
+            List<ModT> indexedMods = UnimodIndex.read(
+                    UnimodParser.class.getResource(PATH_TO_SHIPPED_UNIMOD + UnimodIndex.INDEX_FILE_ENDING));
+            if (indexedMods != null) {
+                return indexedMods;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("could not read the unimod index, parsing the shipped unimod.xml", e);
+        }
 
-            modifications = doc.getValue().getModifications().getMod();
-        } catch (Exception e) {
+        try (InputStream inStream = UnimodParser.class.getResourceAsStream(PATH_TO_SHIPPED_UNIMOD)) {
+            return parseModifications(inStream);
+        } catch (IOException | JAXBException e) {
             LOGGER.error("could not parse unimod.xml file", e);
             throw new AssertionError(e);
-        } finally {
-            try {
-                if (inStream != null) {
-                    inStream.close();
+        }
+    }
+
+
+    /**
+     * Parses the modifications from the given unimod.xml stream.
+     *
+     * @param inStream
+     * @return
+     * @throws JAXBException
+     */
+    public static List<ModT> parseModifications(InputStream inStream) throws JAXBException {
+        JAXBContext context = JAXBContext.newInstance(UnimodT.class.getPackage().getName());
+        Unmarshaller um = context.createUnmarshaller();
+        @SuppressWarnings("unchecked")
+        JAXBElement<UnimodT> doc = (JAXBElement<UnimodT>)um.unmarshal(inStream);
+
+        return doc.getValue().getModifications().getMod();
+    }
+
+
+    /**
+     * Creates the indices of the modifications by mass, names and accession.
+     * The indices are not changed afterwards, so lookups are thread-safe.
+     */
+    private void createIndices() {
+        List<Integer> massModIndices = new ArrayList<>(modifications.size());
+        Map<String, List<Integer>> namesModIndices = new HashMap<>();
+        accessionIndex = new HashMap<>();
+
+        for (int modIdx = 0; modIdx < modifications.size(); modIdx++) {
+            ModT mod = modifications.get(modIdx);
+
+            if ((mod.getDelta() != null) && (mod.getDelta().getMonoMass() != null)) {
+                massModIndices.add(modIdx);
+            }
+
+            Set<String> names = new HashSet<>();
+            names.add(normalizeName(mod.getTitle()));
+            names.add(normalizeName(mod.getFullName()));
+            for (String altName : mod.getAltName()) {
+                names.add(normalizeName(altName));
+            }
+            for (String name : names) {
+                if (name != null) {
+                    namesModIndices.computeIfAbsent(name, k -> new ArrayList<>()).add(modIdx);
                 }
-            } catch (IOException e) {
-                LOGGER.warn("could not properly close stream", e);
             }
+
+            if (mod.getRecordId() != null) {
+                accessionIndex.putIfAbsent(mod.getRecordId(), mod);
+            }
+        }
+
+        massModIndices.sort((idx1, idx2) -> Double.compare(
+                modifications.get(idx1).getDelta().getMonoMass(), modifications.get(idx2).getDelta().getMonoMass()));
+        sortedMasses = new double[massModIndices.size()];
+        sortedMassModIndices = new int[massModIndices.size()];
+        for (int i = 0; i < massModIndices.size(); i++) {
+            sortedMassModIndices[i] = massModIndices.get(i);
+            sortedMasses[i] = modifications.get(sortedMassModIndices[i]).getDelta().getMonoMass();
+        }
+
+        nameIndex = new HashMap<>(namesModIndices.size());
+        for (Map.Entry<String, List<Integer>> nameIt : namesModIndices.entrySet()) {
+            nameIndex.put(nameIt.getKey(), nameIt.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+
+    /**
+     * Normalizes the name for the name index, two names are equal ignoring the
+     * case (see {@link String#equalsIgnoreCase(String)}) if and only if their
+     * normalized names are equal.
+     *
+     * @param name
+     * @return
+     */
+    private static String normalizeName(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        char[] normalized = new char[name.length()];
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] = Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
         }
+        return new String(normalized);
     }
 
 
@@ -187,12 +341,7 @@ public class UnimodParser {
         }
 
         try {
-            Long id = Long.parseLong(idStr);
-            for (ModT mod : modifications) {
-                if (mod.getRecordId().equals(id)) {
-                    return mod;
-                }
-            }
+            return accessionIndex.get(Long.parseLong(idStr));
         } catch (NumberFormatException e) {
             LOGGER.error("Could not parse accession in UniMod: " + idStr, e);
         }
@@ -208,11 +357,9 @@ public class UnimodParser {
      * @return
      */
     public ModT getModificationByName(String query, List<String> residues) {
-
-        for (ModT mod : modifications) {
-            boolean nameFound = isAnyName(query, mod);
-
-            if (nameFound && checkResidues(mod, residues)) {
+        for (int modIdx : getModIndicesByName(query)) {
+            ModT mod = modifications.get(modIdx);
+            if (checkResidues(mod, residues)) {
                 return mod;
             }
         }
@@ -221,6 +368,22 @@ public class UnimodParser {
     }
 
 
+    /**
+     * Returns the indices of the modifications, which have the query as any
+     * name (see {@link #isAnyName(String, ModT)}), in ascending order.
+     *
+     * @param query
+     * @return
+     */
+    private int[] getModIndicesByName(String query) {
+        int[] modIndices = null;
+        if (query != null) {
+            modIndices = nameIndex.get(normalizeName(query));
+        }
+        return (modIndices != null) ? modIndices : new int[0];
+    }
+
+
     /**
      * Looks for a modification given the name and a residue.
      *
@@ -246,12 +409,10 @@ public class UnimodParser {
      */
     public ModT getModificationByNameAndMass(String query, Double massdelta,
             List<String> residues) {
+        for (int modIdx : getModIndicesByName(query)) {
+            ModT mod = modifications.get(modIdx);
 
-        for (ModT mod : modifications) {
-            boolean nameFound = isAnyName(query, mod);
-
-            if (nameFound &&
-                    (Math.abs(mod.getDelta().getMonoMass() - massdelta) <= UNIMOD_MASS_TOLERANCE) &&
+            if ((Math.abs(mod.getDelta().getMonoMass() - massdelta) <= UNIMOD_MASS_TOLERANCE) &&
                     checkResidues(mod, residues)) {
                 return mod;
             }
@@ -319,14 +480,64 @@ public class UnimodParser {
      * @return
      */
     public ModT getModificationByMass(Double massdelta, List<String> residues) {
-        for (ModT mod : modifications) {
-            if ((Math.abs(mod.getDelta().getMonoMass() - massdelta) <= UNIMOD_MASS_TOLERANCE)
-                    && checkResidues(mod, residues)) {
-                return mod;
+        if (residues == null) {
+            int modIdx = findModificationIndexByMass(massdelta, null);
+            return (modIdx >= 0) ? modifications.get(modIdx) : null;
+        }
+
+        MassQueryKey key = new MassQueryKey(massdelta, residues);
+        Integer modIdx = massQueryCache.get(key);
+        if (modIdx == null) {
+            modIdx = findModificationIndexByMass(massdelta, residues);
+            if (massQueryCache.size() < MAX_CACHED_MASS_QUERIES) {
+                massQueryCache.put(key, modIdx);
             }
         }
 
-        return null;
+        return (modIdx >= 0) ? modifications.get(modIdx) : null;
+    }
+
+
+    /**
+     * Returns the index of the first modification in the modifications list,
+     * which has the mass shift (within the {@link #UNIMOD_MASS_TOLERANCE}) on
+     * the allowed residues, or -1 if there is none.
+     *
+     * @param massdelta
+     * @param residues
+     * @return
+     */
+    private int findModificationIndexByMass(double massdelta, List<String> residues) {
+        // search in a wider range, the exact tolerance is checked for each candidate
+        int idx = Arrays.binarySearch(sortedMasses, massdelta - 2 * UNIMOD_MASS_TOLERANCE);
+        if (idx < 0) {
+            idx = -idx - 1;
+        }
+        while ((idx > 0) && (sortedMasses[idx - 1] >= massdelta - 2 * UNIMOD_MASS_TOLERANCE)) {
+            // the binary search returns any of equal masses
+            idx--;
+        }
+
+        int[] candidates = new int[4];
+        int nrCandidates = 0;
+        for (; (idx < sortedMasses.length) && (sortedMasses[idx] <= massdelta + 2 * UNIMOD_MASS_TOLERANCE); idx++) {
+            if (Math.abs(sortedMasses[idx] - massdelta) <= UNIMOD_MASS_TOLERANCE) {
+                if (nrCandidates == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, 2 * nrCandidates);
+                }
+                candidates[nrCandidates++] = sortedMassModIndices[idx];
+            }
+        }
+
+        // return the first matching modification in the order of the modifications list
+        Arrays.sort(candidates, 0, nrCandidates);
+        for (int i = 0; i < nrCandidates; i++) {
+            if (checkResidues(modifications.get(candidates[i]), residues)) {
+                return candidates[i];
+            }
+        }
+
+        return -1;
     }
 
 
@@ -360,4 +571,40 @@ public class UnimodParser {
 
         return residuesOK;
     }
+
+
+    /**
+     * The key of a cached query by mass shift and residues.
+     */
+    private static final class MassQueryKey {
+
+        private final double massdelta;
+
+        private final List<String> residues;
+
+
+        private MassQueryKey(double massdelta, List<String> residues) {
+            this.massdelta = massdelta;
+            this.residues = new ArrayList<>(residues);
+        }
+
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MassQueryKey)) {
+                return false;
+            }
+            MassQueryKey other = (MassQueryKey) obj;
+            return (Double.compare(massdelta, other.massdelta) == 0) && residues.equals(other.residues);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return 31 * Double.hashCode(massdelta) + residues.hashCode();
+        }
+    }
 }
@@ -0,0 +1,135 @@
+package de.mpc.pia.intermediate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class GroupTreeIndexTest {
+
+    /**
+     * Creates a random DAG of groups, where children always have higher IDs
+     * than their parents. Every third group gets a peptide.
+     */
+    private static List<Group> createGroups(int nrGroups, Random random) {
+        List<Group> groups = new ArrayList<>(nrGroups);
+        for (int i = 0; i < nrGroups; i++) {
+            Group group = new Group(i + 1L);
+            if (i % 3 == 2) {
+                group.addPeptide(new Peptide(i, "PEPTIDE" + i));
+            }
+            groups.add(group);
+        }
+
+        for (int i = 1; i < nrGroups; i++) {
+            int nrParents = 1 + random.nextInt(3);
+            for (int p = 0; p < nrParents; p++) {
+                Group parent = groups.get(random.nextInt(i));
+                parent.addChild(groups.get(i));
+                groups.get(i).addParent(parent);
+            }
+        }
+        return groups;
+    }
+
+
+    /** the recursive collection of all children, as formerly in {@link Group} */
+    private static Map<Long, Group> recursiveAllChildren(Group group, boolean onlyWithPeptides) {
+        Map<Long, Group> allChildren = new HashMap<>();
+        for (Group child : group.getChildren().values()) {
+            allChildren.putAll(recursiveAllChildren(child, onlyWithPeptides));
+            if (!onlyWithPeptides || !child.getPeptides().isEmpty()) {
+                allChildren.put(child.getID(), child);
+            }
+        }
+        return allChildren;
+    }
+
+
+    @Test
+    public void testClosureEqualsRecursion() {
+        List<Group> groups = createGroups(200, new Random(22));
+        GroupTreeIndex.buildIndices(groups);
+
+        GroupTreeIndex index = groups.get(0).getTreeIndex();
+        assertEquals(groups.size(), index.size());
+
+        for (Group group : groups) {
+            assertSame(index, group.getTreeIndex());
+            assertSame(group, index.getGroup(group.getTreeIndexPosition()));
+
+            assertEquals(recursiveAllChildren(group, false), group.getAllChildren());
+            assertEquals(recursiveAllChildren(group, true), group.getAllPeptideChildren());
+            assertEquals(group.getAllChildren().size(), group.getAllChildrenBits().cardinality());
+
+            Map<String, Peptide> allPeptides = new HashMap<>(group.getPeptides());
+            recursiveAllChildren(group, true).values().forEach(child -> allPeptides.putAll(child.getPeptides()));
+            assertEquals(allPeptides, group.getAllPeptides());
+        }
+    }
+
+
+    @Test
+    public void testSeparateTrees() {
+        List<Group> firstTree = createGroups(10, new Random(1));
+        List<Group> secondTree = createGroups(10, new Random(2));
+
+        GroupTreeIndex firstIndex = firstTree.get(5).getTreeIndex();
+        assertEquals(10, firstIndex.size());
+        assertNotSame(firstIndex, secondTree.get(5).getTreeIndex());
+        firstTree.forEach(group -> assertSame(firstIndex, group.getTreeIndex()));
+    }
+
+
+    @Test
+    public void testGroupMapLookup() {
+        List<Group> groups = createGroups(50, new Random(4));
+
+        for (Group group : groups) {
+            Map<Long, Group> allChildren = group.getAllChildren();
+            Map<Long, Group> expected = new HashMap<>(allChildren);
+
+            for (Group other : groups) {
+                assertEquals(expected.containsKey(other.getID()), allChildren.containsKey(other.getID()));
+                assertSame(expected.get(other.getID()), allChildren.get(other.getID()));
+            }
+            assertFalse(allChildren.containsKey(-1L));
+            assertNull(allChildren.get(-1L));
+            assertFalse(allChildren.containsKey((int) group.getID()));
+        }
+    }
+
+
+    @Test
+    public void testChangesInvalidateIndex() {
+        List<Group> groups = createGroups(20, new Random(3));
+        Group leaf = new Group(100L);
+        GroupTreeIndex index = groups.get(0).getTreeIndex();
+        assertFalse(groups.get(0).getAllChildren().containsKey(leaf.getID()));
+
+        groups.get(19).addChild(leaf);
+        leaf.addParent(groups.get(19));
+        assertFalse(index.isValid());
+        assertTrue(groups.get(0).getAllChildren().containsKey(leaf.getID()));
+        assertFalse(groups.get(0).getAllPeptideChildren().containsKey(leaf.getID()));
+
+        leaf.addPeptide(new Peptide(100L, "LEAFPEPTIDE"));
+        assertTrue(groups.get(0).getAllPeptideChildren().containsKey(leaf.getID()));
+        assertTrue(groups.get(0).getAllPeptides().containsKey("LEAFPEPTIDE"));
+
+        BitSet leafBits = leaf.getAllChildrenBits();
+        assertTrue(leafBits.isEmpty());
+    }
+}
@@ -0,0 +1,137 @@
+package de.mpc.pia.intermediate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+public class PeptideSpectrumMatchTest {
+
+    private static PeptideSpectrumMatch createPSM(long id, Double rt) {
+        return new PeptideSpectrumMatch(id, 2, 500.25, 0.01, rt, new String("PEPTIDEK"), 0,
+                "index=" + id, "title " + id, null, null);
+    }
+
+
+    @Test
+    public void testModifications() {
+        PeptideSpectrumMatch psm = createPSM(1L, null);
+        assertTrue(psm.getModifications().isEmpty());
+        assertEquals("", psm.getModificationString());
+        assertSame(psm.getSequence(), psm.getPeptideStringID(true));
+
+        Modification oxidation = new Modification('M', 15.994915, "Oxidation", "UNIMOD:35");
+        Modification phospho = new Modification('T', 79.966331, "Phospho", "UNIMOD:21");
+        Modification carbamidomethyl = new Modification('C', 57.021464, "Carbamidomethyl", "UNIMOD:4");
+
+        TreeMap<Integer, Modification> expected = new TreeMap<>();
+        expected.put(6, oxidation);
+        expected.put(2, phospho);
+        expected.put(4, carbamidomethyl);
+        expected.put(0, carbamidomethyl);
+        expected.put(2, oxidation);
+        expected.forEach(psm::addModification);
+        psm.addModification(2, phospho);
+        expected.put(2, phospho);
+
+        Map<Integer, Modification> modifications = psm.getModifications();
+        assertEquals(expected, modifications);
+        assertEquals(modifications, expected);
+        assertEquals(expected.hashCode(), modifications.hashCode());
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(modifications.keySet()));
+        assertSame(phospho, modifications.get(2));
+        assertNull(modifications.get(3));
+
+        assertEquals(PeptideSpectrumMatch.getModificationString(expected), psm.getModificationString());
+        assertEquals("PEPTIDEK(0;57.0215)(2;79.9663)(4;57.0215)(6;15.9949)", psm.getPeptideStringID(true));
+        assertEquals("PEPTIDEK", psm.getPeptideStringID(false));
+    }
+
+
+    @Test
+    public void testFlagsAndRetentionTime() {
+        PeptideSpectrumMatch psm = createPSM(1L, null);
+        assertNull(psm.getRetentionTime());
+        assertNull(psm.getIsDecoy());
+        assertNull(psm.getIsUnique());
+
+        psm.setIsDecoy(true);
+        psm.setIsUnique(false);
+        assertEquals(Boolean.TRUE, psm.getIsDecoy());
+        assertEquals(Boolean.FALSE, psm.getIsUnique());
+
+        psm.setIsDecoy(null);
+        assertNull(psm.getIsDecoy());
+        assertEquals(Boolean.FALSE, psm.getIsUnique());
+
+        assertEquals(Double.valueOf(1234.5), createPSM(2L, 1234.5).getRetentionTime());
+    }
+
+
+    @Test
+    public void testScoresAndEquality() {
+        PeptideSpectrumMatch psm = createPSM(1L, 60.0);
+        PeptideSpectrumMatch other = createPSM(2L, 60.0);
+        for (PeptideSpectrumMatch p : new PeptideSpectrumMatch[] {psm, other}) {
+            p.addScore(new ScoreModel(42.0, ScoreModelEnum.MASCOT_SCORE));
+            p.addScore(new ScoreModel(0.5, "MS:1234567", "some score"));
+            p.addModification(3, new Modification('T', 79.966331, "Phospho", "UNIMOD:21"));
+            p.setIsDecoy(false);
+        }
+
+        // the sequences are shared
+        assertSame(psm.getSequence(), other.getSequence());
+
+        assertEquals(2, psm.getScores().size());
+        assertEquals(psm.getScores(), other.getScores());
+        assertEquals(Double.valueOf(0.5), psm.getScore(psm.getScores().get(1).getShortName()).getValue());
+
+        other.setID(1L);
+        assertFalse(psm.equals(other));
+        other = createPSM(1L, 60.0);
+        assertFalse(psm.equalsWithoutID(other));
+    }
+
+
+    @Test
+    public void testSerialization() throws Exception {
+        PeptideSpectrumMatch psm = createPSM(1L, 60.0);
+        psm.addScore(new ScoreModel(42.0, ScoreModelEnum.MASCOT_SCORE));
+        psm.addScore(new ScoreModel(null, "MS:1234567", "some score"));
+        psm.addModification(3, new Modification('T', 79.966331, "Phospho", "UNIMOD:21"));
+        psm.setIsUnique(true);
+
+        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(bytesOut)) {
+            objectOut.writeObject(psm);
+        }
+
+        PeptideSpectrumMatch read;
+        try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytesOut.toByteArray()))) {
+            read = (PeptideSpectrumMatch) objectIn.readObject();
+        }
+
+        assertEquals(psm.getScores(), read.getScores());
+        assertNull(read.getScores().get(1).getValue());
+        assertEquals(psm.getModifications(), read.getModifications());
+        assertEquals(psm.getPeptideStringID(true), read.getPeptideStringID(true));
+        assertEquals(psm.getRetentionTime(), read.getRetentionTime());
+        assertEquals(Boolean.TRUE, read.getIsUnique());
+        assertSame(psm.getSequence(), read.getSequence());
+    }
+}
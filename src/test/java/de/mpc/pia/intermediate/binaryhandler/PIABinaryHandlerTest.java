@@ -0,0 +1,192 @@
+package de.mpc.pia.intermediate.binaryhandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler;
+import de.mpc.pia.modeller.PIAModeller;
+
+public class PIABinaryHandlerTest {
+
+    private static File xmlFile;
+
+    private static File binaryFile;
+
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws IOException {
+        PIACompiler piaCompiler = new PIASimpleCompiler();
+
+        File tandemFile = new File(PIABinaryHandlerTest.class.getResource("/merge1-tandem-fdr_filtered-015.idXML").getPath());
+        File msgfFile = new File(PIABinaryHandlerTest.class.getResource("/merge1-msgf-fdr_filtered-015.idXML").getPath());
+
+        piaCompiler.getDataFromFile("tandem", tandemFile.getAbsolutePath(), null, null);
+        piaCompiler.getDataFromFile("msgf", msgfFile.getAbsolutePath(), null, null);
+
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+        piaCompiler.setName("testFile");
+
+        xmlFile = File.createTempFile("PIABinaryHandlerTest", ".pia.xml");
+        binaryFile = File.createTempFile("PIABinaryHandlerTest", PIABinaryFormat.FILE_SUFFIX);
+
+        piaCompiler.writeOutXML(xmlFile);
+        piaCompiler.writeOutBinary(binaryFile);
+        piaCompiler.finish();
+    }
+
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        xmlFile.delete();
+        binaryFile.delete();
+    }
+
+
+    @Test
+    public void testFormatDetection() {
+        assertTrue(PIABinaryFormat.isBinaryIntermediateFile(binaryFile.getAbsolutePath()));
+        assertFalse(PIABinaryFormat.isBinaryIntermediateFile(xmlFile.getAbsolutePath()));
+    }
+
+
+    @Test
+    public void testContentEqualsXML() throws IOException {
+        PIAIntermediateJAXBHandler xmlHandler = new PIAIntermediateJAXBHandler();
+        xmlHandler.parse(xmlFile.getAbsolutePath(), null);
+
+        Long[] progress = {0L};
+        PIABinaryHandler binaryHandler = new PIABinaryHandler(binaryFile.getAbsolutePath());
+        binaryHandler.parse(progress);
+        assertEquals(Long.valueOf(40), progress[0]);
+
+        assertEquals(xmlHandler.getProjectName(), binaryHandler.getProjectName());
+        assertEquals(xmlHandler.getProjectDate(), binaryHandler.getProjectDate());
+        assertEquals(xmlHandler.getFiles().keySet(), binaryHandler.getFiles().keySet());
+        assertEquals(xmlHandler.getSpectraData().keySet(), binaryHandler.getSpectraData().keySet());
+        assertEquals(xmlHandler.getSearchDatabase().keySet(), binaryHandler.getSearchDatabase().keySet());
+        assertEquals(xmlHandler.getAnalysisSoftware().keySet(), binaryHandler.getAnalysisSoftware().keySet());
+
+        assertEquals(xmlHandler.getPSMs().keySet(), binaryHandler.getPSMs().keySet());
+        for (PeptideSpectrumMatch psm : xmlHandler.getPSMs().values()) {
+            PeptideSpectrumMatch binaryPSM = binaryHandler.getPSMs().get(psm.getID());
+            assertEquals(psm.getSequence(), binaryPSM.getSequence());
+            assertEquals(psm.getCharge(), binaryPSM.getCharge());
+            assertEquals(psm.getMassToCharge(), binaryPSM.getMassToCharge(), 0.0);
+            assertEquals(psm.getRetentionTime(), binaryPSM.getRetentionTime());
+            assertEquals(psm.getSourceID(), binaryPSM.getSourceID());
+            assertEquals(psm.getSpectrumTitle(), binaryPSM.getSpectrumTitle());
+            assertEquals(psm.getModificationString(), binaryPSM.getModificationString());
+            assertEquals(psm.getScores().size(), binaryPSM.getScores().size());
+            for (int scoreIdx = 0; scoreIdx < psm.getScores().size(); scoreIdx++) {
+                assertEquals(psm.getScores().get(scoreIdx).getAccession(), binaryPSM.getScores().get(scoreIdx).getAccession());
+                assertEquals(psm.getScores().get(scoreIdx).getValue(), binaryPSM.getScores().get(scoreIdx).getValue());
+            }
+            assertEquals(psm.getIsDecoy(), binaryPSM.getIsDecoy());
+            assertEquals(psm.getParams().size(), binaryPSM.getParams().size());
+            assertEquals(psm.getFile().getID(), binaryPSM.getFile().getID());
+            assertEquals(psm.getPeptide().getID(), binaryPSM.getPeptide().getID());
+        }
+
+        assertEquals(xmlHandler.getAccessions().keySet(), binaryHandler.getAccessions().keySet());
+        for (Accession acc : xmlHandler.getAccessions().values()) {
+            Accession binaryAcc = binaryHandler.getAccessions().get(acc.getID());
+            assertEquals(acc.getAccession(), binaryAcc.getAccession());
+            assertEquals(acc.getFiles(), binaryAcc.getFiles());
+            assertEquals(acc.getDescriptions(), binaryAcc.getDescriptions());
+            assertEquals(acc.getSearchDatabaseRefs(), binaryAcc.getSearchDatabaseRefs());
+            assertEquals(acc.getGroup().getID(), binaryAcc.getGroup().getID());
+        }
+
+        assertEquals(xmlHandler.getPeptides().keySet(), binaryHandler.getPeptides().keySet());
+        for (Peptide pep : xmlHandler.getPeptides().values()) {
+            Peptide binaryPep = binaryHandler.getPeptides().get(pep.getID());
+            assertEquals(pep.getSequence(), binaryPep.getSequence());
+            assertEquals(pep.getSpectra().size(), binaryPep.getSpectra().size());
+            assertEquals(pep.getAccessionOccurrences().size(), binaryPep.getAccessionOccurrences().size());
+        }
+
+        assertEquals(xmlHandler.getGroups().keySet(), binaryHandler.getGroups().keySet());
+        for (Group group : xmlHandler.getGroups().values()) {
+            Group binaryGroup = binaryHandler.getGroups().get(group.getID());
+            assertEquals(group.getTreeID(), binaryGroup.getTreeID());
+            assertEquals(group.getAccessions().keySet(), binaryGroup.getAccessions().keySet());
+            assertEquals(group.getAllAccessions().keySet(), binaryGroup.getAllAccessions().keySet());
+            assertEquals(group.getChildren().keySet(), binaryGroup.getChildren().keySet());
+            assertEquals(group.getParents().keySet(), binaryGroup.getParents().keySet());
+        }
+
+        assertEquals(xmlHandler.getPSMSetSettingsWarnings(), binaryHandler.getPSMSetSettingsWarnings());
+        assertEquals(xmlHandler.getNrTrees(), binaryHandler.getNrTrees());
+    }
+
+
+    @Test
+    public void testLazySectionLoading() throws IOException {
+        PIABinaryHandler binaryHandler = new PIABinaryHandler(binaryFile.getAbsolutePath());
+
+        assertEquals("testFile", binaryHandler.getProjectName());
+
+        // the accessions need no other section
+        assertFalse(binaryHandler.getAccessions().isEmpty());
+        for (Accession acc : binaryHandler.getAccessions().values()) {
+            assertEquals(null, acc.getGroup());
+        }
+
+        // the groups load their references and set the accessions' groups
+        assertFalse(binaryHandler.getGroups().isEmpty());
+        for (Accession acc : binaryHandler.getAccessions().values()) {
+            assertNotNull(acc.getGroup());
+        }
+    }
+
+
+    @Test
+    public void testConversionIsIdentical() throws IOException {
+        File convertedBinary = File.createTempFile("PIABinaryHandlerTest-converted", PIABinaryFormat.FILE_SUFFIX);
+        File convertedXML = File.createTempFile("PIABinaryHandlerTest-converted", ".pia.xml");
+
+        try {
+            PIAIntermediateConverter.convert(binaryFile.getAbsolutePath(), convertedXML.getAbsolutePath());
+            assertEquals(new String(Files.readAllBytes(xmlFile.toPath()), StandardCharsets.UTF_8),
+                    new String(Files.readAllBytes(convertedXML.toPath()), StandardCharsets.UTF_8));
+
+            PIAIntermediateConverter.convert(xmlFile.getAbsolutePath(), convertedBinary.getAbsolutePath());
+            PIAIntermediateConverter.convert(convertedBinary.getAbsolutePath(), convertedXML.getAbsolutePath());
+            assertEquals(new String(Files.readAllBytes(xmlFile.toPath()), StandardCharsets.UTF_8),
+                    new String(Files.readAllBytes(convertedXML.toPath()), StandardCharsets.UTF_8));
+        } finally {
+            convertedBinary.delete();
+            convertedXML.delete();
+        }
+    }
+
+
+    @Test
+    public void testModellerLoadsBinaryFile() {
+        PIAModeller xmlModeller = new PIAModeller(xmlFile.getAbsolutePath());
+        PIAModeller binaryModeller = new PIAModeller(binaryFile.getAbsolutePath());
+
+        assertEquals(xmlModeller.getProjectName(), binaryModeller.getProjectName());
+        assertEquals(xmlModeller.getGroups().size(), binaryModeller.getGroups().size());
+        assertEquals(xmlModeller.getPSMModeller().getNrReportPSMs(0L),
+                binaryModeller.getPSMModeller().getNrReportPSMs(0L));
+    }
+}
@@ -0,0 +1,76 @@
+package de.mpc.pia.intermediate.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class AccessionPeptideClustererTest {
+
+    @Test
+    public void testSmallClusters() {
+        AccessionPeptideClusterer clusterer = new AccessionPeptideClusterer();
+
+        // cluster 1: acc 1, 2 via pep 10, 11 and acc 3 via pep 12 (shared with acc 2)
+        clusterer.addConnection(1, 10);
+        clusterer.addConnection(2, 10);
+        clusterer.addConnection(2, 11);
+        clusterer.addConnection(3, 12);
+        clusterer.addConnection(2, 12);
+        // cluster 2: acc 4 with pep 13
+        clusterer.addConnection(4, 13);
+
+        assertEquals(6, clusterer.getNrConnections());
+        assertEquals(2, clusterer.getNrClusters());
+
+        List<Map<Long, Collection<Long>>> clusters = clusterer.buildClusters(
+                Arrays.asList(4L, 1L, 2L, 3L, 5L),
+                pepId -> new HashSet<>(Arrays.asList(pepId)));
+
+        assertEquals(2, clusters.size());
+        assertEquals(new HashSet<>(Arrays.asList(13L)), clusters.get(0).keySet());
+        assertEquals(new HashSet<>(Arrays.asList(10L, 11L, 12L)), clusters.get(1).keySet());
+    }
+
+
+    @Test
+    public void testIndependentOfConnectionOrder() {
+        // the peptide IDs fall into the same bucket of the cluster's map
+        AccessionPeptideClusterer ascending = new AccessionPeptideClusterer();
+        ascending.addConnection(1, 1);
+        ascending.addConnection(1, 17);
+        ascending.addConnection(1, 33);
+
+        AccessionPeptideClusterer descending = new AccessionPeptideClusterer();
+        descending.addConnection(1, 33);
+        descending.addConnection(1, 17);
+        descending.addConnection(1, 1);
+
+        List<Long> ascendingPeptides = new ArrayList<>(ascending.buildClusters(
+                Arrays.asList(1L), pepId -> Arrays.asList(1L)).get(0).keySet());
+        List<Long> descendingPeptides = new ArrayList<>(descending.buildClusters(
+                Arrays.asList(1L), pepId -> Arrays.asList(1L)).get(0).keySet());
+
+        assertEquals(ascendingPeptides, descendingPeptides);
+    }
+
+
+    @Test
+    public void testSameClustersAsFixedPoint() {
+        SyntheticClusterGraph graph = new SyntheticClusterGraph(100000, 13L);
+
+        List<Map<Long, Collection<Long>>> unionFindClusters = graph.getClusterer().buildClusters(
+                graph.getAccPepMap().keySet(), graph.getPepAccMap()::get);
+        List<Map<Long, Collection<Long>>> fixedPointClusters =
+                SyntheticClusterGraph.buildFixedPointClusters(graph.getAccPepMap(), graph.getPepAccMap());
+
+        assertEquals(fixedPointClusters.size(), unionFindClusters.size());
+        assertEquals(fixedPointClusters, unionFindClusters);
+    }
+}
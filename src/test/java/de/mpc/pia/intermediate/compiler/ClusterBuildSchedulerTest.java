@@ -0,0 +1,68 @@
+package de.mpc.pia.intermediate.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.Peptide;
+
+public class ClusterBuildSchedulerTest {
+
+    /**
+     * Creates a compiler with a random graph of accessions organized in
+     * families and peptides shared inside the families.
+     */
+    private static PIACompiler createCompiler(long seed) {
+        PIACompiler compiler = new PIASimpleCompiler();
+        Random random = new Random(seed);
+
+        int nrFamilies = 50;
+        int familySize = 6;
+        for (int accNr = 0; accNr < nrFamilies * familySize; accNr++) {
+            compiler.insertNewAccession("ACC_" + accNr, null);
+        }
+
+        for (int pepNr = 0; pepNr < 1000; pepNr++) {
+            Peptide peptide = compiler.insertNewPeptide("PEPTIDE_" + pepNr);
+            int family = random.nextInt(nrFamilies);
+
+            int nrAccessions = 1 + random.nextInt(3);
+            for (int i = 0; i < nrAccessions; i++) {
+                Accession accession = compiler.getAccession("ACC_" + (family * familySize + random.nextInt(familySize)));
+                compiler.addAccessionPeptideConnection(accession, peptide);
+            }
+        }
+
+        compiler.buildClusterList();
+        return compiler;
+    }
+
+
+    /**
+     * Writes the compilation and removes the (time-dependent) date.
+     */
+    private static String writeCompilation(PIACompiler compiler) throws UnsupportedEncodingException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compiler.writeOutXML(out);
+        return out.toString("UTF-8").replaceFirst("date=\"[^\"]*\"", "");
+    }
+
+
+    @Test
+    public void testGroupIDsIndependentOfThreads() throws UnsupportedEncodingException {
+        PIACompiler singleThreaded = createCompiler(7L);
+        singleThreaded.setNrThreads(1);
+        singleThreaded.buildIntermediateStructure();
+
+        PIACompiler multiThreaded = createCompiler(7L);
+        multiThreaded.setNrThreads(4);
+        multiThreaded.buildIntermediateStructure();
+
+        assertEquals(writeCompilation(singleThreaded), writeCompilation(multiThreaded));
+    }
+}
@@ -1,8 +1,10 @@
 package de.mpc.pia.intermediate.compiler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
@@ -48,4 +50,31 @@ public class PIACompilerNativeFilesTest {
         piaCompiler.finish();
     }
 
+
+    /**
+     * Compiles the Mascot file in the given mode and returns the written
+     * intermediate file without the (time-dependent) date.
+     */
+    private static String compileMascotFile(boolean streaming) throws IOException {
+        PIACompiler piaCompiler = new PIASimpleCompiler();
+        piaCompiler.setStreamMascotDatFiles(streaming);
+
+        assertTrue("Mascot file could not be parsed", piaCompiler.getDataFromFile("mascot", mascotFile.getAbsolutePath(), null, "mascot"));
+
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+        piaCompiler.setName("testFile");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        piaCompiler.writeOutXML(out);
+        piaCompiler.finish();
+
+        return out.toString("UTF-8").replaceFirst("date=\"[^\"]*\"", "");
+    }
+
+
+    @Test
+    public void testMascotStreamingEqualsMemory() throws IOException {
+        assertEquals(compileMascotFile(false), compileMascotFile(true));
+    }
 }
@@ -0,0 +1,117 @@
+package de.mpc.pia.intermediate.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PIACompilerParallelParsingTest {
+
+    private List<CompilerInputFile> inputFiles;
+
+
+    @Before
+    public void setUp() {
+        inputFiles = new ArrayList<>();
+        inputFiles.add(createInputFile("tandem", "/merge1-tandem-fdr_filtered-015.idXML"));
+        inputFiles.add(createInputFile("msgf", "/merge1-msgf-fdr_filtered-015.idXML"));
+        inputFiles.add(createInputFile("55merge_tandem", "/55merge_tandem.mzid"));
+        inputFiles.add(createInputFile("55merge_omssa", "/55merge_omssa.mzid"));
+    }
+
+
+    private static CompilerInputFile createInputFile(String name, String resource) {
+        String path = new File(PIACompilerParallelParsingTest.class.getResource(resource).getPath()).getAbsolutePath();
+        return new CompilerInputFile(name, path, null, null);
+    }
+
+
+    /**
+     * Parses the input files with the given number of parsing threads and
+     * returns the compiler.
+     */
+    private PIACompiler parse(int nrThreads) {
+        return parse(new PIASimpleCompiler(), nrThreads);
+    }
+
+
+    /**
+     * Parses the input files into the given compiler with the given number of
+     * parsing threads and returns the compiler.
+     */
+    private PIACompiler parse(PIACompiler piaCompiler, int nrThreads) {
+        piaCompiler.setNrParsingThreads(nrThreads);
+
+        assertEquals(inputFiles.size(), piaCompiler.getDataFromFiles(inputFiles));
+        return piaCompiler;
+    }
+
+
+    /**
+     * Builds the intermediate structure and returns it without the
+     * (time-dependent) date.
+     */
+    private static String writeCompilation(PIACompiler piaCompiler) throws UnsupportedEncodingException {
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+        piaCompiler.setName("testFile");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        piaCompiler.writeOutXML(out);
+        piaCompiler.finish();
+
+        return out.toString("UTF-8").replaceFirst("date=\"[^\"]*\"", "");
+    }
+
+
+    @Test
+    public void testSameDataAsSequentialParsing() {
+        PIACompiler sequential = parse(1);
+        PIACompiler parallel = parse(3);
+
+        assertEquals(sequential.getAllFileIDs(), parallel.getAllFileIDs());
+        assertEquals(sequential.getNrAccessions(), parallel.getNrAccessions());
+        assertEquals(sequential.getNrPeptides(), parallel.getNrPeptides());
+        assertEquals(sequential.getNrPeptideSpectrumMatches(), parallel.getNrPeptideSpectrumMatches());
+
+        for (Long accID : sequential.getAllAccessionIDs()) {
+            assertEquals(sequential.getAccession(accID).getAccession(), parallel.getAccession(accID).getAccession());
+        }
+        for (Long pepID : sequential.getAllPeptideIDs()) {
+            assertEquals(sequential.getPeptide(pepID).getSequence(), parallel.getPeptide(pepID).getSequence());
+        }
+        for (Long psmID : sequential.getAllPeptideSpectrumMatcheIDs()) {
+            assertEquals(sequential.getPeptideSpectrumMatch(psmID).getSourceID(),
+                    parallel.getPeptideSpectrumMatch(psmID).getSourceID());
+            assertEquals(sequential.getPeptideSpectrumMatch(psmID).getFile().getID(),
+                    parallel.getPeptideSpectrumMatch(psmID).getFile().getID());
+        }
+    }
+
+
+    @Test
+    public void testIndependentOfThreads() throws UnsupportedEncodingException {
+        String sequentialCompilation = writeCompilation(parse(1));
+
+        for (int nrThreads = 2; nrThreads <= inputFiles.size(); nrThreads++) {
+            assertEquals("compilation with " + nrThreads + " threads",
+                    sequentialCompilation, writeCompilation(parse(nrThreads)));
+        }
+    }
+
+
+    @Test
+    public void testDiskBackedCompilerParsesSequentially() throws IOException {
+        String sequentialCompilation = writeCompilation(parse(1));
+
+        assertEquals(sequentialCompilation,
+                writeCompilation(parse(new PIASQLiteCompiler(null, 10), inputFiles.size())));
+    }
+}
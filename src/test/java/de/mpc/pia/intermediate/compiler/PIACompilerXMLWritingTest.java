@@ -0,0 +1,179 @@
+package de.mpc.pia.intermediate.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.intermediate.xmlhandler.PIAFileCompression;
+import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler;
+
+public class PIACompilerXMLWritingTest {
+
+    private static PIACompiler piaCompiler;
+
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        piaCompiler = new PIASimpleCompiler();
+        piaCompiler.setNrThreads(1);
+
+        File tandemFile = new File(PIACompilerXMLWritingTest.class.getResource("/merge1-tandem-fdr_filtered-015.idXML").getPath());
+        File msgfFile = new File(PIACompilerXMLWritingTest.class.getResource("/merge1-msgf-fdr_filtered-015.idXML").getPath());
+
+        piaCompiler.getDataFromFile("tandem", tandemFile.getAbsolutePath(), null, null);
+        piaCompiler.getDataFromFile("msgf", msgfFile.getAbsolutePath(), null, null);
+
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+        piaCompiler.setName("testFile");
+    }
+
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        piaCompiler.finish();
+    }
+
+
+    private static String writeWithThreads(int nrThreads) throws UnsupportedEncodingException {
+        piaCompiler.setNrThreads(nrThreads);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        piaCompiler.writeOutXML(out);
+        return out.toString("UTF-8");
+    }
+
+
+    @Test
+    public void testChunkedWritingIsIdentical() throws UnsupportedEncodingException {
+        String sequential = writeWithThreads(1);
+
+        assertEquals(sequential, writeWithThreads(2));
+        assertEquals(sequential, writeWithThreads(4));
+    }
+
+
+    /**
+     * Compares the written file with the one of the former sequential writer
+     * (single marshaller per list), which is stored without the path of the
+     * FASTA file.
+     */
+    @Test
+    public void testChunkedWritingEqualsBaseline() throws IOException {
+        File fastaFile = new File(PIACompilerXMLWritingTest.class.getResource("/cRAP-contaminants-20120229.fasta").getPath());
+        File baselineFile = new File(PIACompilerXMLWritingTest.class.getResource("/cRAP-contaminants-20120229.pia.xml.gz").getPath());
+
+        String baseline;
+        try (InputStream in = new GZIPInputStream(new FileInputStream(baselineFile))) {
+            baseline = new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceFirst("date=\"[^\"]*\"", "");
+        }
+
+        PIACompiler fastaCompiler = new PIASimpleCompiler();
+        try {
+            fastaCompiler.getDataFromFile("cRAP", fastaFile.getAbsolutePath(), null, null);
+            fastaCompiler.buildClusterList();
+            fastaCompiler.buildIntermediateStructure();
+            fastaCompiler.setName("testFile");
+
+            String fastaPath = fastaFile.getParentFile().getAbsolutePath() + File.separator;
+            for (int nrThreads : new int[] {1, 2, 4}) {
+                fastaCompiler.setNrThreads(nrThreads);
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                fastaCompiler.writeOutXML(out);
+                String written = out.toString("UTF-8").replace(fastaPath, "").replaceFirst("date=\"[^\"]*\"", "");
+
+                assertEquals("written with " + nrThreads + " threads", baseline, written);
+            }
+        } finally {
+            fastaCompiler.finish();
+        }
+    }
+
+
+    @Test
+    public void testCompressedFilesAreReadTransparently() throws IOException {
+        piaCompiler.setNrThreads(2);
+
+        PIAIntermediateJAXBHandler plainHandler = writeAndParse(PIAFileCompression.NONE);
+
+        for (PIAFileCompression compression : PIAFileCompression.values()) {
+            PIAIntermediateJAXBHandler handler = writeAndParse(compression);
+
+            assertEquals(plainHandler.getFiles().size(), handler.getFiles().size());
+            assertEquals(plainHandler.getGroups().size(), handler.getGroups().size());
+            assertEquals(plainHandler.getAccessions().size(), handler.getAccessions().size());
+            assertEquals(plainHandler.getPeptides().size(), handler.getPeptides().size());
+            assertEquals(plainHandler.getPSMs().size(), handler.getPSMs().size());
+            assertEquals(plainHandler.getNrTrees(), handler.getNrTrees());
+        }
+    }
+
+
+    @Test
+    public void testParallelParsingIsIdentical() throws IOException {
+        File piaFile = File.createTempFile("PIACompilerXMLWritingTest", ".pia.xml");
+        try {
+            piaCompiler.writeOutXML(piaFile);
+
+            PIAIntermediateJAXBHandler sequential = new PIAIntermediateJAXBHandler();
+            sequential.setNrThreads(1);
+            sequential.parse(piaFile.getAbsolutePath(), null);
+
+            PIAIntermediateJAXBHandler parallel = new PIAIntermediateJAXBHandler();
+            parallel.setNrThreads(4);
+            parallel.parse(piaFile.getAbsolutePath(), null);
+
+            assertEquals(sequential.getPSMs().keySet(), parallel.getPSMs().keySet());
+            for (PeptideSpectrumMatch psm : sequential.getPSMs().values()) {
+                PeptideSpectrumMatch parallelPSM = parallel.getPSMs().get(psm.getID());
+                assertEquals(psm.getSequence(), parallelPSM.getSequence());
+                assertEquals(psm.getModificationString(), parallelPSM.getModificationString());
+                assertEquals(psm.getScores().size(), parallelPSM.getScores().size());
+                assertEquals(psm.getFile().getID(), parallelPSM.getFile().getID());
+                assertEquals(psm.getPeptide().getID(), parallelPSM.getPeptide().getID());
+            }
+
+            assertEquals(sequential.getAccessions().keySet(), parallel.getAccessions().keySet());
+            for (Accession acc : sequential.getAccessions().values()) {
+                Accession parallelAcc = parallel.getAccessions().get(acc.getID());
+                assertEquals(acc.getAccession(), parallelAcc.getAccession());
+                assertEquals(acc.getDescriptions(), parallelAcc.getDescriptions());
+                assertEquals(acc.getGroup().getID(), parallelAcc.getGroup().getID());
+            }
+
+            assertEquals(sequential.getPSMSetSettingsWarnings(), parallel.getPSMSetSettingsWarnings());
+            assertEquals(sequential.getNrTrees(), parallel.getNrTrees());
+        } finally {
+            piaFile.delete();
+        }
+    }
+
+
+    private static PIAIntermediateJAXBHandler writeAndParse(PIAFileCompression compression) throws IOException {
+        File piaFile = File.createTempFile("PIACompilerXMLWritingTest", ".pia.xml" + compression.getFileSuffix());
+        try {
+            piaCompiler.writeOutXML(piaFile);
+            assertEquals(compression, PIAFileCompression.getByFileName(piaFile.getName()));
+
+            PIAIntermediateJAXBHandler handler = new PIAIntermediateJAXBHandler();
+            handler.parse(piaFile.getAbsolutePath(), null);
+            return handler;
+        } finally {
+            piaFile.delete();
+        }
+    }
+}
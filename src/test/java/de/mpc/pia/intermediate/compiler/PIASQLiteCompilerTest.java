@@ -0,0 +1,112 @@
+package de.mpc.pia.intermediate.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PIASQLiteCompilerTest {
+
+    private File idXMLtandemFile;
+    private File idXMLmsgfFile;
+    private File fastaFile;
+
+
+    @Before
+    public void setUp() {
+        idXMLtandemFile = new File(PIASQLiteCompilerTest.class.getResource("/merge1-tandem-fdr_filtered-015.idXML").getPath());
+        idXMLmsgfFile = new File(PIASQLiteCompilerTest.class.getResource("/merge1-msgf-fdr_filtered-015.idXML").getPath());
+        fastaFile = new File(PIASQLiteCompilerTest.class.getResource("/cRAP-contaminants-20120229.fasta").getPath());
+    }
+
+
+    /**
+     * Compiles the test files with the given compiler and returns the
+     * intermediate file without the (time-dependent) date.
+     */
+    private String compile(PIACompiler piaCompiler) throws IOException {
+        return compile(piaCompiler, idXMLtandemFile, idXMLmsgfFile);
+    }
+
+
+    /**
+     * Compiles the given files with the given compiler and returns the
+     * intermediate file without the (time-dependent) date.
+     */
+    private String compile(PIACompiler piaCompiler, File... inputFiles) throws IOException {
+        for (File inputFile : inputFiles) {
+            assertTrue(piaCompiler.getDataFromFile(inputFile.getName(), inputFile.getAbsolutePath(), null, null));
+        }
+
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+        piaCompiler.setName("testFile");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        piaCompiler.writeOutXML(out);
+        piaCompiler.finish();
+
+        return out.toString("UTF-8").replaceFirst("date=\"[^\"]*\"", "");
+    }
+
+
+    @Test
+    public void testSameCompilationAsSimpleCompiler() throws IOException {
+        String simpleCompilation = compile(new PIASimpleCompiler());
+
+        // a very small cache, to assure the PSMs are read from the database
+        String sqliteCompilation = compile(new PIASQLiteCompiler(null, 10));
+
+        assertEquals(simpleCompilation, sqliteCompilation);
+    }
+
+
+    @Test
+    public void testSameCompilationOfFastaFiles() throws IOException {
+        // the second database shares the first proteins' peptides under other accessions
+        List<String> lines = Files.readAllLines(fastaFile.toPath(), StandardCharsets.UTF_8);
+        List<String> sharedLines = new ArrayList<>();
+        int nrProteins = 0;
+        for (String line : lines) {
+            if (line.startsWith(">") && (++nrProteins > 30)) {
+                break;
+            }
+            sharedLines.add(line.startsWith(">") ? line.replaceFirst("\\|$", "_SHARED|") : line);
+        }
+
+        File sharedFastaFile = File.createTempFile("pia_sqlite_test", ".fasta");
+        sharedFastaFile.deleteOnExit();
+        Files.write(sharedFastaFile.toPath(), sharedLines, StandardCharsets.UTF_8);
+
+        String simpleCompilation = compile(new PIASimpleCompiler(), fastaFile, sharedFastaFile);
+        String sqliteCompilation = compile(new PIASQLiteCompiler(null, 10), fastaFile, sharedFastaFile);
+
+        assertTrue(simpleCompilation.contains("ALBU_BOVIN_SHARED"));
+        assertEquals(simpleCompilation, sqliteCompilation);
+    }
+
+
+    @Test
+    public void testDatabaseRemovedOnFinish() throws IOException {
+        File tmpDirectory = File.createTempFile("pia_sqlite_test", "");
+        assertTrue(tmpDirectory.delete());
+        assertTrue(tmpDirectory.mkdir());
+
+        PIACompiler piaCompiler = new PIASQLiteCompiler(tmpDirectory, 10);
+        assertEquals(1, tmpDirectory.listFiles().length);
+
+        compile(piaCompiler);
+
+        assertEquals(0, tmpDirectory.listFiles().length);
+        assertTrue(tmpDirectory.delete());
+    }
+}
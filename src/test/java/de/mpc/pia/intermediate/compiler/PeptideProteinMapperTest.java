@@ -0,0 +1,120 @@
+package de.mpc.pia.intermediate.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.AccessionOccurrence;
+import de.mpc.pia.intermediate.Peptide;
+
+
+public class PeptideProteinMapperTest {
+
+    @Test
+    public void testSameOccurrencesAsIndexOf() {
+        Random random = new Random(7);
+        String aminoAcids = "ACDEGIKLMPR";
+
+        List<String> proteins = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            proteins.add(randomSequence(random, aminoAcids, 100 + random.nextInt(400)));
+        }
+
+        // peptides from the proteins (with duplicates and nested peptides) and random ones
+        List<String> peptides = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            if (random.nextInt(4) > 0) {
+                String protein = proteins.get(random.nextInt(proteins.size()));
+                int start = random.nextInt(protein.length() - 20);
+                peptides.add(protein.substring(start, start + 1 + random.nextInt(20)));
+            } else {
+                peptides.add(randomSequence(random, aminoAcids, 2 + random.nextInt(5)));
+            }
+        }
+
+        for (boolean ilEquivalent : new boolean[] {false, true}) {
+            PeptideProteinMapper mapper = new PeptideProteinMapper(peptides, ilEquivalent);
+            assertEquals(peptides.size(), mapper.getNrSequences());
+
+            for (String protein : proteins) {
+                Set<String> expected = new HashSet<>();
+                String text = ilEquivalent ? protein.replace('I', 'L') : protein;
+                for (int seqIdx = 0; seqIdx < peptides.size(); seqIdx++) {
+                    String pattern = ilEquivalent ? peptides.get(seqIdx).replace('I', 'L') : peptides.get(seqIdx);
+                    for (int start = text.indexOf(pattern); start > -1; start = text.indexOf(pattern, start + 1)) {
+                        expected.add(seqIdx + ":" + start);
+                    }
+                }
+
+                Set<String> found = new HashSet<>();
+                mapper.findOccurrences(protein, (seqIdx, start) -> assertTrue(found.add(seqIdx + ":" + start)));
+                assertEquals(expected, found);
+            }
+        }
+    }
+
+
+    @Test
+    public void testMapAccessionOccurrences() {
+        for (int nrThreads : new int[] {1, 4}) {
+            PIACompiler compiler = new PIASimpleCompiler();
+
+            Accession acc1 = compiler.insertNewAccession("ACC1", "MKPEPTIDEKLLPEPTIDER");
+            Accession acc2 = compiler.insertNewAccession("ACC2", null);
+            Accession acc3 = compiler.insertNewAccession("ACC3", "PEPTLDEK");
+
+            Peptide peptide = compiler.insertNewPeptide("PEPTIDEK");
+            Peptide other = compiler.insertNewPeptide("PEPTIDER");
+            Peptide given = compiler.insertNewPeptide("MKPEPTIDEK");
+
+            // a placeholder without sequence information
+            peptide.addAccessionOccurrence(acc1, 0, 0);
+            peptide.addAccessionOccurrence(acc2, 0, 0);
+
+            compiler.addAccessionPeptideConnection(acc1, peptide);
+            compiler.addAccessionPeptideConnection(acc2, peptide);
+            compiler.addAccessionPeptideConnection(acc3, peptide);
+            compiler.addAccessionPeptideConnection(acc1, other);
+
+            // the positions from the input file are kept, even if they differ
+            given.addAccessionOccurrence(acc1, 2, 11);
+            compiler.addAccessionPeptideConnection(acc1, given);
+
+            compiler.setILEquivalentMapping(true);
+            PeptideProteinMapper.mapAccessionOccurrences(compiler, true, nrThreads);
+
+            assertEquals(new HashSet<>(Arrays.asList("ACC1:3-10", "ACC2:0-0", "ACC3:1-8")),
+                    occurrenceStrings(peptide));
+            assertEquals(new HashSet<>(Arrays.asList("ACC1:13-20")), occurrenceStrings(other));
+            assertEquals(new HashSet<>(Arrays.asList("ACC1:2-11")), occurrenceStrings(given));
+            compiler.finish();
+        }
+    }
+
+
+    private static Set<String> occurrenceStrings(Peptide peptide) {
+        Set<String> occurrences = new HashSet<>();
+        for (AccessionOccurrence occ : peptide.getAccessionOccurrences()) {
+            occurrences.add(occ.getAccession().getAccession() + ':' + occ.getStart() + '-' + occ.getEnd());
+        }
+        return occurrences;
+    }
+
+
+    private static String randomSequence(Random random, String aminoAcids, int length) {
+        StringBuilder sequence = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sequence.append(aminoAcids.charAt(random.nextInt(aminoAcids.length())));
+        }
+        return sequence.toString();
+    }
+}
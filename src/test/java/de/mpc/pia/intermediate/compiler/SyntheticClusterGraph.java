@@ -0,0 +1,168 @@
+package de.mpc.pia.intermediate.compiler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+
+/**
+ * A synthetic accession peptide graph, which is fed into an
+ * {@link AccessionPeptideClusterer}. It also provides the former fixed-point
+ * clustering of the PIACompiler, to compare the clusters.
+ *
+ * @author julianu
+ *
+ */
+public class SyntheticClusterGraph {
+
+    /** maps from the accession IDs to the peptide IDs */
+    private final Map<Long, Set<Long>> accPepMap;
+
+    /** maps from the peptide IDs to the accession IDs */
+    private final Map<Long, Set<Long>> pepAccMap;
+
+    /** the clusterer, fed with the same connections */
+    private final AccessionPeptideClusterer clusterer;
+
+
+    /**
+     * Creates a synthetic graph with roughly the given number of connections.
+     * Accessions are organized in families of isoforms, the peptides mostly
+     * hit several members of one family and sometimes link two families,
+     * which creates some very large clusters.
+     *
+     * @param nrConnections
+     * @param seed
+     */
+    public SyntheticClusterGraph(int nrConnections, long seed) {
+        Random random = new Random(seed);
+
+        accPepMap = new HashMap<>();
+        pepAccMap = new HashMap<>();
+        clusterer = new AccessionPeptideClusterer();
+
+        long nrAccessions = Math.max(nrConnections / 10L, 1L);
+        List<long[]> families = new ArrayList<>();
+        long accId = 1;
+        while (accId <= nrAccessions) {
+            int familySize = 1 + (int)Math.min(nrAccessions - accId, (long)(-Math.log(1.0 - random.nextDouble()) * 4));
+            long[] family = new long[familySize];
+            for (int i = 0; i < familySize; i++) {
+                family[i] = accId++;
+            }
+            families.add(family);
+        }
+
+        long pepId = 0;
+        int connections = 0;
+        while (connections < nrConnections) {
+            pepId++;
+            long[] family = families.get(random.nextInt(families.size()));
+            int nrHits = 1 + random.nextInt(family.length);
+            for (int i = 0; i < nrHits; i++) {
+                addConnection(family[random.nextInt(family.length)], pepId);
+                connections++;
+            }
+
+            if (random.nextInt(100) < 2) {
+                // a peptide shared with another family
+                long[] otherFamily = families.get(random.nextInt(families.size()));
+                addConnection(otherFamily[random.nextInt(otherFamily.length)], pepId);
+                connections++;
+            }
+        }
+    }
+
+
+    /**
+     * Adds the connection to the maps and the clusterer
+     */
+    private void addConnection(long accId, long pepId) {
+        accPepMap.computeIfAbsent(accId, k -> new HashSet<>()).add(pepId);
+        pepAccMap.computeIfAbsent(pepId, k -> new HashSet<>()).add(accId);
+        clusterer.addConnection(accId, pepId);
+    }
+
+
+    public Map<Long, Set<Long>> getAccPepMap() {
+        return accPepMap;
+    }
+
+
+    public Map<Long, Set<Long>> getPepAccMap() {
+        return pepAccMap;
+    }
+
+
+    public AccessionPeptideClusterer getClusterer() {
+        return clusterer;
+    }
+
+
+    /**
+     * The clustering as it was done in the PIACompiler before the union-find:
+     * each cluster is grown by rescanning the cluster's peptides and
+     * accessions until no new members are found.
+     *
+     * @param accPepMap
+     * @param pepAccMap
+     * @return
+     */
+    public static List<Map<Long, Collection<Long>>> buildFixedPointClusters(
+            Map<Long, Set<Long>> accPepMap, Map<Long, Set<Long>> pepAccMap) {
+        Set<Long> peptidesDone = new HashSet<>(pepAccMap.size());
+        Set<Long> accessionsDone = new HashSet<>(accPepMap.size());
+        List<Map<Long, Collection<Long>>> clusters = new ArrayList<>();
+
+        for (Long accessionID : accPepMap.keySet()) {
+            if (accessionsDone.contains(accessionID)) {
+                continue;
+            }
+
+            Set<Long> clusterAccessions = new HashSet<>();
+            Set<Long> clusterPeptides = new HashSet<>(accPepMap.get(accessionID));
+            int newPeptides = clusterPeptides.size();
+            int newAccessions = 1;
+
+            while ((newAccessions > 0) || (newPeptides > 0)) {
+                newAccessions = 0;
+                newPeptides = 0;
+
+                for (Long pepId : clusterPeptides) {
+                    if (!peptidesDone.contains(pepId)) {
+                        for (Long accId : pepAccMap.get(pepId)) {
+                            if (clusterAccessions.add(accId)) {
+                                newAccessions++;
+                            }
+                        }
+                        peptidesDone.add(pepId);
+                    }
+                }
+
+                for (Long accId : clusterAccessions) {
+                    if (!accessionsDone.contains(accId)) {
+                        for (Long pepId : accPepMap.get(accId)) {
+                            if (clusterPeptides.add(pepId)) {
+                                newPeptides++;
+                            }
+                        }
+                        accessionsDone.add(accId);
+                    }
+                }
+            }
+
+            Map<Long, Collection<Long>> pepAccMapCluster = new HashMap<>();
+            for (Long pepId : clusterPeptides) {
+                pepAccMapCluster.put(pepId, pepAccMap.get(pepId));
+            }
+            clusters.add(pepAccMapCluster);
+        }
+
+        return clusters;
+    }
+}
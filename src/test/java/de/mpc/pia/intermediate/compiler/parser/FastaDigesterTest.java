@@ -0,0 +1,129 @@
+package de.mpc.pia.intermediate.compiler.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpc.pia.tools.CleavageAgent;
+
+
+public class FastaDigesterTest {
+
+    private File fastaFile;
+
+
+    @Before
+    public void setUp() throws Exception {
+        fastaFile = new File(FastaDigesterTest.class.getResource("/cRAP-contaminants-20120229.fasta").getPath());
+    }
+
+
+    @Test
+    public void testSameDigestionAsSplit() throws Exception {
+        String trypsin = CleavageAgent.TRYPSIN.getSiteRegexp();
+        List<String> expected = digestBySplit(fastaFile, trypsin, 5, 30, 2);
+
+        for (int nrThreads : new int[] {1, 3}) {
+            // small batches, to test the borders of the batches
+            FastaDigester digester = new FastaDigester(trypsin, 5, 30, 2, nrThreads, 1024);
+            assertTrue(digester.usesSiteScanner());
+            assertEquals(expected, digest(digester, fastaFile));
+        }
+    }
+
+
+    @Test
+    public void testRegularExpressionFallback() throws Exception {
+        // this pattern consumes the residues, so the scanner cannot be used
+        String pattern = "[KR]";
+        FastaDigester digester = new FastaDigester(pattern, 3, 50, 1, 2, 2048);
+        assertFalse(digester.usesSiteScanner());
+        assertEquals(digestBySplit(fastaFile, pattern, 3, 50, 1), digest(digester, fastaFile));
+    }
+
+
+    @Test
+    public void testWindowsLineBreaks() throws Exception {
+        File crlfFile = File.createTempFile("digester", ".fasta");
+        crlfFile.deleteOnExit();
+        List<String> lines = Files.readAllLines(fastaFile.toPath(), StandardCharsets.UTF_8);
+        Files.write(crlfFile.toPath(), String.join("\r\n", lines).getBytes(StandardCharsets.UTF_8));
+
+        String trypsin = CleavageAgent.TRYPSIN.getSiteRegexp();
+        FastaDigester digester = new FastaDigester(trypsin, 5, 30, -1, 2, 4096);
+        assertEquals(digestBySplit(fastaFile, trypsin, 5, 30, -1), digest(digester, crlfFile));
+    }
+
+
+    private static List<String> digest(FastaDigester digester, File file) throws Exception {
+        List<String> digested = new ArrayList<>();
+        digester.digestFile(file.getAbsolutePath(), protein -> {
+            for (int idx = 0; idx < protein.peptides.length; idx++) {
+                digested.add(protein.headerInfos.getAccession() + ' ' + protein.peptides[idx] + ' '
+                        + protein.starts[idx] + ' ' + protein.missedCleavages[idx] + ' '
+                        + protein.spectrumCounts[idx]);
+            }
+            digested.add(protein.headerInfos.getAccession() + ' ' + protein.dbSequence.length() + ' '
+                    + protein.nrSpectra);
+        });
+        return digested;
+    }
+
+
+    /**
+     * The digestion by splitting the sequences with the regular expression,
+     * as formerly done by the {@link FastaFileParser}.
+     */
+    private static List<String> digestBySplit(File file, String pattern, int minPepLength,
+            int maxPepLength, int maxMissedCleavages) throws Exception {
+        List<String> digested = new ArrayList<>();
+
+        String accession = null;
+        StringBuilder sequence = new StringBuilder();
+        List<String> lines = new ArrayList<>(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        lines.add(">");
+        for (String line : lines) {
+            if (!line.startsWith(">")) {
+                sequence.append(line.trim());
+                continue;
+            }
+
+            if ((accession != null) && (sequence.length() > 0)) {
+                String[] pieces = sequence.toString().split(pattern);
+                int missedCleavages = (maxMissedCleavages >= 0) ? maxMissedCleavages : (pieces.length - 1);
+
+                int spectraCount = 1;
+                for (int missed = 0; missed <= missedCleavages; missed++) {
+                    int start = 0;
+                    for (int i = 0; i < pieces.length - missed; i++) {
+                        StringBuilder peptide = new StringBuilder(pieces[i]);
+                        for (int miss = 1; miss <= missed; miss++) {
+                            peptide.append(pieces[i + miss]);
+                        }
+                        if ((peptide.length() >= minPepLength) && (peptide.length() <= maxPepLength)) {
+                            digested.add(accession + ' ' + peptide + ' ' + (start + 1) + ' ' + missed + ' '
+                                    + spectraCount);
+                        }
+                        start += pieces[i].length();
+                        spectraCount++;
+                    }
+                }
+                digested.add(accession + ' ' + sequence.length() + ' ' + spectraCount);
+            }
+
+            accession = (line.length() > 1) ? FastaHeaderInfos.parseHeaderInfos(line).getAccession() : null;
+            sequence = new StringBuilder();
+        }
+
+        return digested;
+    }
+}
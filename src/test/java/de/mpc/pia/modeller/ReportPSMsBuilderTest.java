@@ -0,0 +1,154 @@
+package de.mpc.pia.modeller;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.psm.PSMReportItem;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.modeller.score.comparator.ScoreComparator;
+
+
+public class ReportPSMsBuilderTest {
+
+    /** the source IDs and titles, including ambiguous ones with the key separator */
+    private static final String[] SOURCE_IDS = {"index=1", "index=2", "index=3", "a:b", "a", null, "null"};
+
+    private static final String[] TITLES = {"title", "b", "b:title", null, "null"};
+
+
+    @Test
+    public void testSamePSMSetsAndRanksAsStringKeys() {
+        Map<String, Boolean> psmSetSettings = new HashMap<>();
+        for (IdentificationKeySettings setting : IdentificationKeySettings.values()) {
+            psmSetSettings.put(setting.name(), setting != IdentificationKeySettings.FILE_ID);
+        }
+
+        Map<Long, Group> groups = createGroups(new Random(42));
+
+        Map<String, Comparator<PSMReportItem>> comparators = new HashMap<>();
+        comparators.put(ScoreModelEnum.MASCOT_SCORE.getShortName(),
+                new ScoreComparator<>(ScoreModelEnum.MASCOT_SCORE.getShortName(), true));
+
+        ReportPSMsBuilder singleThreaded = new ReportPSMsBuilder(psmSetSettings, 1);
+        singleThreaded.buildReportPSMs(groups.values(), 100);
+        singleThreaded.rankPSMs(comparators);
+
+        ReportPSMsBuilder multiThreaded = new ReportPSMsBuilder(psmSetSettings, 4);
+        multiThreaded.buildReportPSMs(groups.values(), 100);
+        multiThreaded.rankPSMs(comparators);
+
+        for (ReportPSMsBuilder builder : new ReportPSMsBuilder[] {singleThreaded, multiThreaded}) {
+            Collection<ReportPSM> psms = builder.getSpectraPSMs().values();
+
+            // the PSM sets are the same as created by the identification key strings
+            Map<String, Set<Long>> expectedSets = new HashMap<>();
+            for (ReportPSM psm : psms) {
+                expectedSets.computeIfAbsent(psm.getSpectrum().getIdentificationKey(psmSetSettings),
+                        k -> new HashSet<>()).add(psm.getId());
+            }
+
+            Map<String, Set<Long>> actualSets = new HashMap<>();
+            builder.getPSMSetsMap().forEach((key, setPSMs) -> {
+                Set<Long> ids = new HashSet<>();
+                setPSMs.forEach(psm -> ids.add(psm.getId()));
+                actualSets.put(key, ids);
+            });
+            assertEquals(expectedSets, actualSets);
+
+            // the ranks are the same as ranked by the string keys of the spectra
+            Map<String, List<ReportPSM>> spectra = new HashMap<>();
+            for (ReportPSM psm : psms) {
+                spectra.computeIfAbsent(psm.getSpectrum().getFile().getID() + "/"
+                        + ReportPSMsBuilder.createPSMKeyForScoreRanking(psm.getSpectrum()),
+                        k -> new ArrayList<>()).add(psm);
+            }
+
+            String scoreShort = ScoreModelEnum.MASCOT_SCORE.getShortName();
+            for (List<ReportPSM> spectrumPSMs : spectra.values()) {
+                for (ReportPSM psm : spectrumPSMs) {
+                    // ranks are dense, so count the distinct better scores
+                    Set<Double> betterScores = new HashSet<>();
+                    spectrumPSMs.stream().filter(other -> other.getScore(scoreShort) > psm.getScore(scoreShort))
+                            .forEach(other -> betterScores.add(other.getScore(scoreShort)));
+
+                    assertEquals(Integer.valueOf(betterScores.size() + 1), psm.getIdentificationRank(scoreShort));
+                }
+            }
+        }
+
+        // the order of the PSMs is the same for any number of threads
+        for (Map.Entry<Long, List<ReportPSM>> fileIt : singleThreaded.getFileReportPSMs().entrySet()) {
+            List<ReportPSM> multiPSMs = multiThreaded.getFileReportPSMs().get(fileIt.getKey());
+            assertEquals(fileIt.getValue().size(), multiPSMs.size());
+            for (int idx = 0; idx < multiPSMs.size(); idx++) {
+                assertEquals(fileIt.getValue().get(idx).getId(), multiPSMs.get(idx).getId());
+            }
+        }
+        assertEquals(singleThreaded.getFileScoreShortNames(), multiThreaded.getFileScoreShortNames());
+    }
+
+
+    /**
+     * Creates groups with one accession and some peptides each, where many
+     * PSMs share their spectrum values.
+     */
+    private static Map<Long, Group> createGroups(Random random) {
+        PIAInputFile[] files = {new PIAInputFile(1L, "file1", "file1.mzid", "mzid"),
+                new PIAInputFile(2L, "file2", "file2.mzid", "mzid")};
+
+        Map<Long, Group> groups = new HashMap<>();
+        long psmID = 1;
+        long pepID = 1;
+        for (long groupID = 1; groupID <= 200; groupID++) {
+            Group group = new Group(groupID);
+            Accession accession = new Accession(groupID, "ACC" + groupID, null);
+            accession.addFile(1L);
+            accession.addFile(2L);
+            group.addAccession(accession);
+
+            for (int pepIdx = random.nextInt(3) + 1; pepIdx > 0; pepIdx--) {
+                String sequence = "PEPTIDE" + random.nextInt(20);
+                Peptide peptide = new Peptide(pepID++, sequence);
+
+                for (int specIdx = random.nextInt(4) + 1; specIdx > 0; specIdx--) {
+                    PeptideSpectrumMatch psm = new PeptideSpectrumMatch(psmID++,
+                            2 + random.nextInt(2),
+                            500.0 + random.nextInt(5) * 0.0004,
+                            0.0,
+                            random.nextBoolean() ? null : 100.0 * random.nextInt(3),
+                            sequence,
+                            0,
+                            SOURCE_IDS[random.nextInt(SOURCE_IDS.length)],
+                            TITLES[random.nextInt(TITLES.length)],
+                            files[random.nextInt(files.length)],
+                            null);
+                    psm.addScore(new ScoreModel((double) random.nextInt(5), ScoreModelEnum.MASCOT_SCORE));
+                    peptide.addSpectrum(psm);
+                }
+                group.addPeptide(peptide);
+            }
+
+            groups.put(groupID, group);
+        }
+
+        return groups;
+    }
+}
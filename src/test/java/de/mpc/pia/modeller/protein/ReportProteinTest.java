@@ -16,11 +16,16 @@ import org.junit.Before;
 import org.junit.Test;
 
 import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
 import de.mpc.pia.modeller.protein.inference.SpectrumExtractorInference;
 import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
 import de.mpc.pia.modeller.protein.scoring.MultiplicativeScoring;
 import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
+import de.mpc.pia.modeller.psm.ReportPSM;
 import de.mpc.pia.modeller.report.filter.AbstractFilter;
 import de.mpc.pia.modeller.report.filter.FilterComparator;
 import de.mpc.pia.modeller.report.filter.RegisteredFilters;
@@ -129,4 +134,44 @@ public class ReportProteinTest {
             assertEquals("Wrong q-value for " + accSb, (Double)(values.get(6)), prot.getQValue(), scoreDelta);
         }
     }
+
+
+    @Test
+    public void testCachedStatisticsFollowChanges() {
+        PIAInputFile file = new PIAInputFile(1L, "file", "file.mzid", "mzid");
+
+        ReportPeptide pepA = new ReportPeptide("PEPTIDEA", "PEPTIDEA", new Peptide(1L, "PEPTIDEA"));
+        pepA.addPSM(createReportPSM(1L, "PEPTIDEA", 1, file));
+        pepA.addPSM(createReportPSM(2L, "PEPTIDEA", 2, file));
+
+        // the same spectrum as the first PSM of pepA
+        ReportPeptide pepB = new ReportPeptide("PEPTIDEB", "PEPTIDEB", new Peptide(2L, "PEPTIDEB"));
+        pepB.addPSM(createReportPSM(3L, "PEPTIDEB", 1, file));
+
+        ReportProtein protein = new ReportProtein(1L);
+        protein.addPeptide(pepA);
+        assertEquals(Integer.valueOf(2), protein.getNrPSMs());
+        assertEquals(Integer.valueOf(2), protein.getNrSpectra());
+
+        protein.addPeptide(pepB);
+        assertEquals(Integer.valueOf(3), protein.getNrPSMs());
+        assertEquals(Integer.valueOf(2), protein.getNrSpectra());
+
+        // changing the PSMs of a peptide invalidates the cached numbers
+        pepB.addPSM(createReportPSM(4L, "PEPTIDEB", 3, file));
+        assertEquals(Integer.valueOf(4), protein.getNrPSMs());
+        assertEquals(Integer.valueOf(3), protein.getNrSpectra());
+        assertEquals(Integer.valueOf(2), pepB.getNrSpectra());
+
+        protein.clearPeptides();
+        assertEquals(Integer.valueOf(0), protein.getNrPSMs());
+        assertEquals(Integer.valueOf(0), protein.getNrSpectra());
+    }
+
+
+    private static ReportPSM createReportPSM(long id, String sequence, int spectrumNr, PIAInputFile file) {
+        PeptideSpectrumMatch psm = new PeptideSpectrumMatch(id, 2, 400.0 + spectrumNr, 0.0, 10.0 * spectrumNr,
+                sequence, 0, "index=" + spectrumNr, "spectrum " + spectrumNr, file, null);
+        return new ReportPSM(id, psm);
+    }
 }
@@ -0,0 +1,129 @@
+package de.mpc.pia.modeller.protein.inference;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class InferenceEngineTest {
+
+    private InferenceEngine platformEngine;
+
+    private InferenceEngine virtualEngine;
+
+
+    @Before
+    public void setUp() {
+        platformEngine = new InferenceEngine(4, InferenceEngine.ThreadType.PLATFORM);
+        virtualEngine = new InferenceEngine(4, InferenceEngine.ThreadType.VIRTUAL);
+    }
+
+
+    @After
+    public void tearDown() {
+        platformEngine.shutdown();
+        virtualEngine.shutdown();
+    }
+
+
+    @Test
+    public void testAllTasksProcessed() {
+        for (InferenceEngine engine : new InferenceEngine[] {platformEngine, virtualEngine}) {
+            int nrTasks = 1000;
+            AtomicIntegerArray processed = new AtomicIntegerArray(nrTasks);
+            AtomicInteger finished = new AtomicInteger();
+
+            assertTrue(engine.execute(nrTasks, processed::incrementAndGet, 0, () -> false,
+                    finished::incrementAndGet));
+
+            for (int idx = 0; idx < nrTasks; idx++) {
+                assertEquals(1, processed.get(idx));
+            }
+            assertEquals(nrTasks, finished.get());
+        }
+    }
+
+
+    @Test
+    public void testTaskList() {
+        List<Integer> tasks = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            tasks.add(i);
+        }
+        AtomicInteger sum = new AtomicInteger();
+
+        assertTrue(virtualEngine.execute(tasks, sum::addAndGet, 2, () -> false, null));
+        assertEquals(5050, sum.get());
+
+        assertTrue(platformEngine.execute(new ArrayList<Integer>(), sum::addAndGet, 2, () -> false, null));
+    }
+
+
+    @Test
+    public void testParallelismBound() {
+        for (InferenceEngine engine : new InferenceEngine[] {platformEngine, virtualEngine}) {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+
+            assertTrue(engine.execute(200, idx -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.yield();
+                    running.decrementAndGet();
+                }, 2, () -> false, null));
+
+            assertTrue(maxRunning.get() <= 2);
+        }
+    }
+
+
+    @Test
+    public void testCancellation() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicInteger processed = new AtomicInteger();
+
+        boolean completed = platformEngine.execute(1000, idx -> {
+                if (processed.incrementAndGet() == 10) {
+                    cancelled.set(true);
+                }
+            }, 1, cancelled::get, null);
+
+        assertFalse(completed);
+        assertEquals(10, processed.get());
+    }
+
+
+    @Test
+    public void testSetSharedEngineKeepsPreviousRunning() {
+        InferenceEngine previous = InferenceEngine.getSharedEngine();
+        try {
+            InferenceEngine.setSharedEngine(platformEngine);
+            InferenceEngine.setSharedEngine(virtualEngine);
+            assertSame(virtualEngine, InferenceEngine.getSharedEngine());
+
+            // an inference still holding the replaced engine can use it
+            AtomicInteger processed = new AtomicInteger();
+            assertTrue(platformEngine.execute(10, idx -> processed.incrementAndGet(), 0, () -> false, null));
+            assertEquals(10, processed.get());
+        } finally {
+            InferenceEngine.setSharedEngine(previous);
+        }
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExceptionPropagation() {
+        virtualEngine.execute(100, idx -> {
+                if (idx == 50) {
+                    throw new IllegalArgumentException("task failed");
+                }
+            }, 0, () -> false, null);
+    }
+}
@@ -0,0 +1,201 @@
+package de.mpc.pia.modeller.protein.inference;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.IdentificationKeySettings;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.scoring.AdditiveScoring;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+public class OccamsRazorInferenceTest {
+
+    private PIAInputFile file;
+
+    private Map<String, Boolean> psmSetSettings;
+
+    private Map<String, ReportPSMSet> reportPSMSetMap;
+
+    private Map<Long, Group> groupMap;
+
+
+    @Before
+    public void setUp() {
+        file = new PIAInputFile(1L, "file", "file.mzid", "mzid");
+
+        psmSetSettings = new HashMap<>();
+        psmSetSettings.put(IdentificationKeySettings.SOURCE_ID.name(), true);
+        psmSetSettings.put(IdentificationKeySettings.SEQUENCE.name(), true);
+
+        reportPSMSetMap = new HashMap<>();
+        groupMap = new HashMap<>();
+    }
+
+
+    /**
+     * Creates the peptide groups with the IDs 1 to nrPeptides, each with one
+     * peptide and PSM.
+     */
+    private void createPeptideGroups(int nrPeptides) {
+        for (long pepID = 1; pepID <= nrPeptides; pepID++) {
+            String sequence = "PEPTIDE" + pepID + "K";
+            Peptide peptide = new Peptide(pepID, sequence);
+            PeptideSpectrumMatch psm = new PeptideSpectrumMatch(pepID, 2, 400.0 + pepID, 0.0, null,
+                    sequence, 0, "index=" + pepID, "spectrum " + pepID, file, null);
+            psm.addScore(new ScoreModel(10.0 * pepID, ScoreModelEnum.MASCOT_SCORE));
+            peptide.addSpectrum(psm);
+
+            ReportPSMSet psmSet = new ReportPSMSet(psmSetSettings);
+            psmSet.addReportPSM(new ReportPSM(pepID, psm));
+            reportPSMSetMap.put(psm.getIdentificationKey(psmSetSettings), psmSet);
+
+            Group group = createGroup(pepID);
+            group.addPeptide(peptide);
+        }
+    }
+
+
+    private Group createGroup(long groupID) {
+        Group group = new Group(groupID);
+        group.setTreeID(1L);
+        groupMap.put(groupID, group);
+        return group;
+    }
+
+
+    /**
+     * Creates the group with one accession "P" + groupID, which has the given
+     * peptide groups as children.
+     */
+    private void createProteinGroup(long groupID, long... peptideGroupIDs) {
+        Group group = createGroup(groupID);
+        Accession accession = new Accession(groupID, "P" + groupID, null);
+        accession.setGroup(group);
+        group.addAccession(accession);
+
+        for (long peptideGroupID : peptideGroupIDs) {
+            Group child = groupMap.get(peptideGroupID);
+            group.addChild(child);
+            child.addParent(group);
+        }
+    }
+
+
+    private List<ReportProtein> infer() {
+        OccamsRazorInference inference = new OccamsRazorInference();
+        inference.setScoring(new AdditiveScoring(Collections.singletonMap(
+                ScoreModelEnum.MASCOT_SCORE.getShortName(), ScoreModelEnum.MASCOT_SCORE.getName())));
+        inference.setAllowedThreads(1);
+
+        return inference.calculateInference(groupMap, reportPSMSetMap, false, psmSetSettings,
+                Collections.emptyList());
+    }
+
+
+    private static List<Long> getIDs(List<ReportProtein> proteins) {
+        List<Long> ids = new ArrayList<>(proteins.size());
+        proteins.forEach(protein -> ids.add(protein.getID()));
+        return ids;
+    }
+
+
+    private static List<String> getAccessions(ReportProtein protein) {
+        List<String> accessions = new ArrayList<>();
+        protein.getAccessions().forEach(acc -> accessions.add(acc.getAccession()));
+        return accessions;
+    }
+
+
+    /**
+     * Returns the protein with the given ID from the list.
+     */
+    private static ReportProtein getProtein(List<ReportProtein> proteins, long id) {
+        return proteins.stream().filter(protein -> protein.getID() == id).findFirst().orElse(null);
+    }
+
+
+    @Test
+    public void testSameSetsAndSubsets() {
+        createPeptideGroups(4);
+        createProteinGroup(5, 1, 2, 3);
+        createProteinGroup(6, 1, 2, 3);
+        createProteinGroup(7, 1, 2);
+        createProteinGroup(8, 3);
+        createProteinGroup(9, 4);
+
+        List<ReportProtein> proteins = infer();
+
+        // 6 has the same peptides as 5, 7 and 8 are strict subsets of 5
+        assertEquals(Arrays.asList(9L, 5L), getIDs(proteins));
+
+        ReportProtein protein = getProtein(proteins, 5L);
+        assertEquals(Arrays.asList("P5", "P6"), getAccessions(protein));
+        assertEquals("P5", protein.getRepresentative().getAccession());
+        assertEquals(3, protein.getNrPeptides().intValue());
+        assertEquals(Arrays.asList(7L, 8L), getIDs(protein.getSubSets()));
+        assertEquals(Arrays.asList("P7"), getAccessions(protein.getSubSets().get(0)));
+
+        protein = getProtein(proteins, 9L);
+        assertEquals(Arrays.asList("P9"), getAccessions(protein));
+        assertTrue(protein.getSubSets().isEmpty());
+    }
+
+
+    @Test
+    public void testCoverageTiesAndZeroCoverage() {
+        createPeptideGroups(4);
+        // a cycle of intersecting proteins, each explaining two peptides
+        createProteinGroup(5, 1, 2);
+        createProteinGroup(6, 2, 3);
+        createProteinGroup(7, 3, 4);
+        createProteinGroup(8, 1, 4);
+
+        List<ReportProtein> proteins = infer();
+
+        // ties are decided by the iteration order of the proteins in a
+        // HashMap, which is 8, 5, 6, 7 here. So 8 is reported first, then 6
+        // explains two new peptides, 5 and 7 explain none and are not reported
+        assertEquals(Arrays.asList(8L, 6L), getIDs(proteins));
+        for (ReportProtein protein : proteins) {
+            assertEquals(1, protein.getAccessions().size());
+            assertTrue(protein.getSubSets().isEmpty());
+        }
+    }
+
+
+    @Test
+    public void testSameCoverageReportedTogether() {
+        createPeptideGroups(6);
+        createProteinGroup(7, 1, 2, 3, 4);
+        // 8 and 9 explain the same new peptides after 7 is reported
+        createProteinGroup(8, 4, 5, 6);
+        createProteinGroup(9, 3, 5, 6);
+        // 10 is a strict subset of 8 and 9
+        createProteinGroup(10, 5, 6);
+
+        List<ReportProtein> proteins = infer();
+
+        assertEquals(Arrays.asList(7L, 8L, 9L), getIDs(proteins));
+        assertTrue(proteins.get(0).getSubSets().isEmpty());
+        assertEquals(Arrays.asList(10L), getIDs(proteins.get(1).getSubSets()));
+        assertEquals(Arrays.asList(10L), getIDs(proteins.get(2).getSubSets()));
+    }
+}
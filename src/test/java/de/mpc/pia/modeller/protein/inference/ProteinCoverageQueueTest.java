@@ -0,0 +1,83 @@
+package de.mpc.pia.modeller.protein.inference;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class ProteinCoverageQueueTest {
+
+    @Test
+    public void testOrderAndTies() {
+        ProteinCoverageQueue queue = new ProteinCoverageQueue(new int[] {2, 0, 1, 3});
+        queue.add(0, 5);
+        queue.add(1, 3);
+        queue.add(2, 5);
+        queue.add(3, 1);
+
+        // protein 2 has the same coverage as 0, but the smaller order
+        assertEquals(2, queue.peek());
+
+        queue.decreaseCoverage(2);
+        assertEquals(0, queue.peek());
+        assertEquals(4, queue.getCoverage(2));
+
+        queue.remove(0);
+        assertFalse(queue.contains(0));
+        assertEquals(2, queue.peek());
+
+        queue.remove(0);
+        queue.remove(2);
+        queue.remove(1);
+        assertEquals(3, queue.peek());
+        queue.remove(3);
+        assertTrue(queue.isEmpty());
+    }
+
+
+    @Test
+    public void testSameAsLinearSearch() {
+        Random random = new Random(23);
+        int nrProteins = 500;
+
+        int[] order = new int[nrProteins];
+        int[] coverages = new int[nrProteins];
+        boolean[] queued = new boolean[nrProteins];
+        for (int protein = 0; protein < nrProteins; protein++) {
+            // a random permutation as order
+            int swap = random.nextInt(protein + 1);
+            order[protein] = order[swap];
+            order[swap] = protein;
+        }
+
+        ProteinCoverageQueue queue = new ProteinCoverageQueue(order);
+        for (int protein = 0; protein < nrProteins; protein++) {
+            coverages[protein] = random.nextInt(20);
+            queued[protein] = true;
+            queue.add(protein, coverages[protein]);
+        }
+
+        while (!queue.isEmpty()) {
+            int expected = -1;
+            for (int protein = 0; protein < nrProteins; protein++) {
+                if (queued[protein] && ((expected < 0)
+                        || (coverages[protein] > coverages[expected])
+                        || ((coverages[protein] == coverages[expected]) && (order[protein] < order[expected])))) {
+                    expected = protein;
+                }
+            }
+            assertEquals(expected, queue.peek());
+
+            int protein = random.nextInt(nrProteins);
+            if (random.nextBoolean() && queued[protein] && (coverages[protein] > 0)) {
+                coverages[protein]--;
+                queue.decreaseCoverage(protein);
+            } else {
+                queued[expected] = false;
+                queue.remove(expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package de.mpc.pia.modeller.protein.inference;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+
+public class SpectrumSplitBuilderTest {
+
+    @Test
+    public void testMergingSplits() {
+        SpectrumSplitBuilder builder = new SpectrumSplitBuilder();
+
+        builder.addPSM(1L, "spec1", new HashSet<>(Arrays.asList(1L, 2L)));
+        builder.addPSM(2L, "spec2", new HashSet<>(Arrays.asList(3L)));
+        builder.addPSM(3L, "spec3", new HashSet<>(Arrays.asList(4L)));
+        builder.addPSM(4L, "spec4", new HashSet<>());
+        assertEquals(4, builder.getNrSplits());
+
+        // the second PSM of spec1 connects it with spec2
+        builder.addPSM(5L, "spec1", new HashSet<>(Arrays.asList(3L)));
+        assertEquals(3, builder.getNrSplits());
+
+        List<SpectrumSplitBuilder.Split> splits = builder.buildSplits();
+        assertEquals(3, splits.size());
+
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 5L)), splits.get(0).getPSMIDs());
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L)), splits.get(0).getAccessionIDs());
+        assertEquals(new HashSet<>(Arrays.asList("spec1", "spec2")), splits.get(0).getSpectrumKeys());
+
+        assertEquals(new HashSet<>(Arrays.asList(3L)), splits.get(1).getPSMIDs());
+        assertEquals(new HashSet<>(Arrays.asList(4L)), splits.get(2).getPSMIDs());
+        assertTrue(splits.get(2).getAccessionIDs().isEmpty());
+
+        Map<Integer, Integer> histogram = SpectrumSplitBuilder.createSizeHistogram(splits);
+        assertEquals(Integer.valueOf(2), histogram.get(1));
+        assertEquals(Integer.valueOf(1), histogram.get(2));
+    }
+
+
+    @Test
+    public void testSameSplitsAsPairwiseComparison() {
+        Random random = new Random(42);
+        SpectrumSplitBuilder builder = new SpectrumSplitBuilder();
+
+        Map<String, Set<Long>> spectraAccessions = new HashMap<>();
+        List<Long> psmIDs = new ArrayList<>();
+        List<String> psmSpectra = new ArrayList<>();
+
+        for (long psmID = 0; psmID < 2000; psmID++) {
+            String spectrumKey = "spec" + random.nextInt(1500);
+            Set<Long> accessions = new HashSet<>();
+            for (int i = random.nextInt(3); i > 0; i--) {
+                accessions.add((long) random.nextInt(3000));
+            }
+
+            spectraAccessions.computeIfAbsent(spectrumKey, k -> new HashSet<>()).addAll(accessions);
+            psmIDs.add(psmID);
+            psmSpectra.add(spectrumKey);
+        }
+
+        for (int i = 0; i < psmIDs.size(); i++) {
+            builder.addPSM(psmIDs.get(i), psmSpectra.get(i), spectraAccessions.get(psmSpectra.get(i)));
+        }
+
+        Set<Set<Long>> expected = createSplitsPairwise(psmIDs, psmSpectra, spectraAccessions);
+        Set<Set<Long>> actual = new HashSet<>();
+        for (SpectrumSplitBuilder.Split split : builder.buildSplits()) {
+            actual.add(split.getPSMIDs());
+        }
+
+        assertEquals(expected, actual);
+    }
+
+
+    /**
+     * Creates the splits (as sets of PSM IDs) by comparing each spectrum with
+     * all existing splits and merging overlapping ones, like it was done
+     * before the split builder.
+     */
+    private static Set<Set<Long>> createSplitsPairwise(List<Long> psmIDs, List<String> psmSpectra,
+            Map<String, Set<Long>> spectraAccessions) {
+        List<Set<Long>> splitPSMs = new ArrayList<>();
+        List<Set<Long>> splitAccessions = new ArrayList<>();
+        Map<String, Set<Long>> spectrumSplit = new HashMap<>();
+
+        for (int i = 0; i < psmIDs.size(); i++) {
+            String spectrumKey = psmSpectra.get(i);
+            Set<Long> psms = spectrumSplit.get(spectrumKey);
+
+            if (psms == null) {
+                Set<Long> accessions = new HashSet<>(spectraAccessions.get(spectrumKey));
+                psms = new HashSet<>();
+
+                for (int splitIdx = splitPSMs.size() - 1; splitIdx >= 0; splitIdx--) {
+                    if (!Collections.disjoint(accessions, splitAccessions.get(splitIdx))) {
+                        psms.addAll(splitPSMs.remove(splitIdx));
+                        accessions.addAll(splitAccessions.remove(splitIdx));
+                    }
+                }
+
+                splitPSMs.add(psms);
+                splitAccessions.add(accessions);
+
+                for (Map.Entry<String, Set<Long>> specIt : spectrumSplit.entrySet()) {
+                    if (splitPSMs.stream().noneMatch(split -> split == specIt.getValue())) {
+                        specIt.setValue(psms);
+                    }
+                }
+                spectrumSplit.put(spectrumKey, psms);
+            }
+
+            psms.add(psmIDs.get(i));
+        }
+
+        return new HashSet<>(splitPSMs);
+    }
+}
@@ -0,0 +1,181 @@
+package de.mpc.pia.modeller.protein.scoring;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.IdentificationKeySettings;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.score.ScoreIDs;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+public class ProteinScoringTest {
+
+    private List<ReportPeptide> peptides;
+
+    private List<ReportProtein> proteins;
+
+
+    @Before
+    public void setUp() {
+        peptides = new ArrayList<>();
+        proteins = createProteins(peptides, false);
+    }
+
+
+    /**
+     * Creates the test proteins and adds their peptides to the given list.
+     *
+     * @param peptides the created peptides are added to this list
+     * @param nonScoringSpectra whether some spectra of the peptides are set
+     * as non-scoring
+     */
+    private static List<ReportProtein> createProteins(List<ReportPeptide> peptides, boolean nonScoringSpectra) {
+        Random random = new Random(42);
+        PIAInputFile file = new PIAInputFile(1L, "file", "file.mzid", "mzid");
+
+        Map<String, Boolean> psmSetSettings = new HashMap<>();
+        psmSetSettings.put(IdentificationKeySettings.SOURCE_ID.name(), true);
+        psmSetSettings.put(IdentificationKeySettings.SEQUENCE.name(), true);
+
+        long psmID = 0;
+        long setID = 0;
+        for (int pepIdx = 0; pepIdx < 3000; pepIdx++) {
+            String sequence = "PEPTIDE" + pepIdx + "K";
+            ReportPeptide peptide = new ReportPeptide(sequence, sequence, null);
+
+            for (int setIdx = 1 + random.nextInt(3); setIdx > 0; setIdx--) {
+                // the PSMs of a set share the source ID
+                ReportPSMSet psmSet = new ReportPSMSet(psmSetSettings);
+                setID++;
+                for (int i = 1 + random.nextInt(2); i > 0; i--) {
+                    PeptideSpectrumMatch psm = new PeptideSpectrumMatch(psmID, 2, 500.0, 0.0, null, sequence, 0,
+                            "index=" + setID, null, file, null);
+                    psm.addScore(new ScoreModel(random.nextInt(400) / 4.0, ScoreModelEnum.MASCOT_SCORE));
+                    psm.addScore(new ScoreModel(random.nextDouble(), ScoreModelEnum.MASCOT_EXPECT));
+                    psmSet.addReportPSM(new ReportPSM(psmID, psm));
+                    psmID++;
+                }
+                peptide.addPSM(psmSet);
+
+                if (nonScoringSpectra && (setID % 4 == 0)) {
+                    // the key is taken from a copy, so the PSMs have no cached keys
+                    PeptideSpectrumMatch copy = new PeptideSpectrumMatch(-1L, 2, 500.0, 0.0, null, sequence, 0,
+                            "index=" + setID, null, file, null);
+                    peptide.addToNonScoringSpectra(copy.getSpectrumIdentificationKey(
+                            psmSet.getPSMs().get(0).getAvailableIdentificationKeySettings()));
+                }
+            }
+            peptides.add(peptide);
+        }
+
+        // more proteins than needed for the parallel scoring, each with some subsets
+        List<ReportProtein> proteins = new ArrayList<>();
+        for (long protID = 0; protID < 12000; protID++) {
+            ReportProtein protein = new ReportProtein(protID);
+            for (int i = 1 + random.nextInt(5); i > 0; i--) {
+                protein.addPeptide(peptides.get(random.nextInt(peptides.size())));
+            }
+            proteins.add(protein);
+        }
+        for (ReportProtein protein : proteins) {
+            for (int i = random.nextInt(3); i > 0; i--) {
+                protein.addToSubsets(proteins.get(random.nextInt(proteins.size())));
+            }
+        }
+
+        return proteins;
+    }
+
+
+    @Test
+    public void testScoreIDLookupSameAsName() {
+        for (ScoreModelEnum scoreType : new ScoreModelEnum[] {ScoreModelEnum.MASCOT_SCORE, ScoreModelEnum.MASCOT_EXPECT}) {
+            int scoreID = ScoreIDs.getScoreID(scoreType);
+            for (ReportPeptide peptide : peptides) {
+                assertSame(peptide.getBestScoreModel(scoreType.getShortName()), peptide.getBestScoreModel(scoreID));
+            }
+        }
+    }
+
+
+    @Test
+    public void testProteinScoresSameAsSingleScoring() {
+        Map<String, String> scoreNameMap = new HashMap<>();
+        scoreNameMap.put(ScoreModelEnum.MASCOT_SCORE.getShortName(), ScoreModelEnum.MASCOT_SCORE.getName());
+        scoreNameMap.put(ScoreModelEnum.MASCOT_EXPECT.getShortName(), ScoreModelEnum.MASCOT_EXPECT.getName());
+
+        List<AbstractScoring> scorings = new ArrayList<>();
+        scorings.add(new AdditiveScoring(scoreNameMap));
+        scorings.add(new MultiplicativeScoring(scoreNameMap));
+        scorings.add(new GeometricMeanScoring(scoreNameMap));
+
+        for (AbstractScoring scoring : scorings) {
+            for (String scoreShort : scoreNameMap.keySet()) {
+                for (PSMForScoring psmForScoring : PSMForScoring.values()) {
+                    scoring.setSetting(AbstractScoring.SCORING_SETTING_ID, scoreShort);
+                    scoring.setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID, psmForScoring.getShortName());
+
+                    double[] expected = new double[proteins.size()];
+                    for (int idx = 0; idx < proteins.size(); idx++) {
+                        expected[idx] = scoring.calculateProteinScore(proteins.get(idx));
+                        proteins.get(idx).setScore(Double.NaN);
+                    }
+
+                    scoring.calculateProteinScores(proteins);
+
+                    for (int idx = 0; idx < proteins.size(); idx++) {
+                        assertEquals(scoring.getName() + ", " + scoreShort + ", " + psmForScoring.getShortName(),
+                                Double.doubleToLongBits(expected[idx]),
+                                Double.doubleToLongBits(proteins.get(idx).getScore()));
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void testParallelScoringWithNonScoringSpectra() {
+        Map<String, String> scoreNameMap = new HashMap<>();
+        scoreNameMap.put(ScoreModelEnum.MASCOT_SCORE.getShortName(), ScoreModelEnum.MASCOT_SCORE.getName());
+
+        AbstractScoring scoring = new MultiplicativeScoring(scoreNameMap);
+        scoring.setSetting(AbstractScoring.SCORING_SETTING_ID, ScoreModelEnum.MASCOT_SCORE.getShortName());
+        scoring.setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID, PSMForScoring.ONLY_BEST.getShortName());
+
+        // separate proteins, so the identification keys are first requested by the parallel scoring
+        List<ReportProtein> serialProteins = createProteins(new ArrayList<>(), true);
+        List<ReportProtein> parallelProteins = createProteins(new ArrayList<>(), true);
+
+        double[] expected = new double[serialProteins.size()];
+        for (int idx = 0; idx < serialProteins.size(); idx++) {
+            expected[idx] = scoring.calculateProteinScore(serialProteins.get(idx));
+        }
+
+        scoring.calculateProteinScores(parallelProteins);
+
+        boolean nonScoringUsed = false;
+        for (int idx = 0; idx < parallelProteins.size(); idx++) {
+            assertEquals(Double.doubleToLongBits(expected[idx]),
+                    Double.doubleToLongBits(parallelProteins.get(idx).getScore()));
+            nonScoringUsed |= (expected[idx] != scoring.calculateProteinScore(proteins.get(idx)));
+        }
+        assertTrue("the non-scoring spectra were not used", nonScoringUsed);
+    }
+}
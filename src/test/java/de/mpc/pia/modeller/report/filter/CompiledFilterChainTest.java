@@ -0,0 +1,115 @@
+package de.mpc.pia.modeller.report.filter;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.Modification;
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+public class CompiledFilterChainTest {
+
+    private static final String SCORE_SHORT = ScoreModelEnum.MASCOT_SCORE.getShortName();
+
+
+    @Test
+    public void testSameResultsAsSingleFilters() {
+        List<ReportPSM> psms = createPSMs(new Random(13), 5000);
+
+        List<List<AbstractFilter>> filterLists = Arrays.asList(
+                Arrays.asList(
+                        new PSMScoreFilter(FilterComparator.greater_equal, false, 20.0, SCORE_SHORT),
+                        RegisteredFilters.CHARGE_FILTER.newInstanceOf(FilterComparator.less_equal, 2, false),
+                        RegisteredFilters.PSM_ACCESSIONS_FILTER.newInstanceOf(FilterComparator.regex, "DECOY_.*", true)),
+                Arrays.asList(
+                        RegisteredFilters.CHARGE_FILTER.newInstanceOf(FilterComparator.equal, 3, true),
+                        RegisteredFilters.MZ_FILTER.newInstanceOf(FilterComparator.greater, 600.0, false),
+                        RegisteredFilters.PSM_SEQUENCE_FILTER.newInstanceOf(FilterComparator.contains, "PEP", false)),
+                Arrays.asList(
+                        RegisteredFilters.PSM_SEQUENCE_FILTER.newInstanceOf(FilterComparator.regex, ".*K", false),
+                        RegisteredFilters.PSM_ACCESSIONS_FILTER.newInstanceOf(FilterComparator.regex_only, "ACC_.*", false),
+                        RegisteredFilters.PSM_DECOY_FILTER.newInstanceOf(FilterComparator.equal, false, false)),
+                Arrays.asList(
+                        RegisteredFilters.PSM_MODIFICATIONS_FILTER.newInstanceOf(FilterComparator.has_any_modification, "", false),
+                        RegisteredFilters.PSM_MODIFICATIONS_FILTER.newInstanceOf(FilterComparator.has_mass, "15.9949", true)),
+                Arrays.asList(
+                        RegisteredFilters.PSM_MODIFICATIONS_FILTER.newInstanceOf(FilterComparator.has_residue, "C", false),
+                        RegisteredFilters.PSM_MODIFICATIONS_FILTER.newInstanceOf(FilterComparator.has_mass, "no number", false),
+                        RegisteredFilters.PSM_ACCESSIONS_FILTER.newInstanceOf(FilterComparator.contains_only, "ACC_1", true)),
+                Arrays.asList(
+                        new PSMScoreFilter(FilterComparator.less, true, 10.0, SCORE_SHORT),
+                        RegisteredFilters.PSM_MISSED_CLEAVAGES_FILTER.newInstanceOf(FilterComparator.equal, 1, false)));
+
+        for (List<AbstractFilter> filters : filterLists) {
+            List<ReportPSM> expected = new ArrayList<>();
+            for (ReportPSM psm : psms) {
+                if (FilterFactory.satisfiesFilterList(psm, 1L, filters)) {
+                    expected.add(psm);
+                }
+            }
+
+            CompiledFilterChain compiled = CompiledFilterChain.compile(filters);
+            assertEquals(filters.toString(), expected, compiled.apply(psms, 1L));
+            assertEquals(filters.toString(), expected, FilterFactory.applyFilters(psms, filters, 1L));
+
+            // the chain can be reused with the observed order
+            assertEquals(filters.toString(), expected, compiled.apply(psms, 1L));
+            for (ReportPSM psm : psms) {
+                assertEquals(FilterFactory.satisfiesFilterList(psm, 1L, filters), compiled.satisfies(psm, 1L));
+            }
+        }
+    }
+
+
+    /**
+     * Creates PSMs with random charges, scores, sequences, accessions and
+     * modifications.
+     */
+    private static List<ReportPSM> createPSMs(Random random, int nrPSMs) {
+        PIAInputFile file = new PIAInputFile(1L, "file1", "file1.mzid", "mzid");
+        String[] sequences = {"PEPTIDEK", "PEPTIDER", "ACDEFGHIK", "LLLPEP"};
+        Modification[] modifications = {
+                new Modification('M', 15.994915, "Oxidation", "UNIMOD:35"),
+                new Modification('C', 57.021464, "Carbamidomethyl", "UNIMOD:4")};
+
+        List<ReportPSM> psms = new ArrayList<>(nrPSMs);
+        for (long id = 0; id < nrPSMs; id++) {
+            PeptideSpectrumMatch psm = new PeptideSpectrumMatch(id, 1 + random.nextInt(4),
+                    400.0 + random.nextInt(400), 0.0, null, sequences[random.nextInt(sequences.length)],
+                    random.nextInt(3), "index=" + id, null, file, null);
+
+            boolean isDecoy = random.nextInt(4) == 0;
+            psm.setIsDecoy(isDecoy);
+            if (random.nextInt(10) > 0) {
+                psm.addScore(new ScoreModel(random.nextInt(200) / 4.0, ScoreModelEnum.MASCOT_SCORE));
+            }
+            for (int modIdx = 0; modIdx < modifications.length; modIdx++) {
+                if (random.nextBoolean()) {
+                    psm.addModification(modIdx + 1, modifications[modIdx]);
+                }
+            }
+
+            ReportPSM reportPSM = new ReportPSM(id, psm);
+            for (int accIdx = random.nextInt(3); accIdx >= 0; accIdx--) {
+                String prefix = (isDecoy && random.nextBoolean()) ? "DECOY_" : "ACC_";
+                Accession accession = new Accession(id * 3 + accIdx, prefix + random.nextInt(3), null);
+                accession.addFile(1L);
+                reportPSM.addAccession(accession);
+            }
+            psms.add(reportPSM);
+        }
+        return psms;
+    }
+}
@@ -0,0 +1,123 @@
+package de.mpc.pia.modeller.score;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
+import de.mpc.pia.modeller.score.comparator.ScoreComparator;
+
+
+public class FDRCalculationCacheTest {
+
+    private static final String SCORE_SHORT = ScoreModelEnum.MASCOT_SCORE.getShortName();
+
+
+    @Test
+    public void testThresholdChangesEqualFullCalculation() {
+        List<PeptideSpectrumMatch> psms = createPSMs(new Random(7), 3000);
+
+        List<ReportPSM> cachedItems = createReportPSMs(psms);
+        ScoreComparator<ReportPSM> comparator = new ScoreComparator<>(SCORE_SHORT, true);
+        FDRCalculationCache<ReportPSM> cache = new FDRCalculationCache<>(cachedItems, comparator, SCORE_SHORT, 0);
+
+        FDRData cachedFDRData = new FDRData(DecoyStrategy.SEARCHENGINE, "searchengine", 0.01);
+        cachedFDRData.setScoreShortName(SCORE_SHORT);
+        cache.calculateFDR(cachedFDRData, true);
+        assertTrue(cache.isCalculatedFor(cachedFDRData));
+
+        for (double threshold : new double[] {0.01, 0.05, 0.0, 0.3, 0.02, 1.0, 0.01}) {
+            cachedFDRData.setFDRThreshold(threshold);
+            assertTrue(cache.isCalculatedFor(cachedFDRData));
+            cache.applyThreshold(cachedFDRData);
+
+            List<ReportPSM> fullItems = createReportPSMs(psms);
+            FDRData fullFDRData = new FDRData(DecoyStrategy.SEARCHENGINE, "searchengine", threshold);
+            fullFDRData.setScoreShortName(SCORE_SHORT);
+            fullFDRData.calculateFDR(fullItems, new ScoreComparator<ReportPSM>(SCORE_SHORT, true));
+            FDRScore.calculateFDRScore(fullItems, fullFDRData, true);
+
+            assertSameResults(fullFDRData, fullItems, cachedFDRData, cache.getSortedItems());
+        }
+
+        // a changed decoy pattern needs a new calculation on the cached order
+        cachedFDRData.setDecoyStrategy(DecoyStrategy.ACCESSIONPATTERN);
+        assertFalse(cache.isCalculatedFor(cachedFDRData));
+
+        cache.invalidateDecoyStates();
+        cachedFDRData.setDecoyStrategy(DecoyStrategy.SEARCHENGINE);
+        assertFalse(cache.isCalculatedFor(cachedFDRData));
+    }
+
+
+    /**
+     * Asserts that the FDR data and all items have the same values.
+     */
+    private static void assertSameResults(FDRData expectedData, List<ReportPSM> expectedItems,
+            FDRData actualData, List<ReportPSM> actualItems) {
+        assertEquals(expectedData.getNrItems(), actualData.getNrItems());
+        assertEquals(expectedData.getNrTargets(), actualData.getNrTargets());
+        assertEquals(expectedData.getNrDecoys(), actualData.getNrDecoys());
+        assertEquals(expectedData.getNrFDRGoodTargets(), actualData.getNrFDRGoodTargets());
+        assertEquals(expectedData.getNrFDRGoodDecoys(), actualData.getNrFDRGoodDecoys());
+        assertEquals(expectedData.getScoreAtThreshold(), actualData.getScoreAtThreshold());
+        assertEquals(expectedData.getArtificialDecoyFDR(), actualData.getArtificialDecoyFDR());
+
+        assertEquals(expectedItems.size(), actualItems.size());
+        for (int idx = 0; idx < expectedItems.size(); idx++) {
+            ReportPSM expected = expectedItems.get(idx);
+            ReportPSM actual = actualItems.get(idx);
+
+            assertEquals(expected.getSpectrum().getID(), actual.getSpectrum().getID());
+            assertEquals(expected.getIsFDRGood(), actual.getIsFDRGood());
+            assertEquals(expected.getFDR(), actual.getFDR(), 0.0);
+            assertEquals(expected.getQValue(), actual.getQValue(), 0.0);
+            assertEquals(expected.getFDRScore().getValue(), actual.getFDRScore().getValue());
+        }
+    }
+
+
+    /**
+     * Creates PSMs with random scores, including ties, and a third decoys.
+     */
+    private static List<PeptideSpectrumMatch> createPSMs(Random random, int nrPSMs) {
+        List<PeptideSpectrumMatch> psms = new ArrayList<>(nrPSMs);
+        for (long id = 0; id < nrPSMs; id++) {
+            PeptideSpectrumMatch psm = new PeptideSpectrumMatch(id, 2, 500.0, 0.0, null, "PEPTIDE", 0,
+                    "index=" + id, null, null, null);
+
+            boolean isDecoy = random.nextInt(3) == 0;
+            psm.setIsDecoy(isDecoy);
+
+            double score = random.nextInt(200) / 4.0;
+            if (!isDecoy) {
+                score += random.nextInt(100) / 4.0;
+            }
+            psm.addScore(new ScoreModel(score, ScoreModelEnum.MASCOT_SCORE));
+            psms.add(psm);
+        }
+        return psms;
+    }
+
+
+    /**
+     * Creates new report PSMs with the decoy states set by the search engine.
+     */
+    private static List<ReportPSM> createReportPSMs(List<PeptideSpectrumMatch> psms) {
+        List<ReportPSM> reportPSMs = new ArrayList<>(psms.size());
+        Pattern pattern = Pattern.compile("searchengine");
+        for (PeptideSpectrumMatch psm : psms) {
+            ReportPSM reportPSM = new ReportPSM(psm.getID(), psm);
+            reportPSM.updateDecoyStatus(DecoyStrategy.SEARCHENGINE, pattern);
+            reportPSMs.add(reportPSM);
+        }
+        return reportPSMs;
+    }
+}
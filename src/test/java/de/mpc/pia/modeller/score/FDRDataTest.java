@@ -0,0 +1,48 @@
+package de.mpc.pia.modeller.score;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.score.comparator.ScoreComparator;
+
+
+public class FDRDataTest {
+
+    private static final String SCORE_SHORT = ScoreModelEnum.PROTEIN_SCORE.getShortName();
+
+
+    @Test
+    public void testSortItemsSameAsListSort() {
+        Random random = new Random(11);
+
+        List<ReportProtein> proteins = new ArrayList<>();
+        for (long id = 0; id < 50000; id++) {
+            ReportProtein protein = new ReportProtein(id);
+            // many ties, to check the stability
+            protein.setScore(random.nextInt(500) / 8.0);
+            proteins.add(protein);
+        }
+
+        ScoreComparator<ReportProtein> comparator = new ScoreComparator<>(SCORE_SHORT, true);
+        assertTrue(comparator.isTotalOrderOn(proteins));
+
+        List<ReportProtein> expected = new ArrayList<>(proteins);
+        expected.sort(comparator);
+
+        FDRData.sortItems(proteins, comparator);
+
+        for (int idx = 0; idx < expected.size(); idx++) {
+            assertSame(expected.get(idx), proteins.get(idx));
+        }
+
+        // a NaN score is worse than any other in both directions, so it is no total order
+        proteins.get(random.nextInt(proteins.size())).setScore(Double.NaN);
+        assertFalse(comparator.isTotalOrderOn(proteins));
+    }
+}
@@ -0,0 +1,66 @@
+package de.mpc.pia.modeller.score;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.psm.ReportPSM;
+
+
+public class ScoreIDsTest {
+
+    @Test
+    public void testDescriptorsResolveToSameID() {
+        int id = ScoreIDs.getScoreID(ScoreModelEnum.MASCOT_SCORE);
+
+        assertEquals(id, ScoreIDs.getScoreID(ScoreModelEnum.MASCOT_SCORE.getShortName()));
+        assertEquals(id, ScoreIDs.getScoreID(ScoreModelEnum.MASCOT_SCORE.getName()));
+        assertEquals(id, ScoreIDs.getScoreID(ScoreModelEnum.MASCOT_SCORE.getCvAccession()));
+        assertEquals(ScoreModelEnum.MASCOT_SCORE.getShortName(), ScoreIDs.getShortName(id));
+
+        int unknownID = ScoreIDs.getScoreID("some_unknown_score");
+        assertTrue(unknownID >= ScoreModelEnum.values().length);
+        assertEquals(unknownID, ScoreIDs.getScoreID("some_unknown_score"));
+        assertEquals("some_unknown_score", ScoreIDs.getShortName(unknownID));
+        assertTrue(unknownID < ScoreIDs.getNrScoreIDs());
+
+        assertEquals(ScoreIDs.NO_SCORE_ID, ScoreIDs.getScoreID((String) null));
+    }
+
+
+    @Test
+    public void testPSMScoreLookup() {
+        PeptideSpectrumMatch psm = new PeptideSpectrumMatch(1L, 2, 500.0, 0.0, null, "PEPTIDE", 0,
+                "index=1", null, null, null);
+
+        ScoreModel mascotScore = new ScoreModel(42.0, ScoreModelEnum.MASCOT_SCORE);
+        psm.addScore(mascotScore);
+        psm.addScore(new ScoreModel(12.0, ScoreModelEnum.MASCOT_SCORE));
+
+        int mascotID = ScoreIDs.getScoreID(ScoreModelEnum.MASCOT_SCORE);
+        int expectID = ScoreIDs.getScoreID(ScoreModelEnum.MASCOT_EXPECT);
+
+        // the first score of a type is found
+        assertSame(mascotScore, psm.getScore(mascotID));
+        assertSame(mascotScore, psm.getScore(ScoreModelEnum.MASCOT_SCORE.getName()));
+        assertEquals(42.0, psm.getScoreValue(mascotID), 0.0);
+
+        assertNull(psm.getScore(expectID));
+        assertTrue(Double.isNaN(psm.getScoreValue(expectID)));
+        assertTrue(Double.isNaN(psm.getScoreValue(ScoreIDs.NO_SCORE_ID)));
+
+        // adding a score updates the lookup
+        psm.addScore(new ScoreModel(0.01, ScoreModelEnum.MASCOT_EXPECT));
+        assertEquals(0.01, psm.getScoreValue(expectID), 0.0);
+
+        ReportPSM reportPSM = new ReportPSM(1L, psm);
+        assertEquals(Double.valueOf(0.01), reportPSM.getScore(expectID));
+        assertTrue(reportPSM.getScore(ScoreIDs.getScoreID(ScoreModelEnum.PSM_LEVEL_FDR_SCORE)).isNaN());
+
+        reportPSM.setFDRScore(0.5);
+        assertEquals(Double.valueOf(0.5), reportPSM.getScore(ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName()));
+        assertSame(reportPSM.getFDRScore(),
+                reportPSM.getCompareScore(ScoreIDs.getScoreID(ScoreModelEnum.PSM_LEVEL_FDR_SCORE)));
+    }
+}
@@ -0,0 +1,261 @@
+package de.mpc.pia.modeller.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.inference.SpectrumExtractorInference;
+import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
+import de.mpc.pia.modeller.protein.scoring.MultiplicativeScoring;
+import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
+
+public class PIAModellerSnapshotTest {
+
+    private static File piaFile;
+    private static File idXMLmsgfFile;
+
+
+    @BeforeClass
+    public static void initialize() {
+        piaFile = new File(PIAModellerSnapshotTest.class.getResource("/55merge_mascot_tandem.pia.xml").getPath());
+        idXMLmsgfFile = new File(PIAModellerSnapshotTest.class.getResource("/merge1-msgf-fdr_filtered-015.idXML").getPath());
+    }
+
+
+    /**
+     * Creates a modeller with calculated FDR and inferred proteins.
+     */
+    static PIAModeller createInferredModeller(File piaFile) {
+        PIAModeller piaModeller = new PIAModeller(piaFile.getAbsolutePath());
+
+        piaModeller.setCreatePSMSets(true);
+
+        piaModeller.getPSMModeller().setAllDecoyPattern("Rnd.*");
+        piaModeller.getPSMModeller().setAllTopIdentifications(1);
+
+        piaModeller.getPSMModeller().addPreferredFDRScore("mascot_expect");
+
+        piaModeller.getPSMModeller().calculateAllFDR();
+        piaModeller.getPSMModeller().calculateCombinedFDRScore();
+
+        piaModeller.getPSMModeller().addFilter(0L,
+                new PSMScoreFilter(FilterComparator.less_equal, false, 0.5, ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName()));
+
+        SpectrumExtractorInference seInference = new SpectrumExtractorInference();
+
+        seInference.addFilter(
+                new PSMScoreFilter(FilterComparator.less_equal, false, 0.5, ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName()));
+
+        seInference.setScoring(new MultiplicativeScoring(new HashMap<>()));
+        seInference.getScoring().setSetting(AbstractScoring.SCORING_SETTING_ID, ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName());
+        seInference.getScoring().setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID, PSMForScoring.ONLY_BEST.getShortName());
+
+        piaModeller.getProteinModeller().infereProteins(seInference);
+
+        return piaModeller;
+    }
+
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        PIAModeller piaModeller = createInferredModeller(piaFile);
+
+        File snapshotFile = File.createTempFile("pia_snapshot", ".pia");
+        PIAModeller.serializeToFile(piaModeller, snapshotFile);
+        assertTrue(PIAModellerSnapshot.isSnapshotFile(snapshotFile));
+
+        PIAModeller readModeller = PIAModellerSnapshot.read(snapshotFile, 2);
+
+        assertEquals("testfile", readModeller.getProjectName());
+        assertEquals(2, readModeller.getFiles().size());
+        assertEquals(piaModeller.getGroups().size(), readModeller.getGroups().size());
+        assertTrue(readModeller.getCreatePSMSets());
+
+        assertEquals("Rnd.*", readModeller.getPSMModeller().getFilesFDRData(1L).getDecoyPattern());
+        assertEquals(2420, readModeller.getPSMModeller().getNrReportPSMs(0L));
+        assertEquals(2308, readModeller.getPSMModeller().getNrReportPSMs(1L));
+        assertEquals(170, readModeller.getPSMModeller().getNrReportPSMs(2L));
+
+        assertEquals(8, readModeller.getPSMModeller().getFilteredReportPSMSets(
+                readModeller.getPSMModeller().getFilters(0L)).size());
+        assertEquals(6, readModeller.getProteinModeller().getFilteredReportProteins(null).size());
+
+        assertEquals(piaModeller.getProteinModeller().getAppliedProteinInference().getName(),
+                readModeller.getProteinModeller().getAppliedProteinInference().getName());
+        assertEquals(MultiplicativeScoring.NAME,
+                readModeller.getProteinModeller().getAppliedProteinInference().getScoring().getName());
+
+        // the PSMs of the modeller must be the ones of the intermediate data, not copies
+        Set<PeptideSpectrumMatch> intermediatePSMs = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Group group : readModeller.getGroups().values()) {
+            if (group.getPeptides() != null) {
+                for (Peptide peptide : group.getPeptides().values()) {
+                    intermediatePSMs.addAll(peptide.getSpectra());
+                }
+            }
+        }
+
+        List<ReportPSM> reportPSMs = readModeller.getPSMModeller().getFilteredReportPSMs(1L, null);
+        assertFalse(reportPSMs.isEmpty());
+        for (ReportPSM psm : reportPSMs) {
+            assertTrue(intermediatePSMs.contains(psm.getSpectrum()));
+        }
+
+        snapshotFile.delete();
+    }
+
+
+    @Test
+    public void testIncompatibleVersionRejected() throws IOException {
+        PIAModeller piaModeller = new PIAModeller(piaFile.getAbsolutePath());
+
+        File snapshotFile = File.createTempFile("pia_snapshot", ".pia");
+        PIAModeller.serializeToFile(piaModeller, snapshotFile);
+
+        // set the schema version behind the magic bytes to another version
+        try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw")) {
+            raf.seek(PIAModellerSnapshot.MAGIC_BYTES.length);
+            raf.writeInt(PIAModellerSnapshot.SCHEMA_VERSION + 1);
+        }
+        assertTrue(PIAModellerSnapshot.isSnapshotFile(snapshotFile));
+
+        try {
+            PIAModellerSnapshot.read(snapshotFile, 2);
+            fail("snapshot of another schema version was read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("written by an incompatible version"));
+        } finally {
+            snapshotFile.delete();
+        }
+    }
+
+
+    @Test
+    public void testSerializedJavaObjectRejected() throws IOException {
+        File serializedFile = File.createTempFile("pia_serialized", ".pia");
+        try (ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(serializedFile)))) {
+            oos.writeObject("no snapshot");
+        }
+        assertFalse(PIAModellerSnapshot.isSnapshotFile(serializedFile));
+
+        try {
+            PIAModeller.deSerializeFromFile(serializedFile);
+            fail("gzipped Java serialization was read as snapshot");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("is no PIA snapshot"));
+        } finally {
+            serializedFile.delete();
+        }
+    }
+
+
+    @Test
+    public void testRoundTripKeepsAllValues() throws IOException {
+        PIACompiler piaCompiler = new PIASimpleCompiler();
+        assertTrue(piaCompiler.getDataFromFile("msgf", idXMLmsgfFile.getAbsolutePath(), null, null));
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+        piaCompiler.setName("roundtrip");
+
+        File intermediateFile = File.createTempFile("pia_snapshot", ".pia.xml");
+        piaCompiler.writeOutXML(intermediateFile);
+        piaCompiler.finish();
+
+        PIAModeller piaModeller = new PIAModeller(intermediateFile.getAbsolutePath());
+        piaModeller.setCreatePSMSets(true);
+        piaModeller.getPSMModeller().setAllDecoyPattern("s.*");
+        piaModeller.getPSMModeller().setAllTopIdentifications(0);
+        piaModeller.getPSMModeller().calculateAllFDR();
+        piaModeller.getPSMModeller().calculateCombinedFDRScore();
+        piaModeller.getPeptideModeller().calculateFDR(1L);
+
+        SpectrumExtractorInference seInference = new SpectrumExtractorInference();
+        seInference.addFilter(
+                new PSMScoreFilter(FilterComparator.less_equal, false, 0.01, ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName()));
+        seInference.setScoring(new MultiplicativeScoring(new HashMap<>()));
+        seInference.getScoring().setSetting(AbstractScoring.SCORING_SETTING_ID, ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName());
+        seInference.getScoring().setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID, PSMForScoring.ONLY_BEST.getShortName());
+        piaModeller.getProteinModeller().infereProteins(seInference);
+
+        piaModeller.getProteinModeller().updateFDRData(DecoyStrategy.ACCESSIONPATTERN, "s.*", 0.01);
+        piaModeller.getProteinModeller().updateDecoyStates();
+        piaModeller.getProteinModeller().calculateFDR();
+
+        File snapshotFile = File.createTempFile("pia_snapshot", ".pia");
+        PIAModeller.serializeToFile(piaModeller, snapshotFile);
+        PIAModeller readModeller = PIAModeller.deSerializeFromFile(snapshotFile);
+
+        snapshotFile.delete();
+        intermediateFile.delete();
+
+        assertEquals("roundtrip", readModeller.getProjectName());
+        assertEquals(piaModeller.getPSMModeller().getFilesFDRData(1L).getNrFDRGoodTargets(),
+                readModeller.getPSMModeller().getFilesFDRData(1L).getNrFDRGoodTargets());
+
+        List<ReportPSMSet> psmSets = piaModeller.getPSMModeller().getFilteredReportPSMSets(null);
+        List<ReportPSMSet> readPSMSets = readModeller.getPSMModeller().getFilteredReportPSMSets(null);
+        assertEquals(psmSets.size(), readPSMSets.size());
+        for (int idx = 0; idx < psmSets.size(); idx++) {
+            assertEquals(psmSets.get(idx).getIdentificationKey(readModeller.getPSMModeller().getPSMSetSettings()),
+                    readPSMSets.get(idx).getIdentificationKey(readModeller.getPSMModeller().getPSMSetSettings()));
+            assertEquals(psmSets.get(idx).getFDRScore().getValue(), readPSMSets.get(idx).getFDRScore().getValue(), 0.0);
+            assertEquals(psmSets.get(idx).getQValue(), readPSMSets.get(idx).getQValue(), 0.0);
+            assertEquals(psmSets.get(idx).getIsDecoy(), readPSMSets.get(idx).getIsDecoy());
+        }
+
+        List<ReportPeptide> peptides = piaModeller.getPeptideModeller().getFilteredReportPeptides(1L, null);
+        List<ReportPeptide> readPeptides = readModeller.getPeptideModeller().getFilteredReportPeptides(1L, null);
+        assertEquals(peptides.size(), readPeptides.size());
+        for (int idx = 0; idx < peptides.size(); idx++) {
+            assertEquals(peptides.get(idx).getStringID(), readPeptides.get(idx).getStringID());
+            assertEquals(peptides.get(idx).getNrPSMs(), readPeptides.get(idx).getNrPSMs());
+            assertEquals(peptides.get(idx).getQValue(), readPeptides.get(idx).getQValue(), 0.0);
+        }
+
+        List<ReportProtein> proteins = piaModeller.getProteinModeller().getFilteredReportProteins(null);
+        List<ReportProtein> readProteins = readModeller.getProteinModeller().getFilteredReportProteins(null);
+        assertFalse(proteins.isEmpty());
+        assertEquals(proteins.size(), readProteins.size());
+        for (int idx = 0; idx < proteins.size(); idx++) {
+            ReportProtein protein = proteins.get(idx);
+            ReportProtein readProtein = readProteins.get(idx);
+
+            assertEquals(protein.getRepresentative().getAccession(), readProtein.getRepresentative().getAccession());
+            assertEquals(protein.getAccessions().size(), readProtein.getAccessions().size());
+            assertEquals(protein.getPeptides().size(), readProtein.getPeptides().size());
+            assertEquals(protein.getSubSets().size(), readProtein.getSubSets().size());
+            assertEquals(protein.getScore(), readProtein.getScore(), 0.0);
+            assertEquals(protein.getRank(), readProtein.getRank());
+            assertEquals(protein.getIsDecoy(), readProtein.getIsDecoy());
+            assertEquals(protein.getQValue(), readProtein.getQValue(), 0.0);
+            assertEquals(protein.getNrSpectra(), readProtein.getNrSpectra());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package de.mpc.pia.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class CleavageSiteScannerTest {
+
+    @Test
+    public void testSameSitesAsSplit() {
+        Random random = new Random(19);
+        String aminoAcids = "ACDEFGHIKLMNPQRSTVWY";
+
+        for (CleavageAgent agent : CleavageAgent.values()) {
+            if ((agent.getSiteRegexp() == null) || agent.getSiteRegexp().isEmpty()) {
+                continue;
+            }
+            CleavageSiteScanner scanner = CleavageSiteScanner.compile(agent);
+            assertNotNull(agent.getName(), scanner);
+
+            for (int i = 0; i < 500; i++) {
+                StringBuilder sequence = new StringBuilder();
+                int length = 1 + random.nextInt(60);
+                for (int pos = 0; pos < length; pos++) {
+                    sequence.append(aminoAcids.charAt(random.nextInt(aminoAcids.length())));
+                }
+
+                String[] expected = sequence.toString().split(agent.getSiteRegexp());
+                int[] boundaries = scanner.getPieceBoundaries(sequence);
+                String[] pieces = new String[boundaries.length - 1];
+                for (int idx = 0; idx < pieces.length; idx++) {
+                    pieces[idx] = sequence.substring(boundaries[idx], boundaries[idx + 1]);
+                }
+
+                assertArrayEquals(agent.getName() + " " + sequence, expected, pieces);
+            }
+        }
+    }
+
+
+    @Test
+    public void testUnsupportedPatterns() {
+        assertNull(CleavageSiteScanner.compile("[KR]"));
+        assertNull(CleavageSiteScanner.compile("(?<=[KR].)"));
+        assertNull(CleavageSiteScanner.compile(""));
+    }
+}
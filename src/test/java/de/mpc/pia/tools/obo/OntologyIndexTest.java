@@ -0,0 +1,100 @@
+package de.mpc.pia.tools.obo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.biojava.nbio.ontology.Ontology;
+import org.biojava.nbio.ontology.Term;
+import org.biojava.nbio.ontology.Triple;
+import org.junit.Test;
+
+
+public class OntologyIndexTest {
+
+    @Test
+    public void testPsiMsIndex() throws Exception {
+        Ontology parsed;
+        try (InputStream inStream = OBOMapper.class.getResourceAsStream(OBOMapper.PATH_TO_SHIPPED_OBO)) {
+            parsed = OBOMapper.parseOntology(inStream);
+        }
+        IndexedOntology indexed = new IndexedOntology(writeAndLoad(parsed), "PSI-MS", "test");
+
+        // single lookups without creating the whole ontology
+        Term trypsin = indexed.getTerm("MS:1001251");
+        assertNotNull(trypsin);
+        assertEquals(parsed.getTerm("MS:1001251").getDescription(), trypsin.getDescription());
+        assertEquals(parsed.getTerm("MS:1001251").getAnnotation().getProperty("def"),
+                trypsin.getAnnotation().getProperty("def"));
+        assertNull(indexed.getTerm("MS:not_there"));
+        assertEquals("MS:1001171", indexed.getTermByName("Mascot:score").getName());
+
+        Set<String> regexpTriples = tripleNames(indexed.getTriples(trypsin, null, null));
+        assertEquals(tripleNames(parsed.getTriples(parsed.getTerm("MS:1001251"), null, null)), regexpTriples);
+        assertTrue(regexpTriples.contains("MS:1001251 relationship has_regexp MS:1001176"));
+
+        assertSameOntology(parsed, indexed.getOntology());
+    }
+
+
+    @Test
+    public void testPsiModIndex() throws Exception {
+        Ontology parsed;
+        try (InputStream inStream = PsiModParser.class.getResourceAsStream(PsiModParser.PATH_TO_SHIPPED_OBO)) {
+            parsed = PsiModParser.parseOntology(inStream);
+        }
+        IndexedOntology indexed = new IndexedOntology(writeAndLoad(parsed), "PSI-MOD", "test");
+
+        assertSameOntology(parsed, indexed.getOntology());
+    }
+
+
+    /**
+     * Writes the index of the ontology into a temporary file and loads it
+     * (mapped) again.
+     */
+    private static OntologyIndex writeAndLoad(Ontology ontology) throws Exception {
+        File indexFile = File.createTempFile("ontology", OntologyIndex.INDEX_FILE_ENDING);
+        indexFile.deleteOnExit();
+        try (OutputStream outStream = new BufferedOutputStream(new FileOutputStream(indexFile))) {
+            OntologyIndex.write(ontology, outStream);
+        }
+        return OntologyIndex.load(indexFile.toURI().toURL());
+    }
+
+
+    private static void assertSameOntology(Ontology expected, Ontology actual) {
+        assertEquals(expected.getTerms().size(), actual.getTerms().size());
+        for (Term term : expected.getTerms()) {
+            if (term instanceof Triple) {
+                continue;
+            }
+            Term actualTerm = actual.getTerm(term.getName());
+            assertEquals(term.getName(), term.getDescription(), actualTerm.getDescription());
+            assertEquals(term.getName(), term.getAnnotation().asMap(), actualTerm.getAnnotation().asMap());
+            assertEquals(term.getName(), term.getSynonyms().length, actualTerm.getSynonyms().length);
+        }
+
+        assertEquals(tripleNames(expected.getTriples(null, null, null)),
+                tripleNames(actual.getTriples(null, null, null)));
+    }
+
+
+    private static Set<String> tripleNames(Set<Triple> triples) {
+        Set<String> names = new HashSet<>();
+        for (Triple triple : triples) {
+            names.add(triple.getSubject().getName() + ' ' + triple.getPredicate().getName()
+                    + ' ' + triple.getObject().getName());
+        }
+        return names;
+    }
+}
@@ -2,11 +2,17 @@ package de.mpc.pia.tools.unimod;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.junit.Test;
 
+import de.mpc.pia.tools.unimod.jaxb.ModT;
+
 
 public class UnimodParserTest {
 
@@ -27,6 +33,56 @@ public class UnimodParserTest {
     }
 
 
+    @Test
+    public void testIndexedLookups() {
+        UnimodParser unimodParser = new UnimodParser(false);
+
+        assertEquals(Long.valueOf(35), unimodParser.getModificationByAccession("UNIMOD:35").getRecordId());
+        assertEquals("Oxidation", unimodParser.getModificationByAccession("35").getTitle());
+        assertNull(unimodParser.getModificationByAccession("UNIMOD:999999"));
+
+        // names are found ignoring the case
+        assertEquals(Long.valueOf(4), unimodParser.getModificationByName("carbamidomethyl", "C").getRecordId());
+        assertEquals(Long.valueOf(4),
+                unimodParser.getModificationByNameAndMass("CARBAMIDOMETHYL", 57.0215, Collections.singletonList("C")).getRecordId());
+        assertNull(unimodParser.getModificationByNameAndMass("Carbamidomethyl", 57.03, Collections.singletonList("C")));
+
+        // by mass within the tolerance and on the allowed residues
+        assertEquals(Long.valueOf(35), unimodParser.getModificationByMass(15.9949, "M").getRecordId());
+        assertEquals(Long.valueOf(35), unimodParser.getModificationByMass(15.9949, "M").getRecordId());
+        assertEquals(Long.valueOf(21), unimodParser.getModificationByMass(79.966331, Arrays.asList("S", "T")).getRecordId());
+        assertNull(unimodParser.getModificationByMass(15.9949 + 2 * UnimodParser.UNIMOD_MASS_TOLERANCE, "M"));
+        assertNull(unimodParser.getModificationByMass(-1000.0, "M"));
+    }
+
+
+    @Test
+    public void testParallelMassLookups() {
+        UnimodParser unimodParser = new UnimodParser(false);
+
+        List<Double> masses = new ArrayList<>();
+        for (double mass = -50.0; mass < 400.0; mass += 0.0005) {
+            masses.add(mass);
+        }
+
+        List<ModT> sequential = masses.stream()
+                .map(mass -> unimodParser.getModificationByMass(mass, "K"))
+                .collect(Collectors.toList());
+
+        // a new parser with an empty cache, shared by the threads
+        UnimodParser sharedParser = new UnimodParser(false);
+        List<String> parallel = IntStream.range(0, 4 * masses.size()).parallel()
+                .mapToObj(idx -> sharedParser.getModificationByMass(masses.get(idx % masses.size()), "K"))
+                .map(mod -> (mod != null) ? mod.getTitle() : null)
+                .collect(Collectors.toList());
+
+        for (int idx = 0; idx < parallel.size(); idx++) {
+            ModT expected = sequential.get(idx % masses.size());
+            assertEquals((expected != null) ? expected.getTitle() : null, parallel.get(idx));
+        }
+    }
+
+
     private void testParser(UnimodParser unimodParser) {
         assertNotNull(unimodParser.getModificationByName("Carbamidomethyl", Collections.singletonList("C")));
         assertNotNull(unimodParser.getModificationByName("Oxidation", Collections.singletonList("M")));